@@ -0,0 +1,84 @@
+package benchmark;
+
+import converter.Converter;
+import converter.ConverterException;
+import converter.ConverterOptions;
+import converter.Triple;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Convert the triples of a synthetic KB held in memory: numeration, rearrangement by a numeration order, and dumping.
+ * An operation converts the whole KB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConverterBenchmark {
+    @Param({"200000"})
+    public int records;
+    @Param({"20"})
+    public int relations;
+    @Param({"50000"})
+    public int constants;
+    @Param({"first-occurrence", "degree", "rcm"})
+    public String numerationOrder;
+
+    protected File outputDir;
+    protected List<Triple> triples;
+    protected ConverterOptions options;
+
+    /**
+     * A converter reading the triples in memory.
+     */
+    static class TripleListConverter extends Converter {
+        protected final List<Triple> triples;
+
+        TripleListConverter(List<Triple> triples, String outputPath, ConverterOptions options) {
+            super("bench", outputPath, options);
+            this.triples = triples;
+        }
+
+        @Override
+        protected Iterator<Triple> tripleIterator() {
+            return triples.iterator();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, ConverterException {
+        SyntheticKb kb = new SyntheticKb(relations, records, constants, 0);
+        triples = new ArrayList<>();
+        for (int rel = 0; rel < relations; rel++) {
+            for (int[] record: kb.relations[rel]) {
+                triples.add(new Triple(
+                        SyntheticKb.constantName(record[0]), kb.relationName(rel), SyntheticKb.constantName(record[1])
+                ));
+            }
+        }
+        options = ConverterOptions.parse(new String[]{"--numeration-order=" + numerationOrder}, 0);
+        outputDir = Files.createTempDirectory("converter").toFile();
+        Silence.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Silence.stop();
+        SyntheticKb.deleteRecursively(outputDir);
+    }
+
+    @Benchmark
+    public void convert() throws ConverterException {
+        new TripleListConverter(triples, outputDir.getPath(), options).convert();
+    }
+}
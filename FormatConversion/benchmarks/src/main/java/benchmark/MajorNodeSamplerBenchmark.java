@@ -0,0 +1,57 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import sampler.MajorNodeSampler;
+import sinc2.kb.SimpleKb;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sample a synthetic KB in memory with `MajorNodeSampler`: building the adjacency, selecting major nodes and their
+ * edges, and formatting the sampled KB. An operation samples the whole KB once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MajorNodeSamplerBenchmark {
+    @Param({"200000"})
+    public int records;
+    @Param({"20"})
+    public int relations;
+    @Param({"50000"})
+    public int constants;
+    /** The budget of records in the sampled KB, as a fraction of all records */
+    @Param({"0.1"})
+    public double budget;
+    @Param({"1", "4"})
+    public int threads;
+
+    protected SimpleKb kb;
+    protected MajorNodeSampler sampler;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SyntheticKb synthetic_kb = new SyntheticKb(relations, records, constants, 0);
+        kb = new SimpleKb("bench", synthetic_kb.relations, synthetic_kb.relationNames());
+        BitSet type_values = new BitSet();
+        for (int[] record: synthetic_kb.relations[relations - 1]) {
+            type_values.set(record[1]);
+        }
+        sampler = new MajorNodeSampler(type_values, threads);
+        Silence.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Silence.stop();
+    }
+
+    @Benchmark
+    public Object sample() {
+        return sampler.sample(kb, (int) (budget * kb.totalRecords()), "sampled");
+    }
+}
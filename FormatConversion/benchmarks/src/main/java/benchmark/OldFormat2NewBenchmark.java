@@ -0,0 +1,62 @@
+package benchmark;
+
+import converter.ConverterException;
+import converter.OldFormat2New;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Migrate a synthetic KB from the old numerated format, with the mappings in memory or in the streaming mode. An
+ * operation migrates the whole KB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OldFormat2NewBenchmark {
+    public static final String KB_NAME = "bench";
+
+    @Param({"200000"})
+    public int records;
+    @Param({"20"})
+    public int relations;
+    @Param({"50000"})
+    public int constants;
+    /** The memory budget of the streaming mode, or 0 for the in-memory mode */
+    @Param({"0", "16m"})
+    public String memoryBudget;
+
+    protected File oldDir;
+    protected File newDir;
+    protected String[] args;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        oldDir = Files.createTempDirectory("old").toFile();
+        newDir = Files.createTempDirectory("new").toFile();
+        new SyntheticKb(relations, records, constants, 0).writeOldFormat(new File(oldDir, KB_NAME));
+        args = new String[]{
+                oldDir.getPath(), KB_NAME, newDir.getPath(), "--memory-budget=" + memoryBudget,
+                "--tmp-dir=" + newDir.getPath()
+        };
+        Silence.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Silence.stop();
+        SyntheticKb.deleteRecursively(oldDir);
+        SyntheticKb.deleteRecursively(newDir);
+    }
+
+    @Benchmark
+    public void convert() throws IOException, ConverterException {
+        OldFormat2New.main(args);
+    }
+}
@@ -0,0 +1,94 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import util.io.IntInput;
+import util.io.IntOutput;
+import util.kb.KbFiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load the relations of a synthetic KB from raw or block-packed relation files with `KbFiles`, either by scanning the
+ * chunks of `openRelation` or by `readRows`. An operation loads all relations once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PackedRelationBenchmark {
+    public static final int ARITY = 2;
+
+    @Param({"2000000"})
+    public int records;
+    @Param({"20"})
+    public int relations;
+    @Param({"500000"})
+    public int constants;
+    /** The format of relation files: "raw" or "packed" */
+    @Param({"raw", "packed"})
+    public String format;
+    /** Whether the rows of relations are sorted, as dumped with "--rel-order=sorted" */
+    @Param({"false", "true"})
+    public boolean sorted;
+
+    protected File kbDir;
+    protected int recordsPerRelation;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        kbDir = Files.createTempDirectory("packed").toFile();
+        SyntheticKb synthetic_kb = new SyntheticKb(relations, records, constants, 0);
+        recordsPerRelation = synthetic_kb.recordsPerRelation;
+        boolean packed = KbFiles.parseRelationFormat(format);
+        for (int rel = 0; rel < relations; rel++) {
+            int[][] rows = synthetic_kb.relations[rel];
+            if (sorted) {
+                rows = rows.clone();
+                Arrays.sort(rows, Comparator.<int[]>comparingInt(row -> row[0]).thenComparingInt(row -> row[1]));
+            }
+            try (IntOutput output = KbFiles.createRelation(kbDir.getPath(), rel, ARITY, packed)) {
+                for (int[] row: rows) {
+                    output.writeInts(row);
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticKb.deleteRecursively(kbDir);
+    }
+
+    @Benchmark
+    public long scan() throws IOException {
+        long sum = 0;
+        for (int rel = 0; rel < relations; rel++) {
+            try (IntInput input = KbFiles.openRelation(kbDir.getPath(), rel, ARITY)) {
+                IntBuffer chunk;
+                while (null != (chunk = input.nextChunk())) {
+                    while (chunk.hasRemaining()) {
+                        sum += chunk.get();
+                    }
+                }
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public Object readRows() throws IOException {
+        int[][][] kb = new int[relations][][];
+        for (int rel = 0; rel < relations; rel++) {
+            kb[rel] = KbFiles.readRows(kbDir.getPath(), rel, ARITY, recordsPerRelation);
+        }
+        return kb;
+    }
+}
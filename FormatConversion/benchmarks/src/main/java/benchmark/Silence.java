@@ -0,0 +1,32 @@
+package benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Mute the progress and warnings printed by the converters and samplers, so they do not flood the benchmark output.
+ * Failures still surface as exceptions of the benchmark methods.
+ */
+public class Silence {
+    protected static PrintStream originalOut = null;
+    protected static PrintStream originalErr = null;
+
+    public static synchronized void start() {
+        if (null == originalOut) {
+            originalOut = System.out;
+            originalErr = System.err;
+            PrintStream muted = new PrintStream(OutputStream.nullOutputStream());
+            System.setOut(muted);
+            System.setErr(muted);
+        }
+    }
+
+    public static synchronized void stop() {
+        if (null != originalOut) {
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+            originalOut = null;
+            originalErr = null;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package benchmark;
+
+import util.io.IntFileWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/**
+ * Synthetic KBs of configurable size for benchmarks. A KB has a number of binary relations, the last of which is the
+ * type relation "type". Arguments are drawn from the constants with a skewed distribution, so that a few constants are
+ * frequent as in real KBs. The same parameters and seed always give the same KB.
+ */
+public class SyntheticKb {
+    public static final String TYPE_RELATION = "type";
+
+    public final int totalRelations;
+    public final int recordsPerRelation;
+    public final int totalConstants;
+    /** `relations[rel][record]` is a pair of numerations from 1 */
+    public final int[][][] relations;
+
+    public SyntheticKb(int totalRelations, int totalRecords, int totalConstants, long seed) {
+        this.totalRelations = totalRelations;
+        this.recordsPerRelation = Math.max(1, totalRecords / totalRelations);
+        this.totalConstants = totalConstants;
+        this.relations = new int[totalRelations][recordsPerRelation][];
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int rel = 0; rel < totalRelations; rel++) {
+            for (int i = 0; i < recordsPerRelation; i++) {
+                relations[rel][i] = new int[]{constant(random), constant(random)};
+            }
+        }
+    }
+
+    protected int constant(SplittableRandom random) {
+        double u = random.nextDouble();
+        return 1 + (int) (u * u * totalConstants);
+    }
+
+    public String relationName(int rel) {
+        return (totalRelations - 1 == rel) ? TYPE_RELATION : "rel" + rel;
+    }
+
+    public String[] relationNames() {
+        String[] names = new String[totalRelations];
+        for (int rel = 0; rel < totalRelations; rel++) {
+            names[rel] = relationName(rel);
+        }
+        return names;
+    }
+
+    public static String constantName(int num) {
+        return "E" + num;
+    }
+
+    /**
+     * Write the KB in the YAGO1 layout: "entities/<file>.tsv" with an entity name in each line, and
+     * "facts/<relation>/0.tsv" with lines "<id>\t<subject>\t<object>\t<confidence>". One in every eight facts has a
+     * literal object, which is not an entity and is filtered out by the converter.
+     */
+    public void writeYago1(File dir) throws IOException {
+        File entity_dir = new File(dir, "entities");
+        mkdirs(entity_dir);
+        try (PrintWriter writer = writer(new File(entity_dir, "e.tsv"))) {
+            for (int num = 1; num <= totalConstants; num++) {
+                writer.print(constantName(num));
+                writer.print("\tx\n");
+            }
+        }
+        long id = 0;
+        for (int rel = 0; rel < totalRelations; rel++) {
+            File fact_dir = new File(new File(dir, "facts"), relationName(rel));
+            mkdirs(fact_dir);
+            try (PrintWriter writer = writer(new File(fact_dir, "0.tsv"))) {
+                for (int[] record: relations[rel]) {
+                    String obj = (0 == id % 8) ? "\"literal" + record[1] + '"' : constantName(record[1]);
+                    writer.printf("%d\t%s\t%s\t0.9\n", id, constantName(record[0]), obj);
+                    id++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the KB in the old numerated format: "map1.tsv" with lines "<name>\t<hex numeration>", and
+     * "<relation>_<arity>_<records>.rel" with little-endian integers.
+     */
+    public void writeOldFormat(File kbDir) throws IOException {
+        mkdirs(kbDir);
+        try (PrintWriter writer = writer(new File(kbDir, "map1.tsv"))) {
+            for (int num = 1; num <= totalConstants; num++) {
+                writer.printf("%s\t%x\n", constantName(num), num);
+            }
+        }
+        for (int rel = 0; rel < totalRelations; rel++) {
+            File file = new File(kbDir, String.format("%s_2_%d.rel", relationName(rel), recordsPerRelation));
+            try (IntFileWriter writer = new IntFileWriter(file)) {
+                for (int[] record: relations[rel]) {
+                    writer.writeInts(record);
+                }
+            }
+        }
+    }
+
+    protected static PrintWriter writer(File file) throws IOException {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8
+        )));
+    }
+
+    protected static void mkdirs(File dir) throws IOException {
+        if (!dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Failed to create directory: " + dir.getAbsolutePath());
+        }
+    }
+
+    public static void deleteRecursively(File dir) throws IOException {
+        if (!dir.exists()) {
+            return;
+        }
+        try (Stream<File> files = Files.walk(dir.toPath()).sorted(Comparator.reverseOrder()).map(Path::toFile)) {
+            files.forEach(File::delete);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package benchmark;
+
+import converter.Converter;
+import converter.ConverterException;
+import converter.Triple;
+import converter.TripleSegment;
+import converter.impl.Yago1Iterator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse the fact files of a synthetic YAGO1 KB and filter the triples: tokenizing lines, looking up entities and
+ * skipping non-factual predicates. An operation parses the whole KB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Yago1ParsingBenchmark {
+    @Param({"200000"})
+    public int records;
+    @Param({"20"})
+    public int relations;
+    @Param({"50000"})
+    public int constants;
+
+    protected File dir;
+    protected List<TripleSegment> segments;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, ConverterException {
+        dir = Files.createTempDirectory("yago1").toFile();
+        new SyntheticKb(relations, records, constants, 0).writeYago1(dir);
+        Silence.start();
+        segments = new Yago1Iterator(dir.getPath()).getSegments();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Silence.stop();
+        SyntheticKb.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public long parse(Blackhole blackhole) throws ConverterException {
+        long triples = 0;
+        for (TripleSegment segment: segments) {
+            Iterator<Triple> iterator = segment.tripleIterator();
+            while (iterator.hasNext()) {
+                Triple triple = iterator.next();
+                if (!Converter.NON_FACTUAL_PREDICATES.contains(triple.pred)) {
+                    blackhole.consume(triple);
+                    triples++;
+                }
+            }
+        }
+        return triples;
+    }
+}
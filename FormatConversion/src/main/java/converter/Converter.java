@@ -1,16 +1,20 @@
 package converter;
 
-import sinc2.common.Record;
 import sinc2.kb.KbException;
-import sinc2.util.LittleEndianIntIO;
-import sinc2.util.kb.KbRelation;
 import sinc2.util.kb.NumeratedKb;
+import util.concurrent.IoTasks;
+import util.io.IntFileWriter;
+import util.io.IntInput;
+import util.kb.DictionaryKb;
+import util.kb.NumerationOrder;
+import util.kb.NumerationOrders;
+import util.metrics.Metrics;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.file.Paths;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The base class of all converters. It defines common procedures converting KBs to the numeration format.
@@ -32,18 +36,31 @@ public abstract class Converter {
     static protected final String[] TYPE_PREDICATES = new String[]{
             "rdf:type", "type"
     };
+    /** Reasons of filtered triples in the metrics */
+    static protected final String FILTER_NON_FACTUAL = "non-factual predicate";
+    static protected final String FILTER_REJECTED = "rejected by KB";
+    static protected final String FILTER_DUPLICATE = "duplicate";
     /** The name of the binary file that contains type values */
     static protected final String TYPE_VALUES_FILE_NAME = "TypeValues.dat";
 
     protected final String outputKbName;
     protected final String outputPath;
-    protected NumeratedKb kb;
-    protected KbRelation typeRelation;
+    protected final ConverterOptions options;
+    protected DictionaryKb kb;
+    protected DictionaryKb.Relation typeRelation;
+    protected final Metrics metrics = new Metrics(getClass().getSimpleName());
+    /** The number of triples passed to the sink by `loadTriples()` */
+    protected long loadedTriples = 0;
 
     public Converter(String outputKbName, String outputPath) {
+        this(outputKbName, outputPath, new ConverterOptions());
+    }
+
+    public Converter(String outputKbName, String outputPath, ConverterOptions options) {
         this.outputKbName = outputKbName;
         this.outputPath = outputPath;
-        kb = new NumeratedKb(outputKbName);
+        this.options = options;
+        kb = new DictionaryKb(outputKbName);
     }
 
     /**
@@ -51,26 +68,32 @@ public abstract class Converter {
      * @throws ConverterException Conversion failed
      */
     public void convert() throws ConverterException {
+        if (0 < options.memoryBudget) {
+            if (NumerationOrders.FIRST_OCCURRENCE != options.numerationOrder) {
+                throw new ConverterException(
+                        "Only the first-occurrence numeration order is supported in the external-memory mode"
+                );
+            }
+            new ExternalConversion(this).convert();
+            return;
+        }
+
         /* Load triples one by one */
         System.out.println("Loading triples ... ");
         long time_start = System.currentTimeMillis();
-        Iterator<Triple> iterator = tripleIterator();
-        int failed_triples = 0;
-        while (iterator.hasNext()) {
-            Triple triple = iterator.next();
-            if (skipPredicate(triple.pred)) {
-                continue;
-            }
-            try {
-                kb.addRecord(triple.pred, new String[]{triple.subj, triple.obj});
-            } catch (KbException e) {
-                e.printStackTrace();
-                failed_triples++;
+        try (Metrics.Phase phase = metrics.phase("load")) {
+            int failed_triples = loadTriples(this::addTriple);
+            if (0 < failed_triples) {
+                System.err.printf("%d triples failed to be loaded to numerated KB\n", failed_triples);
             }
+            phase.addItems(loadedTriples).addBytesRead(inputBytes());
         }
-        if (0 < failed_triples) {
-            System.err.printf("%d triples failed to be loaded to numerated KB\n", failed_triples);
+        long total_duplicates = 0;
+        for (DictionaryKb.Relation relation: kb.getRelations()) {
+            metrics.addFiltered(relation.getName(), FILTER_DUPLICATE, relation.totalDuplicates());
+            total_duplicates += relation.totalDuplicates();
         }
+        System.out.printf("%d duplicated triples removed\n", total_duplicates);
         typeRelation = getTypeRelation();
         long time_loaded = System.currentTimeMillis();
         System.out.printf("Done (%d s)\n", (time_loaded - time_start) / 1000);
@@ -78,72 +101,184 @@ public abstract class Converter {
         /* Re-arrange the order of numerations to make them more concentrate in each relation */
         /* Note: type relation will be handled at the last and will be treated as a single binary relation */
         System.out.println("Rearranging mappings ... ");
-        int[] old_2_new = new int[kb.totalMappings()+1];    // Old integer numerations to new
-        int next_num = 1;
-        List<KbRelation> relations = new ArrayList<>(kb.getRelations());
-        relations.sort(Comparator.comparingInt(KbRelation::getId));
-        for (KbRelation relation: relations) {  // Re-arrange relations by order
-            if (relation == typeRelation) { // Skip the type relation. It will be handled last
-                continue;
-            }
-            for (Record record: relation) {
-                for (int arg_idx = 0; arg_idx < record.args.length; arg_idx++) {
-                    int old_arg = record.args[arg_idx];
-                    if (0 == old_2_new[old_arg]) {
-                        old_2_new[old_arg] = next_num;
-                        record.args[arg_idx] = next_num;
-                        next_num++;
-                    } else {
-                        record.args[arg_idx] = old_2_new[old_arg];
-                    }
+        try (Metrics.Phase phase = metrics.phase("rearrange")) {
+            List<DictionaryKb.Relation> relation_order = new ArrayList<>();
+            for (DictionaryKb.Relation relation: kb.getRelations()) {  // Re-arrange relations by order
+                if (relation != typeRelation) { // Skip the type relation. It will be handled last
+                    relation_order.add(relation);
                 }
             }
-        }
-        if (null != typeRelation) {
-            for (Record record : typeRelation) {
-                for (int arg_idx = 0; arg_idx < record.args.length; arg_idx++) {
-                    int old_arg = record.args[arg_idx];
-                    if (0 == old_2_new[old_arg]) {
-                        old_2_new[old_arg] = next_num;
-                        record.args[arg_idx] = next_num;
+            if (null != typeRelation) {
+                relation_order.add(typeRelation);
+            }
+            int[] old_2_new;    // Old integer numerations to new
+            ForkJoinPool pool = (1 < options.threads) ?
+                    new ForkJoinPool(options.threads, Metrics.forkJoinThreadFactory(), null, false) : null;
+            try {
+                if (null != pool && NumerationOrders.FIRST_OCCURRENCE == options.numerationOrder) {
+                    old_2_new = NumerationOrders.firstOccurrence(pool, relation_order, kb.totalMappings());
+                } else {
+                    old_2_new = options.numerationOrder.assign(new NumerationOrder.RelationSource() {
+                        @Override
+                        public int totalRelations() {
+                            return relation_order.size();
+                        }
+
+                        @Override
+                        public int arity(int idx) {
+                            return relation_order.get(idx).getArity();
+                        }
+
+                        @Override
+                        public IntInput open(int idx) {
+                            return relation_order.get(idx).open();
+                        }
+                    }, kb.totalMappings());
+                }
+                int next_num = 1;
+                for (int old_num = 1; old_num < old_2_new.length; old_num++) {
+                    if (0 != old_2_new[old_num]) {
                         next_num++;
-                    } else {
-                        record.args[arg_idx] = old_2_new[old_arg];
                     }
                 }
+                if (next_num < old_2_new.length) {
+                    throw new ConverterException(String.format(
+                            "Numeration rearrange error: %d numerations expected, but %d rearranged",
+                            old_2_new.length - 1, next_num - 1
+                    ));
+                }
+                for (DictionaryKb.Relation relation: relation_order) {
+                    relation.renumber(old_2_new, pool);
+                }
+            } catch (IOException e) {
+                throw new ConverterException(e);
+            } finally {
+                if (null != pool) {
+                    pool.shutdown();
+                }
             }
+            kb.rearrangeMapping(old_2_new);
+            phase.addItems(kb.totalMappings());
         }
-        if (next_num < old_2_new.length) {
-            throw new ConverterException(String.format(
-                    "Numeration rearrange error: %d numerations expected, but %d rearranged", old_2_new.length - 1, next_num - 1
-            ));
-        }
-        kb.rearrangeMapping(old_2_new);
         long time_rearranged = System.currentTimeMillis();
         System.out.printf("Done (%d s)\n", (time_rearranged - time_loaded) / 1000);
 
         /* Dump the KB */
         /* Type values will be dumped to a single file "TypeValues.dat" */
         System.out.println("Dumping ... ");
+        File kb_dir = NumeratedKb.getKbPath(outputKbName, outputPath).toFile();
+        long total_records = 0;
+        try (Metrics.Phase phase = metrics.phase("dump")) {
+            List<IoTasks.IoTask> tasks = kb.dumpTasks(outputPath, options.packRelations, options.sortRelations);
+            if (null != typeRelation) {
+                tasks.add(this::dumpTypeValues);
+            }
+            IoTasks.runAll(options.dumpThreads, tasks);
+            for (DictionaryKb.Relation relation: kb.getRelations()) {
+                total_records += relation.totalRecords();
+            }
+            phase.addItems(total_records).addBytesWritten(Metrics.sizeOf(kb_dir));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        long time_dumped = System.currentTimeMillis();
+        System.out.printf("Done (%d s)\n", (time_dumped - time_rearranged) / 1000);
+        System.out.printf("Totoal Time: %d s\n", (time_dumped - time_start) / 1000);
+        finishMetrics(kb_dir, kb.getRelations().size(), total_records, kb.totalMappings());
+    }
+
+    /**
+     * Write the metrics of the conversion to the output KB (see `Metrics`).
+     */
+    protected void finishMetrics(File kbDir, int relations, long records, int constants) {
+        metrics.setCounter("triples", loadedTriples);
+        metrics.setCounter("filteredTriples", metrics.totalFiltered());
+        metrics.setCounter("relations", relations);
+        metrics.setCounter("records", records);
+        metrics.setCounter("constants", constants);
         try {
-            kb.dump(outputPath);
+            metrics.finish(kbDir);
         } catch (IOException e) {
+            System.err.println("Failed to write metrics: " + kbDir.getAbsolutePath());
             e.printStackTrace();
         }
-        if (null != typeRelation) {
-            File file = Paths.get(NumeratedKb.getKbPath(outputKbName, outputPath).toString(), TYPE_VALUES_FILE_NAME).toFile();
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                for (Record record : typeRelation) {
-                    fos.write(LittleEndianIntIO.leInt2ByteArray(record.args[1]));
+    }
+
+    /**
+     * The number of bytes of the original KB, reported in the metrics. 0 if unknown.
+     */
+    protected long inputBytes() {
+        return 0;
+    }
+
+    /**
+     * Write the objects of the type relation to "TypeValues.dat", in the order of records.
+     */
+    protected void dumpTypeValues() {
+        File file = NumeratedKb.getKbPath(outputKbName, outputPath).resolve(TYPE_VALUES_FILE_NAME).toFile();
+        try (IntFileWriter writer = new IntFileWriter(file)) {
+            typeRelation.column(1).writeTo(writer);
+        } catch (IOException e) {
+            System.err.println("Type value file creation failed: " + file.getAbsolutePath());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Load triples of the original KB to a sink, excluding the skipped predicates. Triples are loaded one by one in the
+     * calling thread, or by a pipeline if multiple threads are assigned.
+     * @return The number of triples failed to be loaded
+     */
+    protected int loadTriples(TripleSink sink) throws ConverterException {
+        /* Triples are passed to the sink in the calling thread in both ways */
+        TripleSink counting_sink = triple -> {
+            loadedTriples++;
+            if (sink.add(triple)) {
+                return true;
+            }
+            metrics.addFiltered(triple.pred, FILTER_REJECTED, 1);
+            return false;
+        };
+        if (1 < options.threads) {
+            return new PipelinedTripleLoader(this, counting_sink, tripleSegments(), options).load();
+        }
+        Iterator<Triple> iterator = tripleIterator();
+        int failed_triples = 0;
+        try {
+            while (iterator.hasNext()) {
+                Triple triple = iterator.next();
+                if (skipPredicate(triple.pred)) {
+                    metrics.addFiltered(triple.pred, FILTER_NON_FACTUAL, 1);
+                    continue;
+                }
+                if (!counting_sink.add(triple)) {
+                    failed_triples++;
                 }
-            } catch (IOException e) {
-                System.err.println("Type value file creation failed: " + file.getAbsolutePath());
-                e.printStackTrace();
             }
+        } catch (UncheckedIOException e) {
+            throw new ConverterException(e.getMessage(), e.getCause());
+        }
+        return failed_triples;
+    }
+
+    /**
+     * Add a triple to the numerated KB. Duplicated triples are dropped and counted by the relation, which is not a
+     * failure.
+     * @return Whether the triple is successfully added
+     * @throws ConverterException A relation is too large to be converted in memory
+     */
+    protected boolean addTriple(Triple triple) throws ConverterException {
+        try {
+            kb.addRecord(triple.pred, triple.subj, triple.obj);
+            return true;
+        } catch (DictionaryKb.TooManyRecordsException e) {
+            throw new ConverterException(
+                    e.getMessage() + ". Convert the KB in external memory with --memory-budget=<n>", e
+            );
+        } catch (KbException e) {
+            e.printStackTrace();
+            return false;
         }
-        long time_dumped = System.currentTimeMillis();
-        System.out.printf("Done (%d s)\n", (time_dumped - time_rearranged) / 1000);
-        System.out.printf("Totoal Time: %d s\n", (time_dumped - time_start) / 1000);
     }
 
     /**
@@ -151,6 +286,16 @@ public abstract class Converter {
      */
     abstract protected Iterator<Triple> tripleIterator() throws ConverterException;
 
+    /**
+     * Split the original KB into segments that can be parsed concurrently. The concatenation of the segments, in order,
+     * should be the same as the sequence returned by `tripleIterator()`.
+     *
+     * By default, the whole KB is a single segment, so only parsing and numeration are done in parallel.
+     */
+    protected List<TripleSegment> tripleSegments() throws ConverterException {
+        return List.of(this::tripleIterator);
+    }
+
     /**
      * Check if the predicate should be skipped.
      */
@@ -163,9 +308,9 @@ public abstract class Converter {
      * in "TYPE_PREDICATES".
      * @return If not found, NULL is returned.
      */
-    protected KbRelation getTypeRelation() {
+    protected DictionaryKb.Relation getTypeRelation() {
         for (String type_predicate: TYPE_PREDICATES) {
-            KbRelation type_relation = kb.getRelation(type_predicate);
+            DictionaryKb.Relation type_relation = kb.getRelation(type_predicate);
             if (null != type_relation) {
                 return type_relation;
             }
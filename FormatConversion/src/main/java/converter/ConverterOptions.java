@@ -0,0 +1,146 @@
+package converter;
+
+import util.kb.KbFiles;
+import util.kb.NumerationOrder;
+import util.kb.NumerationOrders;
+
+/**
+ * Options tuning how a converter loads, numerates and dumps a KB. The default values reproduce the sequential
+ * conversion.
+ */
+public class ConverterOptions {
+    /** The value disabling a cache */
+    public static final String NO_CACHE = "none";
+
+    /**
+     * Number of parser threads, also rearranging numerations in the in-memory mode. If 1, triples are loaded and
+     * rearranged sequentially in the calling thread
+     */
+    public int threads = 1;
+    /** Number of triples passed between pipeline stages at a time */
+    public int batchSize = 4096;
+    /** Max number of batches buffered for each segment before the parser thread blocks */
+    public int queueCapacity = 16;
+    /**
+     * The path of the entity index cache. If NULL, the cache is located by the converter in `tmpDir`. If "none", no
+     * cache is used
+     */
+    public String entityCache = null;
+    /**
+     * The max number of bytes of records buffered in memory. If positive, the KB is converted in the external-memory
+     * mode, i.e., records are sorted and merged in run files on disk instead of held in memory
+     */
+    public long memoryBudget = 0;
+    /** The directory of temporary files */
+    public String tmpDir = System.getProperty("java.io.tmpdir");
+    /** Number of threads writing relation, map and type value files concurrently. If 1, files are written one by
+     * one */
+    public int dumpThreads = 1;
+    /**
+     * Whether relations are written in the block-packed format (".prel") instead of raw integers (".rel"). Off by
+     * default, as SInC only reads raw relations, and raw files are faster to read from the page cache
+     */
+    public boolean packRelations = false;
+    /** Whether records of relations are sorted and deduplicated, with an index for each column but the first (see
+     * `SortedRelationWriter`), instead of kept in the order of insertion */
+    public boolean sortRelations = false;
+    /** The strategy assigning new numerations to constants in the rearrangement step (see `NumerationOrders`) */
+    public NumerationOrder numerationOrder = NumerationOrders.FIRST_OCCURRENCE;
+
+    /**
+     * Parse options in the form of "--<name>=<value>" from the command line arguments.
+     * @param args The command line arguments
+     * @param start The index of the first option in the arguments
+     * @throws ConverterException Unknown, malformed or out-of-range options
+     */
+    public static ConverterOptions parse(String[] args, int start) throws ConverterException {
+        ConverterOptions options = new ConverterOptions();
+        for (int i = start; i < args.length; i++) {
+            String arg = args[i];
+            int eq_idx = arg.indexOf('=');
+            if (!arg.startsWith("--") || 0 > eq_idx) {
+                throw new ConverterException("Malformed option: " + arg);
+            }
+            String name = arg.substring(2, eq_idx);
+            String value = arg.substring(eq_idx + 1);
+            try {
+                switch (name) {
+                    case "threads":
+                        options.threads = Integer.parseInt(value);
+                        break;
+                    case "batch-size":
+                        options.batchSize = Integer.parseInt(value);
+                        break;
+                    case "queue-capacity":
+                        options.queueCapacity = Integer.parseInt(value);
+                        break;
+                    case "entity-cache":
+                        options.entityCache = value;
+                        break;
+                    case "memory-budget":
+                        options.memoryBudget = parseSize(value);
+                        break;
+                    case "tmp-dir":
+                        options.tmpDir = value;
+                        break;
+                    case "dump-threads":
+                        options.dumpThreads = Integer.parseInt(value);
+                        break;
+                    case "rel-format":
+                        options.packRelations = KbFiles.parseRelationFormat(value);
+                        break;
+                    case "rel-order":
+                        options.sortRelations = KbFiles.parseRelationOrder(value);
+                        break;
+                    case "numeration-order":
+                        options.numerationOrder = NumerationOrders.parse(value);
+                        break;
+                    default:
+                        throw new ConverterException("Unknown option: " + arg);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new ConverterException("Malformed option: " + arg, e);
+            }
+        }
+        if (0 >= options.batchSize || 0 >= options.queueCapacity) {
+            throw new ConverterException("Batch size and queue capacity should be positive");
+        }
+        if (0 >= options.threads || 0 >= options.dumpThreads) {
+            throw new ConverterException("Numbers of threads should be positive");
+        }
+        if (0 > options.memoryBudget) {
+            throw new ConverterException("Memory budget should not be negative: " + options.memoryBudget);
+        }
+        return options;
+    }
+
+    /**
+     * Parse a number of bytes, optionally suffixed by "k", "m" or "g" (case-insensitive).
+     * @throws NumberFormatException The value is empty, malformed or too large
+     */
+    public static long parseSize(String value) {
+        if (value.isEmpty()) {
+            throw new NumberFormatException("Empty size");
+        }
+        long unit = 1;
+        switch (Character.toLowerCase(value.charAt(value.length() - 1))) {
+            case 'k':
+                unit = 1L << 10;
+                break;
+            case 'm':
+                unit = 1L << 20;
+                break;
+            case 'g':
+                unit = 1L << 30;
+                break;
+        }
+        if (1 == unit) {
+            return Long.parseLong(value);
+        }
+        try {
+            return Math.multiplyExact(Long.parseLong(value.substring(0, value.length() - 1)), unit);
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Size too large: " + value);
+        }
+    }
+}
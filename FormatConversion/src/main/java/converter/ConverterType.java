@@ -4,7 +4,9 @@ package converter;
  * Types of converters
  */
 public enum ConverterType {
-    YAGO1("YAGO1");
+    YAGO1("YAGO1"),
+    NTRIPLES("NTRIPLES"),
+    TSV("TSV");
     public final String name;
 
     ConverterType(String name) {
@@ -0,0 +1,399 @@
+package converter;
+
+import sinc2.util.kb.NumeratedKb;
+import util.io.ExternalSorter;
+import util.io.IntFileWriter;
+import util.io.IntOutput;
+import util.kb.KbFiles;
+import util.kb.MapWriter;
+import util.metrics.Metrics;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static util.io.Bytes.*;
+
+/**
+ * Convert a KB within a bounded memory budget (the external-memory mode). Instead of holding records and mappings in
+ * memory, triples are encoded as binary records and passed through a sequence of external sorts:
+ *   1. Triples (relation, sequence, subject, object) are sorted by relation, names and sequence, and duplicated records
+ *      are removed, keeping the first occurrence. Duplicates are removed in flight when runs are spilled, and then
+ *      across runs when they are merged;
+ *   2. The unique records are sorted by the order of rearrangement: relations by id, the type relation last, and
+ *      records in the order of loading. Each argument is then assigned a position in this order;
+ *   3. Arguments (name, position) are sorted by name. The first position of each name decides its numeration;
+ *   4. First positions are sorted, so numerations are assigned in order and names are written to the map files, and
+ *      the numeration of every argument is resolved by a merge join on the first positions;
+ *   5. Arguments are sorted back by position and written to the relation files and "TypeValues.dat".
+ *
+ * The output has the same layout as the in-memory conversion: Records are unique within relations, relations are
+ * numbered in the order of first occurrence, and constants are numbered in the order of first occurrence in the
+ * rearrangement order. If relations are sorted, the records of each relation are sorted again by an external sort when
+ * they are dumped.
+ */
+class ExternalConversion implements TripleSink {
+    protected final Converter converter;
+    protected final ConverterOptions options;
+    protected final Map<String, Integer> relationIds = new HashMap<>();
+    protected final List<String> relationNames = new ArrayList<>();
+    protected int typeRelId = -1;
+    protected long nextSeq = 0;
+    /** The number of duplicated triples removed from each relation */
+    protected long[] relationDuplicates = new long[0];
+    /** The number of unique records in each relation */
+    protected long[] relationRecords = new long[0];
+    protected ExternalSorter tripleSorter;
+
+    ExternalConversion(Converter converter) {
+        this.converter = converter;
+        this.options = converter.options;
+    }
+
+    void convert() throws ConverterException {
+        File tmp_dir;
+        try {
+            tmp_dir = Files.createTempDirectory(Paths.get(options.tmpDir), converter.outputKbName).toFile();
+        } catch (IOException e) {
+            throw new ConverterException("Failed to create temporary directory in: " + options.tmpDir, e);
+        }
+        try {
+            convert(tmp_dir);
+        } catch (IOException e) {
+            throw new ConverterException(e);
+        } finally {
+            if (!tmp_dir.delete()) {
+                System.err.println("Warning: Failed to remove temporary directory: " + tmp_dir.getAbsolutePath());
+            }
+        }
+    }
+
+    protected void convert(File tmpDir) throws IOException, ConverterException {
+        /* At any time, a sorter is merged while at most two others buffer records from it. The one merged and those
+         * buffering take half of the budget each */
+        final long share = options.memoryBudget / 2;
+        String kb_dir_path = NumeratedKb.getKbPath(converter.outputKbName, converter.outputPath).toString();
+        if (!new File(kb_dir_path).mkdirs() && !new File(kb_dir_path).isDirectory()) {
+            throw new IOException("Failed to create KB directory: " + kb_dir_path);
+        }
+
+        long time_start = System.currentTimeMillis();
+        long time_loaded = load(share, tmpDir);
+        int total_names;
+        try (ExternalSorter position_sorter = new ExternalSorter(ExternalConversion::compareLongKey, share, tmpDir)) {
+            try (Metrics.Phase phase = converter.metrics.phase("rearrange")) {
+                try (
+                        ExternalSorter first_sorter = new ExternalSorter(
+                                ExternalConversion::compareLongKey, share / 2, tmpDir
+                        );
+                        ExternalSorter occurrence_sorter = new ExternalSorter(
+                                ExternalConversion::compareLongKey, share / 2, tmpDir
+                        )
+                ) {
+                    try (ExternalSorter arg_sorter = new ExternalSorter(
+                            ExternalConversion::compareArgs, share, tmpDir
+                    )) {
+                        rearrange(arg_sorter, share, tmpDir);
+                        findFirstPositions(arg_sorter, first_sorter, occurrence_sorter);
+                    }
+                    total_names = numerate(first_sorter, occurrence_sorter, position_sorter, kb_dir_path);
+                }
+                phase.addItems(total_names);
+            }
+            try (Metrics.Phase phase = converter.metrics.phase("dump")) {
+                dump(position_sorter, kb_dir_path, share, tmpDir);
+                phase.addItems(Arrays.stream(relationRecords).sum())
+                        .addBytesWritten(Metrics.sizeOf(new File(kb_dir_path)));
+            }
+        }
+        long time_dumped = System.currentTimeMillis();
+        System.out.printf("Done (%d s)\n", (time_dumped - time_loaded) / 1000);
+        System.out.printf("Totoal Time: %d s\n", (time_dumped - time_start) / 1000);
+        converter.finishMetrics(
+                new File(kb_dir_path), relationNames.size(), Arrays.stream(relationRecords).sum(), total_names
+        );
+    }
+
+    /**
+     * Load triples to `tripleSorter`. The sorter is closed if loading fails, and by `rearrange()` otherwise.
+     * @return The time when all triples are loaded
+     */
+    protected long load(long share, File tmpDir) throws IOException, ConverterException {
+        System.out.println("Loading triples ... ");
+        long time_start = System.currentTimeMillis();
+        tripleSorter = new ExternalSorter(ExternalConversion::compareFacts, this::duplicateFact, share, tmpDir);
+        try (Metrics.Phase phase = converter.metrics.phase("load")) {
+            int failed_triples = converter.loadTriples(this);
+            if (0 < failed_triples) {
+                System.err.printf("%d triples failed to be loaded to numerated KB\n", failed_triples);
+            }
+            phase.addItems(converter.loadedTriples).addBytesRead(converter.inputBytes());
+        } catch (ConverterException | RuntimeException e) {
+            tripleSorter.close();
+            throw e;
+        }
+        for (String type_predicate : Converter.TYPE_PREDICATES) {
+            Integer rel_id = relationIds.get(type_predicate);
+            if (null != rel_id) {
+                typeRelId = rel_id;
+                break;
+            }
+        }
+        long time_loaded = System.currentTimeMillis();
+        System.out.printf(
+                "Done (%d s, %d triples, %d runs)\n", (time_loaded - time_start) / 1000, tripleSorter.totalRecords(),
+                tripleSorter.totalRuns()
+        );
+        return time_loaded;
+    }
+
+    /**
+     * Remove duplications of the loaded triples, and pass the arguments to `argSorter` with positions in the
+     * rearrangement order.
+     */
+    protected void rearrange(ExternalSorter argSorter, long share, File tmpDir) throws IOException {
+        try (ExternalSorter record_sorter = new ExternalSorter(this::compareRearrangement, share, tmpDir)) {
+            try (ExternalSorter triple_sorter = tripleSorter) {
+                /* Remove duplications and sort records in the rearrangement order */
+                System.out.println("Rearranging mappings ... ");
+                relationRecords = new long[relationNames.size()];
+                try (ExternalSorter.RecordReader reader = triple_sorter.sorted()) {
+                    byte[] record;
+                    while (null != (record = reader.next())) {
+                        relationRecords[getInt(record, 0)]++;
+                        record_sorter.add(record);
+                    }
+                }
+                for (int rel_id = 0; rel_id < relationNames.size(); rel_id++) {
+                    converter.metrics.addFiltered(
+                            relationNames.get(rel_id), Converter.FILTER_DUPLICATE, relationDuplicates[rel_id]
+                    );
+                }
+                System.out.printf("%d duplicated triples removed\n", triple_sorter.removedRecords());
+            }
+
+            /* Assign positions to arguments and sort them by names */
+            try (ExternalSorter.RecordReader reader = record_sorter.sorted()) {
+                long position = 0;
+                byte[] record;
+                while (null != (record = reader.next())) {
+                    int subj_len = getInt(record, 12);
+                    argSorter.add(argRecord(position, record, 16, subj_len));
+                    argSorter.add(argRecord(position + 1, record, 16 + subj_len, record.length - 16 - subj_len));
+                    position += 2;
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the first position of each name. Records of first positions are (first position, name), and records of
+     * occurrences are (first position, position).
+     */
+    protected static void findFirstPositions(
+            ExternalSorter argSorter, ExternalSorter firstSorter, ExternalSorter occurrenceSorter
+    ) throws IOException {
+        try (ExternalSorter.RecordReader reader = argSorter.sorted()) {
+            byte[] first = null;
+            byte[] record;
+            while (null != (record = reader.next())) {
+                if (null == first || !sameName(first, record)) {
+                    first = record;
+                    firstSorter.add(first);
+                }
+                byte[] occurrence = new byte[2 * Long.BYTES];
+                putLong(occurrence, 0, getLong(first, 0));
+                putLong(occurrence, Long.BYTES, getLong(record, 0));
+                occurrenceSorter.add(occurrence);
+            }
+        }
+    }
+
+    /**
+     * Numerate names in the order of first positions, write the map files, and resolve numerations of all positions:
+     * (position, num).
+     * @return The number of constants
+     */
+    protected int numerate(
+            ExternalSorter firstSorter, ExternalSorter occurrenceSorter, ExternalSorter positionSorter,
+            String kbDirPath
+    ) throws IOException {
+        int total_names = 0;
+        try (
+                ExternalSorter.RecordReader first_reader = firstSorter.sorted();
+                ExternalSorter.RecordReader occurrence_reader = occurrenceSorter.sorted();
+                MapWriter map_writer = new MapWriter(kbDirPath)
+        ) {
+            long first_position = -1;
+            byte[] occurrence;
+            while (null != (occurrence = occurrence_reader.next())) {
+                while (first_position != getLong(occurrence, 0)) {
+                    byte[] first = first_reader.next();
+                    first_position = getLong(first, 0);
+                    total_names++;
+                    map_writer.write(first, Long.BYTES, first.length - Long.BYTES);
+                }
+                byte[] position = new byte[Long.BYTES + Integer.BYTES];
+                putLong(position, 0, getLong(occurrence, Long.BYTES));
+                putInt(position, Long.BYTES, total_names);
+                positionSorter.add(position);
+            }
+        }
+        System.out.printf("%d constants numerated\n", total_names);
+        return total_names;
+    }
+
+    /**
+     * Dump relations in the rearrangement order.
+     * @param share The memory budget of sorting relations, if they are sorted
+     */
+    protected void dump(ExternalSorter positionSorter, String kbDirPath, long share, File tmpDir) throws IOException {
+        System.out.println("Dumping ... ");
+        List<Integer> rel_order = new ArrayList<>();
+        for (int rel_id = 0; rel_id < relationNames.size(); rel_id++) {
+            if (rel_id != typeRelId) {
+                rel_order.add(rel_id);
+            }
+        }
+        if (0 <= typeRelId) {
+            rel_order.add(typeRelId);
+        }
+        try (ExternalSorter.RecordReader reader = positionSorter.sorted()) {
+            for (int rel_id: rel_order) {
+                try (IntOutput rel_os = KbFiles.createRelation(
+                        kbDirPath, rel_id, 2, options.packRelations, options.sortRelations, share, tmpDir
+                )) {
+                    if (rel_id != typeRelId) {
+                        for (long i = 0; i < relationRecords[rel_id] * 2; i++) {
+                            rel_os.writeInt(getInt(reader.next(), Long.BYTES));
+                        }
+                        continue;
+                    }
+                    File type_values_file = Paths.get(kbDirPath, Converter.TYPE_VALUES_FILE_NAME).toFile();
+                    try (IntFileWriter type_os = new IntFileWriter(type_values_file)) {
+                        for (long i = 0; i < relationRecords[rel_id]; i++) {
+                            rel_os.writeInt(getInt(reader.next(), Long.BYTES));
+                            int type_value = getInt(reader.next(), Long.BYTES);
+                            rel_os.writeInt(type_value);
+                            type_os.writeInt(type_value);
+                        }
+                    }
+                }
+            }
+        }
+        int[] arities = new int[relationNames.size()];
+        Arrays.fill(arities, 2);
+        KbFiles.writeRelationInfo(
+                converter.outputKbName, converter.outputPath, relationNames.toArray(new String[0]), arities,
+                relationRecords
+        );
+    }
+
+    /**
+     * Encode a triple as: [relation id: int][sequence: long][subject length: int][subject][object]
+     */
+    @Override
+    public boolean add(Triple triple) throws ConverterException {
+        Integer rel_id = relationIds.get(triple.pred);
+        if (null == rel_id) {
+            rel_id = relationNames.size();
+            relationIds.put(triple.pred, rel_id);
+            relationNames.add(triple.pred);
+            relationDuplicates = Arrays.copyOf(relationDuplicates, relationNames.size());
+        }
+        byte[] subj = triple.subj.getBytes(StandardCharsets.UTF_8);
+        byte[] obj = triple.obj.getBytes(StandardCharsets.UTF_8);
+        byte[] record = new byte[16 + subj.length + obj.length];
+        putInt(record, 0, rel_id);
+        putLong(record, 4, nextSeq);
+        putInt(record, 12, subj.length);
+        System.arraycopy(subj, 0, record, 16, subj.length);
+        System.arraycopy(obj, 0, record, 16 + subj.length, obj.length);
+        nextSeq++;
+        try {
+            tripleSorter.add(record);
+        } catch (IOException e) {
+            throw new ConverterException("Failed to spill triples", e);
+        }
+        return true;
+    }
+
+    /**
+     * Encode an argument as: [position: long][name]
+     */
+    protected static byte[] argRecord(long position, byte[] bytes, int offset, int length) {
+        byte[] record = new byte[Long.BYTES + length];
+        putLong(record, 0, position);
+        System.arraycopy(bytes, offset, record, Long.BYTES, length);
+        return record;
+    }
+
+    /**
+     * Order triples by relation, subject, object and then sequence.
+     */
+    protected static int compareFacts(byte[] r1, byte[] r2) {
+        int c = Integer.compare(getInt(r1, 0), getInt(r2, 0));
+        if (0 != c) {
+            return c;
+        }
+        int subj_len1 = getInt(r1, 12);
+        int subj_len2 = getInt(r2, 12);
+        c = Arrays.compareUnsigned(r1, 16, 16 + subj_len1, r2, 16, 16 + subj_len2);
+        if (0 != c) {
+            return c;
+        }
+        c = Arrays.compareUnsigned(r1, 16 + subj_len1, r1.length, r2, 16 + subj_len2, r2.length);
+        if (0 != c) {
+            return c;
+        }
+        return Long.compare(getLong(r1, 4), getLong(r2, 4));
+    }
+
+    protected static boolean sameFact(byte[] r1, byte[] r2) {
+        return getInt(r1, 0) == getInt(r2, 0) && Arrays.equals(r1, 12, r1.length, r2, 12, r2.length);
+    }
+
+    /**
+     * Whether a triple duplicates the last kept one in the order of facts. Duplicates are counted by relations.
+     */
+    protected boolean duplicateFact(byte[] kept, byte[] record) {
+        if (sameFact(kept, record)) {
+            relationDuplicates[getInt(record, 0)]++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Order triples by relation id (the type relation last) and then sequence.
+     */
+    protected int compareRearrangement(byte[] r1, byte[] r2) {
+        int rel1 = getInt(r1, 0);
+        int rel2 = getInt(r2, 0);
+        int c = Integer.compare(
+                (rel1 == typeRelId) ? Integer.MAX_VALUE : rel1, (rel2 == typeRelId) ? Integer.MAX_VALUE : rel2
+        );
+        return (0 != c) ? c : Long.compare(getLong(r1, 4), getLong(r2, 4));
+    }
+
+    /**
+     * Order arguments by name and then position.
+     */
+    protected static int compareArgs(byte[] r1, byte[] r2) {
+        int c = Arrays.compareUnsigned(r1, Long.BYTES, r1.length, r2, Long.BYTES, r2.length);
+        return (0 != c) ? c : Long.compare(getLong(r1, 0), getLong(r2, 0));
+    }
+
+    protected static boolean sameName(byte[] r1, byte[] r2) {
+        return Arrays.equals(r1, Long.BYTES, r1.length, r2, Long.BYTES, r2.length);
+    }
+
+    /**
+     * Order records by the leading long value.
+     */
+    protected static int compareLongKey(byte[] r1, byte[] r2) {
+        return Long.compare(getLong(r1, 0), getLong(r2, 0));
+    }
+}
@@ -1,11 +1,32 @@
 package converter;
 
+import converter.impl.TripleDumpConverter;
+import converter.impl.TripleDumpSegment;
 import converter.impl.Yago1Converter;
 
 public class Main {
     public static void main(String[] args) throws ConverterException {
-        if (4 != args.length) {
-            System.out.println("Usage: <Converter Name> <Input Path> <Output Path> <Output KB Name>");
+        if (4 > args.length) {
+            System.out.println("Usage: <Converter Name> <Input Path> <Output Path> <Output KB Name> [Options...]");
+            System.out.println("Converters: YAGO1, NTRIPLES, TSV");
+            System.out.println("  NTRIPLES and TSV read a dump file or a directory of dump files, plain or compressed");
+            System.out.println("  by gzip (.gz) or bzip2 (.bz2)");
+            System.out.println("Options:");
+            System.out.println("  --threads=<n>         Number of parser threads (default 1: sequential)");
+            System.out.println("  --batch-size=<n>      Number of triples in a batch between pipeline stages");
+            System.out.println("  --queue-capacity=<n>  Max number of batches buffered for each segment");
+            System.out.println("  --entity-cache=<path> Entity index cache file, or 'none' (default: in tmp dir)");
+            System.out.println("  --memory-budget=<n>   Convert in external memory with an n-byte buffer (e.g., 512m)");
+            System.out.println("  --tmp-dir=<path>      Directory of temporary files (default: java.io.tmpdir)");
+            System.out.println("  --dump-threads=<n>    Number of threads writing the output files (default 1)");
+            System.out.println("  --rel-format=<fmt>    Format of relation files: 'raw' (default) or 'packed'.");
+            System.out.println("                        Packed files are smaller but not read by SInC, and slower to");
+            System.out.println("                        read when cached");
+            System.out.println("  --rel-order=<order>   Order of records: 'insertion' (default) or 'sorted', with");
+            System.out.println("                        column indexes");
+            System.out.println("  --numeration-order=<s> Order of new numerations: 'first-occurrence' (default),");
+            System.out.println("                        'degree', 'relation', 'bfs' or 'rcm'. Only the default in the");
+            System.out.println("                        external-memory mode");
             return;
         }
 
@@ -13,11 +34,22 @@ public class Main {
         final String intput_path = args[1];
         final String output_path = args[2];
         final String output_kb_name = args[3];
+        final ConverterOptions options = ConverterOptions.parse(args, 4);
 
         Converter converter;
         switch (converter_name) {
             case "YAGO1":
-                converter = new Yago1Converter(intput_path, output_kb_name, output_path);
+                converter = new Yago1Converter(intput_path, output_kb_name, output_path, options);
+                break;
+            case "NTRIPLES":
+                converter = new TripleDumpConverter(
+                        intput_path, TripleDumpSegment.Syntax.NTRIPLES, output_kb_name, output_path, options
+                );
+                break;
+            case "TSV":
+                converter = new TripleDumpConverter(
+                        intput_path, TripleDumpSegment.Syntax.TSV, output_kb_name, output_path, options
+                );
                 break;
             default:
                 throw new ConverterException("Unknown converter: " + converter_name);
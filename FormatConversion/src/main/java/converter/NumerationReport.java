@@ -0,0 +1,194 @@
+package converter;
+
+import sinc2.util.kb.NumeratedKb;
+import util.io.IntInput;
+import util.io.IntOutput;
+import util.io.PackedRelationWriter;
+import util.kb.KbFiles;
+import util.kb.NumerationOrder;
+import util.kb.NumerationOrders;
+import util.kb.SortedRelationWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compare the numeration orders (see `NumerationOrders`) on a numerated KB. The KB is renumbered by each order,
+ * treating the current numerations as the original ones, and the following statistics of each relation are reported:
+ *   - Mean gap: The mean difference between adjacent distinct numerations in each column;
+ *   - Gap bits: The mean number of bits of the differences above;
+ *   - Packed bytes: The size of the relation sorted and written in the block-packed format.
+ * Smaller gaps mean better locality of joins and better compression of relation files.
+ *
+ * Usage: NumerationReport <KB path> <KB name> [<order>...]
+ */
+public class NumerationReport {
+    /**
+     * The statistics of a relation, or of a whole KB.
+     */
+    static class Statistics {
+        long gaps = 0;
+        double gapSum = 0;
+        long gapBits = 0;
+        long packedBytes = 0;
+
+        void add(Statistics other) {
+            gaps += other.gaps;
+            gapSum += other.gapSum;
+            gapBits += other.gapBits;
+            packedBytes += other.packedBytes;
+        }
+
+        double meanGap() {
+            return (0 == gaps) ? 0 : gapSum / gaps;
+        }
+
+        double meanGapBits() {
+            return (0 == gaps) ? 0 : (double) gapBits / gaps;
+        }
+    }
+
+    protected final String kbDirPath;
+    protected final List<KbFiles.RelationInfo> relations;
+    /** Relation ids in the order of scanning, the type relation last */
+    protected final int[] relationOrder;
+    protected final int totalConstants;
+
+    public NumerationReport(String kbPath, String kbName) throws IOException {
+        this.kbDirPath = NumeratedKb.getKbPath(kbName, kbPath).toString();
+        this.relations = KbFiles.readRelationInfo(kbName, kbPath);
+        this.totalConstants = KbFiles.countConstants(kbDirPath);
+        int type_rel_id = -1;
+        for (String type_predicate: Converter.TYPE_PREDICATES) {
+            for (int rel_id = 0; rel_id < relations.size() && 0 > type_rel_id; rel_id++) {
+                if (relations.get(rel_id).name.equals(type_predicate)) {
+                    type_rel_id = rel_id;
+                }
+            }
+        }
+        relationOrder = new int[relations.size()];
+        int idx = 0;
+        for (int rel_id = 0; rel_id < relations.size(); rel_id++) {
+            if (rel_id != type_rel_id) {
+                relationOrder[idx++] = rel_id;
+            }
+        }
+        if (0 <= type_rel_id) {
+            relationOrder[idx] = type_rel_id;
+        }
+    }
+
+    /**
+     * Renumber the KB by an order and print the statistics of each relation.
+     * @return The statistics of the whole KB
+     */
+    public Statistics report(NumerationOrder order) throws IOException {
+        int[] old2new = order.assign(new NumerationOrder.RelationSource() {
+            @Override
+            public int totalRelations() {
+                return relationOrder.length;
+            }
+
+            @Override
+            public int arity(int idx) {
+                return relations.get(relationOrder[idx]).arity;
+            }
+
+            @Override
+            public IntInput open(int idx) throws IOException {
+                return KbFiles.openRelation(kbDirPath, relationOrder[idx], arity(idx));
+            }
+        }, totalConstants);
+        Statistics total = new Statistics();
+        for (int rel_id = 0; rel_id < relations.size(); rel_id++) {
+            KbFiles.RelationInfo info = relations.get(rel_id);
+            if (0 >= info.arity) {
+                continue;
+            }
+            int[][] rows = KbFiles.readRows(kbDirPath, rel_id, info.arity, info.totalRecords);
+            int[] renumbered = new int[rows.length * info.arity];
+            for (int row_idx = 0; row_idx < rows.length; row_idx++) {
+                for (int col = 0; col < info.arity; col++) {
+                    renumbered[row_idx * info.arity + col] = old2new[rows[row_idx][col]];
+                }
+            }
+            Statistics statistics = statistics(renumbered, info.arity);
+            System.out.printf(
+                    "%s\t%s\t%d\t%.2f\t%.2f\t%d\n", order.name(), info.name, info.totalRecords, statistics.meanGap(),
+                    statistics.meanGapBits(), statistics.packedBytes
+            );
+            total.add(statistics);
+        }
+        return total;
+    }
+
+    protected static Statistics statistics(int[] rows, int arity) throws IOException {
+        Statistics statistics = new Statistics();
+        int total_rows = rows.length / arity;
+        int[] column = new int[total_rows];
+        for (int col = 0; col < arity; col++) {
+            for (int row_idx = 0; row_idx < total_rows; row_idx++) {
+                column[row_idx] = rows[row_idx * arity + col];
+            }
+            Arrays.sort(column);
+            for (int i = 1; i < total_rows; i++) {
+                long gap = (long) column[i] - column[i - 1];
+                if (0 < gap) {
+                    statistics.gaps++;
+                    statistics.gapSum += gap;
+                    statistics.gapBits += PackedRelationWriter.bitsOf(gap);
+                }
+            }
+        }
+        int[] sorted = SortedRelationWriter.sortUnique(rows, rows.length, arity);
+        File packed_file = File.createTempFile("report", KbFiles.PACKED_REL_FILE_SUFFIX);
+        try {
+            try (IntOutput output = new PackedRelationWriter(packed_file, arity)) {
+                output.writeInts(sorted);
+            }
+            statistics.packedBytes = packed_file.length();
+        } finally {
+            if (!packed_file.delete()) {
+                System.err.println("Warning: Failed to remove temporary file: " + packed_file.getAbsolutePath());
+            }
+        }
+        return statistics;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (2 > args.length) {
+            System.err.println("Usage: <KB path> <KB name> [<order>...]");
+            System.err.println("Orders: first-occurrence, degree, relation, bfs, rcm (default: all)");
+            return;
+        }
+        List<NumerationOrder> orders = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            orders.add(NumerationOrders.parse(args[i]));
+        }
+        if (orders.isEmpty()) {
+            orders.addAll(Arrays.asList(NumerationOrders.ALL));
+        }
+
+        NumerationReport report = new NumerationReport(args[0], args[1]);
+        List<Statistics> totals = new ArrayList<>();
+        List<Long> times = new ArrayList<>();
+        System.out.println("order\trelation\trecords\tmean gap\tgap bits\tpacked bytes");
+        for (NumerationOrder order: orders) {
+            long time_start = System.currentTimeMillis();
+            totals.add(report.report(order));
+            times.add(System.currentTimeMillis() - time_start);
+        }
+        System.out.println();
+        System.out.println("order\tmean gap\tgap bits\tpacked bytes\ttime (ms)");
+        for (int i = 0; i < orders.size(); i++) {
+            Statistics total = totals.get(i);
+            System.out.printf(
+                    "%s\t%.2f\t%.2f\t%d\t%d\n", orders.get(i).name(), total.meanGap(), total.meanGapBits(),
+                    total.packedBytes, times.get(i)
+            );
+        }
+    }
+}
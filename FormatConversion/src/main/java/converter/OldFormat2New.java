@@ -1,14 +1,25 @@
 package converter;
 
-import sinc2.kb.SimpleKb;
-import sinc2.kb.SimpleRelation;
 import sinc2.util.kb.NumeratedKb;
-import sinc2.util.kb.NumerationMap;
+import util.collection.StringDictionary;
+import util.concurrent.IoTasks;
+import util.io.Bytes;
+import util.io.ExternalSorter;
+import util.io.IntInput;
+import util.io.IntOutput;
+import util.io.MappedIntFile;
+import util.io.TsvTokenizer;
+import util.kb.KbFiles;
+import util.kb.MapWriter;
+import util.kb.NumerationOrder;
+import util.kb.NumerationOrders;
+import util.kb.SortedRelationWriter;
+import util.metrics.Metrics;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
+import java.io.*;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -61,86 +72,382 @@ public class OldFormat2New {
     }
 
     public static void main(String[] args) throws ConverterException, IOException {
-        if (3 != args.length) {
-            System.err.println("Usage: <Path to old KB> <Old KB name> <Path to new KB>");
+        if (3 > args.length) {
+            System.err.println("Usage: <Path to old KB> <Old KB name> <Path to new KB> [Options...]");
+            System.err.println("Options:");
+            System.err.println("  --memory-budget=<bytes>  Migrate in the streaming mode, holding at most this many");
+            System.err.println("                           bytes of mappings in memory");
+            System.err.println("  --tmp-dir=<path>         The directory of temporary files in the streaming mode");
+            System.err.println("  --rel-format=<fmt>       Format of relation files: 'raw' (default) or 'packed'.");
+            System.err.println("                           Packed files are smaller but not read by SInC, and slower");
+            System.err.println("                           to read when cached");
+            System.err.println("  --rel-order=<order>      Order of records: 'insertion' (default) or 'sorted', with");
+            System.err.println("                           column indexes");
+            System.err.println("  --numeration-order=<s>   Order of new numerations: 'first-occurrence' (default),");
+            System.err.println("                           'degree', 'relation', 'bfs' or 'rcm'. 'bfs' and 'rcm' are");
+            System.err.println("                           not supported in the streaming mode");
             return;
         }
 
         final String old_path = args[0];
         final String old_kb_name = args[1];
         final String new_path = args[2];
-        convert(old_path, old_kb_name, new_path);
+        convert(old_path, old_kb_name, new_path, ConverterOptions.parse(args, 3));
     }
 
     static void convert(String oldPath, String oldKBName, String newPath) throws IOException, ConverterException {
-        /* Load original relations and mappings */
+        convert(oldPath, oldKBName, newPath, new ConverterOptions());
+    }
+
+    /**
+     * Convert a KB in the old format to the new format. If a memory budget is set in the options, the conversion is in
+     * the streaming mode (see `convertStreaming()`), otherwise the mappings are loaded in memory. The metrics of the
+     * conversion are written to the new KB (see `Metrics`).
+     */
+    static void convert(
+            String oldPath, String oldKBName, String newPath, ConverterOptions options
+    ) throws IOException, ConverterException {
+        /* List original relations and mappings */
         File old_dir_path = NumeratedKb.getKbPath(oldKBName, oldPath).toFile();
         File[] kb_files = old_dir_path.listFiles();
         if (null == kb_files) {
             System.err.println("Cannot list files in dir: " + old_dir_path.getAbsolutePath());
             return;
         }
-        System.out.print("Loading original data ...");
-        long time_start = System.currentTimeMillis();
-        List<int[][]> relations = new ArrayList<>();
-        List<String> relation_names = new ArrayList<>();
-        Map<String, Integer> map = new HashMap<>();
+        List<File> relation_files = new ArrayList<>();
+        List<RelationInfo> relation_infos = new ArrayList<>();
+        List<File> map_files = new ArrayList<>();
         for (File kb_file: kb_files) {
             RelationInfo rel_info = parseRelFilePath(kb_file.getName());
             if (null != rel_info) {
-                relations.add(SimpleRelation.loadFile(kb_file, rel_info.arity, rel_info.totalRecords));
-                relation_names.add(rel_info.name);
+                relation_files.add(kb_file);
+                relation_infos.add(rel_info);
             } else if (MAP_FILE_NAME_PATTERN.matcher(kb_file.getName()).matches()) {
-                BufferedReader reader = new BufferedReader(new FileReader(kb_file));
-                String line;
-                while (null != (line = reader.readLine())) {
-                    String[] components = line.split("\t");
-                    map.put(components[0], Integer.parseInt(components[1], 16));
-                }
-                reader.close();
+                map_files.add(kb_file);
+            }
+        }
+        File kb_dir = NumeratedKb.getKbPath(oldKBName, newPath).toFile();
+        if (!kb_dir.mkdirs() && !kb_dir.isDirectory()) {
+            throw new IOException("Failed to create KB directory: " + kb_dir.getAbsolutePath());
+        }
+        Metrics metrics = new Metrics(OldFormat2New.class.getSimpleName());
+        int total_constants;
+        if (0 < options.memoryBudget) {
+            total_constants = convertStreaming(relation_files, relation_infos, map_files, kb_dir, options, metrics);
+        } else {
+            total_constants = convertInMemory(relation_files, relation_infos, map_files, kb_dir, options, metrics);
+        }
+        writeRelationInfo(oldKBName, newPath, relation_infos);
+
+        long total_records = 0;
+        for (RelationInfo rel_info: relation_infos) {
+            total_records += rel_info.totalRecords;
+        }
+        metrics.setCounter("relations", relation_infos.size());
+        metrics.setCounter("records", total_records);
+        metrics.setCounter("constants", total_constants);
+        metrics.finish(kb_dir);
+    }
+
+    /**
+     * @return The number of constants in the new KB
+     */
+    static int convertInMemory(
+            List<File> relationFiles, List<RelationInfo> relationInfos, List<File> mapFiles, File kbDir,
+            ConverterOptions options, Metrics metrics
+    ) throws IOException, ConverterException {
+        System.out.print("Loading original mappings ...");
+        long time_start = System.currentTimeMillis();
+        StringDictionary map = new StringDictionary();
+        try (Metrics.Phase phase = metrics.phase("load")) {
+            for (File map_file: mapFiles) {
+                loadMapFile(map_file, map);
+                phase.addBytesRead(map_file.length());
             }
+            phase.addItems(map.size());
         }
-        SimpleKb kb = new SimpleKb(oldKBName, relations.toArray(new int[0][][]), relation_names.toArray(new String[0]));
-        NumerationMap num_map = new NumerationMap(map);
         long time_loaded = System.currentTimeMillis();
         System.out.printf("Done (%d ms)\n", time_loaded - time_start);
 
-        /* Re-arrange the order of numerations to make them more concentrate in each relation */
-        System.out.print("Rearranging mappings ... ");
-        int[] old_2_new = new int[num_map.totalMappings()+1];    // Old integer numerations to new, i.e., old_2_new[old_num] = new_num
-        int next_num = 1;
-        for (SimpleRelation relation: kb.getRelations()) {
-            for (int[] record: relation) {
-                for (int arg_idx = 0; arg_idx < record.length; arg_idx++) {
-                    int old_arg = record[arg_idx];
-                    if (0 == old_2_new[old_arg]) {
-                        old_2_new[old_arg] = next_num;
-                        record[arg_idx] = next_num;
-                        next_num++;
-                    } else {
-                        record[arg_idx] = old_2_new[old_arg];
+        /* Old integer numerations to new, i.e., old_2_new[old_num] = new_num */
+        int[] old_2_new = new int[map.maxId()+1];
+        int next_num = renumberRelations(relationFiles, relationInfos, kbDir, old_2_new, options, metrics);
+        long time_rearranged = System.currentTimeMillis();
+
+        /* Dump mappings */
+        System.out.print("Dumping ...");
+        try (Metrics.Phase phase = metrics.phase("dump")) {
+            long size_before = Metrics.sizeOf(kbDir);
+            map.renumber(old_2_new);
+            IoTasks.runAll(options.dumpThreads, MapWriter.writeAllTasks(kbDir.getPath(), map));
+            phase.addItems(next_num - 1).addBytesWritten(Metrics.sizeOf(kbDir) - size_before);
+        }
+        long time_dumped = System.currentTimeMillis();
+        System.out.printf("Done (%d ms)\n", time_dumped - time_rearranged);
+        System.out.printf("Total Time: %d ms\n", time_dumped - time_start);
+        return next_num - 1;
+    }
+
+    /**
+     * Convert with only the numeration array `old_2_new` in memory:
+     *   1. Scan the mapping files for the max numeration, then renumber the relations one at a time, in the same
+     *      first-occurrence order as the in-memory mode;
+     *   2. Stream the mapping entries, tagged with new numerations, through an external sort and write them to the new
+     *      mapping files in the order of new numerations.
+     * @return The number of constants in the new KB
+     */
+    static int convertStreaming(
+            List<File> relationFiles, List<RelationInfo> relationInfos, List<File> mapFiles, File kbDir,
+            ConverterOptions options, Metrics metrics
+    ) throws IOException, ConverterException {
+        System.out.print("Scanning original mappings ...");
+        long time_start = System.currentTimeMillis();
+        int max_num = 0;
+        try (Metrics.Phase phase = metrics.phase("load")) {
+            for (File map_file: mapFiles) {
+                try (TsvTokenizer tokenizer = new TsvTokenizer(new FileInputStream(map_file))) {
+                    while (tokenizer.nextLine()) {
+                        max_num = Math.max(max_num, parseNumeration(tokenizer, map_file));
+                        phase.addItems(1);
                     }
                 }
+                phase.addBytesRead(map_file.length());
             }
         }
-        if (next_num < old_2_new.length) {
-            System.err.printf(
-                    "Numeration rearrange warning: %d numerations expected, but %d rearranged (%d missing)\n",
-                    old_2_new.length - 1, next_num - 1, old_2_new.length - next_num
-            );
-        }
+        long time_scanned = System.currentTimeMillis();
+        System.out.printf("Done (%d ms)\n", time_scanned - time_start);
+
+        int[] old_2_new = new int[max_num+1];
+        int next_num = renumberRelations(relationFiles, relationInfos, kbDir, old_2_new, options, metrics);
         long time_rearranged = System.currentTimeMillis();
-        System.out.printf("Done (%d ms)\n", time_rearranged - time_loaded);
 
-        /* Dump KB and relations */
+        /* Sort mapping entries by new numerations and dump */
         System.out.print("Dumping ...");
-        String[] mapped_names = new String[next_num];
-        for (int old_num = 1; old_num < old_2_new.length; old_num++) {
-            mapped_names[old_2_new[old_num]] = num_map.num2Name(old_num);
+        try (Metrics.Phase phase = metrics.phase("dump")) {
+            long size_before = Metrics.sizeOf(kbDir);
+            File tmp_dir = Files.createTempDirectory(Paths.get(options.tmpDir), kbDir.getName()).toFile();
+            try (ExternalSorter sorter = new ExternalSorter(
+                    (r1, r2) -> Integer.compare(Bytes.getInt(r1, 0), Bytes.getInt(r2, 0)), options.memoryBudget, tmp_dir
+            )) {
+                for (File map_file: mapFiles) {
+                    try (TsvTokenizer tokenizer = new TsvTokenizer(new FileInputStream(map_file))) {
+                        while (tokenizer.nextLine()) {
+                            int new_num = old_2_new[parseNumeration(tokenizer, map_file)];
+                            if (0 == new_num) {
+                                continue;
+                            }
+                            byte[] entry = new byte[Integer.BYTES + tokenizer.length(0)];
+                            Bytes.putInt(entry, 0, new_num);
+                            System.arraycopy(
+                                    tokenizer.buffer(), tokenizer.start(0), entry, Integer.BYTES, tokenizer.length(0)
+                            );
+                            sorter.add(entry);
+                        }
+                    }
+                }
+                int expected_num = 1;
+                try (
+                        ExternalSorter.RecordReader reader = sorter.sorted();
+                        MapWriter map_writer = new MapWriter(kbDir.getPath())
+                ) {
+                    byte[] entry;
+                    while (null != (entry = reader.next())) {
+                        int num = Bytes.getInt(entry, 0);
+                        if (num < expected_num) {
+                            throw new ConverterException("Duplicated mapping of numeration: " + num);
+                        }
+                        if (num > expected_num) {
+                            throw new ConverterException("No mapping of numeration: " + expected_num);
+                        }
+                        map_writer.write(entry, Integer.BYTES, entry.length - Integer.BYTES);
+                        expected_num++;
+                    }
+                }
+                if (next_num != expected_num) {
+                    throw new ConverterException("No mapping of numeration: " + expected_num);
+                }
+            } finally {
+                if (!tmp_dir.delete()) {
+                    System.err.println("Warning: Failed to remove temporary directory: " + tmp_dir.getAbsolutePath());
+                }
+            }
+            for (File map_file: mapFiles) {
+                phase.addBytesRead(map_file.length());
+            }
+            phase.addItems(next_num - 1).addBytesWritten(Metrics.sizeOf(kbDir) - size_before);
         }
-        kb.dump(newPath, mapped_names);
         long time_dumped = System.currentTimeMillis();
         System.out.printf("Done (%d ms)\n", time_dumped - time_rearranged);
         System.out.printf("Total Time: %d ms\n", time_dumped - time_start);
+        return next_num - 1;
+    }
+
+    /**
+     * Re-arrange the order of numerations to make them more concentrate in each relation. Relations are renumbered and
+     * written one by one, streaming from the mapped original files. Numerations are assigned in the order of first
+     * occurrence while the relations are written, or by the numeration order in the options before that.
+     * If relations are sorted, duplicated records are removed and the relation info is updated.
+     * @param old2New Filled with the new numerations, i.e., old2New[old_num] = new_num
+     * @return The next numeration, i.e., the number of numerations assigned plus one
+     */
+    static int renumberRelations(
+            List<File> relationFiles, List<RelationInfo> relationInfos, File kbDir, int[] old2New,
+            ConverterOptions options, Metrics metrics
+    ) throws IOException, ConverterException {
+        System.out.print("Rearranging and dumping relations ... ");
+        long time_start = System.currentTimeMillis();
+        int next_num = 1;
+        try (Metrics.Phase phase = metrics.phase("rearrange")) {
+            long size_before = Metrics.sizeOf(kbDir);
+            if (NumerationOrders.FIRST_OCCURRENCE != options.numerationOrder) {
+                if (0 < options.memoryBudget && options.numerationOrder.holdsGraph()) {
+                    throw new ConverterException(String.format(
+                            "Numeration order '%s' is not supported in the streaming mode",
+                            options.numerationOrder.name()
+                    ));
+                }
+                int[] assigned = options.numerationOrder.assign(new NumerationOrder.RelationSource() {
+                    @Override
+                    public int totalRelations() {
+                        return relationFiles.size();
+                    }
+
+                    @Override
+                    public int arity(int idx) {
+                        return relationInfos.get(idx).arity;
+                    }
+
+                    @Override
+                    public IntInput open(int idx) throws IOException {
+                        return new MappedIntFile(relationFiles.get(idx), relationInfos.get(idx).arity);
+                    }
+                }, old2New.length - 1);
+                for (int old_num = 0; old_num < old2New.length; old_num++) {
+                    old2New[old_num] = assigned[old_num];
+                    next_num = Math.max(next_num, assigned[old_num] + 1);
+                }
+            }
+            for (int rel_id = 0; rel_id < relationFiles.size(); rel_id++) {
+                RelationInfo rel_info = relationInfos.get(rel_id);
+                IntOutput out = KbFiles.createRelation(
+                        kbDir.getPath(), rel_id, rel_info.arity, options.packRelations, options.sortRelations,
+                        options.memoryBudget, new File(options.tmpDir)
+                );
+                try (out) {
+                    next_num = renumberRelationFile(relationFiles.get(rel_id), rel_info, out, old2New, next_num);
+                }
+                if (out instanceof SortedRelationWriter) {
+                    long total_rows = ((SortedRelationWriter) out).totalRows();
+                    if (total_rows != rel_info.totalRecords) {
+                        System.err.printf(
+                                "%d duplicated records removed from relation '%s'\n",
+                                rel_info.totalRecords - total_rows, rel_info.name
+                        );
+                        relationInfos.set(rel_id, new RelationInfo(rel_info.name, rel_info.arity, (int) total_rows));
+                    }
+                }
+                phase.addItems(rel_info.totalRecords).addBytesRead(relationFiles.get(rel_id).length());
+            }
+            if (next_num < old2New.length) {
+                System.err.printf(
+                        "Numeration rearrange warning: %d numerations expected, but %d rearranged (%d missing)\n",
+                        old2New.length - 1, next_num - 1, old2New.length - next_num
+                );
+            }
+            phase.addBytesWritten(Metrics.sizeOf(kbDir) - size_before);
+        }
+        System.out.printf("Done (%d ms)\n", System.currentTimeMillis() - time_start);
+        return next_num;
+    }
+
+    static void writeRelationInfo(String kbName, String newPath, List<RelationInfo> relationInfos) throws IOException {
+        String[] names = new String[relationInfos.size()];
+        int[] arities = new int[relationInfos.size()];
+        long[] records = new long[relationInfos.size()];
+        for (int rel_id = 0; rel_id < relationInfos.size(); rel_id++) {
+            RelationInfo rel_info = relationInfos.get(rel_id);
+            names[rel_id] = rel_info.name;
+            arities[rel_id] = rel_info.arity;
+            records[rel_id] = rel_info.totalRecords;
+        }
+        KbFiles.writeRelationInfo(kbName, newPath, names, arities, records);
+    }
+
+    /**
+     * Renumber the records of an original relation file and write them to a new relation file in a single pass. The
+     * original file is memory-mapped in chunks and read as little-endian integers, and the renumbered integers are
+     * written to the output of the new relation.
+     * @param old2New Numerations already assigned. Newly encountered numerations are assigned and recorded here
+     * @param nextNum The next numeration to assign
+     * @return The next numeration to assign after this relation
+     * @throws ConverterException The file size does not match the relation info
+     */
+    static int renumberRelationFile(
+            File oldFile, RelationInfo relInfo, IntOutput out, int[] old2New, int nextNum
+    ) throws IOException, ConverterException {
+        try (MappedIntFile in = new MappedIntFile(oldFile, relInfo.arity)) {
+            long total_bytes = (long) relInfo.arity * relInfo.totalRecords * Integer.BYTES;
+            if (in.size() != total_bytes) {
+                throw new ConverterException(String.format(
+                        "Size of relation file '%s' is %d, but %d expected", oldFile.getAbsolutePath(), in.size(),
+                        total_bytes
+                ));
+            }
+            IntBuffer ints;
+            while (null != (ints = in.nextChunk())) {
+                while (ints.hasRemaining()) {
+                    int old_arg = ints.get();
+                    int new_arg = old2New[old_arg];
+                    if (0 == new_arg) {
+                        new_arg = nextNum;
+                        old2New[old_arg] = nextNum;
+                        nextNum++;
+                    }
+                    out.writeInt(new_arg);
+                }
+            }
+        }
+        return nextNum;
+    }
+
+    /**
+     * Load a mapping file of the old format, where each line is "<name>\t<numeration in hex>".
+     *
+     * A name or a numeration mapped twice is an error. The former `HashMap` silently kept the last mapping of a name,
+     * which left the other numeration of the name without a mapping in the new KB.
+     * @throws ConverterException Duplicated names or numerations
+     */
+    static void loadMapFile(File mapFile, StringDictionary map) throws IOException, ConverterException {
+        try (TsvTokenizer tokenizer = new TsvTokenizer(new FileInputStream(mapFile))) {
+            while (tokenizer.nextLine()) {
+                int num = parseNumeration(tokenizer, mapFile);
+                try {
+                    map.put(tokenizer.buffer(), tokenizer.start(0), tokenizer.length(0), num);
+                } catch (IllegalArgumentException e) {
+                    throw new ConverterException(String.format(
+                            "Invalid mapping in file: %s (%s)", mapFile.getAbsolutePath(), e.getMessage()
+                    ), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Parse the numeration (in hex) of the current line of a mapping file.
+     */
+    static int parseNumeration(TsvTokenizer tokenizer, File mapFile) throws ConverterException {
+        if (2 > tokenizer.fields()) {
+            throw new ConverterException("Malformed mapping in file: " + mapFile.getAbsolutePath());
+        }
+        byte[] buffer = tokenizer.buffer();
+        int num = 0;
+        for (int i = tokenizer.start(1); i < tokenizer.start(1) + tokenizer.length(1); i++) {
+            int digit = Character.digit(buffer[i], 16);
+            if (0 > digit) {
+                throw new ConverterException("Malformed numeration in file: " + mapFile.getAbsolutePath());
+            }
+            num = num * 16 + digit;
+        }
+        return num;
     }
 }
@@ -0,0 +1,140 @@
+package converter;
+
+import util.metrics.Metrics;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load triples to a sink with a pipeline of threads. Segments of the original KB are parsed and filtered
+ * concurrently by a pool of parser threads. Parsed triples are passed in batches, through a bounded queue per segment,
+ * to the numeration stage. The numeration stage runs in the calling thread and consumes the segments strictly in order,
+ * thus the numerations are exactly the same as loading the triples sequentially.
+ *
+ * Backpressure: A parser thread blocks if the queue of its segment is full, and a new segment is started only if there
+ * are fewer than `2 * threads` segments not yet consumed by the numeration stage.
+ */
+class PipelinedTripleLoader {
+    /** The marker of the end of a segment */
+    static final Triple[] END_OF_SEGMENT = new Triple[0];
+
+    protected final Converter converter;
+    protected final TripleSink sink;
+    protected final List<TripleSegment> segments;
+    protected final ConverterOptions options;
+    protected final List<BlockingQueue<Triple[]>> queues;
+    protected final ConverterException[] failures;
+    protected final Semaphore segmentPermits;
+    protected final AtomicInteger nextSegment = new AtomicInteger(0);
+
+    /**
+     * @param converter The converter deciding which predicates are skipped
+     */
+    PipelinedTripleLoader(
+            Converter converter, TripleSink sink, List<TripleSegment> segments, ConverterOptions options
+    ) {
+        this.converter = converter;
+        this.sink = sink;
+        this.segments = segments;
+        this.options = options;
+        this.queues = new ArrayList<>(segments.size());
+        for (int i = 0; i < segments.size(); i++) {
+            queues.add(new LinkedBlockingQueue<>(options.queueCapacity));
+        }
+        this.failures = new ConverterException[segments.size()];
+        this.segmentPermits = new Semaphore(options.threads * 2);
+    }
+
+    /**
+     * Load all segments to the sink.
+     * @return The number of triples failed to be loaded
+     * @throws ConverterException Parsing of some segment failed
+     */
+    int load() throws ConverterException {
+        ExecutorService executor = Executors.newFixedThreadPool(options.threads, Metrics.threadFactory());
+        try {
+            for (int i = 0; i < options.threads; i++) {
+                executor.submit(this::parseSegments);
+            }
+            int failed_triples = 0;
+            for (int seg_idx = 0; seg_idx < segments.size(); seg_idx++) {
+                BlockingQueue<Triple[]> queue = queues.get(seg_idx);
+                Triple[] batch;
+                while (END_OF_SEGMENT != (batch = queue.take())) {
+                    for (Triple triple: batch) {
+                        if (!sink.add(triple)) {
+                            failed_triples++;
+                        }
+                    }
+                }
+                segmentPermits.release();
+                if (null != failures[seg_idx]) {
+                    throw failures[seg_idx];
+                }
+            }
+            return failed_triples;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConverterException("Loading interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The routine of parser threads. Segments are taken in order, so the earliest segment not yet consumed is always
+     * being parsed or finished.
+     */
+    protected void parseSegments() {
+        try {
+            while (true) {
+                segmentPermits.acquire();
+                int seg_idx = nextSegment.getAndIncrement();
+                if (segments.size() <= seg_idx) {
+                    segmentPermits.release();
+                    return;
+                }
+                BlockingQueue<Triple[]> queue = queues.get(seg_idx);
+                try {
+                    Iterator<Triple> iterator = segments.get(seg_idx).tripleIterator();
+                    Triple[] batch = new Triple[options.batchSize];
+                    int size = 0;
+                    while (iterator.hasNext()) {
+                        Triple triple = iterator.next();
+                        if (converter.skipPredicate(triple.pred)) {
+                            converter.metrics.addFiltered(triple.pred, Converter.FILTER_NON_FACTUAL, 1);
+                            continue;
+                        }
+                        batch[size] = triple;
+                        size++;
+                        if (batch.length == size) {
+                            queue.put(batch);
+                            batch = new Triple[options.batchSize];
+                            size = 0;
+                        }
+                    }
+                    if (0 < size) {
+                        queue.put(Arrays.copyOf(batch, size));
+                    }
+                } catch (ConverterException e) {
+                    failures[seg_idx] = e;
+                } catch (UncheckedIOException e) {
+                    failures[seg_idx] = new ConverterException(e.getMessage(), e.getCause());
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Throwable e) {
+                    /* Errors also end the segment, otherwise the numeration stage waits for it forever */
+                    failures[seg_idx] = new ConverterException(e);
+                }
+                queue.put(END_OF_SEGMENT);
+            }
+        } catch (InterruptedException e) {
+            /* Loading is cancelled */
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package converter;
+
+import java.util.Iterator;
+
+/**
+ * A part of the original KB that can be parsed independently of other parts, e.g., a single fact file. The segments of
+ * a KB are ordered, and concatenating the triples of all segments in order should produce the same sequence as
+ * `Converter.tripleIterator()`.
+ */
+public interface TripleSegment {
+    /**
+     * Get an iterator of triples in this segment.
+     */
+    Iterator<Triple> tripleIterator() throws ConverterException;
+}
@@ -0,0 +1,13 @@
+package converter;
+
+/**
+ * The consumer of triples loaded from the original KB.
+ */
+public interface TripleSink {
+    /**
+     * Add a triple.
+     * @return Whether the triple is successfully added
+     * @throws ConverterException Unrecoverable failure, the conversion should stop
+     */
+    boolean add(Triple triple) throws ConverterException;
+}
@@ -0,0 +1,271 @@
+package converter.impl;
+
+import converter.ConverterException;
+import util.collection.Utf8HashSet;
+import util.io.TsvTokenizer;
+import util.metrics.Metrics;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The index of entity names. Names are stored as UTF-8 bytes in shards of off-heap hash sets, so the index answers
+ * membership queries exactly with a fraction of the memory of a `HashSet<String>`. The shard of a name is decided by
+ * the highest bits of its hash value, and entity files can be loaded by multiple threads, each inserting into the
+ * shards under the lock of the shard.
+ *
+ * The index can be cached in a binary file keyed by the listing of the entity files (names, sizes and modification
+ * times). The cache file is:
+ *   [magic: long][key: 32 bytes][#shards: int][shard...]
+ * where each shard is in the format of `Utf8HashSet.write()`. Cached indices are memory-mapped and read-only.
+ */
+public class EntityIndex {
+    public static final int SHARD_BITS = 6;
+    /** "ENTIDX01" */
+    protected static final long CACHE_MAGIC = 0x3130584449544e45L;
+    protected static final int CACHE_KEY_LENGTH = 32;
+
+    protected final Utf8HashSet[] shards;
+
+    public EntityIndex() {
+        shards = new Utf8HashSet[1 << SHARD_BITS];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Utf8HashSet();
+        }
+    }
+
+    protected EntityIndex(Utf8HashSet[] shards) {
+        this.shards = shards;
+    }
+
+    /**
+     * Load entity names from the cache file if it matches the entity files. Otherwise, load from the entity files and
+     * update the cache. Failures of cache operations are reported as warnings.
+     * @param cacheFile The cache file. If NULL, no cache is used
+     * @param threads The number of threads loading the files in parallel
+     */
+    public static EntityIndex load(File[] entityFiles, File cacheFile, int threads) throws ConverterException {
+        if (null == cacheFile) {
+            return load(entityFiles, threads);
+        }
+        byte[] key = listingKey(entityFiles);
+        if (cacheFile.isFile()) {
+            try {
+                EntityIndex index = map(cacheFile, key);
+                if (null != index) {
+                    System.out.println("Entity index mapped from cache: " + cacheFile.getAbsolutePath());
+                    return index;
+                }
+                System.out.println("Entity index cache outdated: " + cacheFile.getAbsolutePath());
+            } catch (IOException e) {
+                System.err.println("Warning: Failed to read entity index cache: " + cacheFile.getAbsolutePath());
+                e.printStackTrace();
+            }
+        }
+        EntityIndex index = load(entityFiles, threads);
+        try {
+            index.write(cacheFile, key);
+        } catch (IOException e) {
+            System.err.println("Warning: Failed to write entity index cache: " + cacheFile.getAbsolutePath());
+            e.printStackTrace();
+        }
+        return index;
+    }
+
+    /**
+     * Load entity names from files. The name of an entity is the first column in each line.
+     * @param threads The number of threads loading the files in parallel
+     */
+    public static EntityIndex load(File[] entityFiles, int threads) throws ConverterException {
+        EntityIndex index = new EntityIndex();
+        if (1 >= threads) {
+            for (File entity_file: entityFiles) {
+                index.loadFile(entity_file);
+            }
+            return index;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads, Metrics.threadFactory());
+        try {
+            List<Future<?>> futures = new ArrayList<>(entityFiles.length);
+            for (File entity_file: entityFiles) {
+                futures.add(executor.submit(() -> {
+                    index.loadFile(entity_file);
+                    return null;
+                }));
+            }
+            for (Future<?> future: futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new ConverterException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConverterException("Loading entities interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return index;
+    }
+
+    /**
+     * Compute the key of the entity files, i.e., the SHA-256 digest of the names, sizes and modification times.
+     */
+    protected static byte[] listingKey(File[] entityFiles) {
+        File[] files = Arrays.copyOf(entityFiles, entityFiles.length);
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer numbers = ByteBuffer.allocate(2 * Long.BYTES);
+            for (File file: files) {
+                digest.update(file.getName().getBytes(StandardCharsets.UTF_8));
+                numbers.clear();
+                numbers.putLong(file.length()).putLong(file.lastModified());
+                digest.update(numbers.array());
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Write the index to a cache file. The file is first written to a temporary file and then moved, so a cache file
+     * is never partially written.
+     */
+    public void write(File cacheFile, byte[] key) throws IOException {
+        Path cache_path = cacheFile.toPath();
+        Path tmp_path = cache_path.resolveSibling(cache_path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(
+                tmp_path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING
+        )) {
+            ByteBuffer header = ByteBuffer.allocate(Long.BYTES + CACHE_KEY_LENGTH + Integer.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(CACHE_MAGIC).put(key).putInt(shards.length);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            for (Utf8HashSet shard: shards) {
+                shard.write(channel);
+            }
+        }
+        Files.move(tmp_path, cache_path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Memory-map the index from a cache file.
+     * @return The read-only index, or NULL if the cache file does not match the key
+     */
+    public static EntityIndex map(File cacheFile, byte[] key) throws IOException {
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(Long.BYTES + CACHE_KEY_LENGTH + Integer.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (0 > channel.read(header)) {
+                    return null;
+                }
+            }
+            header.flip();
+            if (CACHE_MAGIC != header.getLong()) {
+                return null;
+            }
+            byte[] cached_key = new byte[CACHE_KEY_LENGTH];
+            header.get(cached_key);
+            if (!Arrays.equals(key, cached_key) || (1 << SHARD_BITS) != header.getInt()) {
+                return null;
+            }
+
+            /* Mappings remain valid after the channel is closed */
+            Utf8HashSet[] shards = new Utf8HashSet[1 << SHARD_BITS];
+            long offset = header.capacity();
+            for (int i = 0; i < shards.length; i++) {
+                shards[i] = Utf8HashSet.map(channel, offset);
+                offset += shards[i].serializedBytes();
+            }
+            return new EntityIndex(shards);
+        }
+    }
+
+    protected void loadFile(File entityFile) throws ConverterException {
+        try (TsvTokenizer tokenizer = new TsvTokenizer(new FileInputStream(entityFile))) {
+            while (tokenizer.nextLine()) {
+                add(tokenizer.buffer(), tokenizer.start(0), tokenizer.length(0));
+            }
+        } catch (IOException e) {
+            throw new ConverterException("Failed to load entity file: " + entityFile.getAbsolutePath(), e);
+        }
+    }
+
+    protected static int shardOf(long hash) {
+        return (int) (hash >>> (Long.SIZE - SHARD_BITS));
+    }
+
+    /**
+     * Add an entity name. This method is thread-safe.
+     */
+    public void add(byte[] bytes, int offset, int length) {
+        long hash = Utf8HashSet.hash(bytes, offset, length);
+        Utf8HashSet shard = shards[shardOf(hash)];
+        synchronized (shard) {
+            shard.add(hash, bytes, offset, length);
+        }
+    }
+
+    /**
+     * Find an entity name.
+     * @return A handle of the entity, or -1 if the name is not an entity
+     */
+    public long find(byte[] bytes, int offset, int length) {
+        long hash = Utf8HashSet.hash(bytes, offset, length);
+        int shard_idx = shardOf(hash);
+        int ordinal = shards[shard_idx].find(hash, bytes, offset, length);
+        return (0 > ordinal) ? -1 : ((long) shard_idx << Integer.SIZE) | ordinal;
+    }
+
+    /**
+     * Get the interned string of an entity.
+     * @param handle The handle returned by `find()`
+     * @param bytes The bytes of the entity name, used for decoding the string the first time it is requested
+     */
+    public String string(long handle, byte[] bytes, int offset, int length) {
+        return shards[(int) (handle >>> Integer.SIZE)].string((int) handle, bytes, offset, length);
+    }
+
+    public long size() {
+        long size = 0;
+        for (Utf8HashSet shard: shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    /**
+     * The number of off-heap bytes taken by the index.
+     */
+    public long memoryBytes() {
+        long bytes = 0;
+        for (Utf8HashSet shard: shards) {
+            bytes += shard.memoryBytes();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,139 @@
+package converter.impl;
+
+import converter.Converter;
+import converter.ConverterException;
+import converter.ConverterOptions;
+import converter.Triple;
+import converter.TripleSegment;
+import util.io.ArchiveSplitter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Converter that streams triples from N-Triples or TSV dumps (see `TripleDumpSegment`). The input is a dump file or a
+ * directory of dump files, each of which is plain, gzip or bzip2 compressed. With multiple threads, each file is split
+ * into ranges (see `ArchiveSplitter`) that are decompressed and parsed in parallel.
+ */
+public class TripleDumpConverter extends Converter {
+    /** The min number of bytes in a range of a split file */
+    public static final long MIN_SEGMENT_BYTES = 1L << 20;
+    /** The number of ranges a file is split into per thread, so threads are balanced if ranges differ in size */
+    public static final int SEGMENTS_PER_THREAD = 4;
+
+    protected final String inputPath;
+    protected final TripleDumpSegment.Syntax syntax;
+
+    public TripleDumpConverter(
+            String inputPath, TripleDumpSegment.Syntax syntax, String outputKbName, String outputPath
+    ) {
+        super(outputKbName, outputPath);
+        this.inputPath = inputPath;
+        this.syntax = syntax;
+    }
+
+    public TripleDumpConverter(
+            String inputPath, TripleDumpSegment.Syntax syntax, String outputKbName, String outputPath,
+            ConverterOptions options
+    ) {
+        super(outputKbName, outputPath, options);
+        this.inputPath = inputPath;
+        this.syntax = syntax;
+    }
+
+    /**
+     * The dump files in the input path, in the order of paths. Hidden files are ignored.
+     */
+    protected List<File> inputFiles() throws ConverterException {
+        File input = new File(inputPath);
+        if (input.isFile()) {
+            return List.of(input);
+        }
+        File[] files = input.listFiles(f -> f.isFile() && !f.getName().startsWith("."));
+        if (null == files) {
+            throw new ConverterException("Input path not found: " + inputPath);
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    /**
+     * Split the input files into segments, one per file if there is only one thread.
+     */
+    protected List<TripleDumpSegment> dumpSegments() throws ConverterException {
+        List<TripleDumpSegment> segments = new ArrayList<>();
+        try {
+            for (File file: inputFiles()) {
+                ArchiveSplitter.Compression compression = ArchiveSplitter.detect(file);
+                int parts = (1 < options.threads) ?
+                        (int) Math.max(1, Math.min(options.threads * SEGMENTS_PER_THREAD,
+                                file.length() / MIN_SEGMENT_BYTES)) : 1;
+                long[] boundaries = ArchiveSplitter.split(file, compression, parts);
+                for (int i = 1; i < boundaries.length; i++) {
+                    segments.add(new TripleDumpSegment(
+                            file, compression, boundaries[i - 1], boundaries[i], syntax, metrics
+                    ));
+                }
+            }
+        } catch (IOException e) {
+            throw new ConverterException(e);
+        }
+        return segments;
+    }
+
+    @Override
+    protected List<TripleSegment> tripleSegments() throws ConverterException {
+        return new ArrayList<>(dumpSegments());
+    }
+
+    @Override
+    protected Iterator<Triple> tripleIterator() throws ConverterException {
+        final Iterator<TripleDumpSegment> segment_itr = dumpSegments().iterator();
+        return new Iterator<>() {
+            Iterator<Triple> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext()) {
+                    if (!segment_itr.hasNext()) {
+                        return false;
+                    }
+                    try {
+                        current = segment_itr.next().open();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public Triple next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    @Override
+    protected long inputBytes() {
+        try {
+            long bytes = 0;
+            for (File file: inputFiles()) {
+                bytes += file.length();
+            }
+            return bytes;
+        } catch (ConverterException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package converter.impl;
+
+import converter.ConverterException;
+import converter.Triple;
+import converter.TripleSegment;
+import util.io.ArchiveSplitter;
+import util.io.TsvTokenizer;
+import util.metrics.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A byte range of a dump file (see `ArchiveSplitter`), decompressed and parsed line by line in one of the syntaxes:
+ *   - N-Triples: "<subject> <predicate> <object> ." separated by spaces or tabs. Subjects are IRIs or blank nodes, and
+ *     objects may also be literals;
+ *   - TSV: "subject\tpredicate\tobject", where extra fields are ignored, e.g., the "." of YAGO "simple turtle" files.
+ * Lines are scanned in place. Angle brackets of IRIs are removed, and IRIs in the RDF, RDFS, OWL and XSD namespaces are
+ * abbreviated by the prefixes "rdf:", "rdfs:", "owl:" and "xsd:", so that type and non-factual predicates are
+ * recognized by the converter. Literals and blank nodes are kept verbatim, without unescaping, so the same term is
+ * always the same name. Empty lines and comments ('#') are skipped.
+ *
+ * If metrics are given, malformed lines are counted when the range is exhausted. Errors of reading or decompressing
+ * the range are thrown by the iterator as `UncheckedIOException`, so the conversion fails instead of missing triples.
+ */
+public class TripleDumpSegment implements TripleSegment {
+    public enum Syntax {
+        NTRIPLES, TSV
+    }
+
+    /** Reasons of filtered lines in the metrics. The predicate of a malformed line is unknown, so it is empty */
+    public static final String FILTER_MALFORMED = "malformed line";
+    public static final String UNKNOWN_PREDICATE = "";
+
+    protected static final byte[][] NAMESPACES = new byte[][]{
+            "http://www.w3.org/1999/02/22-rdf-syntax-ns#".getBytes(StandardCharsets.UTF_8),
+            "http://www.w3.org/2000/01/rdf-schema#".getBytes(StandardCharsets.UTF_8),
+            "http://www.w3.org/2002/07/owl#".getBytes(StandardCharsets.UTF_8),
+            "http://www.w3.org/2001/XMLSchema#".getBytes(StandardCharsets.UTF_8),
+    };
+    protected static final String[] PREFIXES = new String[]{"rdf:", "rdfs:", "owl:", "xsd:"};
+
+    protected final File file;
+    protected final ArchiveSplitter.Compression compression;
+    protected final long start;
+    protected final long end;
+    protected final Syntax syntax;
+    protected final Metrics metrics;
+
+    /**
+     * @param metrics The metrics counting malformed lines. If NULL, lines are not counted
+     */
+    public TripleDumpSegment(
+            File file, ArchiveSplitter.Compression compression, long start, long end, Syntax syntax, Metrics metrics
+    ) {
+        this.file = file;
+        this.compression = compression;
+        this.start = start;
+        this.end = end;
+        this.syntax = syntax;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Iterator<Triple> tripleIterator() throws ConverterException {
+        try {
+            return open();
+        } catch (IOException e) {
+            throw new ConverterException("Failed to load dump file: " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Open the range and iterate over its triples.
+     */
+    public Iterator<Triple> open() throws IOException {
+        return new DumpIterator(new TsvTokenizer(ArchiveSplitter.open(file, compression, start, end)));
+    }
+
+    /**
+     * A string decoded from bytes, reused while the same bytes repeat, e.g., the subject of consecutive triples.
+     */
+    protected static class LastTerm {
+        byte[] bytes = new byte[0];
+        int length = 0;
+        String string = null;
+
+        String get(byte[] buffer, int offset, int length) {
+            if (null == string || this.length != length ||
+                    !Arrays.equals(bytes, 0, length, buffer, offset, offset + length)) {
+                if (bytes.length < length) {
+                    bytes = new byte[Math.max(length, bytes.length * 2)];
+                }
+                System.arraycopy(buffer, offset, bytes, 0, length);
+                this.length = length;
+                string = decode(buffer, offset, length);
+            }
+            return string;
+        }
+    }
+
+    /**
+     * Decode a term, removing angle brackets of IRIs and abbreviating the well-known namespaces.
+     */
+    protected static String decode(byte[] buffer, int offset, int length) {
+        if (2 <= length && '<' == buffer[offset] && '>' == buffer[offset + length - 1]) {
+            offset++;
+            length -= 2;
+            for (int i = 0; i < NAMESPACES.length; i++) {
+                byte[] namespace = NAMESPACES[i];
+                if (namespace.length <= length &&
+                        Arrays.equals(namespace, 0, namespace.length, buffer, offset, offset + namespace.length)) {
+                    return PREFIXES[i] + new String(
+                            buffer, offset + namespace.length, length - namespace.length, StandardCharsets.UTF_8
+                    );
+                }
+            }
+        }
+        return new String(buffer, offset, length, StandardCharsets.UTF_8);
+    }
+
+    protected static boolean isSpace(byte b) {
+        return ' ' == b || '\t' == b;
+    }
+
+    /**
+     * Find the end of an N-Triples term from `offset`.
+     * @return The end of the term, or -1 if the term is malformed
+     */
+    protected static int termEnd(byte[] buffer, int offset, int end) {
+        if (offset >= end) {
+            return -1;
+        }
+        int i = offset;
+        switch (buffer[i]) {
+            case '<':
+                while (i < end && '>' != buffer[i]) {
+                    i++;
+                }
+                return (i < end) ? i + 1 : -1;
+            case '"':
+                for (i++; i < end && '"' != buffer[i]; i++) {
+                    if ('\\' == buffer[i]) {
+                        i++;
+                    }
+                }
+                if (i >= end) {
+                    return -1;
+                }
+                i++;
+                if (i < end && '@' == buffer[i]) {
+                    while (i < end && !isSpace(buffer[i]) && '.' != buffer[i]) {
+                        i++;
+                    }
+                } else if (i + 1 < end && '^' == buffer[i] && '^' == buffer[i + 1]) {
+                    return termEnd(buffer, i + 2, end);
+                }
+                return i;
+            default:
+                while (i < end && !isSpace(buffer[i])) {
+                    i++;
+                }
+                /* A blank node label does not end with '.', which ends the line instead */
+                while (i > offset + 1 && '.' == buffer[i - 1]) {
+                    i--;
+                }
+                return i;
+        }
+    }
+
+    /**
+     * Iterate over the triples in the range. The range is closed once exhausted.
+     */
+    protected class DumpIterator implements Iterator<Triple> {
+        protected TsvTokenizer tokenizer;
+        protected Triple nextTriple = null;
+        protected long malformedLines = 0;
+        protected final LastTerm subject = new LastTerm();
+        protected final LastTerm predicate = new LastTerm();
+        protected final LastTerm object = new LastTerm();
+        /** Offsets and lengths of the terms in the current line */
+        protected final int[] terms = new int[6];
+
+        protected DumpIterator(TsvTokenizer tokenizer) {
+            this.tokenizer = tokenizer;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (null != nextTriple) {
+                return true;
+            }
+            if (null == tokenizer) {
+                return false;
+            }
+            try {
+                while (tokenizer.nextLine()) {
+                    int parsed = (Syntax.NTRIPLES == syntax) ? parseNTriples() : parseTsv();
+                    if (0 > parsed) {
+                        malformedLines++;
+                    } else if (0 < parsed) {
+                        byte[] buffer = tokenizer.buffer();
+                        nextTriple = new Triple(
+                                subject.get(buffer, terms[0], terms[1]), predicate.get(buffer, terms[2], terms[3]),
+                                object.get(buffer, terms[4], terms[5])
+                        );
+                        return true;
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException(String.format(
+                        "Error occurred reading the file: %s [%d, %d)", file.getAbsolutePath(), start, end
+                ), e);
+            }
+            close();
+            if (null != metrics) {
+                metrics.addFiltered(UNKNOWN_PREDICATE, FILTER_MALFORMED, malformedLines);
+            }
+            return false;
+        }
+
+        /**
+         * Parse the current line as N-Triples. Fields of the tokenizer are joined, as tabs are also separators.
+         * @return 1 if a triple is parsed, 0 if the line is empty or a comment, -1 if the line is malformed
+         */
+        protected int parseNTriples() {
+            byte[] buffer = tokenizer.buffer();
+            int i = tokenizer.start(0);
+            int end = tokenizer.start(tokenizer.fields() - 1) + tokenizer.length(tokenizer.fields() - 1);
+            while (i < end && isSpace(buffer[i])) {
+                i++;
+            }
+            if (i >= end || '#' == buffer[i]) {
+                return 0;
+            }
+            for (int term = 0; term < 3; term++) {
+                while (i < end && isSpace(buffer[i])) {
+                    i++;
+                }
+                int term_end = termEnd(buffer, i, end);
+                if (0 > term_end) {
+                    return -1;
+                }
+                terms[term * 2] = i;
+                terms[term * 2 + 1] = term_end - i;
+                i = term_end;
+            }
+            while (i < end && isSpace(buffer[i])) {
+                i++;
+            }
+            return (i < end && '.' == buffer[i] && 0 < terms[1] && 0 < terms[3] && 0 < terms[5]) ? 1 : -1;
+        }
+
+        /**
+         * Parse the current line as TSV.
+         * @return 1 if a triple is parsed, 0 if the line is empty or a comment, -1 if the line is malformed
+         */
+        protected int parseTsv() {
+            if (1 == tokenizer.fields() &&
+                    (0 == tokenizer.length(0) || '#' == tokenizer.buffer()[tokenizer.start(0)])) {
+                return 0;
+            }
+            if (3 > tokenizer.fields()) {
+                return -1;
+            }
+            for (int field = 0; field < 3; field++) {
+                terms[field * 2] = tokenizer.start(field);
+                terms[field * 2 + 1] = tokenizer.length(field);
+                if (0 == terms[field * 2 + 1]) {
+                    return -1;
+                }
+            }
+            return 1;
+        }
+
+        protected void close() {
+            try {
+                tokenizer.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            tokenizer = null;
+        }
+
+        @Override
+        public Triple next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Triple triple = nextTriple;
+            nextTriple = null;
+            return triple;
+        }
+    }
+}
@@ -2,8 +2,13 @@ package converter.impl;
 
 import converter.Converter;
 import converter.ConverterException;
+import converter.ConverterOptions;
 import converter.Triple;
+import converter.TripleSegment;
+import util.metrics.Metrics;
 
+import java.io.File;
+import java.nio.file.Paths;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -21,6 +26,12 @@ public class Yago1Converter extends Converter {
             "extractedBy",
             "context"
     ));
+    /**
+     * The default name of the entity index cache file, located in the temporary directory so that the input directory
+     * is never written. "%s" is replaced by the hash of the KB path, so caches of different KBs do not overwrite each
+     * other
+     */
+    public static final String ENTITY_CACHE_FILE_NAME = "entities-%s.cache";
 
     protected final String kbPath;
 
@@ -29,9 +40,37 @@ public class Yago1Converter extends Converter {
         this.kbPath = kbPath;
     }
 
+    public Yago1Converter(String kbPath, String outputKbName, String outputPath, ConverterOptions options) {
+        super(outputKbName, outputPath, options);
+        this.kbPath = kbPath;
+    }
+
     @Override
     protected Iterator<Triple> tripleIterator() throws ConverterException {
-        return new Yago1Iterator(kbPath);
+        return new Yago1Iterator(kbPath, options.threads, entityCacheFile(), metrics);
+    }
+
+    @Override
+    protected List<TripleSegment> tripleSegments() throws ConverterException {
+        return new Yago1Iterator(kbPath, options.threads, entityCacheFile(), metrics).getSegments();
+    }
+
+    @Override
+    protected long inputBytes() {
+        return Metrics.sizeOf(Paths.get(kbPath, Yago1Iterator.FACTS_DIR).toFile()) +
+                Metrics.sizeOf(Paths.get(kbPath, Yago1Iterator.ENTITIES_DIR).toFile());
+    }
+
+    /**
+     * Resolve the cache file of the entity index from the options.
+     * @return NULL if the cache is disabled
+     */
+    protected File entityCacheFile() {
+        if (null == options.entityCache) {
+            String kb_hash = Integer.toHexString(new File(kbPath).getAbsolutePath().hashCode());
+            return Paths.get(options.tmpDir, String.format(ENTITY_CACHE_FILE_NAME, kb_hash)).toFile();
+        }
+        return ConverterOptions.NO_CACHE.equals(options.entityCache) ? null : new File(options.entityCache);
     }
 
     @Override
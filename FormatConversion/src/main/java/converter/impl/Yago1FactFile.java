@@ -0,0 +1,134 @@
+package converter.impl;
+
+import converter.Triple;
+import converter.TripleSegment;
+import util.io.TsvTokenizer;
+import util.metrics.Metrics;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A fact file in YAGO 1. Each line in the file is "<id>\t<subject>\t<object>\t<confidence>", and all facts in the file
+ * share the predicate named by the parent directory. Only triples between two entities are converted.
+ *
+ * Lines are tokenized in place and the entity names are looked up as byte slices. Names of the triples are the interned
+ * strings of the entities, so no string is created for a line.
+ *
+ * If metrics are given, the lines filtered out of each pass over the file are counted by reason when the pass ends.
+ */
+public class Yago1FactFile implements TripleSegment {
+    /** Reasons of filtered lines in the metrics */
+    public static final String FILTER_MALFORMED = "malformed line";
+    public static final String FILTER_SUBJECT = "subject not an entity";
+    public static final String FILTER_OBJECT = "object not an entity";
+
+    protected final File file;
+    protected final String predicate;
+    protected final EntityIndex entities;
+    protected final Metrics metrics;
+
+    public Yago1FactFile(File file, String predicate, EntityIndex entities) {
+        this(file, predicate, entities, null);
+    }
+
+    /**
+     * @param metrics The metrics counting filtered lines. If NULL, lines are not counted
+     */
+    public Yago1FactFile(File file, String predicate, EntityIndex entities, Metrics metrics) {
+        this.file = file;
+        this.predicate = predicate;
+        this.entities = entities;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Iterator<Triple> tripleIterator() {
+        try {
+            return new FactIterator(new TsvTokenizer(new FileInputStream(file)));
+        } catch (IOException e) {
+            System.err.println("Failed to load triple file: " + file.getAbsolutePath());
+            e.printStackTrace();
+            return Collections.emptyIterator();
+        }
+    }
+
+    /**
+     * Iterate over the triples in the file. The file is closed once exhausted.
+     */
+    protected class FactIterator implements Iterator<Triple> {
+        protected TsvTokenizer tokenizer;
+        protected Triple nextTriple = null;
+        protected long malformedLines = 0;
+        protected long nonEntitySubjects = 0;
+        protected long nonEntityObjects = 0;
+
+        protected FactIterator(TsvTokenizer tokenizer) {
+            this.tokenizer = tokenizer;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (null != nextTriple) {
+                return true;
+            }
+            if (null == tokenizer) {
+                return false;
+            }
+            try {
+                while (tokenizer.nextLine()) {
+                    if (3 > tokenizer.fields()) {
+                        malformedLines++;
+                        continue;
+                    }
+                    byte[] buffer = tokenizer.buffer();
+                    long subj = entities.find(buffer, tokenizer.start(1), tokenizer.length(1));
+                    if (0 > subj) {
+                        nonEntitySubjects++;
+                        continue;
+                    }
+                    long obj = entities.find(buffer, tokenizer.start(2), tokenizer.length(2));
+                    if (0 > obj) {
+                        nonEntityObjects++;
+                    } else {
+                        /* Only convert triples between two entities */
+                        nextTriple = new Triple(
+                                entities.string(subj, buffer, tokenizer.start(1), tokenizer.length(1)), predicate,
+                                entities.string(obj, buffer, tokenizer.start(2), tokenizer.length(2))
+                        );
+                        return true;
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error occurred reading the file: " + file.getAbsolutePath());
+                e.printStackTrace();
+            }
+            try {
+                tokenizer.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            tokenizer = null;
+            if (null != metrics) {
+                metrics.addFiltered(predicate, FILTER_MALFORMED, malformedLines);
+                metrics.addFiltered(predicate, FILTER_SUBJECT, nonEntitySubjects);
+                metrics.addFiltered(predicate, FILTER_OBJECT, nonEntityObjects);
+            }
+            return false;
+        }
+
+        @Override
+        public Triple next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Triple triple = nextTriple;
+            nextTriple = null;
+            return triple;
+        }
+    }
+}
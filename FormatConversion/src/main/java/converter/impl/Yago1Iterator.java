@@ -3,15 +3,16 @@ package converter.impl;
 import converter.Converter;
 import converter.ConverterException;
 import converter.Triple;
+import converter.TripleSegment;
+import util.metrics.Metrics;
 
-import java.io.*;
+import java.io.File;
 import java.nio.file.Paths;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.*;
 
 /**
- * Iterator for YGAO-1 structure.
+ * Iterator for YGAO-1 structure. Triples are iterated fact file by fact file, and each fact file is a segment that can
+ * also be parsed independently.
  */
 public class Yago1Iterator implements Iterator<Triple> {
 
@@ -20,173 +21,115 @@ public class Yago1Iterator implements Iterator<Triple> {
     /** The directory of entities */
     protected static final String ENTITIES_DIR = "entities";
 
-    protected Set<String> entities = new HashSet<>();
-    protected File[] dirFiles;
-    protected int dirIdx;
-    protected File[] tripleFiles = new File[0];
-    protected int tripleFileIdx;
-    protected BufferedReader reader = null;
-    protected String predicate;
-    protected Triple nextTriple = null;
+    protected EntityIndex entities;
+    protected List<Yago1FactFile> factFiles = new ArrayList<>();
+    protected int totalRelations = 0;
+    protected int finishedRelations = 0;
+    protected int factFileIdx = 0;
+    protected Iterator<Triple> factIterator = null;
+    protected String predicate = null;
     protected long time_start;
 
     public Yago1Iterator(String kbPath) throws ConverterException {
+        this(kbPath, 1, null);
+    }
+
+    /**
+     * @param threads The number of threads loading entity files
+     * @param entityCacheFile The cache file of the entity index. If NULL, no cache is used
+     */
+    public Yago1Iterator(String kbPath, int threads, File entityCacheFile) throws ConverterException {
+        this(kbPath, threads, entityCacheFile, null);
+    }
+
+    /**
+     * @param metrics The metrics counting filtered lines of fact files. If NULL, lines are not counted
+     */
+    public Yago1Iterator(
+            String kbPath, int threads, File entityCacheFile, Metrics metrics
+    ) throws ConverterException {
         /* Load entities */
         File entity_dir_file = Paths.get(kbPath, ENTITIES_DIR).toFile();
         File[] entities_files = entity_dir_file.listFiles();
         if (null == entities_files) {
             throw new ConverterException("Cannot list entity files in dir: " + entity_dir_file.getAbsolutePath());
         }
-        for (File entity_file: entities_files) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(entity_file))) {
-                String line;
-                while (null != (line = reader.readLine())) {
-                    entities.add(line.split("\t")[0]);
-                }
-            } catch (IOException e) {
-                throw new ConverterException(e);
-            }
-        }
+        entities = EntityIndex.load(entities_files, entityCacheFile, threads);
+        System.out.printf("%d entities loaded (%d MB off-heap)\n", entities.size(), entities.memoryBytes() >> 20);
 
-        /* Load facts */
+        /* List fact files */
         File fact_dir_file = Paths.get(kbPath, FACTS_DIR).toFile();
-        this.dirFiles = fact_dir_file.listFiles();
-        if (null == this.dirFiles) {
+        File[] dir_files = fact_dir_file.listFiles();
+        if (null == dir_files) {
             throw new ConverterException("Cannot list fact files in dir: " + fact_dir_file.getAbsolutePath());
         }
-        for (dirIdx = 0; dirIdx < dirFiles.length; dirIdx++) {
-            /* Locate the first dir */
-            File dir_file = dirFiles[dirIdx];
-            predicate = dir_file.getName();
+        for (File dir_file: dir_files) {
+            String predicate = dir_file.getName();
             if (!dir_file.isDirectory() || Yago1Converter.NON_FACTUAL_PREDICATES.contains(predicate) ||
                     Converter.NON_FACTUAL_PREDICATES.contains(predicate)) {
                 continue;
             }
-            tripleFiles = dir_file.listFiles();
-            if (null == tripleFiles) {
+            totalRelations++;
+            File[] triple_files = dir_file.listFiles();
+            if (null == triple_files) {
                 System.err.println("Warning: Cannot list facts in path: " + dir_file.getAbsolutePath());
-                tripleFiles = new File[0];
+                continue;
+            }
+            for (File triple_file: triple_files) {
+                if (triple_file.isFile()) {
+                    factFiles.add(new Yago1FactFile(triple_file, predicate, entities, metrics));
+                }
             }
-            tripleFileIdx = 0;
-            time_start = System.currentTimeMillis();
-            break;
         }
-        dirIdx++;
+        time_start = System.currentTimeMillis();
+    }
+
+    /**
+     * Get the fact files as segments, in the order of iteration.
+     */
+    public List<TripleSegment> getSegments() {
+        return new ArrayList<>(factFiles);
     }
 
     @Override
     public boolean hasNext() {
-        /* Exhausting current triple file */
-        nextTriple = null;
-        if (null != reader) {
-            try {
-                while (null == nextTriple) {
-                    String line = reader.readLine();
-                    if (null == line) {
-                        reader.close();
-                        reader = null;
-                        break;
-                    } else {
-                        String[] components = line.split("\t");
-                        if (entities.contains(components[1]) && entities.contains(components[2])) {
-                            /* Only convert triples between two entities */
-                            nextTriple = new Triple(components[1], predicate, components[2]);
-                            return true;
-                        }
-                    }
-                }
-            } catch (IOException e) {
-                System.err.println("Error occurred reading the file: " + tripleFiles[tripleFileIdx].getAbsolutePath());
-                e.printStackTrace();
+        while (null == factIterator || !factIterator.hasNext()) {
+            if (factFiles.size() <= factFileIdx) {
+                finishRelation();
                 return false;
             }
-        }
 
-        /* Change triple file */
-        for (; tripleFileIdx < tripleFiles.length && null == nextTriple; tripleFileIdx++) {
-            File triple_file = tripleFiles[tripleFileIdx];
-            if (!triple_file.isFile()) {
-                continue;
-            }
-            try {
-                reader = new BufferedReader(new FileReader(triple_file));
-                while (null == nextTriple) {
-                    String line = reader.readLine();
-                    if (null == line) {
-                        reader.close();
-                        reader = null;
-                        break;
-                    } else {
-                        String[] components = line.split("\t");
-                        if (entities.contains(components[1]) && entities.contains(components[2])) {
-                            /* Only convert triples between two entities */
-                            nextTriple = new Triple(components[1], predicate, components[2]);
-                            tripleFileIdx++;
-                            return true;
-                        }
-                    }
-                }
-            } catch (IOException e) {
-                System.err.println("Failed to load triple file: " + triple_file.getAbsolutePath());
-                e.printStackTrace();
-                return false;
+            /* Change fact file */
+            Yago1FactFile fact_file = factFiles.get(factFileIdx);
+            factFileIdx++;
+            if (!fact_file.predicate.equals(predicate)) {
+                finishRelation();
+                predicate = fact_file.predicate;
             }
+            factIterator = fact_file.tripleIterator();
         }
+        return true;
+    }
 
-        /* Change dir file */
+    @Override
+    public Triple next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return factIterator.next();
+    }
+
+    protected void finishRelation() {
+        if (null == predicate) {
+            return;
+        }
+        finishedRelations++;
         long time_done = System.currentTimeMillis();
         System.out.printf(
-                "Relation '%s' loaded (%d ms, %d/%d finished)\n", dirFiles[dirIdx-1].getName(),
-                time_done - time_start, dirIdx, dirFiles.length
+                "Relation '%s' loaded (%d ms, %d/%d finished)\n", predicate,
+                time_done - time_start, finishedRelations, totalRelations
         );
         time_start = time_done;
-        for (; dirIdx < dirFiles.length && null == nextTriple; dirIdx++) {
-            File dir_file = dirFiles[dirIdx];
-            predicate = dir_file.getName();
-            if (!dir_file.isDirectory() || Yago1Converter.NON_FACTUAL_PREDICATES.contains(predicate) ||
-                    Converter.NON_FACTUAL_PREDICATES.contains(predicate)) {
-                continue;
-            }
-            tripleFiles = dir_file.listFiles();
-            if (null == tripleFiles) {
-                System.err.println("Warning: Cannot list facts in path: " + dir_file.getAbsolutePath());
-                tripleFiles = new File[0];
-            }
-            for (tripleFileIdx = 0; tripleFileIdx < tripleFiles.length && null == nextTriple; tripleFileIdx++) {
-                File triple_file = tripleFiles[tripleFileIdx];
-                if (!triple_file.isFile()) {
-                    continue;
-                }
-                try {
-                    reader = new BufferedReader(new FileReader(triple_file));
-                    while (null == nextTriple) {
-                        String line = reader.readLine();
-                        if (null == line) {
-                            reader.close();
-                            reader = null;
-                            break;
-                        } else {
-                            String[] components = line.split("\t");
-                            if (entities.contains(components[1]) && entities.contains(components[2])) {
-                                /* Only convert triples between two entities */
-                                nextTriple = new Triple(components[1], predicate, components[2]);
-                                tripleFileIdx++;
-                                dirIdx++;
-                                return true;
-                            }
-                        }
-                    }
-                } catch (IOException e) {
-                    System.err.println("Failed to load triple file: " + triple_file.getAbsolutePath());
-                    e.printStackTrace();
-                }
-            }
-        }
-        return false;
-    }
-
-    @Override
-    public Triple next() {
-        return nextTriple;
+        predicate = null;
     }
 }
@@ -0,0 +1,178 @@
+package sampler;
+
+import sinc2.kb.SimpleRelation;
+import util.concurrent.ForkJoinRanges;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The adjacency of constants in a KB of binary relations, in the compressed sparse row (CSR) format. Each row of a
+ * relation is an edge, identified by an edge id: the rows of relation i take ids from `relationStarts[i]`, in the order
+ * of the rows. The edges of node v are `edges[offsets[v]]` to `edges[offsets[v+1]-1]`, in the order of edge ids. An
+ * edge whose subject and object are the same node is listed twice in the node.
+ *
+ * Edges are not copied: the endpoints of an edge are read from the rows of the relation.
+ */
+public class CsrGraph {
+    /** The max number of rows or nodes processed by a fork-join task */
+    protected static final int GRAIN = 1 << 16;
+    protected static final VarHandle COUNTERS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    protected final int[][][] relationRows;
+    protected final int[] relationStarts;
+    protected final int[] offsets;
+    protected final int[] edges;
+
+    /**
+     * @param relations Binary relations, indexed by relation ids
+     * @param totalConstants The max numeration of constants
+     */
+    public CsrGraph(SimpleRelation[] relations, int totalConstants) {
+        this(relations, totalConstants, null);
+    }
+
+    /**
+     * Build the adjacency with fork-join. Degrees are counted by atomic increments over ranges of rows, and edges are
+     * placed at atomically decremented offsets and then sorted within each node, so the result is the same as the
+     * sequential build.
+     * @param relations Binary relations, indexed by relation ids
+     * @param totalConstants The max numeration of constants
+     * @param pool The pool of workers. If NULL, the adjacency is built in the calling thread
+     */
+    public CsrGraph(SimpleRelation[] relations, int totalConstants, ForkJoinPool pool) {
+        /* Collect rows */
+        relationRows = new int[relations.length][][];
+        relationStarts = new int[relations.length + 1];
+        long total_edges = 0;
+        for (int rel_id = 0; rel_id < relations.length; rel_id++) {
+            int[][] rows = new int[relations[rel_id].totalRows()][];
+            int row_idx = 0;
+            for (int[] row: relations[rel_id]) {
+                rows[row_idx++] = row;
+            }
+            relationRows[rel_id] = rows;
+            total_edges += rows.length;
+            if (Integer.MAX_VALUE / 2 < total_edges) {
+                throw new IllegalArgumentException("Too many edges: " + total_edges);
+            }
+            relationStarts[rel_id + 1] = (int) total_edges;
+        }
+
+        /* Count degrees. offsets[v] is first the degree of node v-1 */
+        offsets = new int[totalConstants + 2];
+        if (null == pool) {
+            for (int[][] rows: relationRows) {
+                for (int[] row: rows) {
+                    offsets[row[0] + 1]++;
+                    offsets[row[1] + 1]++;
+                }
+            }
+        } else {
+            ForkJoinRanges.forEach(pool, 0, (int) total_edges, GRAIN, (from, to) -> {
+                for (int edge = from, rel_id = relationOf(from); edge < to; edge++) {
+                    while (edge >= relationStarts[rel_id + 1]) {
+                        rel_id++;
+                    }
+                    int[] row = row(rel_id, edge);
+                    COUNTERS.getAndAdd(offsets, row[0] + 1, 1);
+                    COUNTERS.getAndAdd(offsets, row[1] + 1, 1);
+                }
+            });
+        }
+
+        /* Prefix sums: offsets[v+1] is the end of node v */
+        for (int v = 1; v < offsets.length; v++) {
+            offsets[v] += offsets[v - 1];
+        }
+
+        /* Fill edges, moving offsets[v+1] back to the start of node v */
+        edges = new int[offsets[offsets.length - 1]];
+        if (null == pool) {
+            /* In the reverse order, so the edges of each node are in the order of edge ids */
+            for (int rel_id = relationRows.length - 1; rel_id >= 0; rel_id--) {
+                int[][] rows = relationRows[rel_id];
+                for (int row_idx = rows.length - 1; row_idx >= 0; row_idx--) {
+                    int edge = relationStarts[rel_id] + row_idx;
+                    edges[--offsets[rows[row_idx][1] + 1]] = edge;
+                    edges[--offsets[rows[row_idx][0] + 1]] = edge;
+                }
+            }
+        } else {
+            ForkJoinRanges.forEach(pool, 0, (int) total_edges, GRAIN, (from, to) -> {
+                for (int edge = from, rel_id = relationOf(from); edge < to; edge++) {
+                    while (edge >= relationStarts[rel_id + 1]) {
+                        rel_id++;
+                    }
+                    int[] row = row(rel_id, edge);
+                    edges[(int) COUNTERS.getAndAdd(offsets, row[1] + 1, -1) - 1] = edge;
+                    edges[(int) COUNTERS.getAndAdd(offsets, row[0] + 1, -1) - 1] = edge;
+                }
+            });
+        }
+        System.arraycopy(offsets, 1, offsets, 0, offsets.length - 1);
+        offsets[offsets.length - 1] = edges.length;
+        if (null != pool) {
+            ForkJoinRanges.forEach(pool, 0, offsets.length - 1, GRAIN, (from, to) -> {
+                for (int node = from; node < to; node++) {
+                    Arrays.sort(edges, offsets[node], offsets[node + 1]);
+                }
+            });
+        }
+    }
+
+    /**
+     * The number of nodes, i.e., the max numeration plus one (numeration 0 is never used).
+     */
+    public int totalNodes() {
+        return offsets.length - 1;
+    }
+
+    public int totalEdges() {
+        return relationStarts[relationStarts.length - 1];
+    }
+
+    public int degree(int node) {
+        return offsets[node + 1] - offsets[node];
+    }
+
+    /**
+     * The index of the first edge of a node. The edges of the node are `edge(edgesStart(node))` to
+     * `edge(edgesEnd(node)-1)`.
+     */
+    public int edgesStart(int node) {
+        return offsets[node];
+    }
+
+    public int edgesEnd(int node) {
+        return offsets[node + 1];
+    }
+
+    /**
+     * The edge id at an index of the adjacency.
+     */
+    public int edge(int index) {
+        return edges[index];
+    }
+
+    public int relationOf(int edge) {
+        int idx = Arrays.binarySearch(relationStarts, edge);
+        if (0 > idx) {
+            return -idx - 2;
+        }
+        /* Skip empty relations starting at the same edge id */
+        while (relationStarts[idx + 1] == edge) {
+            idx++;
+        }
+        return idx;
+    }
+
+    /**
+     * The row of an edge in its relation.
+     */
+    public int[] row(int relation, int edge) {
+        return relationRows[relation][edge - relationStarts[relation]];
+    }
+}
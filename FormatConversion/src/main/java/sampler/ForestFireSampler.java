@@ -0,0 +1,399 @@
+package sampler;
+
+import sinc2.kb.SimpleKb;
+import sinc2.kb.SimpleRelation;
+import sinc2.sampling.Sampler;
+import sinc2.sampling.SamplingInfo;
+import sinc2.util.kb.NumeratedKb;
+import util.collection.LongArrayList;
+import util.collection.LongHashSet;
+import util.concurrent.ForkJoinRanges;
+import util.kb.KbFiles;
+import util.metrics.Metrics;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Sampling edges of KGs by forest-fire expansion. A number of walkers burn the graph independently: a walker starts
+ * from a random node, burns a geometrically distributed number of the edges of the node, and then burns the nodes at
+ * the other ends of those edges, in the order of burning. When no node is left to burn, the walker restarts from a new
+ * random node. If random restarts keep burning no new edge, the walker burns the next edge it has not burned yet, so it
+ * only stops when all edges are burned. Type values are never burned, so the walkers do not spread through types, but
+ * edges to type values can be sampled.
+ *
+ * Walkers run in rounds. In each round, every walker burns its share of the remaining budget, and the burned edges are
+ * then merged in the order of walkers until the budget is reached. Each walker has its own random generator split from
+ * the seed, so the sampled KB only depends on the seed and the number of walkers, not on the number of threads.
+ */
+public class ForestFireSampler extends Sampler {
+
+    public static final String SEED_OPTION = "--seed=";
+    public static final String WALKERS_OPTION = "--walkers=";
+    public static final String FORWARD_OPTION = "--forward=";
+    public static final int DEFAULT_WALKERS = 16;
+    /** The forward burning probability. A node burns `p/(1-p)` edges on average */
+    public static final double DEFAULT_FORWARD_PROBABILITY = 0.7;
+    /** The max number of edges burned from a node at a time */
+    protected static final int MAX_BURNS = 256;
+    /** If this many nodes in a row burn no new edge, a walker sweeps for unburned edges instead of restarting */
+    protected static final int MAX_IDLE_BURNS = 1024;
+
+    /**
+     * The state of a single walker. Nodes are queued when one of their edges is burned, and each node is queued at
+     * most once.
+     */
+    protected class Walker {
+        protected final SplittableRandom random;
+        protected final LongHashSet visitedNodes = new LongHashSet();
+        protected final LongHashSet burnedEdges = new LongHashSet();
+        protected int[] queue = new int[16];
+        protected int queueHead = 0;
+        protected int queueTail = 0;
+        protected int[] picked = new int[16];
+        /** The position of the sweep in the start nodes and the adjacency. Edges before it are all burned */
+        protected int sweepNode = 0;
+        protected int sweepIndex = 0;
+        protected boolean exhausted = false;
+
+        protected Walker(SplittableRandom random) {
+            this.random = random;
+        }
+
+        /**
+         * Burn at most `share` new edges.
+         * @return The ids of the newly burned edges, in the order of burning
+         */
+        protected LongArrayList burn(CsrGraph graph, int[] startNodes, int share) {
+            LongArrayList burned = new LongArrayList();
+            int idle_burns = 0;
+            while (burned.size() < share && !exhausted) {
+                int node;
+                if (queueHead < queueTail) {
+                    node = queue[queueHead++];
+                } else if (MAX_IDLE_BURNS > idle_burns) {
+                    /* Restart from a random node. A visited node may be burned again for other edges */
+                    queueHead = queueTail = 0;
+                    node = startNodes[random.nextInt(startNodes.length)];
+                    visitedNodes.add(node);
+                } else {
+                    /* Burn the next unburned edge and spread from the other end */
+                    queueHead = queueTail = 0;
+                    exhausted = !sweep(graph, startNodes, burned);
+                    continue;
+                }
+                int burned_before = burned.size();
+                burnNode(graph, node, share, burned);
+                idle_burns = (burned.size() == burned_before) ? idle_burns + 1 : 0;
+            }
+            return burned;
+        }
+
+        protected void burnNode(CsrGraph graph, int node, int share, LongArrayList burned) {
+            int start = graph.edgesStart(node);
+            int degree = graph.degree(node);
+            int burns = Math.min(Math.min(geometric(), degree), MAX_BURNS);
+            pickEdges(start, degree, burns);
+            for (int i = 0; i < burns && burned.size() < share; i++) {
+                burnEdge(graph, node, graph.edge(picked[i]), burned);
+            }
+        }
+
+        /**
+         * Burn the first edge after the sweep position that this walker has not burned. The start nodes are sorted, so
+         * the sweep moves forward in the adjacency and visits every edge at most once.
+         * @return Whether an edge is burned, i.e., false if all edges of the start nodes are burned
+         */
+        protected boolean sweep(CsrGraph graph, int[] startNodes, LongArrayList burned) {
+            for (; sweepNode < startNodes.length; sweepNode++) {
+                int node = startNodes[sweepNode];
+                sweepIndex = Math.max(sweepIndex, graph.edgesStart(node));
+                for (; sweepIndex < graph.edgesEnd(node); sweepIndex++) {
+                    if (burnEdge(graph, node, graph.edge(sweepIndex), burned)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Burn an edge of a node, and queue the node at the other end if it is not visited.
+         * @return Whether the edge is newly burned
+         */
+        protected boolean burnEdge(CsrGraph graph, int node, int edge, LongArrayList burned) {
+            if (!burnedEdges.add(edge)) {
+                return false;
+            }
+            burned.add(edge);
+            int[] row = graph.row(graph.relationOf(edge), edge);
+            int neighbour = (node == row[0]) ? row[1] : row[0];
+            if (!typeValues.get(neighbour) && visitedNodes.add(neighbour)) {
+                if (queueTail == queue.length) {
+                    queue = Arrays.copyOf(queue, queue.length * 2);
+                }
+                queue[queueTail++] = neighbour;
+            }
+            return true;
+        }
+
+        /**
+         * The number of edges to burn: `floor(log(U)/log(p))` follows the geometric distribution with mean `p/(1-p)`.
+         */
+        protected int geometric() {
+            double trials = Math.floor(Math.log(1.0 - random.nextDouble()) / Math.log(forwardProbability));
+            return (int) Math.min(trials, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Pick `burns` distinct indices in `[start, start+degree)` into `picked`, in a random order.
+         */
+        protected void pickEdges(int start, int degree, int burns) {
+            if (picked.length < Math.max(burns, Math.min(degree, 2 * MAX_BURNS))) {
+                picked = new int[Math.max(burns, Math.min(degree, 2 * MAX_BURNS))];
+            }
+            if (degree < 2 * burns) {
+                /* Partial shuffle of all indices */
+                for (int i = 0; i < degree; i++) {
+                    picked[i] = start + i;
+                }
+                for (int i = 0; i < burns; i++) {
+                    int j = i + random.nextInt(degree - i);
+                    int tmp = picked[i];
+                    picked[i] = picked[j];
+                    picked[j] = tmp;
+                }
+            } else {
+                /* Rejection of duplicates, as the picked indices are much fewer than the edges */
+                for (int i = 0; i < burns; i++) {
+                    int idx;
+                    boolean duplicated;
+                    do {
+                        idx = start + random.nextInt(degree);
+                        duplicated = false;
+                        for (int j = 0; j < i && !duplicated; j++) {
+                            duplicated = picked[j] == idx;
+                        }
+                    } while (duplicated);
+                    picked[i] = idx;
+                }
+            }
+        }
+    }
+
+    protected final BitSet typeValues;
+    protected final long seed;
+    /** Number of fork-join workers. If 1, sampling runs in the calling thread */
+    protected final int threads;
+    protected final int walkers;
+    protected final double forwardProbability;
+
+    public ForestFireSampler(BitSet typeValues, long seed) {
+        this(typeValues, seed, 1, DEFAULT_WALKERS, DEFAULT_FORWARD_PROBABILITY);
+    }
+
+    public ForestFireSampler(BitSet typeValues, long seed, int threads, int walkers, double forwardProbability) {
+        if (0 >= threads) {
+            throw new IllegalArgumentException("The number of threads should be positive: " + threads);
+        }
+        if (0 >= walkers) {
+            throw new IllegalArgumentException("The number of walkers should be positive: " + walkers);
+        }
+        if (0 >= forwardProbability || 1 <= forwardProbability) {
+            throw new IllegalArgumentException("The forward probability should be in (0, 1): " + forwardProbability);
+        }
+        this.typeValues = typeValues;
+        this.seed = seed;
+        this.threads = threads;
+        this.walkers = walkers;
+        this.forwardProbability = forwardProbability;
+    }
+
+    @Override
+    public SamplingInfo sample(SimpleKb originalKb, int budget, String sampledKbName) {
+        ForkJoinPool pool = (1 < threads) ?
+                new ForkJoinPool(threads, Metrics.forkJoinThreadFactory(), null, false) : null;
+        try {
+            return sample(originalKb, budget, sampledKbName, pool);
+        } finally {
+            if (null != pool) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    protected SamplingInfo sample(SimpleKb originalKb, int budget, String sampledKbName, ForkJoinPool pool) {
+        /* Build the adjacent list of each constant */
+        System.out.println("Building adjacent list ...");
+        long time_start = System.currentTimeMillis();
+        SimpleRelation[] relations = originalKb.getRelations();
+        String[] rel_names = new String[relations.length];
+        LongHashSet[] sampled_relations = new LongHashSet[relations.length];
+        for (int i = 0; i < relations.length; i++) {
+            rel_names[i] = relations[i].name;
+            sampled_relations[i] = new LongHashSet();
+        }
+        CsrGraph graph = new CsrGraph(relations, originalKb.totalConstants(), pool);
+        long time_adjacent_complete = System.currentTimeMillis();
+        System.out.printf("Done (%d s)\n", (time_adjacent_complete - time_start) / 1000);
+
+        /* Burn edges in rounds until the budget is reached or all walkers stop */
+        System.out.println("Burning ...");
+        int[] start_nodes = startNodes(graph);
+        LongHashSet sampled_edges = new LongHashSet();
+        int sampled_records = 0;
+        if (0 < start_nodes.length && 0 < budget) {
+            Walker[] walker_states = new Walker[walkers];
+            SplittableRandom random = new SplittableRandom(seed);
+            for (int i = 0; i < walkers; i++) {
+                walker_states[i] = new Walker(random.split());
+            }
+            LongArrayList[] burned = new LongArrayList[walkers];
+            int rounds = 0;
+            boolean all_exhausted = false;
+            while (sampled_records < budget && !all_exhausted) {
+                final int share = (budget - sampled_records + walkers - 1) / walkers;
+                ForkJoinRanges.forEach(pool, 0, walkers, 1, (from, to) -> {
+                    for (int i = from; i < to; i++) {
+                        burned[i] = walker_states[i].burn(graph, start_nodes, share);
+                    }
+                });
+                all_exhausted = true;
+                for (int i = 0; i < walkers; i++) {
+                    all_exhausted &= walker_states[i].exhausted;
+                    for (int j = 0; j < burned[i].size() && sampled_records < budget; j++) {
+                        int edge = (int) burned[i].get(j);
+                        if (sampled_edges.add(edge)) {
+                            int rel_id = graph.relationOf(edge);
+                            int[] row = graph.row(rel_id, edge);
+                            if (sampled_relations[rel_id].add(LongHashSet.pair(row[0], row[1]))) {
+                                sampled_records++;
+                            }
+                        }
+                    }
+                    burned[i] = null;
+                }
+                rounds++;
+            }
+            System.out.printf("%d records sampled in %d rounds\n", sampled_records, rounds);
+        }
+        long time_burned = System.currentTimeMillis();
+        System.out.printf("Done (%d s)\n", (time_burned - time_adjacent_complete) / 1000);
+
+        /* Format the sampled KB */
+        System.out.println("Reformatting sampled KB ...");
+        SamplingInfo ret = MajorNodeSampler.formatSampledKb(
+                sampledKbName, sampled_relations, rel_names, graph.totalNodes()
+        );
+        long time_formatted = System.currentTimeMillis();
+        System.out.printf("Done (%d s)\n", (time_formatted - time_burned) / 1000);
+        System.out.printf("Total Sampling Time: %d s\n", (time_formatted - time_start) / 1000);
+        return ret;
+    }
+
+    /**
+     * Nodes that walkers may start from: ones with edges that are not type values.
+     */
+    protected int[] startNodes(CsrGraph graph) {
+        int total = 0;
+        for (int node = 0; node < graph.totalNodes(); node++) {
+            if (0 < graph.degree(node) && !typeValues.get(node)) {
+                total++;
+            }
+        }
+        int[] nodes = new int[total];
+        int idx = 0;
+        for (int node = 0; node < graph.totalNodes(); node++) {
+            if (0 < graph.degree(node) && !typeValues.get(node)) {
+                nodes[idx++] = node;
+            }
+        }
+        return nodes;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (5 > args.length) {
+            System.out.println(
+                    "Usage: <Input Path> <Original KB Name> <Output Path> <Sampled KB Name> <Budget> [Options...]"
+            );
+            System.out.println("Options:");
+            System.out.println("  " + SEED_OPTION + "<n>     Seed of the random walkers (default 0)");
+            System.out.println("  " + MajorNodeSampler.THREADS_OPTION + "<n>  Number of fork-join workers (default 1)");
+            System.out.println(
+                    "  " + MajorNodeSampler.REL_FORMAT_OPTION +
+                            "<fmt>  Format of sampled relation files: 'raw' (default) or"
+            );
+            System.out.println("                      'packed', smaller but not read by SInC");
+            System.out.println("  " + WALKERS_OPTION + "<n>  Number of walkers (default " + DEFAULT_WALKERS + ")");
+            System.out.println(
+                    "  " + FORWARD_OPTION + "<p>  Forward burning probability (default " +
+                            DEFAULT_FORWARD_PROBABILITY + ")"
+            );
+            return;
+        }
+        final String input_path = args[0];
+        final String original_kb_name = args[1];
+        final String output_path = args[2];
+        final String sampled_kb_name = args[3];
+        final int budget = Integer.parseInt(args[4]);
+        long seed = 0;
+        int threads = 1;
+        int walkers = DEFAULT_WALKERS;
+        double forward_probability = DEFAULT_FORWARD_PROBABILITY;
+        boolean pack_relations = false;
+        for (int i = 5; i < args.length; i++) {
+            if (args[i].startsWith(SEED_OPTION)) {
+                seed = Long.parseLong(args[i].substring(SEED_OPTION.length()));
+            } else if (args[i].startsWith(MajorNodeSampler.THREADS_OPTION)) {
+                threads = Integer.parseInt(args[i].substring(MajorNodeSampler.THREADS_OPTION.length()));
+                if (0 >= threads) {
+                    System.out.println("The number of threads should be positive: " + args[i]);
+                    return;
+                }
+            } else if (args[i].startsWith(MajorNodeSampler.REL_FORMAT_OPTION)) {
+                pack_relations = KbFiles.parseRelationFormat(
+                        args[i].substring(MajorNodeSampler.REL_FORMAT_OPTION.length())
+                );
+            } else if (args[i].startsWith(WALKERS_OPTION)) {
+                walkers = Integer.parseInt(args[i].substring(WALKERS_OPTION.length()));
+            } else if (args[i].startsWith(FORWARD_OPTION)) {
+                forward_probability = Double.parseDouble(args[i].substring(FORWARD_OPTION.length()));
+            } else {
+                System.out.println("Unknown option: " + args[i]);
+                return;
+            }
+        }
+
+        long time_start = System.currentTimeMillis();
+        ForestFireSampler sampler = new ForestFireSampler(
+                MajorNodeSampler.loadTypeValues(original_kb_name, input_path), seed, threads, walkers,
+                forward_probability
+        );
+        Metrics metrics = new Metrics(ForestFireSampler.class.getSimpleName());
+        System.out.println("Loading original KB ...");
+        SimpleKb original_kb;
+        try (Metrics.Phase phase = metrics.phase("load")) {
+            original_kb = MajorNodeSampler.loadKb(original_kb_name, input_path);
+            phase.addItems(original_kb.totalRecords())
+                    .addBytesRead(Metrics.sizeOf(NumeratedKb.getKbPath(original_kb_name, input_path).toFile()));
+        }
+        long time_loaded = System.currentTimeMillis();
+        System.out.printf("Done (%d s)\n", (time_loaded - time_start) / 1000);
+        SamplingInfo sampled_info;
+        try (Metrics.Phase phase = metrics.phase("sample")) {
+            sampled_info = sampler.sample(original_kb, budget, sampled_kb_name);
+            phase.addItems(sampled_info.sampledKb.totalRecords());
+        }
+        long time_sampled = System.currentTimeMillis();
+        System.out.println("Dumping ...");
+        MajorNodeSampler.dumpSampledKb(
+                sampled_info, original_kb_name, input_path, output_path, sampled_kb_name, pack_relations, metrics
+        );
+        long time_done = System.currentTimeMillis();
+        System.out.printf("Done (%d s)\n", (time_done - time_sampled) / 1000);
+        System.out.printf("Total Time: %d s\n", (time_done - time_start) / 1000);
+    }
+}
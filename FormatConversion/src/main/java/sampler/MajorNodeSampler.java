@@ -1,96 +1,386 @@
 package sampler;
 
-import sinc2.common.Record;
 import sinc2.kb.SimpleKb;
 import sinc2.kb.SimpleRelation;
-import sinc2.sampling.Edge;
 import sinc2.sampling.Sampler;
 import sinc2.sampling.SamplingInfo;
-import sinc2.util.LittleEndianIntIO;
-import sinc2.util.io.IntWriter;
 import sinc2.util.kb.NumeratedKb;
-import sinc2.util.kb.NumerationMap;
+import util.collection.LongArrayList;
+import util.collection.LongHashSet;
+import util.concurrent.ForkJoinRanges;
+import util.io.IntFileWriter;
+import util.io.IntInput;
+import util.kb.KbFiles;
+import util.kb.MapIndex;
+import util.metrics.Metrics;
 
 import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntUnaryOperator;
 
 /**
  * Sampling edges of major nodes in KGs. Type nodes are not selected as major nodes.
+ *
+ * The sampled KB is formatted by `formatSampledKb()` of this class: records of each relation are sorted, so the output
+ * is reproducible. `Sampler.formatSampledKb()` wrote records in the iteration order of a `HashSet`, so the sampled
+ * records are the same as before, but their order in the files and the new numerations differ.
  */
 public class MajorNodeSampler extends Sampler {
 
     public static final String CONST_MAP_FILE_NAME = "ConstMap.dat";
+    public static final String STREAMING_OPTION = "--streaming";
+    public static final String THREADS_OPTION = "--threads=";
+    public static final String REL_FORMAT_OPTION = "--rel-format=";
+    /** The max number of rows processed by a fork-join task */
+    protected static final int ROW_GRAIN = 1 << 16;
+    protected static final VarHandle DEGREES = MethodHandles.arrayElementVarHandle(int[].class);
 
-    static class SimpleNode {
-        public final int num;
-        public final List<Edge> edges = new ArrayList<>();
+    protected final BitSet typeValues;
+    /** Number of fork-join workers. If 1, sampling runs in the calling thread */
+    protected final int threads;
 
-        public SimpleNode(int num) {
-            this.num = num;
-        }
+    public MajorNodeSampler(BitSet typeValues) {
+        this(typeValues, 1);
     }
 
-    protected final Set<Integer> typeValues;
-
-    public MajorNodeSampler(Set<Integer> typeValues) {
+    /**
+     * @throws IllegalArgumentException The number of threads is not positive
+     */
+    public MajorNodeSampler(BitSet typeValues, int threads) {
+        if (0 >= threads) {
+            throw new IllegalArgumentException("The number of threads should be positive: " + threads);
+        }
         this.typeValues = typeValues;
+        this.threads = threads;
+    }
+
+    /**
+     * @return A pool of `threads` workers, or NULL if sampling is sequential
+     */
+    protected ForkJoinPool newPool() {
+        return (1 < threads) ? new ForkJoinPool(threads, Metrics.forkJoinThreadFactory(), null, false) : null;
     }
 
     @Override
     public SamplingInfo sample(SimpleKb originalKb, int budget, String sampledKbName) {
+        ForkJoinPool pool = newPool();
+        try {
+            return sample(originalKb, budget, sampledKbName, pool);
+        } finally {
+            if (null != pool) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    protected SamplingInfo sample(SimpleKb originalKb, int budget, String sampledKbName, ForkJoinPool pool) {
         /* Build the adjacent list of each constant */
         System.out.println("Building adjacent list ...");
         long time_start = System.currentTimeMillis();
-        SimpleNode[] nodes = new SimpleNode[originalKb.totalConstants()+1];
-        for (int i = 0; i < nodes.length; i++) {
-            nodes[i] = new SimpleNode(i);
-        }
         SimpleRelation[] relations = originalKb.getRelations();
         String[] rel_names = new String[relations.length];
-        List<Set<Record>> sampled_relations = new ArrayList<>(relations.length);
+        LongHashSet[] sampled_relations = new LongHashSet[relations.length];
         for (int i = 0; i < relations.length; i++) {
-            SimpleRelation relation = relations[i];
-            rel_names[i] = relation.name;
-            sampled_relations.add(new HashSet<>());
-            for (int[] row: relation) {
-                Edge edge = new Edge(row[0], relation.id, row[1]);
-                nodes[row[0]].edges.add(edge);
-                nodes[row[1]].edges.add(edge);
-            }
+            rel_names[i] = relations[i].name;
+            sampled_relations[i] = new LongHashSet();
         }
+        CsrGraph graph = new CsrGraph(relations, originalKb.totalConstants(), pool);
         long time_adjacent_complete = System.currentTimeMillis();
         System.out.printf("Done (%d s)\n", (time_adjacent_complete - time_start) / 1000);
 
         /* Select major nodes, that is, ones with the largest degrees and the node is not a type entity */
         System.out.println("Selecting major nodes ...");
-        Arrays.sort(nodes, Comparator.comparingInt((SimpleNode n) -> n.edges.size()).reversed());
-        int sampled_edges = 0;
-        for (int i = 0; i < nodes.length && sampled_edges < budget; i++) {
-            SimpleNode node = nodes[i];
-            if (typeValues.contains(node.num)) {
+        /* Edges are collected by ranges of major nodes into buffers and then deduplicated */
+        int[] major_nodes = selectMajorNodes(graph.totalNodes(), graph::degree, budget);
+        LongArrayList[] sampled_edges = ForkJoinRanges.reduce(
+                pool, 0, major_nodes.length, Math.max(1, major_nodes.length / (threads * 8)),
+                (from, to) -> {
+                    LongArrayList[] buffers = newBuffers(relations.length);
+                    for (int i = from; i < to; i++) {
+                        int node = major_nodes[i];
+                        for (int idx = graph.edgesStart(node); idx < graph.edgesEnd(node); idx++) {
+                            int edge = graph.edge(idx);
+                            int rel_id = graph.relationOf(edge);
+                            int[] row = graph.row(rel_id, edge);
+                            buffers[rel_id].add(LongHashSet.pair(row[0], row[1]));
+                        }
+                    }
+                    return buffers;
+                }, MajorNodeSampler::mergeBuffers, newBuffers(relations.length)
+        );
+        for (int rel_id = 0; rel_id < relations.length; rel_id++) {
+            addAll(sampled_relations[rel_id], sampled_edges[rel_id]);
+            sampled_edges[rel_id] = null;
+        }
+        long time_selected = System.currentTimeMillis();
+        System.out.printf("Done (%d s)\n", (time_selected - time_adjacent_complete) / 1000);
+
+        /* Format the sampled KB */
+        System.out.println("Reformatting sampled KB ...");
+        SamplingInfo ret = formatSampledKb(sampledKbName, sampled_relations, rel_names, graph.totalNodes());
+        long time_formatted = System.currentTimeMillis();
+        System.out.printf("Done (%d s)\n", (time_formatted - time_selected) / 1000);
+        System.out.printf("Total Sampling Time: %d s\n", (time_formatted - time_start) / 1000);
+        return ret;
+    }
+
+    /**
+     * Select major nodes in the order of degrees (descending), and nodes of the same degree in the order of
+     * numerations, until the total degree of the selected nodes reaches the budget. Type values are not selected.
+     *
+     * Instead of sorting all nodes, a histogram of degrees finds the degree of the last selected node and how many
+     * nodes of that degree are selected. Only the selected nodes are then sorted.
+     * @param totalNodes The max numeration plus one
+     * @param degrees The degree of each node
+     * @return The selected nodes, in order
+     */
+    protected int[] selectMajorNodes(int totalNodes, IntUnaryOperator degrees, int budget) {
+        if (0 >= budget) {
+            return new int[0];
+        }
+        int max_degree = 0;
+        for (int node = 0; node < totalNodes; node++) {
+            if (!typeValues.get(node)) {
+                max_degree = Math.max(max_degree, degrees.applyAsInt(node));
+            }
+        }
+        int[] degree_counts = new int[max_degree + 1];
+        for (int node = 0; node < totalNodes; node++) {
+            if (!typeValues.get(node)) {
+                degree_counts[degrees.applyAsInt(node)]++;
+            }
+        }
+
+        /* Find the last degree. Nodes of larger degrees are all selected, and the first `last_degree_nodes` nodes of
+         * the last degree are selected. If the budget is never reached, all nodes of positive degrees are selected, as
+         * nodes of degree 0 sample nothing */
+        long sampled_edges = 0;
+        int last_degree = 0;
+        int last_degree_nodes = 0;
+        int total_selected = 0;
+        for (int degree = max_degree; degree > 0; degree--) {
+            long degree_edges = (long) degree * degree_counts[degree];
+            if (sampled_edges + degree_edges >= budget) {
+                last_degree = degree;
+                last_degree_nodes = (int) ((budget - sampled_edges + degree - 1) / degree);
+                total_selected += last_degree_nodes;
+                break;
+            }
+            sampled_edges += degree_edges;
+            total_selected += degree_counts[degree];
+        }
+
+        /* Collect and sort the selected nodes */
+        long[] node_keys = new long[total_selected];
+        int selected = 0;
+        for (int node = 0; node < totalNodes; node++) {
+            int degree = degrees.applyAsInt(node);
+            if (degree < last_degree || 0 == degree || typeValues.get(node)) {
                 continue;
             }
-            sampled_edges += node.edges.size();
-            for (Edge edge: node.edges) {
-                sampled_relations.get(edge.pred).add(new Record(new int[]{edge.subj, edge.obj}));
+            if (degree == last_degree) {
+                if (0 == last_degree_nodes) {
+                    continue;
+                }
+                last_degree_nodes--;
+            }
+            node_keys[selected] = ((long) (Integer.MAX_VALUE - degree) << Integer.SIZE) | node;
+            selected++;
+        }
+        Arrays.sort(node_keys);
+        int[] nodes = new int[node_keys.length];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = (int) node_keys[i];
+        }
+        return nodes;
+    }
+
+    /**
+     * Sample the KB on disk without loading it. The relation files are memory-mapped and read twice: the first pass
+     * counts the degree of each constant, and the second pass collects the edges of the selected major nodes. Memory is
+     * bounded by the number of constants and the sampled edges. The sampled KB is the same as `sample()`.
+     *
+     * With multiple threads, ranges of rows in each mapped chunk are processed by fork-join tasks: degrees are counted
+     * by atomic increments, and sampled edges are collected into per-task buffers.
+     */
+    public SamplingInfo sampleStreaming(
+            String kbName, String kbPath, int budget, String sampledKbName
+    ) throws IOException {
+        ForkJoinPool pool = newPool();
+        try {
+            return sampleStreaming(kbName, kbPath, budget, sampledKbName, pool);
+        } finally {
+            if (null != pool) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    protected SamplingInfo sampleStreaming(
+            String kbName, String kbPath, int budget, String sampledKbName, ForkJoinPool pool
+    ) throws IOException {
+        /* Count the degree of each constant */
+        System.out.println("Counting degrees ...");
+        long time_start = System.currentTimeMillis();
+        String kb_dir_path = NumeratedKb.getKbPath(kbName, kbPath).toString();
+        List<KbFiles.RelationInfo> relations = KbFiles.readRelationInfo(kbName, kbPath);
+        String[] rel_names = new String[relations.size()];
+        for (int rel_id = 0; rel_id < relations.size(); rel_id++) {
+            KbFiles.RelationInfo rel_info = relations.get(rel_id);
+            if (2 != rel_info.arity && 0 < rel_info.totalRecords) {
+                throw new IOException(String.format("Relation '%s' is not binary", rel_info.name));
+            }
+            rel_names[rel_id] = rel_info.name;
+        }
+        int[] degrees = new int[KbFiles.countConstants(kb_dir_path) + 1];
+        for (int rel_id = 0; rel_id < relations.size(); rel_id++) {
+            try (IntInput rel_file = KbFiles.openRelation(kb_dir_path, rel_id, 2)) {
+                IntBuffer chunk;
+                while (null != (chunk = rel_file.nextChunk())) {
+                    final IntBuffer ints = chunk;
+                    ForkJoinRanges.forEach(pool, 0, ints.limit(), ROW_GRAIN * 2, (from, to) -> {
+                        if (null == pool) {
+                            for (int i = from; i < to; i++) {
+                                degrees[ints.get(i)]++;
+                            }
+                        } else {
+                            for (int i = from; i < to; i++) {
+                                DEGREES.getAndAdd(degrees, ints.get(i), 1);
+                            }
+                        }
+                    });
+                }
+            }
+        }
+        long time_counted = System.currentTimeMillis();
+        System.out.printf("Done (%d s)\n", (time_counted - time_start) / 1000);
+
+        /* Select major nodes and collect their edges */
+        System.out.println("Selecting major nodes ...");
+        BitSet selected_nodes = new BitSet(degrees.length);
+        for (int node: selectMajorNodes(degrees.length, node -> degrees[node], budget)) {
+            selected_nodes.set(node);
+        }
+        LongHashSet[] sampled_relations = new LongHashSet[relations.size()];
+        for (int rel_id = 0; rel_id < relations.size(); rel_id++) {
+            sampled_relations[rel_id] = new LongHashSet();
+            try (IntInput rel_file = KbFiles.openRelation(kb_dir_path, rel_id, 2)) {
+                IntBuffer chunk;
+                while (null != (chunk = rel_file.nextChunk())) {
+                    final IntBuffer ints = chunk;
+                    LongArrayList sampled_edges = ForkJoinRanges.reduce(
+                            pool, 0, ints.limit() / 2, ROW_GRAIN, (from, to) -> {
+                                LongArrayList buffer = new LongArrayList();
+                                for (int row_idx = from; row_idx < to; row_idx++) {
+                                    int subj = ints.get(row_idx * 2);
+                                    int obj = ints.get(row_idx * 2 + 1);
+                                    if (selected_nodes.get(subj) || selected_nodes.get(obj)) {
+                                        buffer.add(LongHashSet.pair(subj, obj));
+                                    }
+                                }
+                                return buffer;
+                            }, (left, right) -> {
+                                left.addAll(right);
+                                return left;
+                            }, new LongArrayList()
+                    );
+                    addAll(sampled_relations[rel_id], sampled_edges);
+                }
             }
         }
         long time_selected = System.currentTimeMillis();
-        System.out.printf("Done (%d s)\n", (time_selected - time_adjacent_complete) / 1000);
+        System.out.printf("Done (%d s)\n", (time_selected - time_counted) / 1000);
 
         /* Format the sampled KB */
         System.out.println("Reformatting sampled KB ...");
-        SamplingInfo ret = formatSampledKb(sampledKbName, sampled_relations, rel_names);
+        SamplingInfo ret = formatSampledKb(sampledKbName, sampled_relations, rel_names, degrees.length);
         long time_formatted = System.currentTimeMillis();
         System.out.printf("Done (%d s)\n", (time_formatted - time_selected) / 1000);
         System.out.printf("Total Sampling Time: %d s\n", (time_formatted - time_start) / 1000);
         return ret;
     }
 
+    protected static LongArrayList[] newBuffers(int totalRelations) {
+        LongArrayList[] buffers = new LongArrayList[totalRelations];
+        for (int i = 0; i < totalRelations; i++) {
+            buffers[i] = new LongArrayList();
+        }
+        return buffers;
+    }
+
+    /**
+     * Append the buffers of the right range to those of the left range.
+     */
+    protected static LongArrayList[] mergeBuffers(LongArrayList[] left, LongArrayList[] right) {
+        for (int i = 0; i < left.length; i++) {
+            left[i].addAll(right[i]);
+        }
+        return left;
+    }
+
+    protected static void addAll(LongHashSet set, LongArrayList values) {
+        for (int i = 0; i < values.size(); i++) {
+            set.add(values.get(i));
+        }
+    }
+
+    /**
+     * Format the sampled records as a KB. Records of each relation are sorted by the arguments, and constants are
+     * numerated in the order of first occurrence in the sorted records, relations in the order of ids.
+     * @param sampledRelations Sampled records of each relation, encoded by `LongHashSet.pair()`
+     * @param totalNodes The max numeration of the original constants plus one
+     */
+    protected static SamplingInfo formatSampledKb(
+            String sampledKbName, LongHashSet[] sampledRelations, String[] relNames, int totalNodes
+    ) {
+        int[] old_2_new = new int[totalNodes];
+        int[] const_map = new int[totalNodes + 1];  // const_map[new_num] = old_num
+        int next_num = 1;
+        int[][][] relations = new int[sampledRelations.length][][];
+        for (int rel_id = 0; rel_id < relations.length; rel_id++) {
+            long[] records = sampledRelations[rel_id].toSortedArray();
+            int[][] rows = new int[records.length][];
+            for (int i = 0; i < records.length; i++) {
+                int[] row = new int[]{LongHashSet.first(records[i]), LongHashSet.second(records[i])};
+                for (int arg_idx = 0; arg_idx < row.length; arg_idx++) {
+                    int old_arg = row[arg_idx];
+                    if (0 == old_2_new[old_arg]) {
+                        old_2_new[old_arg] = next_num;
+                        const_map[next_num] = old_arg;
+                        next_num++;
+                    }
+                    row[arg_idx] = old_2_new[old_arg];
+                }
+                rows[i] = row;
+            }
+            relations[rel_id] = rows;
+        }
+        return new SamplingInfo(
+                new SimpleKb(sampledKbName, relations, relNames), Arrays.copyOf(const_map, next_num)
+        );
+    }
+
     public static void main(String[] args) throws IOException {
-        if (5 != args.length) {
-            System.out.println("Usage: <Input Path> <Original KB Name> <Output Path> <Sampled KB Name> <Budget>");
+        if (5 > args.length) {
+            System.out.println(
+                    "Usage: <Input Path> <Original KB Name> <Output Path> <Sampled KB Name> <Budget> [Options...]"
+            );
+            System.out.println("Options:");
+            System.out.println(
+                    "  " + STREAMING_OPTION + "    Sample from the relation files without loading the original KB"
+            );
+            System.out.println("  " + THREADS_OPTION + "<n>  Number of fork-join workers (default 1)");
+            System.out.println("  " + REL_FORMAT_OPTION + "<fmt>  Format of sampled relation files: 'raw' (default)");
+            System.out.println("                      or 'packed', smaller but not read by SInC");
             return;
         }
         final String input_path = args[0];
@@ -98,38 +388,139 @@ public class MajorNodeSampler extends Sampler {
         final String output_path = args[2];
         final String sampled_kb_name = args[3];
         final int budget = Integer.parseInt(args[4]);
+        boolean streaming = false;
+        int threads = 1;
+        boolean pack_relations = false;
+        for (int i = 5; i < args.length; i++) {
+            if (STREAMING_OPTION.equals(args[i])) {
+                streaming = true;
+            } else if (args[i].startsWith(THREADS_OPTION)) {
+                threads = Integer.parseInt(args[i].substring(THREADS_OPTION.length()));
+                if (0 >= threads) {
+                    System.out.println("The number of threads should be positive: " + args[i]);
+                    return;
+                }
+            } else if (args[i].startsWith(REL_FORMAT_OPTION)) {
+                pack_relations = KbFiles.parseRelationFormat(args[i].substring(REL_FORMAT_OPTION.length()));
+            } else {
+                System.out.println("Unknown option: " + args[i]);
+                return;
+            }
+        }
 
-        System.out.println("Loading original KB ...");
         long time_start = System.currentTimeMillis();
-        SimpleKb original_kb = new SimpleKb(original_kb_name, input_path);
-        long time_loaded = System.currentTimeMillis();
-        System.out.printf("Done (%d s)\n", (time_loaded - time_start) / 1000);
-        SamplingInfo sampled_info = new MajorNodeSampler(loadTypeValues(original_kb_name, input_path))
-                .sample(original_kb, budget, sampled_kb_name);
+        Metrics metrics = new Metrics(MajorNodeSampler.class.getSimpleName());
+        File input_dir = NumeratedKb.getKbPath(original_kb_name, input_path).toFile();
+        MajorNodeSampler sampler = new MajorNodeSampler(loadTypeValues(original_kb_name, input_path), threads);
+        SamplingInfo sampled_info;
+        if (streaming) {
+            try (Metrics.Phase phase = metrics.phase("sample")) {
+                sampled_info = sampler.sampleStreaming(original_kb_name, input_path, budget, sampled_kb_name);
+                phase.addItems(sampled_info.sampledKb.totalRecords()).addBytesRead(Metrics.sizeOf(input_dir));
+            }
+        } else {
+            System.out.println("Loading original KB ...");
+            SimpleKb original_kb;
+            try (Metrics.Phase phase = metrics.phase("load")) {
+                original_kb = loadKb(original_kb_name, input_path);
+                phase.addItems(original_kb.totalRecords()).addBytesRead(Metrics.sizeOf(input_dir));
+            }
+            long time_loaded = System.currentTimeMillis();
+            System.out.printf("Done (%d s)\n", (time_loaded - time_start) / 1000);
+            try (Metrics.Phase phase = metrics.phase("sample")) {
+                sampled_info = sampler.sample(original_kb, budget, sampled_kb_name);
+                phase.addItems(sampled_info.sampledKb.totalRecords());
+            }
+        }
         long time_sampled = System.currentTimeMillis();
         System.out.println("Dumping ...");
-        sampled_info.sampledKb.dump(
-                output_path, findNewMappings(
-                        original_kb_name, input_path, original_kb.totalConstants(), sampled_info.constMap
-                )
+        dumpSampledKb(
+                sampled_info, original_kb_name, input_path, output_path, sampled_kb_name, pack_relations, metrics
         );
-        IntWriter writer = new IntWriter(Paths.get(output_path, sampled_kb_name, CONST_MAP_FILE_NAME).toFile());
-        for (int i = 1; i < sampled_info.constMap.length; i++) {    // The first element is always 0, skip
-            writer.write(sampled_info.constMap[i]);
-        }
-        writer.close();
         long time_done = System.currentTimeMillis();
         System.out.printf("Done (%d s)\n", (time_done - time_sampled) / 1000);
         System.out.printf("Total Time: %d s\n", (time_done - time_start) / 1000);
     }
 
-    static protected Set<Integer> loadTypeValues(String kbName, String kbPath) {
+    /**
+     * Load a KB whose relations may be in the block-packed format. A KB of only raw relation files is loaded by
+     * `SimpleKb`.
+     */
+    static protected SimpleKb loadKb(String kbName, String kbPath) throws IOException {
+        String kb_dir_path = NumeratedKb.getKbPath(kbName, kbPath).toString();
+        List<KbFiles.RelationInfo> relations = KbFiles.readRelationInfo(kbName, kbPath);
+        boolean packed = false;
+        for (int rel_id = 0; rel_id < relations.size() && !packed; rel_id++) {
+            packed = KbFiles.packedRelFile(kb_dir_path, rel_id).exists();
+        }
+        if (!packed) {
+            return new SimpleKb(kbName, kbPath);
+        }
+        int[][][] rows = new int[relations.size()][][];
+        String[] rel_names = new String[relations.size()];
+        for (int rel_id = 0; rel_id < relations.size(); rel_id++) {
+            KbFiles.RelationInfo rel_info = relations.get(rel_id);
+            rows[rel_id] = KbFiles.readRows(kb_dir_path, rel_id, rel_info.arity, rel_info.totalRecords);
+            rel_names[rel_id] = rel_info.name;
+        }
+        return new SimpleKb(kbName, rows, rel_names);
+    }
+
+    /**
+     * Dump the sampled KB with the names of the original constants, and the map from new numerations to original ones
+     * (`CONST_MAP_FILE_NAME`).
+     * @param packRelations Whether the sampled relations are converted to the block-packed format
+     */
+    static protected void dumpSampledKb(
+            SamplingInfo sampledInfo, String originalKbName, String inputPath, String outputPath, String sampledKbName,
+            boolean packRelations
+    ) throws IOException {
+        dumpSampledKb(
+                sampledInfo, originalKbName, inputPath, outputPath, sampledKbName, packRelations,
+                new Metrics(MajorNodeSampler.class.getSimpleName())
+        );
+    }
+
+    /**
+     * Dump the sampled KB as above, and finish the metrics of the sampling with the sampled KB (see `Metrics`).
+     */
+    static protected void dumpSampledKb(
+            SamplingInfo sampledInfo, String originalKbName, String inputPath, String outputPath, String sampledKbName,
+            boolean packRelations, Metrics metrics
+    ) throws IOException {
+        File sampled_dir = Paths.get(outputPath, sampledKbName).toFile();
+        try (Metrics.Phase phase = metrics.phase("dump")) {
+            MapIndex.invalidate(sampled_dir.getPath());
+            sampledInfo.sampledKb.dump(
+                    outputPath, findNewMappings(originalKbName, inputPath, sampledInfo.constMap)
+            );
+            if (packRelations) {
+                KbFiles.packRelations(sampledKbName, outputPath);
+            }
+            File const_map_file = Paths.get(outputPath, sampledKbName, CONST_MAP_FILE_NAME).toFile();
+            try (IntFileWriter writer = new IntFileWriter(const_map_file)) {
+                /* The first element is always 0, skip */
+                writer.writeInts(sampledInfo.constMap, 1, Math.max(0, sampledInfo.constMap.length - 1));
+            }
+            phase.addItems(sampledInfo.sampledKb.totalRecords()).addBytesWritten(Metrics.sizeOf(sampled_dir));
+        }
+        metrics.setCounter("relations", sampledInfo.sampledKb.totalRelations());
+        metrics.setCounter("records", sampledInfo.sampledKb.totalRecords());
+        metrics.setCounter("constants", Math.max(0, sampledInfo.constMap.length - 1));
+        metrics.finish(sampled_dir);
+    }
+
+    static protected BitSet loadTypeValues(String kbName, String kbPath) {
         File type_value_file = Paths.get(kbPath, kbName, "TypeValues.dat").toFile();
-        Set<Integer> type_values = new HashSet<>();
-        try (FileInputStream fis = new FileInputStream(type_value_file)) {
-            byte[] buffer = new byte[Integer.BYTES];
-            while (Integer.BYTES == fis.read(buffer)) {
-                type_values.add(LittleEndianIntIO.byteArray2LeInt(buffer));
+        BitSet type_values = new BitSet();
+        try (FileChannel channel = FileChannel.open(type_value_file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            while (0 <= channel.read(buffer)) {
+                buffer.flip();
+                while (Integer.BYTES <= buffer.remaining()) {
+                    type_values.set(buffer.getInt());
+                }
+                buffer.compact();
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -137,34 +528,22 @@ public class MajorNodeSampler extends Sampler {
         return type_values;
     }
 
+    /**
+     * Find the original names of the sampled constants. Only the names in `constMap` are read from the map files,
+     * through the offset index of the original KB (see `MapIndex`).
+     * @param constMap `constMap[new_num]` is the original numeration
+     * @return The names indexed by the new numerations
+     */
     static protected String[] findNewMappings(
-            String originalKbName, String inputPath, int originalConstants, int[] constMap
+            String originalKbName, String inputPath, int[] constMap
     ) throws IOException {
-        /* Load original mappings */
-        String[] original_mapping = new String[originalConstants+1];
-        File kb_dir = NumeratedKb.getKbPath(originalKbName, inputPath).toFile();
-        File[] map_files = kb_dir.listFiles((dir, name) -> name.matches("map[0-9]+.tsv$"));
-        if (null != map_files) {
-            /* Sort the files in order */
-            String kb_path = kb_dir.getAbsolutePath();
-            int idx = 0;
-            for (int i = 0; i < map_files.length; i++) {
-                File map_file = Paths.get(kb_path, String.format("map%d.tsv", i+NumerationMap.MAP_FILE_NUMERATION_START)).toFile();
-                BufferedReader reader = new BufferedReader(new FileReader(map_file));
-                String line;
-                while (null != (line = reader.readLine())) {
-                    idx++;
-                    original_mapping[idx] = line;
-                }
-                reader.close();
-            }
-        }
-
-        /* Find new mapping */
-        String[] new_mapping = new String[constMap.length];
-        for (int i = 1; i < constMap.length; i++) {
-            new_mapping[i] = original_mapping[constMap[i]];
+        String kb_dir_path = NumeratedKb.getKbPath(originalKbName, inputPath).toString();
+        try (MapIndex index = MapIndex.open(kb_dir_path)) {
+            /* The first element is always 0, skip */
+            String[] names = index.names(Arrays.copyOfRange(constMap, 1, Math.max(1, constMap.length)));
+            String[] new_mapping = new String[constMap.length];
+            System.arraycopy(names, 0, new_mapping, 1, names.length);
+            return new_mapping;
         }
-        return new_mapping;
     }
 }
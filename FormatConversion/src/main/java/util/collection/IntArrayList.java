@@ -0,0 +1,77 @@
+package util.collection;
+
+import util.io.IntOutput;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A growable array of primitive int values, e.g., a column of a relation.
+ */
+public class IntArrayList {
+    protected int[] values;
+    protected int size = 0;
+
+    public IntArrayList() {
+        this(16);
+    }
+
+    public IntArrayList(int initialCapacity) {
+        values = new int[Math.max(1, initialCapacity)];
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, newCapacity(size + 1));
+        }
+        values[size++] = value;
+    }
+
+    protected int newCapacity(int minCapacity) {
+        long capacity = Math.max((long) values.length * 2, minCapacity);
+        if (Integer.MAX_VALUE - 8 < capacity) {
+            if (Integer.MAX_VALUE - 8 < minCapacity) {
+                throw new IllegalStateException("Too many values: " + minCapacity);
+            }
+            capacity = Integer.MAX_VALUE - 8;
+        }
+        return (int) capacity;
+    }
+
+    public int get(int index) {
+        return values[index];
+    }
+
+    public void set(int index, int value) {
+        values[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Replace each value `v` with `map[v]`.
+     */
+    public void remap(int[] map) {
+        remap(map, 0, size);
+    }
+
+    /**
+     * Replace each value `v` in [from, to) with `map[v]`. Disjoint ranges can be remapped concurrently.
+     */
+    public void remap(int[] map, int from, int to) {
+        int[] values = this.values;
+        for (int i = from; i < to; i++) {
+            values[i] = map[values[i]];
+        }
+    }
+
+    public void writeTo(IntOutput output) throws IOException {
+        output.writeInts(values, 0, size);
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,72 @@
+package util.collection;
+
+import java.util.Arrays;
+
+/**
+ * A growable array of primitive long values.
+ */
+public class LongArrayList {
+    protected long[] values;
+    protected int size = 0;
+
+    public LongArrayList() {
+        this(16);
+    }
+
+    public LongArrayList(int initialCapacity) {
+        values = new long[Math.max(1, initialCapacity)];
+    }
+
+    public void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, newCapacity(size + 1));
+        }
+        values[size++] = value;
+    }
+
+    public void addAll(LongArrayList other) {
+        if (size + other.size > values.length) {
+            values = Arrays.copyOf(values, newCapacity(size + other.size));
+        }
+        System.arraycopy(other.values, 0, values, size, other.size);
+        size += other.size;
+    }
+
+    protected int newCapacity(int minCapacity) {
+        long capacity = Math.max((long) values.length * 2, minCapacity);
+        if (Integer.MAX_VALUE - 8 < capacity) {
+            if (Integer.MAX_VALUE - 8 < minCapacity) {
+                throw new IllegalStateException("Too many values: " + minCapacity);
+            }
+            capacity = Integer.MAX_VALUE - 8;
+        }
+        return (int) capacity;
+    }
+
+    public long get(int index) {
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * The distinct values in ascending order.
+     */
+    public long[] toSortedUniqueArray() {
+        long[] sorted = toArray();
+        Arrays.sort(sorted);
+        int unique = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (0 == i || sorted[i] != sorted[unique - 1]) {
+                sorted[unique++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, unique);
+    }
+}
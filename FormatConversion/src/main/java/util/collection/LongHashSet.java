@@ -0,0 +1,146 @@
+package util.collection;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash set of primitive long values, with linear probing. The value 0 marks empty slots and is
+ * tracked separately.
+ *
+ * Pairs of ints, e.g., the arguments of binary records, can be encoded as longs with `pair()`.
+ */
+public class LongHashSet {
+    protected static final int INITIAL_CAPACITY = 16;
+    protected static final float LOAD_FACTOR = 0.6f;
+    public static final int MAX_CAPACITY = 1 << 30;
+
+    protected long[] table;
+    protected int size = 0;
+    protected boolean hasZero = false;
+
+    public LongHashSet() {
+        this(0);
+    }
+
+    /**
+     * @param expectedSize The expected number of values, used for the initial capacity
+     */
+    public LongHashSet(int expectedSize) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity * LOAD_FACTOR < expectedSize && capacity < MAX_CAPACITY) {
+            capacity *= 2;
+        }
+        table = new long[capacity];
+    }
+
+    /**
+     * Encode two ints as a long. The order of encoded longs is the lexicographical order of the pairs if the ints are
+     * non-negative.
+     */
+    public static long pair(int first, int second) {
+        return ((long) first << Integer.SIZE) | (second & 0xffffffffL);
+    }
+
+    public static int first(long pair) {
+        return (int) (pair >>> Integer.SIZE);
+    }
+
+    public static int second(long pair) {
+        return (int) pair;
+    }
+
+    protected static int slotOf(long value, int mask) {
+        long h = value * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * @return Whether the value is newly added
+     */
+    public boolean add(long value) {
+        if (0 == value) {
+            if (hasZero) {
+                return false;
+            }
+            hasZero = true;
+            size++;
+            return true;
+        }
+        int mask = table.length - 1;
+        int slot = slotOf(value, mask);
+        for (long entry; 0 != (entry = table[slot]); slot = (slot + 1) & mask) {
+            if (value == entry) {
+                return false;
+            }
+        }
+        table[slot] = value;
+        size++;
+        if (size > table.length * LOAD_FACTOR) {
+            rehash(table.length * 2);
+        }
+        return true;
+    }
+
+    public boolean contains(long value) {
+        if (0 == value) {
+            return hasZero;
+        }
+        int mask = table.length - 1;
+        for (int slot = slotOf(value, mask); ; slot = (slot + 1) & mask) {
+            long entry = table[slot];
+            if (0 == entry) {
+                return false;
+            }
+            if (value == entry) {
+                return true;
+            }
+        }
+    }
+
+    protected void rehash(int capacity) {
+        if (MAX_CAPACITY < capacity) {
+            throw new IllegalStateException("Too many values in a single set: " + size);
+        }
+        long[] new_table = new long[capacity];
+        int mask = capacity - 1;
+        for (long value: table) {
+            if (0 != value) {
+                int slot = slotOf(value, mask);
+                while (0 != new_table[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                new_table[slot] = value;
+            }
+        }
+        table = new_table;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The values in no particular order.
+     */
+    public long[] toArray() {
+        long[] values = new long[size];
+        int idx = 0;
+        if (hasZero) {
+            idx++;
+        }
+        for (long value: table) {
+            if (0 != value) {
+                values[idx++] = value;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * The values in ascending order.
+     */
+    public long[] toSortedArray() {
+        long[] values = toArray();
+        Arrays.sort(values);
+        return values;
+    }
+}
@@ -0,0 +1,427 @@
+package util.collection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A dictionary between names and integer ids (numerations), stored in large primitive arrays instead of `String` and
+ * `Integer` objects. Ids are positive, and 0 (`NO_ID`) stands for absent names.
+ *
+ * Memory layout:
+ *   - Pages: byte arrays holding the UTF-8 bytes of the names back to back. The address of a name is
+ *     (page index << PAGE_BITS) + offset in the page;
+ *   - Offsets: `addresses[id]` is the address of the name plus one (0 if the id is absent), and `lengths[id]` is the
+ *     number of bytes;
+ *   - Index: an open addressing table of long slots, where a non-empty slot is (id << 32) | (highest 32 bits of the
+ *     hash), so most mismatches are rejected without comparing bytes.
+ *
+ * The dictionary takes about 24 bytes per name plus the UTF-8 bytes. It is not thread-safe.
+ *
+ * Names given as strings are hashed and compared by encoding their chars on the fly, so looking up a string allocates
+ * nothing. Only new names are encoded into arrays.
+ */
+public class StringDictionary {
+    public static final int NO_ID = 0;
+    public static final int PAGE_BITS = 24;
+    public static final int MAX_PAGE_SIZE = 1 << PAGE_BITS;
+    public static final int MAX_CAPACITY = 1 << 30;
+    protected static final int FIRST_PAGE_SIZE = 1 << 12;
+    protected static final int INITIAL_CAPACITY = 1 << 10;
+    protected static final float LOAD_FACTOR = 0.7f;
+
+    protected byte[][] pages = new byte[0][];
+    protected int lastPageUsed = 0;
+    protected long[] addresses;
+    protected int[] lengths;
+    protected long[] table;
+    protected int size = 0;
+    protected int maxId = 0;
+    /** The number of UTF-8 bytes of the string last hashed by `hash(String)` */
+    protected int stringLength = 0;
+    /** The UTF-8 bytes of a non-ASCII char being hashed or compared */
+    protected final byte[] charBytes = new byte[4];
+
+    public StringDictionary() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize The expected number of names, used for the initial capacity
+     */
+    public StringDictionary(int expectedSize) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity * LOAD_FACTOR < expectedSize && capacity < MAX_CAPACITY) {
+            capacity *= 2;
+        }
+        table = new long[capacity];
+        addresses = new long[Math.max(expectedSize, INITIAL_CAPACITY) + 1];
+        lengths = new int[addresses.length];
+    }
+
+    protected static int tag(long hash) {
+        return (int) (hash >>> 32);
+    }
+
+    /**
+     * Encode the char at `idx`, or the surrogate pair starting there, to UTF-8 as `String.getBytes()` does.
+     * @return The number of bytes, where 4 bytes encode a surrogate pair, i.e., 2 chars
+     */
+    protected static int encodeChar(String name, int idx, byte[] out) {
+        char c = name.charAt(idx);
+        if (0x80 > c) {
+            out[0] = (byte) c;
+            return 1;
+        }
+        if (0x800 > c) {
+            out[0] = (byte) (0xc0 | (c >> 6));
+            out[1] = (byte) (0x80 | (c & 0x3f));
+            return 2;
+        }
+        if (Character.isSurrogate(c)) {
+            if (Character.isHighSurrogate(c) && idx + 1 < name.length() &&
+                    Character.isLowSurrogate(name.charAt(idx + 1))) {
+                int code_point = Character.toCodePoint(c, name.charAt(idx + 1));
+                out[0] = (byte) (0xf0 | (code_point >> 18));
+                out[1] = (byte) (0x80 | ((code_point >> 12) & 0x3f));
+                out[2] = (byte) (0x80 | ((code_point >> 6) & 0x3f));
+                out[3] = (byte) (0x80 | (code_point & 0x3f));
+                return 4;
+            }
+            /* Unpaired surrogates are replaced by '?' */
+            out[0] = '?';
+            return 1;
+        }
+        out[0] = (byte) (0xe0 | (c >> 12));
+        out[1] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        out[2] = (byte) (0x80 | (c & 0x3f));
+        return 3;
+    }
+
+    /**
+     * Compute `Utf8HashSet.hash()` of the UTF-8 bytes of a string without encoding it into an array. The number of
+     * bytes is stored in `stringLength`.
+     */
+    protected long hash(String name) {
+        long h = Utf8HashSet.FNV_OFFSET;
+        int length = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (0x80 > c) {
+                h = (h ^ c) * Utf8HashSet.FNV_PRIME;
+                length++;
+                continue;
+            }
+            int bytes = encodeChar(name, i, charBytes);
+            for (int j = 0; j < bytes; j++) {
+                h = (h ^ (charBytes[j] & 0xff)) * Utf8HashSet.FNV_PRIME;
+            }
+            length += bytes;
+            if (4 == bytes) {
+                i++;
+            }
+        }
+        stringLength = length;
+        return Utf8HashSet.mix(h);
+    }
+
+    /**
+     * Find the id of a name, without encoding it.
+     * @return The id, or `NO_ID` if the name is absent
+     */
+    public int find(String name) {
+        long entry = table[findSlot(hash(name), name)];
+        return (0 == entry) ? NO_ID : (int) (entry >>> 32);
+    }
+
+    /**
+     * Find the id of a name in UTF-8 bytes.
+     * @return The id, or `NO_ID` if the name is absent
+     */
+    public int find(byte[] bytes, int offset, int length) {
+        long hash = Utf8HashSet.hash(bytes, offset, length);
+        int mask = table.length - 1;
+        int tag = tag(hash);
+        for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            long entry = table[slot];
+            if (0 == entry) {
+                return NO_ID;
+            }
+            int id = (int) (entry >>> 32);
+            if (tag == (int) entry && matches(id, bytes, offset, length)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Add a name. The name is only encoded if it is new.
+     * @return The id of the name
+     */
+    public int add(String name) {
+        long hash = hash(name);
+        int slot = findSlot(hash, name);
+        long entry = table[slot];
+        if (0 != entry) {
+            return (int) (entry >>> 32);
+        }
+        int id = maxId + 1;
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        insert(slot, hash, id, bytes, 0, bytes.length);
+        return id;
+    }
+
+    /**
+     * Add a name in UTF-8 bytes. A new name is assigned the id next to the max id.
+     * @return The id of the name
+     */
+    public int add(byte[] bytes, int offset, int length) {
+        long hash = Utf8HashSet.hash(bytes, offset, length);
+        int slot = findSlot(hash, bytes, offset, length);
+        long entry = table[slot];
+        if (0 != entry) {
+            return (int) (entry >>> 32);
+        }
+        int id = maxId + 1;
+        insert(slot, hash, id, bytes, offset, length);
+        return id;
+    }
+
+    /**
+     * Add a name with an assigned id. Unlike `Map.put()`, an existing name is never remapped.
+     * @throws IllegalArgumentException The name or the id is already in the dictionary, or the id is not positive
+     */
+    public void put(byte[] bytes, int offset, int length, int id) {
+        if (NO_ID >= id) {
+            throw new IllegalArgumentException("Ids should be positive: " + id);
+        }
+        if (id < addresses.length && 0 != addresses[id]) {
+            throw new IllegalArgumentException("Duplicated id: " + id);
+        }
+        long hash = Utf8HashSet.hash(bytes, offset, length);
+        int slot = findSlot(hash, bytes, offset, length);
+        if (0 != table[slot]) {
+            throw new IllegalArgumentException(
+                    "Duplicated name: " + new String(bytes, offset, length, StandardCharsets.UTF_8)
+            );
+        }
+        insert(slot, hash, id, bytes, offset, length);
+    }
+
+    /**
+     * Find the slot of a name, or the empty slot where the name should be inserted.
+     */
+    protected int findSlot(long hash, byte[] bytes, int offset, int length) {
+        int mask = table.length - 1;
+        int tag = tag(hash);
+        int slot = (int) hash & mask;
+        for (long entry; 0 != (entry = table[slot]); slot = (slot + 1) & mask) {
+            if (tag == (int) entry && matches((int) (entry >>> 32), bytes, offset, length)) {
+                break;
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Find the slot of a name given as a string. `stringLength` should be set by `hash(name)`.
+     */
+    protected int findSlot(long hash, String name) {
+        int mask = table.length - 1;
+        int tag = tag(hash);
+        int slot = (int) hash & mask;
+        for (long entry; 0 != (entry = table[slot]); slot = (slot + 1) & mask) {
+            if (tag == (int) entry && matches((int) (entry >>> 32), name)) {
+                break;
+            }
+        }
+        return slot;
+    }
+
+    protected void insert(int slot, long hash, int id, byte[] bytes, int offset, int length) {
+        if (id >= addresses.length) {
+            int new_length = (int) Math.min(Math.max((long) addresses.length * 2, id + 1L), Integer.MAX_VALUE);
+            addresses = Arrays.copyOf(addresses, new_length);
+            lengths = Arrays.copyOf(lengths, new_length);
+        }
+        addresses[id] = append(bytes, offset, length) + 1;
+        lengths[id] = length;
+        table[slot] = ((long) id << 32) | (tag(hash) & 0xffffffffL);
+        size++;
+        maxId = Math.max(maxId, id);
+        if (size > table.length * LOAD_FACTOR) {
+            rehash(table.length * 2);
+        }
+    }
+
+    protected boolean matches(int id, byte[] bytes, int offset, int length) {
+        if (lengths[id] != length) {
+            return false;
+        }
+        long address = addresses[id] - 1;
+        int pos = (int) address & (MAX_PAGE_SIZE - 1);
+        return Arrays.equals(pages[(int) (address >>> PAGE_BITS)], pos, pos + length, bytes, offset, offset + length);
+    }
+
+    /**
+     * Compare a name with a string by encoding its chars on the fly. `stringLength` should be set by `hash(name)`.
+     */
+    protected boolean matches(int id, String name) {
+        if (lengths[id] != stringLength) {
+            return false;
+        }
+        long address = addresses[id] - 1;
+        byte[] page = pages[(int) (address >>> PAGE_BITS)];
+        int pos = (int) address & (MAX_PAGE_SIZE - 1);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (0x80 > c) {
+                if (c != page[pos++]) {
+                    return false;
+                }
+                continue;
+            }
+            int bytes = encodeChar(name, i, charBytes);
+            for (int j = 0; j < bytes; j++) {
+                if (charBytes[j] != page[pos++]) {
+                    return false;
+                }
+            }
+            if (4 == bytes) {
+                i++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Append the bytes of a name to the pages.
+     * @return The address of the name
+     */
+    protected long append(byte[] bytes, int offset, int length) {
+        byte[] last_page = (0 == pages.length) ? null : pages[pages.length - 1];
+        if (null == last_page || last_page.length - lastPageUsed < length) {
+            int page_size = (null == last_page) ? FIRST_PAGE_SIZE : Math.min(last_page.length * 2, MAX_PAGE_SIZE);
+            while (page_size < length && page_size < MAX_PAGE_SIZE) {
+                page_size *= 2;
+            }
+            if (page_size < length) {
+                throw new IllegalArgumentException("Name too long: " + length);
+            }
+            last_page = new byte[page_size];
+            pages = Arrays.copyOf(pages, pages.length + 1);
+            pages[pages.length - 1] = last_page;
+            lastPageUsed = 0;
+        }
+        long address = ((long) (pages.length - 1) << PAGE_BITS) + lastPageUsed;
+        System.arraycopy(bytes, offset, last_page, lastPageUsed, length);
+        lastPageUsed += length;
+        return address;
+    }
+
+    protected void rehash(int capacity) {
+        if (MAX_CAPACITY < capacity) {
+            throw new IllegalStateException("Too many names in the dictionary: " + size);
+        }
+        long[] new_table = new long[capacity];
+        int mask = capacity - 1;
+        for (int id = 1; id <= maxId; id++) {
+            if (0 == addresses[id]) {
+                continue;
+            }
+            long address = addresses[id] - 1;
+            int pos = (int) address & (MAX_PAGE_SIZE - 1);
+            long hash = Utf8HashSet.hash(pages[(int) (address >>> PAGE_BITS)], pos, lengths[id]);
+            int slot = (int) hash & mask;
+            while (0 != new_table[slot]) {
+                slot = (slot + 1) & mask;
+            }
+            new_table[slot] = ((long) id << 32) | (tag(hash) & 0xffffffffL);
+        }
+        table = new_table;
+    }
+
+    /**
+     * Change the ids of names. The bytes of the names are not moved.
+     * @param old2New `old2New[old_id]` is the new id. Names mapped to `NO_ID` are removed from the dictionary
+     */
+    public void renumber(int[] old2New) {
+        int new_max_id = 0;
+        for (int old_id = 1; old_id < old2New.length && old_id <= maxId; old_id++) {
+            if (0 != addresses[old_id]) {
+                new_max_id = Math.max(new_max_id, old2New[old_id]);
+            }
+        }
+        long[] new_addresses = new long[new_max_id + 1];
+        int[] new_lengths = new int[new_max_id + 1];
+        int new_size = 0;
+        for (int old_id = 1; old_id < old2New.length && old_id <= maxId; old_id++) {
+            int new_id = old2New[old_id];
+            if (0 == addresses[old_id] || NO_ID == new_id) {
+                continue;
+            }
+            if (0 != new_addresses[new_id]) {
+                throw new IllegalArgumentException("Duplicated new id: " + new_id);
+            }
+            new_addresses[new_id] = addresses[old_id];
+            new_lengths[new_id] = lengths[old_id];
+            new_size++;
+        }
+        addresses = new_addresses;
+        lengths = new_lengths;
+        size = new_size;
+        maxId = new_max_id;
+        rehash(table.length);
+    }
+
+    public boolean contains(int id) {
+        return NO_ID < id && id <= maxId && 0 != addresses[id];
+    }
+
+    /**
+     * Decode the name of an id.
+     * @return The name, or NULL if the id is absent
+     */
+    public String name(int id) {
+        if (!contains(id)) {
+            return null;
+        }
+        long address = addresses[id] - 1;
+        return new String(
+                pages[(int) (address >>> PAGE_BITS)], (int) address & (MAX_PAGE_SIZE - 1), lengths[id],
+                StandardCharsets.UTF_8
+        );
+    }
+
+    /**
+     * Write the UTF-8 bytes of the name of an id.
+     * @throws IllegalArgumentException The id is absent
+     */
+    public void writeName(int id, OutputStream out) throws IOException {
+        if (!contains(id)) {
+            throw new IllegalArgumentException("No name of id: " + id);
+        }
+        long address = addresses[id] - 1;
+        out.write(pages[(int) (address >>> PAGE_BITS)], (int) address & (MAX_PAGE_SIZE - 1), lengths[id]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int maxId() {
+        return maxId;
+    }
+
+    /**
+     * The number of bytes taken by the arrays of the dictionary.
+     */
+    public long memoryBytes() {
+        long bytes = (long) table.length * Long.BYTES + (long) addresses.length * (Long.BYTES + Integer.BYTES);
+        for (byte[] page: pages) {
+            bytes += page.length;
+        }
+        return bytes;
+    }
+}
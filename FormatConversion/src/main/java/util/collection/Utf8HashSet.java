@@ -0,0 +1,380 @@
+package util.collection;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An open addressing hash set of UTF-8 byte strings stored off-heap. Each member is assigned an ordinal in the order of
+ * insertion, and the Java string of a member is only decoded the first time it is requested.
+ *
+ * Memory layout:
+ *   - Arena: pages of direct byte buffers. A member is stored in one page as [ordinal: int][length: varint][bytes].
+ *     The address of a member is (page index << PAGE_BITS) + offset in the page.
+ *   - Table: a direct buffer of long slots. A non-empty slot is ((address + 1) << TAG_BITS) | tag, where the tag is 24
+ *     bits of the hash not used for locating the slot, so most mismatches are rejected without reading the arena.
+ *
+ * The set takes about 12 bytes per member plus the UTF-8 bytes. Hash values are 64-bit (see `hash()`): the lower bits
+ * locate the slots, and bits 32 to 55 are the tags. The highest bits are left for callers to shard members.
+ *
+ * Members should be added by a single thread (or under a lock). After that, `find()` and `string()` can be called
+ * concurrently.
+ *
+ * A set can be written to a file and memory-mapped back (see `write()` and `map()`). Mapped sets are read-only.
+ */
+public class Utf8HashSet {
+    public static final int PAGE_BITS = 26;
+    public static final int MAX_PAGE_SIZE = 1 << PAGE_BITS;
+    public static final int TAG_BITS = 24;
+    public static final int TAG_MASK = (1 << TAG_BITS) - 1;
+    public static final int MAX_CAPACITY = 1 << 27;
+    protected static final int FIRST_PAGE_SIZE = 1 << 16;
+    protected static final int INITIAL_CAPACITY = 1 << 10;
+    protected static final float LOAD_FACTOR = 0.7f;
+    protected static final int STRING_PAGE_BITS = 12;
+    /** Parameters of the FNV-1a hash */
+    protected static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    protected static final long FNV_PRIME = 0x100000001b3L;
+
+    protected final List<ByteBuffer> pages = new ArrayList<>();
+    protected ByteBuffer lastPage = null;
+    protected LongBuffer table;
+    protected int size = 0;
+    protected volatile String[][] stringPages = null;
+
+    public Utf8HashSet() {
+        table = allocateTable(INITIAL_CAPACITY);
+    }
+
+    protected Utf8HashSet(List<ByteBuffer> pages, LongBuffer table, int size) {
+        this.pages.addAll(pages);
+        this.table = table;
+        this.size = size;
+    }
+
+    protected static LongBuffer allocateTable(int capacity) {
+        return ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+    }
+
+    /**
+     * Hash a slice of bytes to 64 bits (FNV-1a with a final avalanche).
+     */
+    public static long hash(byte[] bytes, int offset, int length) {
+        long h = FNV_OFFSET;
+        for (int i = offset; i < offset + length; i++) {
+            h = (h ^ (bytes[i] & 0xff)) * FNV_PRIME;
+        }
+        return mix(h);
+    }
+
+    protected static long hash(ByteBuffer page, int offset, int length) {
+        long h = FNV_OFFSET;
+        for (int i = offset; i < offset + length; i++) {
+            h = (h ^ (page.get(i) & 0xff)) * FNV_PRIME;
+        }
+        return mix(h);
+    }
+
+    protected static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    protected static int tag(long hash) {
+        return (int) (hash >>> 32) & TAG_MASK;
+    }
+
+    public int find(byte[] bytes, int offset, int length) {
+        return find(hash(bytes, offset, length), bytes, offset, length);
+    }
+
+    /**
+     * Find the ordinal of a byte string.
+     * @param hash The hash value of the byte string, computed by `hash()`
+     * @return The ordinal, or -1 if the byte string is not a member
+     */
+    public int find(long hash, byte[] bytes, int offset, int length) {
+        int mask = table.capacity() - 1;
+        int tag = tag(hash);
+        for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            long entry = table.get(slot);
+            if (0 == entry) {
+                return -1;
+            }
+            if (tag == ((int) entry & TAG_MASK)) {
+                int ordinal = matches((entry >>> TAG_BITS) - 1, bytes, offset, length);
+                if (0 <= ordinal) {
+                    return ordinal;
+                }
+            }
+        }
+    }
+
+    public int add(byte[] bytes, int offset, int length) {
+        return add(hash(bytes, offset, length), bytes, offset, length);
+    }
+
+    /**
+     * Add a byte string to the set.
+     * @param hash The hash value of the byte string, computed by `hash()`
+     * @return The ordinal of the byte string
+     */
+    public int add(long hash, byte[] bytes, int offset, int length) {
+        int mask = table.capacity() - 1;
+        int tag = tag(hash);
+        int slot = (int) hash & mask;
+        for (long entry; 0 != (entry = table.get(slot)); slot = (slot + 1) & mask) {
+            if (tag == ((int) entry & TAG_MASK)) {
+                int ordinal = matches((entry >>> TAG_BITS) - 1, bytes, offset, length);
+                if (0 <= ordinal) {
+                    return ordinal;
+                }
+            }
+        }
+        int ordinal = size;
+        long address = append(ordinal, bytes, offset, length);
+        table.put(slot, ((address + 1) << TAG_BITS) | tag);
+        size++;
+        if (size > table.capacity() * LOAD_FACTOR) {
+            rehash(table.capacity() * 2);
+        }
+        return ordinal;
+    }
+
+    /**
+     * Check if the member at the address equals the byte string.
+     * @return The ordinal of the member if equal, -1 otherwise
+     */
+    protected int matches(long address, byte[] bytes, int offset, int length) {
+        ByteBuffer page = pages.get((int) (address >>> PAGE_BITS));
+        int pos = (int) address & (MAX_PAGE_SIZE - 1);
+        int ordinal = page.getInt(pos);
+        pos += Integer.BYTES;
+        int len = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = page.get(pos++);
+            len |= (b & 0x7f) << shift;
+            if (0 == (b & 0x80)) {
+                break;
+            }
+        }
+        if (len != length) {
+            return -1;
+        }
+        for (int i = 0; i < length; i++) {
+            if (page.get(pos + i) != bytes[offset + i]) {
+                return -1;
+            }
+        }
+        return ordinal;
+    }
+
+    /**
+     * Append a member to the arena.
+     * @return The address of the member
+     */
+    protected long append(int ordinal, byte[] bytes, int offset, int length) {
+        int entry_size = Integer.BYTES + 5 + length;
+        if (null == lastPage || lastPage.remaining() < entry_size) {
+            int page_size = (null == lastPage) ? FIRST_PAGE_SIZE : Math.min(lastPage.capacity() * 2, MAX_PAGE_SIZE);
+            while (page_size < entry_size && page_size < MAX_PAGE_SIZE) {
+                page_size *= 2;
+            }
+            if (page_size < entry_size) {
+                throw new IllegalArgumentException("Byte string too long: " + length);
+            }
+            lastPage = ByteBuffer.allocateDirect(page_size).order(ByteOrder.LITTLE_ENDIAN);
+            pages.add(lastPage);
+        }
+        long address = ((long) (pages.size() - 1) << PAGE_BITS) + lastPage.position();
+        lastPage.putInt(ordinal);
+        int len = length;
+        while (0x80 <= len) {
+            lastPage.put((byte) (len | 0x80));
+            len >>>= 7;
+        }
+        lastPage.put((byte) len);
+        lastPage.put(bytes, offset, length);
+        return address;
+    }
+
+    protected void rehash(int capacity) {
+        if (MAX_CAPACITY < capacity) {
+            throw new IllegalStateException("Too many members in a single set: " + size);
+        }
+        LongBuffer new_table = allocateTable(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < table.capacity(); i++) {
+            long entry = table.get(i);
+            if (0 == entry) {
+                continue;
+            }
+            long address = (entry >>> TAG_BITS) - 1;
+            ByteBuffer page = pages.get((int) (address >>> PAGE_BITS));
+            int pos = (int) address & (MAX_PAGE_SIZE - 1);
+            pos += Integer.BYTES;
+            int len = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = page.get(pos++);
+                len |= (b & 0x7f) << shift;
+                if (0 == (b & 0x80)) {
+                    break;
+                }
+            }
+            int slot = (int) hash(page, pos, len) & mask;
+            while (0 != new_table.get(slot)) {
+                slot = (slot + 1) & mask;
+            }
+            new_table.put(slot, entry);
+        }
+        table = new_table;
+    }
+
+    /**
+     * Get the string of a member. The string is decoded from the given bytes, which should equal the member, the first
+     * time it is requested.
+     */
+    public String string(int ordinal, byte[] bytes, int offset, int length) {
+        String[][] string_pages = stringPages;
+        if (null == string_pages) {
+            string_pages = initStringPages();
+        }
+        int page_idx = ordinal >>> STRING_PAGE_BITS;
+        String[] page = string_pages[page_idx];
+        if (null == page) {
+            page = initStringPage(string_pages, page_idx);
+        }
+        int idx = ordinal & ((1 << STRING_PAGE_BITS) - 1);
+        String s = page[idx];
+        if (null == s) {
+            s = new String(bytes, offset, length, StandardCharsets.UTF_8);
+            page[idx] = s;
+        }
+        return s;
+    }
+
+    protected synchronized String[][] initStringPages() {
+        if (null == stringPages) {
+            stringPages = new String[(size >>> STRING_PAGE_BITS) + 1][];
+        }
+        return stringPages;
+    }
+
+    protected synchronized String[] initStringPage(String[][] stringPages, int pageIdx) {
+        if (null == stringPages[pageIdx]) {
+            stringPages[pageIdx] = new String[1 << STRING_PAGE_BITS];
+        }
+        return stringPages[pageIdx];
+    }
+
+    /**
+     * Write the set to a channel at its current position. The format is:
+     *   [size: int][table capacity: int][#pages: int][used bytes of each page: int...][table: long...][pages...]
+     * All numbers are little-endian.
+     */
+    public void write(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate((3 + pages.size()) * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(size).putInt(table.capacity()).putInt(pages.size());
+        for (ByteBuffer page: pages) {
+            header.putInt(page.position());
+        }
+        header.flip();
+        writeFully(channel, header);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < table.capacity(); i++) {
+            if (!buffer.hasRemaining()) {
+                buffer.flip();
+                writeFully(channel, buffer);
+                buffer.clear();
+            }
+            buffer.putLong(table.get(i));
+        }
+        buffer.flip();
+        writeFully(channel, buffer);
+        for (ByteBuffer page: pages) {
+            ByteBuffer data = page.duplicate();
+            data.flip();
+            writeFully(channel, data);
+        }
+    }
+
+    protected static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * The number of bytes taken by `write()`.
+     */
+    public long serializedBytes() {
+        long bytes = (3L + pages.size()) * Integer.BYTES + (long) table.capacity() * Long.BYTES;
+        for (ByteBuffer page: pages) {
+            bytes += page.position();
+        }
+        return bytes;
+    }
+
+    /**
+     * Memory-map a set written by `write()`.
+     * @param offset The offset of the set in the file
+     * @return A read-only set
+     */
+    public static Utf8HashSet map(FileChannel channel, long offset) throws IOException {
+        ByteBuffer header = readFully(channel, offset, 3 * Integer.BYTES);
+        int size = header.getInt();
+        int capacity = header.getInt();
+        int total_pages = header.getInt();
+        offset += 3 * Integer.BYTES;
+        ByteBuffer page_lengths = readFully(channel, offset, total_pages * Integer.BYTES);
+        offset += (long) total_pages * Integer.BYTES;
+        LongBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) capacity * Long.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        offset += (long) capacity * Long.BYTES;
+        List<ByteBuffer> pages = new ArrayList<>(total_pages);
+        for (int i = 0; i < total_pages; i++) {
+            int length = page_lengths.getInt();
+            ByteBuffer page = channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+            page.position(length);
+            pages.add(page);
+            offset += length;
+        }
+        return new Utf8HashSet(pages, table, size);
+    }
+
+    protected static ByteBuffer readFully(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (0 > channel.read(buffer, offset + buffer.position())) {
+                throw new EOFException("Unexpected end of file at: " + (offset + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The number of off-heap bytes taken by the set.
+     */
+    public long memoryBytes() {
+        long bytes = (long) table.capacity() * Long.BYTES;
+        for (ByteBuffer page: pages) {
+            bytes += page.capacity();
+        }
+        return bytes;
+    }
+}
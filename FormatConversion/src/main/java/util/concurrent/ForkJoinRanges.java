@@ -0,0 +1,113 @@
+package util.concurrent;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+/**
+ * Run operations over ranges of indices with fork-join. A range is split in halves until it is no longer than the grain
+ * size, and the leaves are processed by the workers of the pool. If the pool is NULL, the whole range is processed in
+ * the calling thread as a single leaf.
+ */
+public class ForkJoinRanges {
+    /**
+     * An operation over the indices in [from, to).
+     */
+    public interface RangeAction {
+        void apply(int from, int to);
+    }
+
+    /**
+     * A function computing a result from the indices in [from, to).
+     */
+    public interface RangeFunction<T> {
+        T apply(int from, int to);
+    }
+
+    /**
+     * Apply an action to all indices in [from, to).
+     */
+    public static void forEach(ForkJoinPool pool, int from, int to, int grain, RangeAction action) {
+        if (from >= to) {
+            return;
+        }
+        if (null == pool) {
+            action.apply(from, to);
+        } else {
+            pool.invoke(new ActionTask(from, to, Math.max(1, grain), action));
+        }
+    }
+
+    /**
+     * Compute results of the leaf ranges of [from, to) and merge them. Results are always merged in the order of the
+     * ranges, i.e., `merge(left, right)`, so the merged result is deterministic if the function and the merge are.
+     * @param empty The result of an empty range
+     */
+    public static <T> T reduce(
+            ForkJoinPool pool, int from, int to, int grain, RangeFunction<T> function, BinaryOperator<T> merge, T empty
+    ) {
+        if (from >= to) {
+            return empty;
+        }
+        if (null == pool) {
+            return function.apply(from, to);
+        }
+        return pool.invoke(new FunctionTask<>(from, to, Math.max(1, grain), function, merge));
+    }
+
+    /** Tasks are never serialized, although fork-join tasks are `Serializable` */
+    @SuppressWarnings("serial")
+    protected static class ActionTask extends RecursiveAction {
+        final int from;
+        final int to;
+        final int grain;
+        final RangeAction action;
+
+        ActionTask(int from, int to, int grain, RangeAction action) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                action.apply(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ActionTask(from, mid, grain, action), new ActionTask(mid, to, grain, action));
+        }
+    }
+
+    @SuppressWarnings("serial")
+    protected static class FunctionTask<T> extends RecursiveTask<T> {
+        final int from;
+        final int to;
+        final int grain;
+        final RangeFunction<T> function;
+        final BinaryOperator<T> merge;
+
+        FunctionTask(int from, int to, int grain, RangeFunction<T> function, BinaryOperator<T> merge) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.function = function;
+            this.merge = merge;
+        }
+
+        @Override
+        protected T compute() {
+            if (to - from <= grain) {
+                return function.apply(from, to);
+            }
+            int mid = (from + to) >>> 1;
+            FunctionTask<T> right = new FunctionTask<>(mid, to, grain, function, merge);
+            right.fork();
+            T left_result = new FunctionTask<>(from, mid, grain, function, merge).compute();
+            return merge.apply(left_result, right.join());
+        }
+    }
+}
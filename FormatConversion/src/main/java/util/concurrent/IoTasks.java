@@ -0,0 +1,68 @@
+package util.concurrent;
+
+import util.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Run independent I/O operations, e.g., writing different files, with a fixed number of threads.
+ */
+public class IoTasks {
+    /**
+     * An I/O operation.
+     */
+    public interface IoTask {
+        void run() throws IOException;
+    }
+
+    /**
+     * Run all tasks and wait for them to finish. If not more than 1 thread is assigned, tasks run in order in the
+     * calling thread.
+     * @throws IOException The first failure of the tasks, in the order of the tasks
+     */
+    public static void runAll(int threads, List<IoTask> tasks) throws IOException {
+        if (1 >= threads || 1 >= tasks.size()) {
+            for (IoTask task: tasks) {
+                task.run();
+            }
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(threads, tasks.size()), Metrics.threadFactory()
+        );
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (IoTask task: tasks) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        task.run();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            }
+            for (Future<?> future: futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof UncheckedIOException) {
+                        throw ((UncheckedIOException) e.getCause()).getCause();
+                    }
+                    throw new IOException(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for I/O tasks", e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package util.io;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Split text files, plain or compressed, into byte ranges that can be decompressed and read independently, so a large
+ * dump is read by multiple threads. The ranges of a file are split at:
+ *   - Plain text: line boundaries;
+ *   - gzip: member boundaries. Blocks of BGZF files (e.g., written by `bgzip`) are found by the block sizes in their
+ *     headers. In other multi-member files (e.g., concatenated gzip files), member headers are searched for at most
+ *     `MAX_SCAN_BYTES` after each split point, and confirmed by inflating the member (see `GzipScanner`);
+ *   - bzip2: stream boundaries of multi-stream files (e.g., written by `pbzip2`). Stream headers are searched for at
+ *     most `MAX_SCAN_BYTES` after each split point, and the search stops at the first failure.
+ * A file compressed as a single gzip member or a single bzip2 stream is not split, and is not decompressed to find
+ * that out unless it contains a gzip header. A range cut in the middle of a gzip member fails when it is read, and one
+ * cut in the middle of a bzip2 stream fails the check of stream CRC.
+ */
+public class ArchiveSplitter {
+    public enum Compression {
+        NONE, GZIP, BZIP2
+    }
+
+    /** The max number of bytes scanned for a boundary after a split point */
+    public static final long MAX_SCAN_BYTES = 1 << 24;
+    protected static final int SCAN_BUFFER_SIZE = 1 << 16;
+    /** The max length of the headers checked when scanning */
+    protected static final int HEADER_BYTES = 18;
+    protected static final int BUFFER_SIZE = 1 << 16;
+    /** The magic of a bzip2 stream: "BZh", the block size, and the magic of the first block */
+    protected static final byte[] BZIP2_BLOCK_MAGIC = new byte[]{0x31, 0x41, 0x59, 0x26, 0x53, 0x59};
+
+    /**
+     * Detect the compression of a file by its magic bytes.
+     */
+    public static Compression detect(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(3);
+            read(channel, buffer, 0);
+            byte[] bytes = buffer.array();
+            if (2 <= buffer.position() && 0x1f == (bytes[0] & 0xff) && 0x8b == (bytes[1] & 0xff)) {
+                return Compression.GZIP;
+            }
+            if (3 == buffer.position() && 'B' == bytes[0] && 'Z' == bytes[1] && 'h' == bytes[2]) {
+                return Compression.BZIP2;
+            }
+            return Compression.NONE;
+        }
+    }
+
+    /**
+     * Open the decompressed bytes of a range returned by `split()`.
+     */
+    public static InputStream open(File file, Compression compression, long start, long end) throws IOException {
+        InputStream in = new RangeInputStream(file, start, end);
+        switch (compression) {
+            case GZIP:
+                return new GZIPInputStream(in, BUFFER_SIZE);
+            case BZIP2:
+                return new BZip2CompressorInputStream(new BufferedInputStream(in, BUFFER_SIZE), true);
+            default:
+                return in;
+        }
+    }
+
+    /**
+     * Split a file into at most `parts` ranges of about the same size.
+     * @return The boundaries of the ranges: [0, b1, b2, ..., file size]
+     */
+    public static long[] split(File file, Compression compression, int parts) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            return split(file, compression, parts, inflater);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Split a file, with the candidate gzip members inflated by `inflater`.
+     */
+    protected static long[] split(File file, Compression compression, int parts, Inflater inflater) throws IOException {
+        long size = file.length();
+        if (1 >= parts || 0 == size) {
+            return new long[]{0, size};
+        }
+        long[] boundaries = new long[parts + 1];
+        int total_boundaries = 1;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (Compression.GZIP == compression && 0 < bgzfBlockSize(channel, 0)) {
+                /* Walk the chain of blocks until all boundaries are found */
+                for (long position = 0; position < size && total_boundaries < parts; ) {
+                    if (0 < position && position >= size * total_boundaries / parts) {
+                        boundaries[total_boundaries++] = position;
+                    }
+                    int block_size = bgzfBlockSize(channel, position);
+                    if (0 >= block_size) {
+                        break;  // Not a BGZF block, the rest of the file is a single range
+                    }
+                    position += block_size;
+                }
+            } else {
+                GzipScanner scanner = (Compression.GZIP == compression) ? new GzipScanner(channel, inflater) : null;
+                for (int part = 1; part < parts; part++) {
+                    long from = Math.max(size * part / parts, boundaries[total_boundaries - 1] + 1);
+                    long boundary;
+                    switch (compression) {
+                        case GZIP:
+                            boundary = scanner.findMember(from);
+                            break;
+                        case BZIP2:
+                            boundary = findBzip2Stream(channel, from);
+                            break;
+                        default:
+                            boundary = nextLine(channel, from - 1);
+                    }
+                    if (0 > boundary || boundary >= size) {
+                        break;
+                    }
+                    boundaries[total_boundaries++] = boundary;
+                }
+            }
+        }
+        boundaries[total_boundaries++] = size;
+        return Arrays.copyOf(boundaries, total_boundaries);
+    }
+
+    /**
+     * Read bytes at a position until the buffer is full or the end of the file.
+     */
+    protected static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (0 > read) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return The start of the line after the first '\n' from `from`, or the file size if there is none
+     */
+    protected static long nextLine(FileChannel channel, long from) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long size = channel.size();
+        for (long base = from; base < size; base += buffer.position()) {
+            buffer.clear();
+            read(channel, buffer, base);
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < buffer.position(); i++) {
+                if ('\n' == bytes[i]) {
+                    return base + i + 1;
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return The size of the BGZF block at the position, or 0 if it is not a BGZF block
+     */
+    protected static int bgzfBlockSize(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES);
+        read(channel, buffer, position);
+        byte[] h = buffer.array();
+        if (HEADER_BYTES != buffer.position() || 0x1f != (h[0] & 0xff) || 0x8b != (h[1] & 0xff) || 8 != h[2] ||
+                0 == (h[3] & 4) || 6 > uint16(h, 10) || 'B' != h[12] || 'C' != h[13] ||
+                2 != uint16(h, 14)) {
+            return 0;
+        }
+        return uint16(h, 16) + 1;
+    }
+
+    /**
+     * Decode a little-endian unsigned short, as in gzip headers.
+     */
+    protected static int uint16(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+    }
+
+    /**
+     * Find the first bzip2 stream from a position, within `MAX_SCAN_BYTES`.
+     * @return The position of the stream header, or -1 if not found
+     */
+    protected static long findBzip2Stream(FileChannel channel, long from) throws IOException {
+        long limit = Math.min(channel.size(), from + MAX_SCAN_BYTES);
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE + HEADER_BYTES);
+        for (long base = from; base < limit; base += SCAN_BUFFER_SIZE) {
+            buffer.clear();
+            read(channel, buffer, base);
+            byte[] bytes = buffer.array();
+            int available = buffer.position();
+            for (int i = 0; i < SCAN_BUFFER_SIZE && base + i < limit; i++) {
+                if (isBzip2Header(bytes, i, available)) {
+                    return base + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    protected static boolean isBzip2Header(byte[] bytes, int offset, int available) {
+        if (offset + 4 + BZIP2_BLOCK_MAGIC.length > available || 'B' != bytes[offset] || 'Z' != bytes[offset + 1] ||
+                'h' != bytes[offset + 2] || '1' > bytes[offset + 3] || '9' < bytes[offset + 3]) {
+            return false;
+        }
+        return Arrays.equals(
+                bytes, offset + 4, offset + 4 + BZIP2_BLOCK_MAGIC.length, BZIP2_BLOCK_MAGIC, 0, BZIP2_BLOCK_MAGIC.length
+        );
+    }
+
+    /**
+     * Find gzip members by their headers. A header is confirmed as a member if the member is inflated with at most
+     * `MAX_SCAN_BYTES` of input, matches its trailer (CRC32 and size), and is followed by another member header or the
+     * end of the file. So headers in the data of a member, e.g., of a gzip file stored in it, are not taken as members,
+     * and members longer than `MAX_SCAN_BYTES` are never split points.
+     */
+    protected static class GzipScanner {
+        protected final FileChannel channel;
+        protected final Inflater inflater;
+        protected final CRC32 crc = new CRC32();
+        protected final ByteBuffer scan = ByteBuffer.allocate(SCAN_BUFFER_SIZE + 2);
+        protected final ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+        protected final byte[] output = new byte[BUFFER_SIZE];
+
+        protected GzipScanner(FileChannel channel, Inflater inflater) {
+            this.channel = channel;
+            this.inflater = inflater;
+        }
+
+        /**
+         * Find the first member from a position, within `MAX_SCAN_BYTES`.
+         * @return The position of the member, or -1 if not found
+         */
+        protected long findMember(long from) throws IOException {
+            long limit = Math.min(channel.size(), from + MAX_SCAN_BYTES);
+            for (long base = from; base < limit; base += SCAN_BUFFER_SIZE) {
+                scan.clear();
+                read(channel, scan, base);
+                byte[] bytes = scan.array();
+                int available = scan.position();
+                for (int i = 0; i < SCAN_BUFFER_SIZE && base + i < limit && i + 3 <= available; i++) {
+                    if (0x1f == (bytes[i] & 0xff) && 0x8b == (bytes[i + 1] & 0xff) && 8 == bytes[i + 2] &&
+                            0 < memberSize(base + i)) {
+                        return base + i;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return The size of the member at the position, including the header and the trailer, or 0 if it is not a
+         *         confirmed member
+         */
+        protected long memberSize(long position) throws IOException {
+            long offset = headerEnd(position);
+            if (0 > offset) {
+                return 0;
+            }
+            long input_limit = offset + MAX_SCAN_BYTES;
+            inflater.reset();
+            crc.reset();
+            long inflated = 0;
+            try {
+                while (!inflater.finished()) {
+                    if (inflater.needsInput()) {
+                        if (offset >= input_limit) {
+                            return 0;
+                        }
+                        input.clear();
+                        read(channel, input, offset);
+                        if (0 == input.position()) {
+                            return 0;
+                        }
+                        inflater.setInput(input.array(), 0, input.position());
+                        offset += input.position();
+                    }
+                    int length = inflater.inflate(output);
+                    if (0 == length && inflater.needsDictionary()) {
+                        return 0;
+                    }
+                    crc.update(output, 0, length);
+                    inflated += length;
+                }
+            } catch (DataFormatException e) {
+                return 0;
+            }
+            long trailer_start = offset - inflater.getRemaining();
+            ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            read(channel, trailer, trailer_start);
+            if (8 != trailer.position() || (int) crc.getValue() != trailer.getInt(0) ||
+                    (int) inflated != trailer.getInt(4)) {
+                return 0;
+            }
+            long end = trailer_start + 8;
+            if (end < channel.size() && 0 > headerEnd(end)) {
+                return 0;
+            }
+            return end - position;
+        }
+
+        /**
+         * @return The end of the member header at the position, or -1 if it is not a gzip header
+         */
+        protected long headerEnd(long position) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(12);
+            read(channel, buffer, position);
+            byte[] h = buffer.array();
+            if (10 > buffer.position() || 0x1f != (h[0] & 0xff) || 0x8b != (h[1] & 0xff) || 8 != h[2] ||
+                    0 != (h[3] & 0xe0)) {
+                return -1;
+            }
+            int flags = h[3];
+            long offset = position + 10;
+            if (0 != (flags & 4)) { // FEXTRA
+                if (12 != buffer.position()) {
+                    return -1;
+                }
+                offset += 2 + uint16(h, 10);
+            }
+            for (int flag: new int[]{8, 16}) {  // FNAME, FCOMMENT
+                if (0 != (flags & flag)) {
+                    offset = nextZero(offset);
+                    if (0 > offset) {
+                        return -1;
+                    }
+                }
+            }
+            if (0 != (flags & 2)) { // FHCRC
+                offset += 2;
+            }
+            return offset;
+        }
+
+        /**
+         * @return The position after the first zero byte from `from`, or -1 if there is none
+         */
+        protected long nextZero(long from) throws IOException {
+            long size = channel.size();
+            for (long base = from; base < size; base += input.position()) {
+                input.clear();
+                read(channel, input, base);
+                byte[] bytes = input.array();
+                for (int i = 0; i < input.position(); i++) {
+                    if (0 == bytes[i]) {
+                        return base + i + 1;
+                    }
+                }
+            }
+            return -1;
+        }
+    }
+}
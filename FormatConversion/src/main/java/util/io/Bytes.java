@@ -0,0 +1,28 @@
+package util.io;
+
+/**
+ * Encode and decode big-endian numbers in byte arrays, e.g., the binary records sorted by `ExternalSorter`.
+ * Big-endian numbers of the same sign compare the same as their unsigned bytes.
+ */
+public class Bytes {
+    public static void putInt(byte[] bytes, int offset, int i) {
+        bytes[offset] = (byte) (i >>> 24);
+        bytes[offset + 1] = (byte) (i >>> 16);
+        bytes[offset + 2] = (byte) (i >>> 8);
+        bytes[offset + 3] = (byte) i;
+    }
+
+    public static int getInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16 | (bytes[offset + 2] & 0xff) << 8 |
+                (bytes[offset + 3] & 0xff);
+    }
+
+    public static void putLong(byte[] bytes, int offset, long l) {
+        putInt(bytes, offset, (int) (l >>> 32));
+        putInt(bytes, offset + 4, (int) l);
+    }
+
+    public static long getLong(byte[] bytes, int offset) {
+        return ((long) getInt(bytes, offset) << 32) | (getInt(bytes, offset + 4) & 0xffffffffL);
+    }
+}
@@ -0,0 +1,326 @@
+package util.io;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.BiPredicate;
+
+/**
+ * Sort binary records that may not fit in memory. Records are buffered until the memory budget is used up, and then
+ * sorted and spilled to a run file in the temporary directory. The sorted records are read by merging all runs. If no
+ * run has been spilled, records are sorted in memory without touching the disk. If there are more than `MAX_FAN_IN`
+ * runs, groups of runs are merged into longer runs first, so at most `MAX_FAN_IN` run files are open at a time.
+ *
+ * The memory usage of a buffered record is estimated as its length plus `RECORD_OVERHEAD`. When merging, the buffers
+ * of the open runs share the same budget. Records that compare equal are read in the order they were added.
+ *
+ * Duplicated records may be removed in flight: each run is deduplicated when it is sorted, before it is spilled, so
+ * repeated records take no disk space, and the remaining duplicates across runs are removed when merging. Only the
+ * first record in the order of a group of duplicates is kept, so duplicates should be adjacent in the order.
+ */
+public class ExternalSorter implements Closeable {
+    /** Estimated heap overhead of a buffered record: array header, reference and padding */
+    public static final int RECORD_OVERHEAD = 32;
+    /** The max size of the buffer of each run when merging */
+    protected static final int MAX_MERGE_BUFFER_SIZE = 1 << 16;
+    protected static final int MIN_MERGE_BUFFER_SIZE = 1 << 12;
+    /** The max number of runs merged at a time */
+    public static final int MAX_FAN_IN = 64;
+
+    protected final Comparator<byte[]> comparator;
+    /** Whether a record duplicates the last kept record in the order. NULL if duplicates are kept */
+    protected final BiPredicate<byte[], byte[]> duplicate;
+    protected final long memoryBudget;
+    protected final File tmpDir;
+    protected final List<File> runs = new ArrayList<>();
+    protected List<byte[]> buffer = new ArrayList<>();
+    protected long bufferedBytes = 0;
+    protected long totalRecords = 0;
+    protected long removedRecords = 0;
+
+    /**
+     * @param comparator The order of records
+     * @param memoryBudget The max number of bytes buffered in memory
+     * @param tmpDir The directory of run files
+     */
+    public ExternalSorter(Comparator<byte[]> comparator, long memoryBudget, File tmpDir) {
+        this(comparator, null, memoryBudget, tmpDir);
+    }
+
+    /**
+     * @param duplicate Whether a record (the second argument) duplicates the last kept record (the first argument).
+     *                  It is called in the order of records, and only by the thread adding or reading records
+     */
+    public ExternalSorter(
+            Comparator<byte[]> comparator, BiPredicate<byte[], byte[]> duplicate, long memoryBudget, File tmpDir
+    ) {
+        this.comparator = comparator;
+        this.duplicate = duplicate;
+        this.memoryBudget = memoryBudget;
+        this.tmpDir = tmpDir;
+    }
+
+    /**
+     * Add a record. The array is kept in the buffer, so it should not be modified afterwards.
+     */
+    public void add(byte[] record) throws IOException {
+        buffer.add(record);
+        bufferedBytes += record.length + RECORD_OVERHEAD;
+        totalRecords++;
+        if (bufferedBytes >= memoryBudget) {
+            spill();
+        }
+    }
+
+    /**
+     * Add a copy of `length` bytes of an array from `offset`, so the array can be reused for the next record.
+     */
+    public void add(byte[] buffer, int offset, int length) throws IOException {
+        add(Arrays.copyOfRange(buffer, offset, offset + length));
+    }
+
+    /**
+     * Sort buffered records and write them to a new run file.
+     */
+    protected void spill() throws IOException {
+        sortBuffer();
+        File run_file = File.createTempFile("run", ".bin", tmpDir);
+        runs.add(run_file);
+        try (DataOutputStream dos = openRun(run_file)) {
+            for (byte[] record: buffer) {
+                writeRecord(dos, record);
+            }
+        }
+        buffer = new ArrayList<>();
+        bufferedBytes = 0;
+    }
+
+    protected static DataOutputStream openRun(File runFile) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), MAX_MERGE_BUFFER_SIZE));
+    }
+
+    protected static void writeRecord(DataOutputStream dos, byte[] record) throws IOException {
+        dos.writeInt(record.length);
+        dos.write(record);
+    }
+
+    /**
+     * Merge groups of consecutive runs into single runs until there are at most `MAX_FAN_IN` runs. Duplicates are
+     * removed in each merge.
+     */
+    protected void reduceRuns() throws IOException {
+        while (MAX_FAN_IN < runs.size()) {
+            List<File> merged_runs = new ArrayList<>();
+            for (int start = 0; start < runs.size(); start += MAX_FAN_IN) {
+                List<File> group = runs.subList(start, Math.min(start + MAX_FAN_IN, runs.size()));
+                if (1 == group.size()) {
+                    merged_runs.add(group.get(0));
+                    continue;
+                }
+                File run_file = File.createTempFile("run", ".bin", tmpDir);
+                merged_runs.add(run_file);
+                try (
+                        MergingReader reader = new MergingReader(group, mergeBufferSize(group.size()));
+                        DataOutputStream dos = openRun(run_file)
+                ) {
+                    byte[] record;
+                    while (null != (record = reader.next())) {
+                        writeRecord(dos, record);
+                    }
+                }
+                for (File run: group) {
+                    Files.deleteIfExists(run.toPath());
+                }
+            }
+            runs.clear();
+            runs.addAll(merged_runs);
+        }
+    }
+
+    protected int mergeBufferSize(int totalRuns) {
+        return (int) Math.max(MIN_MERGE_BUFFER_SIZE, Math.min(MAX_MERGE_BUFFER_SIZE, memoryBudget / totalRuns));
+    }
+
+    /**
+     * Sort buffered records and remove duplicates.
+     */
+    protected void sortBuffer() {
+        buffer.sort(comparator);
+        if (null == duplicate || buffer.isEmpty()) {
+            return;
+        }
+        int kept = 1;
+        for (int i = 1; i < buffer.size(); i++) {
+            byte[] record = buffer.get(i);
+            if (!duplicate.test(buffer.get(kept - 1), record)) {
+                buffer.set(kept++, record);
+            }
+        }
+        removedRecords += buffer.size() - kept;
+        buffer.subList(kept, buffer.size()).clear();
+    }
+
+    /**
+     * The number of records added, including removed duplicates.
+     */
+    public long totalRecords() {
+        return totalRecords;
+    }
+
+    /**
+     * The number of duplicated records removed so far. All duplicates are removed when the sorted records are read.
+     */
+    public long removedRecords() {
+        return removedRecords;
+    }
+
+    public int totalRuns() {
+        return runs.size();
+    }
+
+    /**
+     * Finish adding records and read them in order. No more record should be added after this.
+     */
+    public RecordReader sorted() throws IOException {
+        if (runs.isEmpty()) {
+            sortBuffer();
+            List<byte[]> records = buffer;
+            buffer = new ArrayList<>();
+            bufferedBytes = 0;
+            return new RecordReader() {
+                int idx = 0;
+
+                @Override
+                public byte[] next() {
+                    if (idx >= records.size()) {
+                        return null;
+                    }
+                    /* Release records that have been read, so the memory can be used by the consumer */
+                    byte[] record = records.set(idx, null);
+                    idx++;
+                    return record;
+                }
+
+                @Override
+                public void close() {}
+            };
+        }
+        if (!buffer.isEmpty()) {
+            spill();
+        }
+        reduceRuns();
+        return new MergingReader(runs, mergeBufferSize(runs.size()));
+    }
+
+    /**
+     * Delete all run files.
+     */
+    @Override
+    public void close() throws IOException {
+        for (File run: runs) {
+            Files.deleteIfExists(run.toPath());
+        }
+        runs.clear();
+        buffer = new ArrayList<>();
+    }
+
+    /**
+     * A reader of records in order.
+     */
+    public interface RecordReader extends Closeable {
+        /**
+         * @return The next record, or NULL if all records are read
+         */
+        byte[] next() throws IOException;
+    }
+
+    /**
+     * The head record of a run file.
+     */
+    protected static class Run {
+        final DataInputStream dis;
+        /** The index of the run in the merge, breaking ties of records in the order of runs */
+        final int index;
+        byte[] head;
+
+        Run(DataInputStream dis, int index) {
+            this.dis = dis;
+            this.index = index;
+        }
+
+        boolean advance() throws IOException {
+            int length;
+            try {
+                length = dis.readInt();
+            } catch (EOFException e) {
+                head = null;
+                return false;
+            }
+            head = new byte[length];
+            dis.readFully(head);
+            return true;
+        }
+    }
+
+    /**
+     * K-way merge of run files.
+     */
+    protected class MergingReader implements RecordReader {
+        protected final PriorityQueue<Run> queue;
+        protected final List<Run> openRuns = new ArrayList<>();
+        protected byte[] last = null;
+
+        protected MergingReader(List<File> runFiles, int bufferSize) throws IOException {
+            queue = new PriorityQueue<>(Math.max(1, runFiles.size()), (r1, r2) -> {
+                int c = comparator.compare(r1.head, r2.head);
+                return (0 != c) ? c : Integer.compare(r1.index, r2.index);
+            });
+            try {
+                for (File run_file: runFiles) {
+                    Run run = new Run(
+                            new DataInputStream(new BufferedInputStream(new FileInputStream(run_file), bufferSize)),
+                            openRuns.size()
+                    );
+                    openRuns.add(run);
+                    if (run.advance()) {
+                        queue.add(run);
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public byte[] next() throws IOException {
+            while (true) {
+                Run run = queue.poll();
+                if (null == run) {
+                    return null;
+                }
+                byte[] record = run.head;
+                if (run.advance()) {
+                    queue.add(run);
+                }
+                if (null != duplicate && null != last && duplicate.test(last, record)) {
+                    removedRecords++;
+                    continue;
+                }
+                last = record;
+                return record;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (Run run: openRuns) {
+                run.dis.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package util.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Write little-endian 4-byte integers to a file through a large direct buffer of its channel. Arrays of integers are
+ * copied to the buffer in bulk, so each system call writes a whole buffer. The writer is not thread-safe, but writers
+ * of different files can be used concurrently.
+ */
+public class IntFileWriter implements IntOutput {
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    protected final FileChannel channel;
+    protected final ByteBuffer buffer;
+    /** The integer view of `buffer`, sharing its position in units of integers */
+    protected final IntBuffer ints;
+
+    public IntFileWriter(File file) throws IOException {
+        this(file, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param bufferSize The number of bytes in the buffer, rounded down to a multiple of 4
+     */
+    public IntFileWriter(File file, int bufferSize) throws IOException {
+        channel = FileChannel.open(
+                file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING
+        );
+        buffer = ByteBuffer.allocateDirect(Math.max(Integer.BYTES, bufferSize / Integer.BYTES * Integer.BYTES))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        ints = buffer.asIntBuffer();
+    }
+
+    @Override
+    public void writeInt(int i) throws IOException {
+        if (!ints.hasRemaining()) {
+            flush();
+        }
+        ints.put(i);
+    }
+
+    @Override
+    public void writeInts(int[] values, int offset, int length) throws IOException {
+        while (0 < length) {
+            if (!ints.hasRemaining()) {
+                flush();
+            }
+            int batch = Math.min(length, ints.remaining());
+            ints.put(values, offset, batch);
+            offset += batch;
+            length -= batch;
+        }
+    }
+
+    /**
+     * Write the buffered integers to the channel.
+     */
+    public void flush() throws IOException {
+        buffer.limit(ints.position() * Integer.BYTES);
+        buffer.position(0);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        ints.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
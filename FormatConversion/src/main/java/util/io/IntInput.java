@@ -0,0 +1,16 @@
+package util.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.IntBuffer;
+
+/**
+ * A source of integers read in chunks, e.g., the rows of a relation file. Each chunk contains a whole number of rows.
+ */
+public interface IntInput extends Closeable {
+    /**
+     * Read the next chunk.
+     * @return The integers in the chunk, or NULL if all integers have been read
+     */
+    IntBuffer nextChunk() throws IOException;
+}
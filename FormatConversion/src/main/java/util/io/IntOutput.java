@@ -0,0 +1,20 @@
+package util.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A sink of integers, e.g., the rows of a relation file.
+ */
+public interface IntOutput extends Closeable {
+    void writeInt(int i) throws IOException;
+
+    /**
+     * Write `length` integers of an array from `offset`.
+     */
+    void writeInts(int[] values, int offset, int length) throws IOException;
+
+    default void writeInts(int[] values) throws IOException {
+        writeInts(values, 0, values.length);
+    }
+}
@@ -0,0 +1,26 @@
+package util.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream writing 4-byte and 8-byte integers in little-endian, without allocating a byte array per integer.
+ */
+public class LittleEndianOutputStream extends FilterOutputStream {
+    public LittleEndianOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    public void writeInt(int i) throws IOException {
+        out.write(i);
+        out.write(i >>> 8);
+        out.write(i >>> 16);
+        out.write(i >>> 24);
+    }
+
+    public void writeLong(long l) throws IOException {
+        writeInt((int) l);
+        writeInt((int) (l >>> 32));
+    }
+}
@@ -0,0 +1,56 @@
+package util.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read a file of little-endian integers through memory mappings. A file larger than a single mapping is read in chunks,
+ * and each chunk contains a whole number of rows, so rows are never split between chunks.
+ */
+public class MappedIntFile implements IntInput {
+    /** The max number of bytes mapped at a time */
+    public static final long MAX_CHUNK_BYTES = 1L << 30;
+
+    protected final FileChannel channel;
+    protected final long chunkBytes;
+    protected long position = 0;
+
+    /**
+     * @param rowLength The number of integers in a row
+     */
+    public MappedIntFile(File file, int rowLength) throws IOException {
+        long row_bytes = (long) Math.max(1, rowLength) * Integer.BYTES;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.chunkBytes = MAX_CHUNK_BYTES / row_bytes * row_bytes;
+    }
+
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Map the next chunk of the file.
+     * @return The integers in the chunk, or NULL if the whole file has been read
+     */
+    @Override
+    public IntBuffer nextChunk() throws IOException {
+        long total_bytes = channel.size();
+        if (position >= total_bytes) {
+            return null;
+        }
+        long length = Math.min(chunkBytes, total_bytes - position);
+        IntBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, length)
+                .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        position += length;
+        return chunk;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,224 @@
+package util.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static util.io.PackedRelationWriter.*;
+
+/**
+ * Read a relation file in the block-packed format (see `PackedRelationWriter`). Blocks are read by positional reads of
+ * the channel and decoded into rows, so any block can be read without the ones before it. The reader is not
+ * thread-safe.
+ */
+public class PackedRelationReader implements IntInput {
+    /** The min number of rows decoded in a chunk by `nextChunk()` */
+    public static final int CHUNK_ROWS = 1 << 16;
+
+    protected final FileChannel channel;
+    protected final int arity;
+    protected final int blockRows;
+    protected final long totalRows;
+    /** Offsets of the blocks, followed by the offset of the block table */
+    protected final long[] blockOffsets;
+    protected ByteBuffer in;
+    protected final long[] words;
+    /** The unpacked values of a column in a block */
+    protected final long[] values;
+    protected int nextBlock = 0;
+    protected int[] chunk = null;
+
+    public PackedRelationReader(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = readFully(0, HEADER_BYTES);
+            if (MAGIC != header.getInt() || VERSION != header.getInt()) {
+                throw new IOException("Not a packed relation file: " + file.getAbsolutePath());
+            }
+            arity = header.getInt();
+            blockRows = header.getInt();
+            totalRows = header.getLong();
+            if (0 >= arity || 0 >= blockRows || 0 > totalRows) {
+                throw new IOException("Malformed packed relation file: " + file.getAbsolutePath());
+            }
+            long table_offset = readFully(channel.size() - Long.BYTES, Long.BYTES).getLong();
+            int blocks = (int) ((totalRows + blockRows - 1) / blockRows);
+            if (table_offset + (long) blocks * Long.BYTES + Long.BYTES != channel.size()) {
+                throw new IOException("Malformed packed relation file: " + file.getAbsolutePath());
+            }
+            blockOffsets = new long[blocks + 1];
+            ByteBuffer table = readFully(table_offset, blocks * Long.BYTES);
+            for (int i = 0; i < blocks; i++) {
+                blockOffsets[i] = table.getLong();
+            }
+            blockOffsets[blocks] = table_offset;
+            words = new long[blockRows + 1];
+            values = new long[blockRows];
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    protected ByteBuffer readFully(long position, int length) throws IOException {
+        if (null == in || in.capacity() < length) {
+            in = ByteBuffer.allocateDirect(Math.max(length, 1 << 16)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        in.clear().limit(length);
+        while (in.hasRemaining()) {
+            if (0 > channel.read(in, position + in.position())) {
+                throw new IOException("Unexpected end of packed relation file");
+            }
+        }
+        return in.flip();
+    }
+
+    public int arity() {
+        return arity;
+    }
+
+    public long totalRows() {
+        return totalRows;
+    }
+
+    public int totalBlocks() {
+        return blockOffsets.length - 1;
+    }
+
+    public int blockRows() {
+        return blockRows;
+    }
+
+    /**
+     * The number of rows in a block. Only the last block may have fewer than `blockRows` rows.
+     */
+    public int rowsOf(int block) {
+        return (int) Math.min(blockRows, totalRows - (long) block * blockRows);
+    }
+
+    /**
+     * Decode a block.
+     * @return The rows of the block, row by row
+     */
+    public int[] readBlock(int block) throws IOException {
+        int[] rows = new int[rowsOf(block) * arity];
+        decodeBlock(block, rows, 0);
+        return rows;
+    }
+
+    /**
+     * Decode a single row, by decoding the block containing it.
+     */
+    public int[] readRow(long row) throws IOException {
+        if (0 > row || totalRows <= row) {
+            throw new IndexOutOfBoundsException("Row out of relation: " + row);
+        }
+        int[] rows = readBlock((int) (row / blockRows));
+        int offset = (int) (row % blockRows) * arity;
+        int[] ret = new int[arity];
+        System.arraycopy(rows, offset, ret, 0, arity);
+        return ret;
+    }
+
+    /**
+     * Decode a block into an array, row by row from `offset`.
+     */
+    public void decodeBlock(int block, int[] dst, int offset) throws IOException {
+        int rows = rowsOf(block);
+        ByteBuffer buffer = readFully(blockOffsets[block], (int) (blockOffsets[block + 1] - blockOffsets[block]));
+        for (int col = 0; col < arity; col++) {
+            byte mode = buffer.get();
+            int bits = buffer.get();
+            int base = buffer.getInt();
+            int values_count = (MODE_DELTA == mode) ? rows - 1 : rows;
+            int total_words = wordsOf(values_count, bits);
+            buffer.asLongBuffer().get(words, 0, total_words);
+            buffer.position(buffer.position() + total_words * Long.BYTES);
+            unpackAll(words, bits, values, values_count);
+            if (MODE_FRAME == mode) {
+                for (int row = 0, idx = offset + col; row < rows; row++, idx += arity) {
+                    dst[idx] = (int) (base + values[row]);
+                }
+            } else if (MODE_DELTA == mode) {
+                long value = base;
+                dst[offset + col] = base;
+                for (int row = 1, idx = offset + arity + col; row < rows; row++, idx += arity) {
+                    value += unzigzag(values[row - 1]);
+                    dst[idx] = (int) value;
+                }
+            } else {
+                throw new IOException("Unknown block encoding: " + mode);
+            }
+        }
+    }
+
+    /**
+     * Unpack the first `count` values of `bits` bits. If `bits` divides 64, no value crosses words, so each word is
+     * shifted out value by value. Otherwise, the bits not yet unpacked of the current word are kept in a register and
+     * the next word is only loaded when they run out. `words` should have a word after the last packed one.
+     */
+    static void unpackAll(long[] words, int bits, long[] values, int count) {
+        if (0 == bits) {
+            Arrays.fill(values, 0, count, 0);
+        } else if (Long.SIZE == bits) {
+            System.arraycopy(words, 0, values, 0, count);
+        } else if (0 == Long.SIZE % bits) {
+            long mask = (1L << bits) - 1;
+            int per_word = Long.SIZE / bits;
+            for (int i = 0, word = 0; i < count; word++) {
+                long packed = words[word];
+                for (int end = Math.min(count, i + per_word); i < end; i++, packed >>>= bits) {
+                    values[i] = packed & mask;
+                }
+            }
+        } else {
+            long mask = (1L << bits) - 1;
+            int word = 0;
+            long pending = words[0];
+            int pending_bits = Long.SIZE;
+            for (int i = 0; i < count; i++) {
+                if (bits < pending_bits) {
+                    values[i] = pending & mask;
+                    pending >>>= bits;
+                    pending_bits -= bits;
+                } else {
+                    long next = words[++word];
+                    values[i] = (pending | (next << pending_bits)) & mask;
+                    pending = next >>> (bits - pending_bits);
+                    pending_bits += Long.SIZE - bits;
+                }
+            }
+        }
+    }
+
+    /**
+     * Decode the next blocks of at least `CHUNK_ROWS` rows in total, or all remaining blocks. The array of the chunk is
+     * reused, so a chunk is only valid until the next call.
+     */
+    @Override
+    public IntBuffer nextChunk() throws IOException {
+        if (nextBlock >= totalBlocks()) {
+            return null;
+        }
+        int last_block = Math.min(totalBlocks(), nextBlock + Math.max(1, CHUNK_ROWS / blockRows));
+        long rows = Math.min(totalRows, (long) last_block * blockRows) - (long) nextBlock * blockRows;
+        if (null == chunk || chunk.length < rows * arity) {
+            chunk = new int[(int) rows * arity];
+        }
+        for (int offset = 0; nextBlock < last_block; nextBlock++) {
+            decodeBlock(nextBlock, chunk, offset);
+            offset += rowsOf(nextBlock) * arity;
+        }
+        return IntBuffer.wrap(chunk, 0, (int) rows * arity).slice();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,228 @@
+package util.io;
+
+import util.collection.LongArrayList;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Write the rows of a relation in the block-packed format. Rows are grouped into blocks of `blockRows` rows, and each
+ * column of a block is bit-packed with the smaller of:
+ *   - Frame of reference: the values minus the min value of the column in the block;
+ *   - Delta: the zigzag-encoded differences between adjacent values, following the first value.
+ * As numerations are concentrated in each relation, both encodings take far fewer than 32 bits per value.
+ *
+ * File layout, all numbers in little-endian:
+ *   - Header: magic (int), version (int), arity (int), rows per block (int), total rows (long);
+ *   - Blocks: for each column, mode (byte), bits per value (byte), base value (int), and the packed values as longs;
+ *   - Block table: the offset of each block in the file (long);
+ *   - Trailer: the offset of the block table (long).
+ * The block table gives random access to blocks, see `PackedRelationReader`.
+ */
+public class PackedRelationWriter implements IntOutput {
+    public static final int MAGIC = 0x4c455250;    // "PREL"
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 4 * Integer.BYTES + Long.BYTES;
+    public static final int DEFAULT_BLOCK_ROWS = 1 << 12;
+    public static final byte MODE_FRAME = 0;
+    public static final byte MODE_DELTA = 1;
+    /** Bytes of a column in a block before the packed values: mode, bits and base */
+    public static final int COLUMN_HEADER_BYTES = 2 + Integer.BYTES;
+
+    protected final FileChannel channel;
+    protected final int arity;
+    protected final int blockRows;
+    /** The rows of the current block, row by row */
+    protected final int[] block;
+    protected int blockInts = 0;
+    protected long totalRows = 0;
+    protected final LongArrayList blockOffsets = new LongArrayList();
+    protected final ByteBuffer out;
+    protected final long[] words;
+
+    public PackedRelationWriter(File file, int arity) throws IOException {
+        this(file, arity, DEFAULT_BLOCK_ROWS);
+    }
+
+    public PackedRelationWriter(File file, int arity, int blockRows) throws IOException {
+        if (0 >= arity || 0 >= blockRows) {
+            throw new IllegalArgumentException(String.format(
+                    "Arity and rows per block should be positive: %d, %d", arity, blockRows
+            ));
+        }
+        this.arity = arity;
+        this.blockRows = blockRows;
+        this.block = new int[arity * blockRows];
+        this.words = new long[blockRows + 1];
+        this.out = ByteBuffer.allocateDirect(arity * (COLUMN_HEADER_BYTES + words.length * Long.BYTES))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        channel = FileChannel.open(
+                file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING
+        );
+        out.putInt(MAGIC).putInt(VERSION).putInt(arity).putInt(blockRows).putLong(0);
+        writeOut();
+    }
+
+    @Override
+    public void writeInt(int i) throws IOException {
+        block[blockInts++] = i;
+        if (block.length == blockInts) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    public void writeInts(int[] values, int offset, int length) throws IOException {
+        while (0 < length) {
+            int batch = Math.min(length, block.length - blockInts);
+            System.arraycopy(values, offset, block, blockInts, batch);
+            blockInts += batch;
+            offset += batch;
+            length -= batch;
+            if (block.length == blockInts) {
+                writeBlock();
+            }
+        }
+    }
+
+    protected void writeBlock() throws IOException {
+        int rows = blockInts / arity;
+        blockOffsets.add(channel.position());
+        for (int col = 0; col < arity; col++) {
+            /* Choose the encoding taking fewer bits */
+            long min = block[col];
+            long max = block[col];
+            long max_zigzag = 0;
+            for (int row = 1; row < rows; row++) {
+                long value = block[row * arity + col];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                max_zigzag = Math.max(max_zigzag, zigzag(value - block[(row - 1) * arity + col]));
+            }
+            int frame_bits = bitsOf(max - min);
+            int delta_bits = bitsOf(max_zigzag);
+            Arrays.fill(words, 0);
+            if (frame_bits <= delta_bits) {
+                out.put(MODE_FRAME).put((byte) frame_bits).putInt((int) min);
+                for (int row = 0; row < rows; row++) {
+                    pack(words, row, frame_bits, block[row * arity + col] - min);
+                }
+                putWords(rows, frame_bits);
+            } else {
+                out.put(MODE_DELTA).put((byte) delta_bits).putInt(block[col]);
+                for (int row = 1; row < rows; row++) {
+                    long delta = (long) block[row * arity + col] - block[(row - 1) * arity + col];
+                    pack(words, row - 1, delta_bits, zigzag(delta));
+                }
+                putWords(rows - 1, delta_bits);
+            }
+        }
+        writeOut();
+        totalRows += rows;
+        blockInts = 0;
+    }
+
+    protected void putWords(int values, int bits) {
+        for (int i = 0, total = wordsOf(values, bits); i < total; i++) {
+            out.putLong(words[i]);
+        }
+    }
+
+    protected void writeOut() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    public static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static int bitsOf(long value) {
+        return Long.SIZE - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * The number of longs taking `values` values of `bits` bits.
+     */
+    public static int wordsOf(int values, int bits) {
+        return (int) (((long) values * bits + Long.SIZE - 1) / Long.SIZE);
+    }
+
+    /**
+     * Set the idx-th value of `bits` bits in packed longs. The bits of the value should be 0 before.
+     */
+    public static void pack(long[] words, int idx, int bits, long value) {
+        if (0 == bits) {
+            return;
+        }
+        long bit_pos = (long) idx * bits;
+        int word = (int) (bit_pos >>> 6);
+        int shift = (int) (bit_pos & 63);
+        words[word] |= value << shift;
+        if (shift + bits > Long.SIZE) {
+            words[word + 1] |= value >>> (Long.SIZE - shift);
+        }
+    }
+
+    /**
+     * Get the idx-th value of `bits` bits in packed longs.
+     */
+    public static long unpack(long[] words, int idx, int bits) {
+        if (0 == bits) {
+            return 0;
+        }
+        long bit_pos = (long) idx * bits;
+        int word = (int) (bit_pos >>> 6);
+        int shift = (int) (bit_pos & 63);
+        long value = words[word] >>> shift;
+        if (shift + bits > Long.SIZE) {
+            value |= words[word + 1] << (Long.SIZE - shift);
+        }
+        return (Long.SIZE == bits) ? value : value & ((1L << bits) - 1);
+    }
+
+    /**
+     * Write the last block, the block table and the trailer, and fill in the total rows in the header.
+     * @throws IOException The last row is incomplete
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (0 != blockInts % arity) {
+                throw new IOException(
+                        String.format("Incomplete row: %d integers of arity %d", blockInts % arity, arity)
+                );
+            }
+            if (0 < blockInts) {
+                writeBlock();
+            }
+            long table_offset = channel.position();
+            for (int i = 0; i < blockOffsets.size(); i++) {
+                if (Long.BYTES > out.remaining()) {
+                    writeOut();
+                }
+                out.putLong(blockOffsets.get(i));
+            }
+            writeOut();
+            out.putLong(table_offset);
+            writeOut();
+            out.putLong(totalRows).flip();
+            channel.write(out, HEADER_BYTES - Long.BYTES);
+            out.clear();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package util.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read the bytes of a file in [start, end) by positional reads, so ranges of the same file can be read concurrently.
+ */
+public class RangeInputStream extends InputStream {
+    protected final FileChannel channel;
+    protected long position;
+    protected final long end;
+
+    public RangeInputStream(File file, long start, long end) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.position = start;
+        this.end = Math.min(end, channel.size());
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return (0 < read(b, 0, 1)) ? b[0] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (position >= end) {
+            return -1;
+        }
+        if (0 == len) {
+            return 0;
+        }
+        int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+        if (0 < read) {
+            position += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, end - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, end - position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
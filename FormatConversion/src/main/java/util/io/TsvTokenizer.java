@@ -0,0 +1,141 @@
+package util.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Read lines of tab separated fields from a stream of UTF-8 bytes. Lines are scanned in place in a reused byte buffer,
+ * and the fields of the current line are offset/length slices of the buffer. Thus, no object is allocated per line.
+ *
+ * Lines are terminated by '\n' or "\r\n". The slices are only valid until the next call of `nextLine()`.
+ */
+public class TsvTokenizer implements Closeable {
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    protected final InputStream in;
+    protected byte[] buffer;
+    /** The start of the bytes not yet tokenized */
+    protected int position = 0;
+    /** The end of valid bytes in the buffer */
+    protected int limit = 0;
+    protected boolean eof = false;
+    protected int[] fieldStarts = new int[8];
+    protected int[] fieldEnds = new int[8];
+    protected int fields = 0;
+
+    public TsvTokenizer(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    public TsvTokenizer(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Move to the next line and split it into fields.
+     * @return false if there is no more line
+     */
+    public boolean nextLine() throws IOException {
+        fields = 0;
+        while (true) {
+            for (int i = position; i < limit; i++) {
+                if ('\n' == buffer[i]) {
+                    tokenize(position, i);
+                    position = i + 1;
+                    return true;
+                }
+            }
+            if (eof) {
+                if (position < limit) {
+                    tokenize(position, limit);
+                    position = limit;
+                    return true;
+                }
+                return false;
+            }
+            fill();
+        }
+    }
+
+    /**
+     * Move the bytes not yet tokenized to the head of the buffer and read more bytes. The buffer is doubled if a single
+     * line does not fit in it.
+     */
+    protected void fill() throws IOException {
+        if (0 < position) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        } else if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (0 > read) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    protected void tokenize(int start, int end) {
+        if (start < end && '\r' == buffer[end - 1]) {
+            end--;
+        }
+        int field_start = start;
+        for (int i = start; i < end; i++) {
+            if ('\t' == buffer[i]) {
+                addField(field_start, i);
+                field_start = i + 1;
+            }
+        }
+        addField(field_start, end);
+    }
+
+    protected void addField(int start, int end) {
+        if (fieldStarts.length == fields) {
+            fieldStarts = Arrays.copyOf(fieldStarts, fields * 2);
+            fieldEnds = Arrays.copyOf(fieldEnds, fields * 2);
+        }
+        fieldStarts[fields] = start;
+        fieldEnds[fields] = end;
+        fields++;
+    }
+
+    /**
+     * The number of fields in the current line.
+     */
+    public int fields() {
+        return fields;
+    }
+
+    /**
+     * The buffer where the slices of fields are located.
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    public int start(int fieldIdx) {
+        return fieldStarts[fieldIdx];
+    }
+
+    public int length(int fieldIdx) {
+        return fieldEnds[fieldIdx] - fieldStarts[fieldIdx];
+    }
+
+    /**
+     * Decode a field to a string. This allocates and should only be used where necessary.
+     */
+    public String field(int fieldIdx) {
+        return new String(buffer, fieldStarts[fieldIdx], length(fieldIdx), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,412 @@
+package util.kb;
+
+import sinc2.kb.KbException;
+import sinc2.util.kb.NumeratedKb;
+import util.collection.IntArrayList;
+import util.collection.StringDictionary;
+import util.concurrent.ForkJoinRanges;
+import util.concurrent.IoTasks;
+import util.io.IntInput;
+import util.io.IntOutput;
+
+import java.io.*;
+import java.nio.IntBuffer;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * An in-memory numerated KB where the names of constants are numerated by a `StringDictionary`. It is dumped in the
+ * same format as `NumeratedKb`.
+ *
+ * Relations are numbered in the order of first occurrence, and records in each relation are unique and kept in the
+ * order of insertion.
+ */
+public class DictionaryKb {
+    /**
+     * A relation of the KB. Records are kept in int columns, so no object is created per record. Duplicated records are
+     * dropped when added, and counted.
+     *
+     * Duplicates are found by an open addressing table of long slots, where a non-empty slot is
+     * ((row index + 1) << 32) | (highest 32 bits of the hash of the row), so most mismatches are rejected without
+     * reading the columns. The table is 1/0.6 to 2/0.6 times as large as the records, i.e., about 13 to 27 bytes per
+     * record. As its capacity is at most 2^30, a relation holds at most about 644M records
+     * (`MAX_CAPACITY * LOAD_FACTOR`). Larger relations should be converted in the external-memory mode, and adding
+     * records beyond the limit by `DictionaryKb.addRecord()` throws `TooManyRecordsException`.
+     */
+    public static class Relation {
+        protected static final int INITIAL_CAPACITY = 16;
+        protected static final float LOAD_FACTOR = 0.6f;
+        protected static final int MAX_CAPACITY = 1 << 30;
+
+        protected final String name;
+        protected final int id;
+        protected final int arity;
+        protected final IntArrayList[] columns;
+        /** The max capacity of the row table, only lowered in tests */
+        protected int maxCapacity = MAX_CAPACITY;
+        protected int totalRows = 0;
+        protected long totalDuplicates = 0;
+        /** NULL after renumbering, and rebuilt when rows are added */
+        protected long[] rowTable = null;
+        /** The arguments of the row being added */
+        protected final int[] row;
+
+        public Relation(String name, int id, int arity) {
+            this.name = name;
+            this.id = id;
+            this.arity = arity;
+            this.columns = new IntArrayList[arity];
+            for (int col = 0; col < arity; col++) {
+                columns[col] = new IntArrayList();
+            }
+            this.row = new int[arity];
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public int getArity() {
+            return arity;
+        }
+
+        public int totalRecords() {
+            return totalRows;
+        }
+
+        /**
+         * The number of duplicated records dropped.
+         */
+        public long totalDuplicates() {
+            return totalDuplicates;
+        }
+
+        public int get(int rowIdx, int column) {
+            return columns[column].get(rowIdx);
+        }
+
+        public IntArrayList column(int column) {
+            return columns[column];
+        }
+
+        /**
+         * Add a record if it is not in the relation.
+         * @return Whether the record is newly added
+         */
+        public boolean add(int[] args) {
+            if (null == rowTable) {
+                rebuildRowTable(INITIAL_CAPACITY);
+            }
+            long hash = hash(args);
+            int tag = (int) (hash >>> 32);
+            int mask = rowTable.length - 1;
+            int slot = (int) hash & mask;
+            for (long entry; 0 != (entry = rowTable[slot]); slot = (slot + 1) & mask) {
+                if (tag == (int) entry && rowEquals((int) (entry >>> 32) - 1, args)) {
+                    totalDuplicates++;
+                    return false;
+                }
+            }
+            for (int col = 0; col < arity; col++) {
+                columns[col].add(args[col]);
+            }
+            totalRows++;
+            rowTable[slot] = ((long) totalRows << 32) | (tag & 0xffffffffL);
+            if (totalRows > rowTable.length * LOAD_FACTOR) {
+                rebuildRowTable(rowTable.length * 2);
+            }
+            return true;
+        }
+
+        protected static long hash(int[] args) {
+            long h = 0;
+            for (int arg: args) {
+                h = (h + arg) * 0x9e3779b97f4a7c15L;
+            }
+            return mix(h);
+        }
+
+        protected long hashOfRow(int rowIdx) {
+            long h = 0;
+            for (int col = 0; col < arity; col++) {
+                h = (h + columns[col].get(rowIdx)) * 0x9e3779b97f4a7c15L;
+            }
+            return mix(h);
+        }
+
+        protected static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            return h;
+        }
+
+        protected boolean rowEquals(int rowIdx, int[] args) {
+            for (int col = 0; col < arity; col++) {
+                if (columns[col].get(rowIdx) != args[col]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        protected void rebuildRowTable(int minCapacity) {
+            int capacity = INITIAL_CAPACITY;
+            while (
+                    (capacity < minCapacity || capacity * LOAD_FACTOR < totalRows) &&
+                    capacity < maxCapacity
+            ) {
+                capacity *= 2;
+            }
+            if (capacity * LOAD_FACTOR < totalRows) {
+                throw new IllegalStateException(String.format(
+                        "Too many records in a single relation: %d (at most %d in memory)", totalRows, maxRows()
+                ));
+            }
+            rowTable = new long[capacity];
+            int mask = capacity - 1;
+            for (int row_idx = 0; row_idx < totalRows; row_idx++) {
+                long hash = hashOfRow(row_idx);
+                int slot = (int) hash & mask;
+                while (0 != rowTable[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                rowTable[slot] = ((long) (row_idx + 1) << 32) | (hash >>> 32);
+            }
+        }
+
+        /**
+         * The max number of records the row table holds.
+         */
+        public long maxRows() {
+            return (long) (maxCapacity * LOAD_FACTOR);
+        }
+
+        /**
+         * Change the numerations of the arguments, column by column.
+         * @param old2New `old2New[old_num]` is the new numeration. It should be a bijection on the numerations in the
+         *                relation, so the records are still unique.
+         */
+        public void renumber(int[] old2New) {
+            renumber(old2New, null);
+        }
+
+        /**
+         * Change the numerations of the arguments, with ranges of rows renumbered concurrently.
+         * @param pool The workers. If NULL, the rows are renumbered in the calling thread
+         */
+        public void renumber(int[] old2New, ForkJoinPool pool) {
+            ForkJoinRanges.forEach(pool, 0, totalRows, RANGE_ROWS, (from, to) -> {
+                for (IntArrayList column: columns) {
+                    column.remap(old2New, from, to);
+                }
+            });
+            rowTable = null;
+        }
+
+        /**
+         * Copy rows from `fromRow` to a chunk in the order of rows.
+         * @return The number of rows copied
+         */
+        protected int copyRows(int fromRow, int[] chunk) {
+            int rows = Math.min(CHUNK_ROWS, totalRows - fromRow);
+            for (int col = 0; col < arity; col++) {
+                IntArrayList column = columns[col];
+                for (int i = 0, idx = col; i < rows; i++, idx += arity) {
+                    chunk[idx] = column.get(fromRow + i);
+                }
+            }
+            return rows;
+        }
+
+        /**
+         * Read the records in chunks of rows, e.g., as a relation scanned by a `NumerationOrder`.
+         */
+        public IntInput open() {
+            int[] chunk = new int[arity * CHUNK_ROWS];
+            return new IntInput() {
+                int nextRow = 0;
+
+                @Override
+                public IntBuffer nextChunk() {
+                    if (nextRow >= totalRows) {
+                        return null;
+                    }
+                    int rows = copyRows(nextRow, chunk);
+                    nextRow += rows;
+                    return IntBuffer.wrap(chunk, 0, rows * arity).slice();
+                }
+
+                @Override
+                public void close() {}
+            };
+        }
+
+        /**
+         * Write the records in the order of rows.
+         */
+        public void writeTo(IntOutput output) throws IOException {
+            int[] chunk = new int[arity * CHUNK_ROWS];
+            for (int row_idx = 0; row_idx < totalRows; ) {
+                int rows = copyRows(row_idx, chunk);
+                output.writeInts(chunk, 0, rows * arity);
+                row_idx += rows;
+            }
+        }
+    }
+
+    /**
+     * A relation would have more records than its row table holds in memory.
+     */
+    public static class TooManyRecordsException extends KbException {
+        public TooManyRecordsException(Relation relation) {
+            super(String.format(
+                    "Too many records in relation '%s': at most %d records of a relation are held in memory",
+                    relation.name, relation.maxRows()
+            ));
+        }
+    }
+
+    /** The number of rows in a chunk read from a relation */
+    public static final int CHUNK_ROWS = 1 << 12;
+    /** The number of rows in a range of a relation processed by a worker */
+    public static final int RANGE_ROWS = 1 << 16;
+
+    protected final String name;
+    protected final StringDictionary dictionary = new StringDictionary();
+    protected final List<Relation> relations = new ArrayList<>();
+    protected final Map<String, Relation> relationMap = new HashMap<>();
+
+    public DictionaryKb(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Add a record. Arguments are numerated in the order of first occurrence.
+     * @return Whether the record is newly added, i.e., not a duplicate
+     * @throws KbException The arity does not match the relation
+     * @throws TooManyRecordsException The relation is full
+     */
+    public boolean addRecord(String relationName, String[] args) throws KbException {
+        Relation relation = relationOf(relationName, args.length);
+        for (int i = 0; i < args.length; i++) {
+            relation.row[i] = dictionary.add(args[i]);
+        }
+        return relation.add(relation.row);
+    }
+
+    /**
+     * Add a binary record, without creating an argument array.
+     * @return Whether the record is newly added, i.e., not a duplicate
+     * @throws KbException The relation is not binary
+     * @throws TooManyRecordsException The relation is full
+     */
+    public boolean addRecord(String relationName, String subject, String object) throws KbException {
+        Relation relation = relationOf(relationName, 2);
+        relation.row[0] = dictionary.add(subject);
+        relation.row[1] = dictionary.add(object);
+        return relation.add(relation.row);
+    }
+
+    /**
+     * Find a relation, or create it if absent.
+     * @throws KbException The arity does not match the relation
+     * @throws TooManyRecordsException The relation cannot hold another record
+     */
+    protected Relation relationOf(String relationName, int arity) throws KbException {
+        Relation relation = relationMap.get(relationName);
+        if (null == relation) {
+            relation = new Relation(relationName, relations.size(), arity);
+            relations.add(relation);
+            relationMap.put(relationName, relation);
+        } else if (relation.arity != arity) {
+            throw new KbException(String.format(
+                    "Arity mismatch: relation '%s' has arity %d, but %d arguments are given",
+                    relationName, relation.arity, arity
+            ));
+        } else if (relation.totalRows >= relation.maxRows()) {
+            throw new TooManyRecordsException(relation);
+        }
+        return relation;
+    }
+
+    public int totalMappings() {
+        return dictionary.size();
+    }
+
+    public List<Relation> getRelations() {
+        return relations;
+    }
+
+    public Relation getRelation(String name) {
+        return relationMap.get(name);
+    }
+
+    public StringDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Change the numerations of the mapping. The records should be updated by the caller.
+     * @param old2New `old2New[old_num]` is the new numeration
+     */
+    public void rearrangeMapping(int[] old2New) {
+        dictionary.renumber(old2New);
+    }
+
+    public void dump(String basePath) throws IOException {
+        IoTasks.runAll(1, dumpTasks(basePath));
+    }
+
+    /**
+     * Dump the KB, writing relation and map files with a number of threads.
+     */
+    public void dump(String basePath, int threads) throws IOException {
+        IoTasks.runAll(threads, dumpTasks(basePath));
+    }
+
+    /**
+     * Create the KB directory and return the tasks writing the files of the KB. The tasks write different files and can
+     * run concurrently.
+     */
+    public List<IoTasks.IoTask> dumpTasks(String basePath) throws IOException {
+        return dumpTasks(basePath, false, false);
+    }
+
+    /**
+     * @param packRelations Whether relations are written in the block-packed format
+     * @param sortRelations Whether records are written sorted, with indexes (see `SortedRelationWriter`). Records are
+     *                      already unique, so the numbers of records do not change
+     */
+    public List<IoTasks.IoTask> dumpTasks(
+            String basePath, boolean packRelations, boolean sortRelations
+    ) throws IOException {
+        File kb_dir = NumeratedKb.getKbPath(name, basePath).toFile();
+        if (!kb_dir.mkdirs() && !kb_dir.isDirectory()) {
+            throw new IOException("Failed to create KB directory: " + kb_dir.getAbsolutePath());
+        }
+        String[] names = new String[relations.size()];
+        int[] arities = new int[relations.size()];
+        long[] records = new long[relations.size()];
+        List<IoTasks.IoTask> tasks = new ArrayList<>();
+        for (Relation relation: relations) {
+            names[relation.id] = relation.name;
+            arities[relation.id] = relation.arity;
+            records[relation.id] = relation.totalRecords();
+            tasks.add(() -> {
+                try (IntOutput writer = KbFiles.createRelation(
+                        kb_dir.getPath(), relation.id, relation.arity, packRelations, sortRelations, 0, null
+                )) {
+                    relation.writeTo(writer);
+                }
+            });
+        }
+        tasks.add(() -> KbFiles.writeRelationInfo(name, basePath, names, arities, records));
+        tasks.addAll(MapWriter.writeAllTasks(kb_dir.getPath(), dictionary));
+        return tasks;
+    }
+}
@@ -0,0 +1,262 @@
+package util.kb;
+
+import sinc2.util.kb.NumeratedKb;
+import sinc2.util.kb.NumerationMap;
+
+import util.io.*;
+
+import java.io.*;
+import java.nio.IntBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Files in a numerated KB, as dumped by `NumeratedKb`:
+ *   - "Relations.tsv": One line "<name>\t<arity>\t<#records>" for each relation, in the order of relation ids;
+ *   - "<relation id>.rel": The records of a relation, row by row, as little-endian 4-byte integers;
+ *   - "<relation id>.prel": Optionally instead of the ".rel" file, the records in the block-packed format (see
+ *     `PackedRelationWriter`);
+ *   - "<relation id>.<column>.meta": Optionally, if the records of a relation are sorted, the index of the relation by
+ *     the column (see `SortedRelationWriter`);
+ *   - "map<#num>.tsv": The names of constants, one name per line in the order of numerations (see `MapWriter`).
+ */
+public class KbFiles {
+    public static final String REL_FILE_SUFFIX = ".rel";
+    public static final String PACKED_REL_FILE_SUFFIX = ".prel";
+    public static final String INDEX_FILE_SUFFIX = ".meta";
+
+    /**
+     * A line of "Relations.tsv".
+     */
+    public static class RelationInfo {
+        public final String name;
+        public final int arity;
+        public final int totalRecords;
+
+        public RelationInfo(String name, int arity, int totalRecords) {
+            this.name = name;
+            this.arity = arity;
+            this.totalRecords = totalRecords;
+        }
+    }
+
+    public static File relFile(String kbDirPath, int relId) {
+        return Paths.get(kbDirPath, relId + REL_FILE_SUFFIX).toFile();
+    }
+
+    public static File packedRelFile(String kbDirPath, int relId) {
+        return Paths.get(kbDirPath, relId + PACKED_REL_FILE_SUFFIX).toFile();
+    }
+
+    public static File indexFile(String kbDirPath, int relId, int column) {
+        return Paths.get(kbDirPath, relId + "." + column + INDEX_FILE_SUFFIX).toFile();
+    }
+
+    /**
+     * Parse the order of records in relation files: "insertion" or "sorted".
+     * @return Whether records are sorted
+     * @throws IllegalArgumentException Unknown order
+     */
+    public static boolean parseRelationOrder(String value) {
+        switch (value) {
+            case "insertion":
+                return false;
+            case "sorted":
+                return true;
+            default:
+                throw new IllegalArgumentException("Unknown relation order: " + value);
+        }
+    }
+
+    /**
+     * Parse the format of relation files: "raw" or "packed".
+     * @return Whether relations are packed
+     * @throws IllegalArgumentException Unknown format
+     */
+    public static boolean parseRelationFormat(String value) {
+        switch (value) {
+            case "raw":
+                return false;
+            case "packed":
+                return true;
+            default:
+                throw new IllegalArgumentException("Unknown relation format: " + value);
+        }
+    }
+
+    /**
+     * Open the file of a relation for reading in chunks of rows, either the packed file or, if absent, the raw file.
+     * @throws IOException The arity of the packed file does not match
+     */
+    public static IntInput openRelation(String kbDirPath, int relId, int arity) throws IOException {
+        File packed_file = packedRelFile(kbDirPath, relId);
+        if (!packed_file.exists()) {
+            return new MappedIntFile(relFile(kbDirPath, relId), arity);
+        }
+        PackedRelationReader reader = new PackedRelationReader(packed_file);
+        if (arity != reader.arity()) {
+            reader.close();
+            throw new IOException(String.format(
+                    "Arity of packed relation file '%s' is %d, but %d expected", packed_file.getAbsolutePath(),
+                    reader.arity(), arity
+            ));
+        }
+        return reader;
+    }
+
+    /**
+     * Create the file of a relation for writing rows. Relations of arity 0 are always written as raw files.
+     * @param packed Whether the relation is written in the block-packed format
+     */
+    public static IntOutput createRelation(String kbDirPath, int relId, int arity, boolean packed) throws IOException {
+        if (packed && 0 < arity) {
+            return new PackedRelationWriter(packedRelFile(kbDirPath, relId), arity);
+        }
+        return new IntFileWriter(relFile(kbDirPath, relId));
+    }
+
+    /**
+     * Create the file of a relation for writing rows, optionally sorted with indexes (see `SortedRelationWriter`).
+     * @param sorted Whether records are sorted and deduplicated
+     * @param memoryBudget The memory budget of sorting. If not positive, records are sorted in memory
+     * @param tmpDir The directory of temporary files of sorting
+     */
+    public static IntOutput createRelation(
+            String kbDirPath, int relId, int arity, boolean packed, boolean sorted, long memoryBudget, File tmpDir
+    ) throws IOException {
+        if (sorted) {
+            return new SortedRelationWriter(kbDirPath, relId, arity, packed, memoryBudget, tmpDir);
+        }
+        return createRelation(kbDirPath, relId, arity, packed);
+    }
+
+    /**
+     * Read all rows of a relation, from either the packed or the raw file.
+     */
+    public static int[][] readRows(String kbDirPath, int relId, int arity, int totalRecords) throws IOException {
+        int[][] rows = new int[totalRecords][];
+        int row_idx = 0;
+        try (IntInput input = openRelation(kbDirPath, relId, arity)) {
+            IntBuffer chunk;
+            while (null != (chunk = input.nextChunk())) {
+                while (arity <= chunk.remaining() && row_idx < totalRecords) {
+                    int[] row = new int[arity];
+                    chunk.get(row);
+                    rows[row_idx++] = row;
+                }
+            }
+        }
+        if (row_idx != totalRecords) {
+            throw new IOException(String.format(
+                    "Relation %d has %d records, but %d expected", relId, row_idx, totalRecords
+            ));
+        }
+        return rows;
+    }
+
+    /**
+     * Convert the raw relation files of a KB to the block-packed format. The raw files are removed.
+     */
+    public static void packRelations(String kbName, String basePath) throws IOException {
+        String kb_dir_path = NumeratedKb.getKbPath(kbName, basePath).toString();
+        List<RelationInfo> relations = readRelationInfo(kbName, basePath);
+        for (int rel_id = 0; rel_id < relations.size(); rel_id++) {
+            int arity = relations.get(rel_id).arity;
+            File raw_file = relFile(kb_dir_path, rel_id);
+            if (0 >= arity || !raw_file.exists()) {
+                continue;
+            }
+            try (
+                    MappedIntFile input = new MappedIntFile(raw_file, arity);
+                    IntOutput output = createRelation(kb_dir_path, rel_id, arity, true)
+            ) {
+                IntBuffer chunk;
+                int[] buffer = new int[1 << 16];
+                while (null != (chunk = input.nextChunk())) {
+                    while (chunk.hasRemaining()) {
+                        int length = Math.min(buffer.length, chunk.remaining());
+                        chunk.get(buffer, 0, length);
+                        output.writeInts(buffer, 0, length);
+                    }
+                }
+            }
+            if (!raw_file.delete()) {
+                throw new IOException("Failed to remove raw relation file: " + raw_file.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Read "Relations.tsv".
+     * @return The relation info, indexed by relation ids
+     */
+    public static List<RelationInfo> readRelationInfo(String kbName, String basePath) throws IOException {
+        List<RelationInfo> relations = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new FileReader(NumeratedKb.getRelInfoFilePath(kbName, basePath).toFile())
+        )) {
+            String line;
+            while (null != (line = reader.readLine())) {
+                String[] components = line.split("\t");
+                if (3 != components.length) {
+                    throw new IOException("Malformed relation info: " + line);
+                }
+                try {
+                    relations.add(new RelationInfo(
+                            components[0], Integer.parseInt(components[1]), Integer.parseInt(components[2])
+                    ));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed relation info: " + line, e);
+                }
+            }
+        }
+        return relations;
+    }
+
+    /**
+     * Count the constants in the map files, i.e., the lines in "map1.tsv", "map2.tsv", ...
+     */
+    public static int countConstants(String kbDirPath) throws IOException {
+        int constants = 0;
+        byte[] buffer = new byte[1 << 16];
+        for (
+                int num = NumerationMap.MAP_FILE_NUMERATION_START;
+                NumerationMap.getMapFilePath(kbDirPath, num).toFile().exists();
+                num++
+        ) {
+            try (InputStream is = new FileInputStream(NumerationMap.getMapFilePath(kbDirPath, num).toFile())) {
+                byte last = '\n';
+                int length;
+                while (0 < (length = is.read(buffer))) {
+                    for (int i = 0; i < length; i++) {
+                        if ('\n' == buffer[i]) {
+                            constants++;
+                        }
+                    }
+                    last = buffer[length - 1];
+                }
+                if ('\n' != last) {    // The last line is not terminated
+                    constants++;
+                }
+            }
+        }
+        return constants;
+    }
+
+    /**
+     * Write "Relations.tsv".
+     * @param names Relation names, indexed by relation ids
+     * @param arities Relation arities, indexed by relation ids
+     * @param records The numbers of records, indexed by relation ids
+     */
+    public static void writeRelationInfo(
+            String kbName, String basePath, String[] names, int[] arities, long[] records
+    ) throws IOException {
+        try (PrintWriter writer = new PrintWriter(NumeratedKb.getRelInfoFilePath(kbName, basePath).toFile())) {
+            for (int i = 0; i < names.length; i++) {
+                writer.printf("%s\t%d\t%d\n", names[i], arities[i], records[i]);
+            }
+        }
+    }
+}
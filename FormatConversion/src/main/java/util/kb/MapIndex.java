@@ -0,0 +1,304 @@
+package util.kb;
+
+import sinc2.util.kb.NumerationMap;
+import util.collection.LongArrayList;
+import util.io.LittleEndianOutputStream;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Random access to the names in the map files of a numerated KB, without loading all names. The offset of each name in
+ * its map file is kept in an index file ("map.meta") in the KB directory, as little-endian 8-byte integers:
+ *   - The offset of each name, in the order of numerations;
+ *   - For each map file: the size of the file, the last modified time of the file, and the first numeration in the
+ *     file;
+ *   - The number of map files.
+ *
+ * The index is built by a scan of the map files when it is absent or the sizes or modified times of the map files have
+ * changed. Writers of map files remove the index (see `MapWriter`), so it is also rebuilt if map files are rewritten
+ * within the time resolution of the file system. If the index cannot be written, it is kept in memory instead. Map
+ * files are memory-mapped on the first access. The index is safe for concurrent reads.
+ */
+public class MapIndex implements Closeable {
+    public static final String INDEX_FILE_NAME = "map.meta";
+    /** The max number of offsets in a single mapping of the index */
+    protected static final int OFFSETS_PER_CHUNK = 1 << 27;
+
+    protected final String kbDirPath;
+    protected final int totalNames;
+    protected final long[] fileSizes;
+    protected final long[] fileTimes;
+    /** `fileStarts[i]` is the first numeration in the i-th map file */
+    protected final int[] fileStarts;
+    protected final LongBuffer[] offsetChunks;
+    protected final MappedByteBuffer[] mapBuffers;
+
+    protected MapIndex(
+            String kbDirPath, long[] fileSizes, long[] fileTimes, int[] fileStarts, int totalNames,
+            LongBuffer[] offsetChunks
+    ) {
+        this.kbDirPath = kbDirPath;
+        this.fileSizes = fileSizes;
+        this.fileTimes = fileTimes;
+        this.fileStarts = fileStarts;
+        this.totalNames = totalNames;
+        this.offsetChunks = offsetChunks;
+        this.mapBuffers = new MappedByteBuffer[fileSizes.length];
+    }
+
+    /**
+     * Open the index of the map files in a KB directory, building it if needed.
+     */
+    public static MapIndex open(String kbDirPath) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (
+                int num = NumerationMap.MAP_FILE_NUMERATION_START;
+                NumerationMap.getMapFilePath(kbDirPath, num).toFile().exists();
+                num++
+        ) {
+            files.add(NumerationMap.getMapFilePath(kbDirPath, num).toFile());
+        }
+        long[] file_sizes = new long[files.size()];
+        long[] file_times = new long[files.size()];
+        for (int i = 0; i < file_sizes.length; i++) {
+            file_sizes[i] = files.get(i).length();
+            file_times[i] = files.get(i).lastModified();
+        }
+        File index_file = new File(kbDirPath, INDEX_FILE_NAME);
+        if (index_file.exists()) {
+            MapIndex index = load(kbDirPath, index_file, file_sizes, file_times);
+            if (null != index) {
+                return index;
+            }
+        }
+        try {
+            build(kbDirPath, index_file, file_sizes, file_times);
+            MapIndex index = load(kbDirPath, index_file, file_sizes, file_times);
+            if (null != index) {
+                return index;
+            }
+            throw new IOException("Failed to load the built index: " + index_file.getAbsolutePath());
+        } catch (IOException e) {
+            /* The KB directory may be read-only. Keep the offsets in memory */
+            System.err.println("Failed to write map index, keeping it in memory: " + e.getMessage());
+            LongArrayList offsets = new LongArrayList();
+            int[] file_starts = scan(kbDirPath, file_sizes, offsets::add);
+            return new MapIndex(
+                    kbDirPath, file_sizes, file_times, file_starts, offsets.size(),
+                    new LongBuffer[]{LongBuffer.wrap(offsets.toArray())}
+            );
+        }
+    }
+
+    /**
+     * Remove the index in a KB directory. This should be called before map files are written.
+     */
+    public static void invalidate(String kbDirPath) throws IOException {
+        Files.deleteIfExists(new File(kbDirPath, INDEX_FILE_NAME).toPath());
+    }
+
+    /**
+     * Scan the map files for the offsets of names. A name starts at the beginning of a non-empty file or after a line
+     * break that is not at the end of the file.
+     * @param offsetConsumer Consumes the offset of each name in its file, in the order of numerations
+     * @return The first numeration in each file
+     */
+    protected static int[] scan(String kbDirPath, long[] fileSizes, LongConsumer offsetConsumer) throws IOException {
+        int[] file_starts = new int[fileSizes.length];
+        int next_num = 1;
+        byte[] buffer = new byte[1 << 16];
+        for (int i = 0; i < fileSizes.length; i++) {
+            file_starts[i] = next_num;
+            try (InputStream is = new FileInputStream(
+                    NumerationMap.getMapFilePath(kbDirPath, i + NumerationMap.MAP_FILE_NUMERATION_START).toFile()
+            )) {
+                long position = 0;
+                boolean line_start = true;
+                int length;
+                while (0 < (length = is.read(buffer))) {
+                    for (int j = 0; j < length; j++, position++) {
+                        if (line_start) {
+                            offsetConsumer.accept(position);
+                            next_num++;
+                        }
+                        line_start = '\n' == buffer[j];
+                    }
+                }
+                if (position != fileSizes[i]) {
+                    throw new IOException(
+                            "Map file changed while indexing: " + (i + NumerationMap.MAP_FILE_NUMERATION_START)
+                    );
+                }
+            }
+        }
+        return file_starts;
+    }
+
+    protected static void build(
+            String kbDirPath, File indexFile, long[] fileSizes, long[] fileTimes
+    ) throws IOException {
+        File tmp_file = new File(indexFile.getPath() + ".tmp");
+        int[] file_starts;
+        try (LittleEndianOutputStream os = new LittleEndianOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmp_file), 1 << 16
+        ))) {
+            file_starts = scan(kbDirPath, fileSizes, offset -> {
+                try {
+                    os.writeLong(offset);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            for (int i = 0; i < fileSizes.length; i++) {
+                os.writeLong(fileSizes[i]);
+                os.writeLong(fileTimes[i]);
+                os.writeLong(file_starts[i]);
+            }
+            os.writeLong(fileSizes.length);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(tmp_file.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Load the index file.
+     * @return The index, or NULL if the index is malformed or does not match the sizes and times of the map files
+     */
+    protected static MapIndex load(
+            String kbDirPath, File indexFile, long[] fileSizes, long[] fileTimes
+    ) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            long index_bytes = channel.size();
+            long trailer_bytes = Long.BYTES * (3L * fileSizes.length + 1);
+            if (index_bytes < trailer_bytes || 0 != index_bytes % Long.BYTES) {
+                return null;
+            }
+            ByteBuffer trailer = ByteBuffer.allocate((int) trailer_bytes).order(ByteOrder.LITTLE_ENDIAN);
+            while (trailer.hasRemaining()) {
+                if (0 > channel.read(trailer, index_bytes - trailer_bytes + trailer.position())) {
+                    return null;
+                }
+            }
+            trailer.flip();
+            if (fileSizes.length != trailer.getLong((int) trailer_bytes - Long.BYTES)) {
+                return null;
+            }
+            int[] file_starts = new int[fileSizes.length];
+            for (int i = 0; i < fileSizes.length; i++) {
+                if (fileSizes[i] != trailer.getLong() || fileTimes[i] != trailer.getLong()) {
+                    return null;
+                }
+                file_starts[i] = (int) trailer.getLong();
+            }
+            long total_names = (index_bytes - trailer_bytes) / Long.BYTES;
+            if (Integer.MAX_VALUE < total_names) {
+                return null;
+            }
+            LongBuffer[] chunks = new LongBuffer[(int) ((total_names + OFFSETS_PER_CHUNK - 1) / OFFSETS_PER_CHUNK)];
+            for (int i = 0; i < chunks.length; i++) {
+                long first = (long) i * OFFSETS_PER_CHUNK;
+                long length = Math.min(OFFSETS_PER_CHUNK, total_names - first);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, first * Long.BYTES, length * Long.BYTES)
+                        .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            }
+            return new MapIndex(kbDirPath, fileSizes, fileTimes, file_starts, (int) total_names, chunks);
+        }
+    }
+
+    public int totalNames() {
+        return totalNames;
+    }
+
+    protected long offset(int num) {
+        int idx = num - 1;
+        return offsetChunks[idx / OFFSETS_PER_CHUNK].get(idx % OFFSETS_PER_CHUNK);
+    }
+
+    /**
+     * The name of a numeration.
+     * @throws IllegalArgumentException The numeration is out of the map files
+     */
+    public String name(int num) throws IOException {
+        if (0 >= num || totalNames < num) {
+            throw new IllegalArgumentException("Numeration out of map: " + num);
+        }
+        int file_idx = Arrays.binarySearch(fileStarts, num);
+        if (0 > file_idx) {
+            file_idx = -file_idx - 2;
+        } else {
+            /* Skip empty files starting at the same numeration */
+            while (file_idx + 1 < fileStarts.length && fileStarts[file_idx + 1] == num) {
+                file_idx++;
+            }
+        }
+        long start = offset(num);
+        long end;
+        if (num < totalNames && (file_idx + 1 == fileStarts.length || fileStarts[file_idx + 1] > num + 1)) {
+            end = offset(num + 1) - 1;  // Skip the line break
+        } else {
+            end = fileSizes[file_idx];
+            ByteBuffer map_buffer = mapFile(file_idx);
+            if (start < end && '\n' == map_buffer.get((int) end - 1)) {
+                end--;
+            }
+        }
+        ByteBuffer buffer = mapFile(file_idx).duplicate();
+        buffer.position((int) start);
+        byte[] bytes = new byte[(int) (end - start)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The names of numerations. The numerations are visited in ascending order, so the map files are read sequentially.
+     * @return The names, aligned with `nums`
+     */
+    public String[] names(int[] nums) throws IOException {
+        long[] sorted = new long[nums.length];
+        for (int i = 0; i < nums.length; i++) {
+            sorted[i] = ((long) nums[i] << Integer.SIZE) | i;
+        }
+        Arrays.sort(sorted);
+        String[] names = new String[nums.length];
+        for (long key: sorted) {
+            names[(int) key] = name((int) (key >> Integer.SIZE));
+        }
+        return names;
+    }
+
+    protected synchronized MappedByteBuffer mapFile(int fileIdx) throws IOException {
+        if (null == mapBuffers[fileIdx]) {
+            if (Integer.MAX_VALUE < fileSizes[fileIdx]) {
+                throw new IOException(
+                        "Map file too large to be mapped: " + (fileIdx + NumerationMap.MAP_FILE_NUMERATION_START)
+                );
+            }
+            try (FileChannel channel = FileChannel.open(
+                    NumerationMap.getMapFilePath(kbDirPath, fileIdx + NumerationMap.MAP_FILE_NUMERATION_START),
+                    StandardOpenOption.READ
+            )) {
+                mapBuffers[fileIdx] = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSizes[fileIdx]);
+            }
+        }
+        return mapBuffers[fileIdx];
+    }
+
+    @Override
+    public void close() {
+        Arrays.fill(mapBuffers, null);
+    }
+}
@@ -0,0 +1,116 @@
+package util.kb;
+
+import sinc2.util.kb.NumerationMap;
+import util.collection.StringDictionary;
+import util.concurrent.IoTasks;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Write constant names to the map files of a numerated KB in the order of numerations. The i-th name written is the
+ * name of numeration i (starting from 1). A new file is started every `NumerationMap.MAX_MAP_ENTRIES` names. The offset
+ * index of the map files (see `MapIndex`) is removed, as it no longer matches the files.
+ */
+public class MapWriter implements Closeable {
+    protected final String kbDirPath;
+    protected int fileNum = NumerationMap.MAP_FILE_NUMERATION_START;
+    protected int entriesInFile = 0;
+    protected OutputStream out;
+
+    public MapWriter(String kbDirPath) throws IOException {
+        this(kbDirPath, NumerationMap.MAP_FILE_NUMERATION_START);
+    }
+
+    /**
+     * Start writing from a map file, i.e., the first name written is the first name in "map<fileNum>.tsv".
+     */
+    protected MapWriter(String kbDirPath, int fileNum) throws IOException {
+        this.kbDirPath = kbDirPath;
+        this.fileNum = fileNum;
+        MapIndex.invalidate(kbDirPath);
+        this.out = openFile();
+    }
+
+    protected OutputStream openFile() throws IOException {
+        return new BufferedOutputStream(
+                new FileOutputStream(NumerationMap.getMapFilePath(kbDirPath, fileNum).toFile()), 1 << 16
+        );
+    }
+
+    public void write(String name) throws IOException {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Write the UTF-8 bytes of the next name.
+     */
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        startEntry();
+        out.write(bytes, offset, length);
+        out.write('\n');
+    }
+
+    /**
+     * Write the name of an id in the dictionary as the next name.
+     */
+    public void write(StringDictionary dictionary, int id) throws IOException {
+        startEntry();
+        dictionary.writeName(id, out);
+        out.write('\n');
+    }
+
+    /**
+     * Write all names in the dictionary, in the order of ids. The ids should be continuous from 1.
+     */
+    public static void writeAll(String kbDirPath, StringDictionary dictionary) throws IOException {
+        try (MapWriter writer = new MapWriter(kbDirPath)) {
+            for (int id = 1; id <= dictionary.maxId(); id++) {
+                writer.write(dictionary, id);
+            }
+        }
+    }
+
+    /**
+     * Tasks writing all names in the dictionary, one task per map file, so the files can be written concurrently. The
+     * ids should be continuous from 1.
+     */
+    public static List<IoTasks.IoTask> writeAllTasks(String kbDirPath, StringDictionary dictionary) {
+        List<IoTasks.IoTask> tasks = new ArrayList<>();
+        for (int first_id = 1, file_num = NumerationMap.MAP_FILE_NUMERATION_START; first_id <= dictionary.maxId();
+             first_id += NumerationMap.MAX_MAP_ENTRIES, file_num++) {
+            final int from = first_id;
+            final int to = (int) Math.min((long) first_id + NumerationMap.MAX_MAP_ENTRIES, dictionary.maxId() + 1L);
+            final int num = file_num;
+            tasks.add(() -> {
+                try (MapWriter writer = new MapWriter(kbDirPath, num)) {
+                    for (int id = from; id < to; id++) {
+                        writer.write(dictionary, id);
+                    }
+                }
+            });
+        }
+        if (tasks.isEmpty()) {    // An empty map file is still created
+            tasks.add(() -> new MapWriter(kbDirPath).close());
+        }
+        return tasks;
+    }
+
+    protected void startEntry() throws IOException {
+        if (NumerationMap.MAX_MAP_ENTRIES <= entriesInFile) {
+            out.close();
+            fileNum++;
+            entriesInFile = 0;
+            out = openFile();
+        }
+        entriesInFile++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
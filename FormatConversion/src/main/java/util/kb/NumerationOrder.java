@@ -0,0 +1,41 @@
+package util.kb;
+
+import util.io.IntInput;
+
+import java.io.IOException;
+
+/**
+ * A strategy assigning new numerations to the constants of a KB in the rearrangement step, so that the numerations are
+ * concentrated in relations. See `NumerationOrders` for the strategies.
+ */
+public interface NumerationOrder {
+    /**
+     * The relations scanned by a strategy, in the order of relations, e.g., the type relation last. A relation may be
+     * scanned more than once.
+     */
+    interface RelationSource {
+        int totalRelations();
+
+        int arity(int idx);
+
+        /**
+         * Read the rows of a relation in chunks.
+         */
+        IntInput open(int idx) throws IOException;
+    }
+
+    String name();
+
+    /**
+     * Whether the strategy holds the co-occurrence graph of the constants in memory, besides a few integers per
+     * constant.
+     */
+    boolean holdsGraph();
+
+    /**
+     * Assign new numerations to the constants occurring in the relations, from 1 without gaps.
+     * @param maxNum The max original numeration
+     * @return `old2New[old_num]` is the new numeration, or 0 if the constant does not occur
+     */
+    int[] assign(RelationSource relations, int maxNum) throws IOException;
+}
@@ -0,0 +1,430 @@
+package util.kb;
+
+import util.collection.IntArrayList;
+import util.concurrent.ForkJoinRanges;
+import util.io.IntInput;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The strategies of numeration orders. Ties in every strategy are broken by the order of first occurrence, so all
+ * strategies are deterministic:
+ *   - "first-occurrence": The order of first occurrence, scanning relations one by one and rows in the order of files;
+ *   - "degree": The descending order of the number of occurrences of constants;
+ *   - "relation": Constants are grouped by the relation where they occur the most, in the order of relations;
+ *   - "bfs": The breadth-first traversal of the co-occurrence graph, where the first argument of each row is linked to
+ *     the other arguments, starting from constants in the order of first occurrence;
+ *   - "rcm": The reverse Cuthill-McKee order of the co-occurrence graph, i.e., the breadth-first traversal starting
+ *     from constants of the least degree and visiting neighbors in the ascending order of degrees, then reversed.
+ */
+public class NumerationOrders {
+    public static final NumerationOrder FIRST_OCCURRENCE = new FirstOccurrence();
+    public static final NumerationOrder DEGREE = new Degree();
+    public static final NumerationOrder RELATION = new MajorRelation();
+    public static final NumerationOrder BFS = new Traversal("bfs", false);
+    public static final NumerationOrder RCM = new Traversal("rcm", true);
+    public static final NumerationOrder[] ALL = new NumerationOrder[]{FIRST_OCCURRENCE, DEGREE, RELATION, BFS, RCM};
+
+    protected static final VarHandle POSITIONS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /**
+     * @throws IllegalArgumentException Unknown strategy
+     */
+    public static NumerationOrder parse(String name) {
+        for (NumerationOrder order: ALL) {
+            if (order.name().equals(name)) {
+                return order;
+            }
+        }
+        throw new IllegalArgumentException("Unknown numeration order: " + name);
+    }
+
+    protected interface RowVisitor {
+        void visit(int relIdx, int[] row);
+    }
+
+    /**
+     * Visit all rows of all relations in order. The row array is reused.
+     */
+    protected static void scan(NumerationOrder.RelationSource relations, RowVisitor visitor) throws IOException {
+        for (int rel_idx = 0; rel_idx < relations.totalRelations(); rel_idx++) {
+            int arity = relations.arity(rel_idx);
+            if (0 >= arity) {
+                continue;
+            }
+            int[] row = new int[arity];
+            try (IntInput input = relations.open(rel_idx)) {
+                IntBuffer chunk;
+                while (null != (chunk = input.nextChunk())) {
+                    while (arity <= chunk.remaining()) {
+                        chunk.get(row);
+                        visitor.visit(rel_idx, row);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Numerate constants in the order of first occurrence.
+     * @return `first[old_num]` is the numeration in the order of first occurrence, or 0 if the constant does not occur
+     */
+    protected static int[] firstOccurrence(NumerationOrder.RelationSource relations, int maxNum) throws IOException {
+        int[] first = new int[maxNum + 1];
+        int[] next_num = new int[]{1};
+        scan(relations, (rel_idx, row) -> {
+            for (int arg: row) {
+                if (0 == first[arg]) {
+                    first[arg] = next_num[0]++;
+                }
+            }
+        });
+        return first;
+    }
+
+    /**
+     * Numerate constants of in-memory relations in the order of first occurrence, in parallel, with the same result as
+     * the "first-occurrence" strategy. Relations are split into ranges of rows, and the arguments of all relations are
+     * at consecutive positions in the order of relations, rows and columns:
+     *   1. The first position of each constant is found by an atomic minimum over all ranges;
+     *   2. Each range counts the constants first seen in it, and the counts are summed up in the order of ranges;
+     *   3. Each range numerates its first-seen constants in order, from the sum of the counts of the previous ranges.
+     * @param pool The workers. If NULL, the ranges are processed in the calling thread
+     * @return `first[old_num]` is the numeration in the order of first occurrence, or 0 if the constant does not occur
+     */
+    public static int[] firstOccurrence(ForkJoinPool pool, List<DictionaryKb.Relation> relations, int maxNum) {
+        return firstOccurrence(pool, relations, maxNum, DictionaryKb.RANGE_ROWS);
+    }
+
+    protected static int[] firstOccurrence(
+            ForkJoinPool pool, List<DictionaryKb.Relation> relations, int maxNum, int rangeRows
+    ) {
+        /* Split relations into ranges of rows */
+        int total_ranges = 0;
+        for (DictionaryKb.Relation relation: relations) {
+            total_ranges += (relation.totalRecords() + rangeRows - 1) / rangeRows;
+        }
+        DictionaryKb.Relation[] range_relations = new DictionaryKb.Relation[total_ranges];
+        int[] range_starts = new int[total_ranges];
+        long[] range_positions = new long[total_ranges];
+        long position = 0;
+        for (int rel_idx = 0, range = 0; rel_idx < relations.size(); rel_idx++) {
+            DictionaryKb.Relation relation = relations.get(rel_idx);
+            for (int row = 0; row < relation.totalRecords(); row += rangeRows, range++) {
+                range_relations[range] = relation;
+                range_starts[range] = row;
+                range_positions[range] = position;
+                position += (long) Math.min(rangeRows, relation.totalRecords() - row) * relation.getArity();
+            }
+        }
+
+        /* Find the first positions. The order of visiting arguments does not matter here */
+        long[] first_positions = new long[maxNum + 1];
+        Arrays.fill(first_positions, Long.MAX_VALUE);
+        int[] range_counts = new int[total_ranges + 1];
+        ForkJoinRanges.forEach(pool, 0, total_ranges, 1, (from, to) -> {
+            for (int range = from; range < to; range++) {
+                DictionaryKb.Relation relation = range_relations[range];
+                int arity = relation.getArity();
+                int rows = Math.min(rangeRows, relation.totalRecords() - range_starts[range]);
+                for (int col = 0; col < arity; col++) {
+                    IntArrayList column = relation.column(col);
+                    long pos = range_positions[range] + col;
+                    for (int row = range_starts[range], end = row + rows; row < end; row++, pos += arity) {
+                        int arg = column.get(row);
+                        long first;
+                        while (pos < (first = (long) POSITIONS.getOpaque(first_positions, arg)) &&
+                                !POSITIONS.compareAndSet(first_positions, arg, first, pos)) {}
+                    }
+                }
+            }
+        });
+
+        /* Count first-seen constants of each range. range_counts[r+1] is the count of range r */
+        ForkJoinRanges.forEach(pool, 0, total_ranges, 1, (from, to) -> {
+            for (int range = from; range < to; range++) {
+                DictionaryKb.Relation relation = range_relations[range];
+                int arity = relation.getArity();
+                int rows = Math.min(rangeRows, relation.totalRecords() - range_starts[range]);
+                int count = 0;
+                for (int col = 0; col < arity; col++) {
+                    IntArrayList column = relation.column(col);
+                    long pos = range_positions[range] + col;
+                    for (int row = range_starts[range], end = row + rows; row < end; row++, pos += arity) {
+                        if (pos == first_positions[column.get(row)]) {
+                            count++;
+                        }
+                    }
+                }
+                range_counts[range + 1] = count;
+            }
+        });
+        for (int range = 0; range < total_ranges; range++) {
+            range_counts[range + 1] += range_counts[range];
+        }
+
+        /* Numerate first-seen constants in the order of positions */
+        int[] first = new int[maxNum + 1];
+        ForkJoinRanges.forEach(pool, 0, total_ranges, 1, (from, to) -> {
+            for (int range = from; range < to; range++) {
+                DictionaryKb.Relation relation = range_relations[range];
+                int arity = relation.getArity();
+                int rows = Math.min(rangeRows, relation.totalRecords() - range_starts[range]);
+                int next_num = range_counts[range] + 1;
+                long pos = range_positions[range];
+                for (int row = range_starts[range], end = row + rows; row < end; row++) {
+                    for (int col = 0; col < arity; col++, pos++) {
+                        int arg = relation.get(row, col);
+                        if (pos == first_positions[arg]) {
+                            first[arg] = next_num++;
+                        }
+                    }
+                }
+            }
+        });
+        return first;
+    }
+
+    /**
+     * Numerate constants in the ascending order of keys, ties broken by the order of first occurrence.
+     * @param first The numerations in the order of first occurrence
+     * @param keys The keys, indexed by original numerations
+     */
+    protected static int[] orderByKeys(int[] first, int[] keys) {
+        int total_constants = 0;
+        for (int num: first) {
+            total_constants = Math.max(total_constants, num);
+        }
+        long[] sorted = new long[total_constants];
+        int[] olds = new int[total_constants + 1];
+        for (int old = 0, i = 0; old < first.length; old++) {
+            if (0 != first[old]) {
+                olds[first[old]] = old;
+                sorted[i++] = ((long) keys[old] << 32) | first[old];
+            }
+        }
+        Arrays.sort(sorted);
+        int[] old2new = new int[first.length];
+        for (int i = 0; i < sorted.length; i++) {
+            old2new[olds[(int) sorted[i]]] = i + 1;
+        }
+        return old2new;
+    }
+
+    protected static class FirstOccurrence implements NumerationOrder {
+        @Override
+        public String name() {
+            return "first-occurrence";
+        }
+
+        @Override
+        public boolean holdsGraph() {
+            return false;
+        }
+
+        @Override
+        public int[] assign(RelationSource relations, int maxNum) throws IOException {
+            return firstOccurrence(relations, maxNum);
+        }
+    }
+
+    protected static class Degree implements NumerationOrder {
+        @Override
+        public String name() {
+            return "degree";
+        }
+
+        @Override
+        public boolean holdsGraph() {
+            return false;
+        }
+
+        @Override
+        public int[] assign(RelationSource relations, int maxNum) throws IOException {
+            int[] first = firstOccurrence(relations, maxNum);
+            int[] keys = new int[maxNum + 1];
+            scan(relations, (rel_idx, row) -> {
+                for (int arg: row) {
+                    keys[arg]--;    // Descending order of degrees
+                }
+            });
+            return orderByKeys(first, keys);
+        }
+    }
+
+    protected static class MajorRelation implements NumerationOrder {
+        @Override
+        public String name() {
+            return "relation";
+        }
+
+        @Override
+        public boolean holdsGraph() {
+            return false;
+        }
+
+        @Override
+        public int[] assign(RelationSource relations, int maxNum) throws IOException {
+            int[] first = firstOccurrence(relations, maxNum);
+            int[] best_relations = new int[maxNum + 1];
+            int[] best_counts = new int[maxNum + 1];
+            int[] counts = new int[maxNum + 1];
+            /* Constants counted in the current relation, so the counts are reset without clearing the whole array */
+            int[] touched = new int[maxNum + 1];
+            int[] total_touched = new int[]{0};
+            int[] current_rel = new int[]{-1};
+            RowVisitor flush = (rel_idx, row) -> {
+                for (int i = 0; i < total_touched[0]; i++) {
+                    int num = touched[i];
+                    if (counts[num] > best_counts[num]) {
+                        best_counts[num] = counts[num];
+                        best_relations[num] = current_rel[0];
+                    }
+                    counts[num] = 0;
+                }
+                total_touched[0] = 0;
+                current_rel[0] = rel_idx;
+            };
+            scan(relations, (rel_idx, row) -> {
+                if (rel_idx != current_rel[0]) {
+                    flush.visit(rel_idx, row);
+                }
+                for (int arg: row) {
+                    if (0 == counts[arg]++) {
+                        touched[total_touched[0]++] = arg;
+                    }
+                }
+            });
+            flush.visit(-1, null);
+            return orderByKeys(first, best_relations);
+        }
+    }
+
+    protected static class Traversal implements NumerationOrder {
+        protected final String name;
+        protected final boolean reverseCuthillMckee;
+
+        protected Traversal(String name, boolean reverseCuthillMckee) {
+            this.name = name;
+            this.reverseCuthillMckee = reverseCuthillMckee;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public boolean holdsGraph() {
+            return true;
+        }
+
+        @Override
+        public int[] assign(RelationSource relations, int maxNum) throws IOException {
+            /* Nodes of the graph are indexed by the order of first occurrence from 0 */
+            int[] first = firstOccurrence(relations, maxNum);
+            int total_nodes = 0;
+            for (int num: first) {
+                total_nodes = Math.max(total_nodes, num);
+            }
+            int[] olds = new int[total_nodes];
+            for (int old = 0; old < first.length; old++) {
+                if (0 != first[old]) {
+                    olds[first[old] - 1] = old;
+                }
+            }
+
+            /* Build the adjacency lists in the CSR form */
+            long[] offsets = new long[total_nodes + 1];
+            scan(relations, (rel_idx, row) -> {
+                for (int i = 1; i < row.length; i++) {
+                    if (row[0] != row[i]) {
+                        offsets[first[row[0]]]++;
+                        offsets[first[row[i]]]++;
+                    }
+                }
+            });
+            for (int node = 0; node < total_nodes; node++) {
+                offsets[node + 1] += offsets[node];
+            }
+            if (Integer.MAX_VALUE < offsets[total_nodes]) {
+                throw new IOException("Too many edges in the co-occurrence graph: " + offsets[total_nodes]);
+            }
+            int[] degrees = new int[total_nodes];
+            for (int node = 0; node < total_nodes; node++) {
+                degrees[node] = (int) (offsets[node + 1] - offsets[node]);
+            }
+            int[] neighbors = new int[(int) offsets[total_nodes]];
+            int[] filled = new int[total_nodes];
+            scan(relations, (rel_idx, row) -> {
+                int node0 = first[row[0]] - 1;
+                for (int i = 1; i < row.length; i++) {
+                    if (row[0] != row[i]) {
+                        int node = first[row[i]] - 1;
+                        neighbors[(int) offsets[node0] + filled[node0]++] = node;
+                        neighbors[(int) offsets[node] + filled[node]++] = node0;
+                    }
+                }
+            });
+
+            /* Traverse */
+            int[] starts = new int[total_nodes];
+            for (int node = 0; node < total_nodes; node++) {
+                starts[node] = node;
+            }
+            if (reverseCuthillMckee) {
+                sortByDegrees(starts, 0, total_nodes, degrees);
+                for (int node = 0; node < total_nodes; node++) {
+                    sortByDegrees(neighbors, (int) offsets[node], (int) offsets[node + 1], degrees);
+                }
+            }
+            int[] order = new int[total_nodes];
+            boolean[] visited = new boolean[total_nodes];
+            int visited_nodes = 0;
+            for (int start: starts) {
+                if (visited[start]) {
+                    continue;
+                }
+                visited[start] = true;
+                int head = visited_nodes;
+                order[visited_nodes++] = start;
+                while (head < visited_nodes) {
+                    int node = order[head++];
+                    for (int i = (int) offsets[node]; i < offsets[node + 1]; i++) {
+                        int neighbor = neighbors[i];
+                        if (!visited[neighbor]) {
+                            visited[neighbor] = true;
+                            order[visited_nodes++] = neighbor;
+                        }
+                    }
+                }
+            }
+
+            int[] old2new = new int[first.length];
+            for (int i = 0; i < total_nodes; i++) {
+                old2new[olds[order[i]]] = reverseCuthillMckee ? total_nodes - i : i + 1;
+            }
+            return old2new;
+        }
+
+        /**
+         * Sort nodes by the ascending order of degrees, ties broken by the order of first occurrence.
+         */
+        protected static void sortByDegrees(int[] nodes, int from, int to, int[] degrees) {
+            long[] keys = new long[to - from];
+            for (int i = from; i < to; i++) {
+                keys[i - from] = ((long) degrees[nodes[i]] << 32) | nodes[i];
+            }
+            Arrays.sort(keys);
+            for (int i = from; i < to; i++) {
+                nodes[i] = (int) keys[i - from];
+            }
+        }
+    }
+}
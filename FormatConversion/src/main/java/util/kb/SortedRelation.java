@@ -0,0 +1,130 @@
+package util.kb;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A sorted relation and its indexes, as written by `SortedRelationWriter`, memory-mapped for lookups by binary search.
+ * The relation should be in the raw format. Positions are in the order of a column: the rows themselves for the first
+ * column, and the index of the column for the others. Files larger than 2 GB are not supported.
+ */
+public class SortedRelation implements Closeable {
+    protected final int arity;
+    protected final int totalRows;
+    protected final IntBuffer rows;
+    /** The index of each column but the first */
+    protected final IntBuffer[] indexes;
+
+    public SortedRelation(String kbDirPath, int relId, int arity) throws IOException {
+        this.arity = arity;
+        this.rows = map(KbFiles.relFile(kbDirPath, relId));
+        if (0 == arity || 0 != rows.limit() % arity) {
+            throw new IOException(String.format("Size of relation %d does not match arity %d", relId, arity));
+        }
+        this.totalRows = rows.limit() / arity;
+        this.indexes = new IntBuffer[arity];
+        for (int col = 1; col < arity; col++) {
+            indexes[col] = map(KbFiles.indexFile(kbDirPath, relId, col));
+            if (totalRows != indexes[col].limit()) {
+                throw new IOException(String.format("Size of index %d of relation %d does not match", col, relId));
+            }
+        }
+    }
+
+    protected static IntBuffer map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (Integer.MAX_VALUE < channel.size()) {
+                throw new IOException("File too large to map: " + file.getAbsolutePath());
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        }
+    }
+
+    public int arity() {
+        return arity;
+    }
+
+    public int totalRows() {
+        return totalRows;
+    }
+
+    public int get(int row, int column) {
+        return rows.get(row * arity + column);
+    }
+
+    /**
+     * The index of the row at a position in the order of a column.
+     */
+    public int rowAt(int column, int position) {
+        return (0 == column) ? position : indexes[column].get(position);
+    }
+
+    /**
+     * The first position in the order of a column where the argument is not less than `value`.
+     */
+    public int lowerBound(int column, int value) {
+        int low = 0;
+        int high = totalRows;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (get(rowAt(column, mid), column) < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The first position in the order of a column where the argument is greater than `value`.
+     */
+    public int upperBound(int column, int value) {
+        int low = 0;
+        int high = totalRows;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (get(rowAt(column, mid), column) <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Whether a row is in the relation.
+     */
+    public boolean contains(int[] row) {
+        int low = 0;
+        int high = totalRows;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int c = 0;
+            for (int col = 0; col < arity && 0 == c; col++) {
+                c = Integer.compare(get(mid, col), row[col]);
+            }
+            if (0 == c) {
+                return true;
+            } else if (0 > c) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Mapped buffers are released by the garbage collector.
+     */
+    @Override
+    public void close() {}
+}
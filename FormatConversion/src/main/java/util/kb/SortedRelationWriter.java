@@ -0,0 +1,311 @@
+package util.kb;
+
+import util.io.Bytes;
+import util.io.ExternalSorter;
+import util.io.IntFileWriter;
+import util.io.IntOutput;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Write the rows of a relation sorted by the arguments from the first to the last, with duplicated rows removed. The
+ * rows are buffered and written to the relation file, raw or packed, when the writer is closed. Then an index is
+ * written for each of the other columns (see `KbFiles.indexFile()`): the row indices sorted by the argument of the
+ * column, ties broken by row indices, as little-endian 4-byte integers.
+ *
+ * Rows are buffered in memory, or sorted in external memory if a memory budget is given.
+ */
+public class SortedRelationWriter implements IntOutput {
+    protected static final int INITIAL_CAPACITY = 1 << 10;
+    /** The max length of the in-memory buffer, as some VMs reserve header words in arrays */
+    protected static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    protected final String kbDirPath;
+    protected final int relId;
+    protected final int arity;
+    protected final boolean packed;
+    protected final long memoryBudget;
+    protected final File tmpDir;
+    /** Rows buffered in memory, row by row, if no memory budget is given */
+    protected int[] rows = new int[0];
+    protected int totalInts = 0;
+    /** Rows encoded as big-endian integers, if a memory budget is given */
+    protected final ExternalSorter sorter;
+    protected final int[] row;
+    protected int rowInts = 0;
+    /** The encoded row or index key passed to sorters, which copy it */
+    protected final byte[] record;
+    protected long totalRows = 0;
+
+    /**
+     * Sort rows in memory.
+     */
+    public SortedRelationWriter(String kbDirPath, int relId, int arity, boolean packed) {
+        this(kbDirPath, relId, arity, packed, 0, null);
+    }
+
+    /**
+     * @param memoryBudget The max number of bytes of rows buffered in memory. If not positive, rows are sorted in
+     *                     memory
+     * @param tmpDir The directory of run files of the external sort
+     */
+    public SortedRelationWriter(
+            String kbDirPath, int relId, int arity, boolean packed, long memoryBudget, File tmpDir
+    ) {
+        this.kbDirPath = kbDirPath;
+        this.relId = relId;
+        this.arity = arity;
+        this.packed = packed;
+        this.memoryBudget = memoryBudget;
+        this.tmpDir = tmpDir;
+        this.row = new int[arity];
+        this.record = new byte[Math.max(arity * Integer.BYTES, Long.BYTES)];
+        /* The rows are merged while the index keys are buffered, so each takes half of the budget */
+        this.sorter = (0 < memoryBudget) ? new ExternalSorter(this::compareRows, memoryBudget / 2, tmpDir) : null;
+    }
+
+    @Override
+    public void writeInt(int i) throws IOException {
+        if (null == sorter) {
+            if (rows.length == totalInts) {
+                rows = Arrays.copyOf(rows, grownCapacity(rows.length));
+            }
+            rows[totalInts++] = i;
+            return;
+        }
+        row[rowInts++] = i;
+        if (arity == rowInts) {
+            for (int col = 0; col < arity; col++) {
+                Bytes.putInt(record, col * Integer.BYTES, row[col]);
+            }
+            sorter.add(record, 0, arity * Integer.BYTES);
+            rowInts = 0;
+        }
+    }
+
+    @Override
+    public void writeInts(int[] values, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            writeInt(values[i]);
+        }
+    }
+
+    /**
+     * Double the capacity of the in-memory buffer, up to `MAX_CAPACITY`.
+     * @throws IOException The buffer is already at the max capacity
+     */
+    protected static int grownCapacity(int capacity) throws IOException {
+        if (MAX_CAPACITY <= capacity) {
+            throw new IOException("Too many integers buffered in memory: " + capacity + ". Set a memory budget");
+        }
+        return (int) Math.min(MAX_CAPACITY, Math.max(INITIAL_CAPACITY, capacity * 2L));
+    }
+
+    /**
+     * The number of unique rows written, available after closing.
+     */
+    public long totalRows() {
+        return totalRows;
+    }
+
+    protected int compareRows(byte[] r1, byte[] r2) {
+        for (int offset = 0; offset < r1.length; offset += Integer.BYTES) {
+            int c = Integer.compare(Bytes.getInt(r1, offset), Bytes.getInt(r2, offset));
+            if (0 != c) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Sort the rows, and write the relation file and the index files.
+     * @throws IOException The last row is incomplete
+     */
+    @Override
+    public void close() throws IOException {
+        if (0 == arity) {
+            KbFiles.createRelation(kbDirPath, relId, arity, packed).close();
+            return;
+        }
+        if (null == sorter) {
+            if (0 != totalInts % arity) {
+                throw new IOException(String.format(
+                        "Incomplete row: %d integers of arity %d", totalInts % arity, arity
+                ));
+            }
+            closeInMemory();
+        } else {
+            try {
+                if (0 != rowInts) {
+                    throw new IOException(String.format("Incomplete row: %d integers of arity %d", rowInts, arity));
+                }
+                closeExternal();
+            } finally {
+                sorter.close();
+            }
+        }
+    }
+
+    protected void closeInMemory() throws IOException {
+        int[] sorted = sortUnique(rows, totalInts, arity);
+        rows = null;
+        totalRows = sorted.length / arity;
+        try (IntOutput output = KbFiles.createRelation(kbDirPath, relId, arity, packed)) {
+            output.writeInts(sorted);
+        }
+        long[] keys = new long[(int) totalRows];
+        for (int col = 1; col < arity; col++) {
+            for (int row_idx = 0; row_idx < keys.length; row_idx++) {
+                keys[row_idx] = indexKey(sorted[row_idx * arity + col], row_idx);
+            }
+            Arrays.sort(keys);
+            try (IntFileWriter writer = new IntFileWriter(KbFiles.indexFile(kbDirPath, relId, col))) {
+                for (long key: keys) {
+                    writer.writeInt((int) key);
+                }
+            }
+        }
+    }
+
+    protected void closeExternal() throws IOException {
+        ExternalSorter[] index_sorters = new ExternalSorter[arity];
+        try {
+            for (int col = 1; col < arity; col++) {
+                index_sorters[col] = new ExternalSorter(
+                        SortedRelationWriter::compareIndexKeys, memoryBudget / 2 / (arity - 1), tmpDir
+                );
+            }
+            try (
+                    ExternalSorter.RecordReader reader = sorter.sorted();
+                    IntOutput output = KbFiles.createRelation(kbDirPath, relId, arity, packed)
+            ) {
+                byte[] last = null;
+                byte[] row_record;
+                while (null != (row_record = reader.next())) {
+                    if (null != last && Arrays.equals(last, row_record)) {
+                        continue;
+                    }
+                    if (Integer.MAX_VALUE == totalRows) {
+                        throw new IOException("Too many rows in relation " + relId);
+                    }
+                    for (int col = 0; col < arity; col++) {
+                        output.writeInt(Bytes.getInt(row_record, col * Integer.BYTES));
+                    }
+                    for (int col = 1; col < arity; col++) {
+                        Bytes.putLong(
+                                record, 0, indexKey(Bytes.getInt(row_record, col * Integer.BYTES), (int) totalRows)
+                        );
+                        index_sorters[col].add(record, 0, Long.BYTES);
+                    }
+                    totalRows++;
+                    last = row_record;
+                }
+            }
+            for (int col = 1; col < arity; col++) {
+                try (
+                        ExternalSorter.RecordReader reader = index_sorters[col].sorted();
+                        IntFileWriter writer = new IntFileWriter(KbFiles.indexFile(kbDirPath, relId, col))
+                ) {
+                    byte[] key;
+                    while (null != (key = reader.next())) {
+                        writer.writeInt(Bytes.getInt(key, Integer.BYTES));
+                    }
+                }
+            }
+        } finally {
+            for (ExternalSorter index_sorter: index_sorters) {
+                if (null != index_sorter) {
+                    index_sorter.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * The key ordering rows by an argument and then the row index. Row indices are non-negative and take the lower
+     * half.
+     */
+    protected static long indexKey(int arg, int rowIdx) {
+        return ((long) arg << 32) | rowIdx;
+    }
+
+    protected static int compareIndexKeys(byte[] r1, byte[] r2) {
+        return Long.compare(Bytes.getLong(r1, 0), Bytes.getLong(r2, 0));
+    }
+
+    /**
+     * Sort the row indices in `keys[from, to)`, which are tied at the columns before `col`, by the arguments from
+     * `col` to the last. The lower half of the keys are row indices, and the keys are replaced with index keys.
+     */
+    protected static void sortByColumns(int[] rows, int arity, long[] keys, int from, int to, int col) {
+        for (int i = from; i < to; i++) {
+            int row_idx = (int) keys[i];
+            keys[i] = indexKey(rows[row_idx * arity + col], row_idx);
+        }
+        Arrays.sort(keys, from, to);
+        if (arity - 1 == col) {
+            return;
+        }
+        for (int start = from, end; start < to; start = end) {
+            end = start + 1;
+            while (end < to && (keys[start] >> 32) == (keys[end] >> 32)) {
+                end++;
+            }
+            if (1 < end - start) {
+                sortByColumns(rows, arity, keys, start, end, col + 1);
+            }
+        }
+    }
+
+    /**
+     * Sort rows by the arguments from the first to the last, and remove duplicated rows.
+     * @param rows The rows, row by row, in the first `length` integers
+     * @return The sorted unique rows, row by row
+     */
+    public static int[] sortUnique(int[] rows, int length, int arity) {
+        int total_rows = length / arity;
+        int[] sorted = new int[length];
+        int sorted_ints = 0;
+        if (1 == arity || 2 == arity) {
+            /* Rows are sorted as long keys. The second argument is offset to keep the order of signed integers */
+            long[] keys = new long[total_rows];
+            for (int i = 0; i < total_rows; i++) {
+                keys[i] = (1 == arity) ? rows[i] :
+                        ((long) rows[2 * i] << 32) | ((rows[2 * i + 1] - Integer.MIN_VALUE) & 0xffffffffL);
+            }
+            Arrays.sort(keys);
+            for (int i = 0; i < total_rows; i++) {
+                if (0 < i && keys[i] == keys[i - 1]) {
+                    continue;
+                }
+                if (1 == arity) {
+                    sorted[sorted_ints++] = (int) keys[i];
+                } else {
+                    sorted[sorted_ints++] = (int) (keys[i] >> 32);
+                    sorted[sorted_ints++] = (int) keys[i] + Integer.MIN_VALUE;
+                }
+            }
+        } else {
+            /* Row indices are sorted as index keys by the first argument, and ties by the following arguments */
+            long[] keys = new long[total_rows];
+            for (int i = 0; i < total_rows; i++) {
+                keys[i] = i;
+            }
+            sortByColumns(rows, arity, keys, 0, total_rows, 0);
+            for (int i = 0; i < total_rows; i++) {
+                int offset = (int) keys[i] * arity;
+                if (0 < sorted_ints && Arrays.equals(
+                        rows, offset, offset + arity, sorted, sorted_ints - arity, sorted_ints
+                )) {
+                    continue;
+                }
+                System.arraycopy(rows, offset, sorted, sorted_ints, arity);
+                sorted_ints += arity;
+            }
+        }
+        return Arrays.copyOf(sorted, sorted_ints);
+    }
+}
@@ -0,0 +1,25 @@
+package util.metrics;
+
+import jdk.jfr.*;
+
+/**
+ * A JFR event of the number of triples filtered out by a tool, of a predicate for a reason. Committed when the metrics
+ * are finished.
+ */
+@Name("kbredundancies.Filtered")
+@Label("Filtered Triples")
+@Category("KBRedundancies")
+@StackTrace(false)
+public class FilterEvent extends Event {
+    @Label("Tool")
+    String tool;
+
+    @Label("Predicate")
+    String predicate;
+
+    @Label("Reason")
+    String reason;
+
+    @Label("Count")
+    long count;
+}
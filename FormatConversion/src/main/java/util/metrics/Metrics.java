@@ -0,0 +1,379 @@
+package util.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Metrics of a run of a tool, e.g., a converter or a sampler:
+ *   - Phases: the wall time, the number of items processed (e.g., triples) and the throughput, bytes read and written,
+ *     bytes allocated, and the peak heap usage of each phase;
+ *   - Counters: named totals, e.g., the number of constants;
+ *   - Filtered triples: the number of triples filtered out, by predicate and reason.
+ * Each phase is committed as a `PhaseEvent` when it ends, and filtered triples as `FilterEvent`s when the metrics are
+ * finished, so they are recorded if JFR is on. The summary is written as JSON to "Metrics.meta" in the output KB.
+ *
+ * Allocated bytes are summed over the threads alive at the end of a phase and the threads that exit within the phase.
+ * Exiting threads are only seen if created by `threadFactory()` or `forkJoinThreadFactory()`, which should be used by
+ * the pools of the tools. The peak heap is the sum of the peaks of the heap memory pools, which is an upper
+ * bound of the actual peak. Phases should not overlap.
+ */
+public class Metrics {
+    public static final String META_FILE_NAME = "Metrics.meta";
+    /** Phases not ended yet, to which exiting pool threads report their allocated bytes */
+    protected static final Set<Phase> OPEN_PHASES = ConcurrentHashMap.newKeySet();
+
+    /**
+     * A phase of the tool. The phase starts when created and ends when closed.
+     */
+    public class Phase implements AutoCloseable {
+        protected final String name;
+        protected final long startNanos = System.nanoTime();
+        protected final Map<Long, Long> startAllocated = allocatedBytes();
+        /** The bytes allocated by each pool thread exiting within the phase: thread id -> allocated bytes */
+        protected final Map<Long, Long> exitedAllocated = new ConcurrentHashMap<>();
+        protected final PhaseEvent event = new PhaseEvent();
+        protected long wallNanos = 0;
+        protected long items = 0;
+        protected long bytesRead = 0;
+        protected long bytesWritten = 0;
+        protected long allocated = 0;
+        protected long peakHeap = 0;
+
+        protected Phase(String name) {
+            this.name = name;
+            resetPeakHeap();
+            OPEN_PHASES.add(this);
+            event.begin();
+        }
+
+        public Phase addItems(long items) {
+            this.items += items;
+            return this;
+        }
+
+        public Phase addBytesRead(long bytes) {
+            bytesRead += bytes;
+            return this;
+        }
+
+        public Phase addBytesWritten(long bytes) {
+            bytesWritten += bytes;
+            return this;
+        }
+
+        public long wallMillis() {
+            return wallNanos / 1000000;
+        }
+
+        @Override
+        public void close() {
+            event.end();
+            wallNanos = System.nanoTime() - startNanos;
+            /*
+             * Live threads are read before the phase stops taking reports, so a thread exiting in between is either
+             * alive in the snapshot or has reported. A thread in both is counted once, by its report
+             */
+            Map<Long, Long> end_allocated = allocatedBytes();
+            OPEN_PHASES.remove(this);
+            end_allocated.putAll(exitedAllocated);
+            allocated = 0;
+            for (Map.Entry<Long, Long> entry: end_allocated.entrySet()) {
+                allocated += entry.getValue() - startAllocated.getOrDefault(entry.getKey(), 0L);
+            }
+            peakHeap = peakHeap();
+            if (event.shouldCommit()) {
+                event.tool = tool;
+                event.phase = name;
+                event.items = items;
+                event.bytesRead = bytesRead;
+                event.bytesWritten = bytesWritten;
+                event.allocatedBytes = allocated;
+                event.peakHeapBytes = peakHeap;
+                event.commit();
+            }
+            synchronized (phases) {
+                phases.add(this);
+            }
+        }
+    }
+
+    protected final String tool;
+    protected final Instant startTime = Instant.now();
+    protected final long startNanos = System.nanoTime();
+    protected final List<Phase> phases = new ArrayList<>();
+    protected final Map<String, Long> counters = Collections.synchronizedMap(new LinkedHashMap<>());
+    /** Filtered triples: predicate -> reason -> count */
+    protected final Map<String, Map<String, LongAdder>> filtered = new ConcurrentHashMap<>();
+
+    public Metrics(String tool) {
+        this.tool = tool;
+    }
+
+    /**
+     * Start a phase.
+     */
+    public Phase phase(String name) {
+        return new Phase(name);
+    }
+
+    public void setCounter(String name, long value) {
+        counters.put(name, value);
+    }
+
+    /**
+     * Count triples filtered out. Thread-safe.
+     */
+    public void addFiltered(String predicate, String reason, long count) {
+        if (0 < count) {
+            filtered.computeIfAbsent(predicate, k -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(reason, k -> new LongAdder()).add(count);
+        }
+    }
+
+    /**
+     * The number of triples of a predicate filtered out for a reason.
+     */
+    public long filtered(String predicate, String reason) {
+        Map<String, LongAdder> reasons = filtered.get(predicate);
+        LongAdder count = (null == reasons) ? null : reasons.get(reason);
+        return (null == count) ? 0 : count.sum();
+    }
+
+    public long totalFiltered() {
+        long total = 0;
+        for (Map<String, LongAdder> reasons: filtered.values()) {
+            for (LongAdder count: reasons.values()) {
+                total += count.sum();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Commit the events of filtered triples and write the summary to "Metrics.meta" in the directory of the output KB.
+     */
+    public void finish(File kbDir) throws IOException {
+        for (Map.Entry<String, Map<String, LongAdder>> predicate_entry: new TreeMap<>(filtered).entrySet()) {
+            for (Map.Entry<String, LongAdder> reason_entry: new TreeMap<>(predicate_entry.getValue()).entrySet()) {
+                FilterEvent event = new FilterEvent();
+                if (event.shouldCommit()) {
+                    event.tool = tool;
+                    event.predicate = predicate_entry.getKey();
+                    event.reason = reason_entry.getKey();
+                    event.count = reason_entry.getValue().sum();
+                    event.commit();
+                }
+            }
+        }
+        try (PrintWriter writer = new PrintWriter(new File(kbDir, META_FILE_NAME))) {
+            writer.print(toJson());
+        }
+    }
+
+    public String toJson() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\n");
+        builder.append("  \"tool\": ").append(quote(tool)).append(",\n");
+        builder.append("  \"start\": ").append(quote(startTime.toString())).append(",\n");
+        builder.append("  \"wallMillis\": ").append((System.nanoTime() - startNanos) / 1000000).append(",\n");
+        builder.append("  \"phases\": [");
+        synchronized (phases) {
+            for (int i = 0; i < phases.size(); i++) {
+                Phase phase = phases.get(i);
+                double seconds = phase.wallNanos / 1e9;
+                builder.append((0 == i) ? "\n" : ",\n");
+                builder.append("    {\"name\": ").append(quote(phase.name))
+                        .append(", \"wallMillis\": ").append(phase.wallMillis())
+                        .append(", \"items\": ").append(phase.items)
+                        .append(", \"itemsPerSecond\": ")
+                        .append((0 < seconds) ? String.format("%.1f", phase.items / seconds) : "0")
+                        .append(", \"bytesRead\": ").append(phase.bytesRead)
+                        .append(", \"bytesWritten\": ").append(phase.bytesWritten)
+                        .append(", \"allocatedBytes\": ").append(phase.allocated)
+                        .append(", \"peakHeapBytes\": ").append(phase.peakHeap).append('}');
+            }
+        }
+        builder.append("\n  ],\n");
+        builder.append("  \"counters\": {");
+        synchronized (counters) {
+            int i = 0;
+            for (Map.Entry<String, Long> entry: counters.entrySet()) {
+                builder.append((0 == i++) ? "\n" : ",\n");
+                builder.append("    ").append(quote(entry.getKey())).append(": ").append(entry.getValue());
+            }
+        }
+        builder.append("\n  },\n");
+        builder.append("  \"filtered\": [");
+        int i = 0;
+        for (Map.Entry<String, Map<String, LongAdder>> predicate_entry: new TreeMap<>(filtered).entrySet()) {
+            for (Map.Entry<String, LongAdder> reason_entry: new TreeMap<>(predicate_entry.getValue()).entrySet()) {
+                builder.append((0 == i++) ? "\n" : ",\n");
+                builder.append("    {\"predicate\": ").append(quote(predicate_entry.getKey()))
+                        .append(", \"reason\": ").append(quote(reason_entry.getKey()))
+                        .append(", \"count\": ").append(reason_entry.getValue().sum()).append('}');
+            }
+        }
+        builder.append("\n  ]\n");
+        builder.append("}\n");
+        return builder.toString();
+    }
+
+    protected static String quote(String s) {
+        StringBuilder builder = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (0x20 > c) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    /**
+     * A factory of threads whose allocated bytes are counted in the phases they exit within.
+     */
+    public static ThreadFactory threadFactory() {
+        ThreadFactory factory = Executors.defaultThreadFactory();
+        return task -> factory.newThread(() -> {
+            try {
+                task.run();
+            } finally {
+                threadExiting();
+            }
+        });
+    }
+
+    /**
+     * A factory of fork-join workers whose allocated bytes are counted in the phases they exit within.
+     */
+    public static ForkJoinPool.ForkJoinWorkerThreadFactory forkJoinThreadFactory() {
+        return pool -> new ForkJoinWorkerThread(pool) {
+            @Override
+            protected void onTermination(Throwable exception) {
+                threadExiting();
+                super.onTermination(exception);
+            }
+        };
+    }
+
+    /**
+     * Report the bytes allocated by the current thread, which is about to exit, to the open phases.
+     */
+    protected static void threadExiting() {
+        if (OPEN_PHASES.isEmpty()) {
+            return;
+        }
+        com.sun.management.ThreadMXBean bean = allocationBean();
+        if (null == bean) {
+            return;
+        }
+        long id = Thread.currentThread().getId();
+        long bytes = bean.getThreadAllocatedBytes(id);
+        if (0 <= bytes) {
+            for (Phase phase: OPEN_PHASES) {
+                phase.exitedAllocated.put(id, bytes);
+            }
+        }
+    }
+
+    /**
+     * @return The bean measuring allocated bytes of threads, or NULL if not supported by the JVM
+     */
+    protected static com.sun.management.ThreadMXBean allocationBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean sun_bean = (com.sun.management.ThreadMXBean) bean;
+        if (!sun_bean.isThreadAllocatedMemorySupported() || !sun_bean.isThreadAllocatedMemoryEnabled()) {
+            return null;
+        }
+        return sun_bean;
+    }
+
+    /**
+     * The number of bytes allocated by each live thread, or nothing if not supported by the JVM.
+     * @return Thread id -> allocated bytes
+     */
+    protected static Map<Long, Long> allocatedBytes() {
+        Map<Long, Long> allocated = new HashMap<>();
+        com.sun.management.ThreadMXBean sun_bean = allocationBean();
+        if (null == sun_bean) {
+            return allocated;
+        }
+        long[] ids = sun_bean.getAllThreadIds();
+        long[] bytes = sun_bean.getThreadAllocatedBytes(ids);
+        for (int i = 0; i < ids.length; i++) {
+            if (0 <= bytes[i]) {
+                allocated.put(ids[i], bytes[i]);
+            }
+        }
+        return allocated;
+    }
+
+    protected static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+            if (MemoryType.HEAP == pool.getType() && pool.isValid()) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    protected static long peakHeap() {
+        long total = 0;
+        for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+            if (MemoryType.HEAP == pool.getType() && pool.isValid()) {
+                total += pool.getPeakUsage().getUsed();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * The total size of the files in a directory, recursively, or of a single file.
+     */
+    public static long sizeOf(File file) {
+        if (!file.exists()) {
+            return 0;
+        }
+        try (Stream<Path> paths = Files.walk(file.toPath())) {
+            return paths.map(Path::toFile).filter(File::isFile).mapToLong(File::length).sum();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+}
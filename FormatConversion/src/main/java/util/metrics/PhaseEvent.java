@@ -0,0 +1,40 @@
+package util.metrics;
+
+import jdk.jfr.*;
+
+/**
+ * A JFR event of a phase of a tool, e.g., loading triples in a converter. The duration of the event is the wall time of
+ * the phase.
+ */
+@Name("kbredundancies.Phase")
+@Label("Phase")
+@Category("KBRedundancies")
+@Description("A phase of a converter or sampler")
+@StackTrace(false)
+public class PhaseEvent extends Event {
+    @Label("Tool")
+    String tool;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Items")
+    @Description("The number of items processed, e.g., triples, constants or records")
+    long items;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytesRead;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytesWritten;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+
+    @Label("Peak Heap")
+    @DataAmount
+    long peakHeapBytes;
+}
@@ -0,0 +1,38 @@
+package converter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConverterOptionsTest {
+
+    @Test
+    void testParseSize() {
+        assertEquals(123, ConverterOptions.parseSize("123"));
+        assertEquals(2L << 10, ConverterOptions.parseSize("2k"));
+        assertEquals(512L << 20, ConverterOptions.parseSize("512M"));
+        assertEquals(3L << 30, ConverterOptions.parseSize("3g"));
+        for (String value: new String[]{"", "k", "1.5m", "12x", "99999999999g"}) {
+            assertThrows(NumberFormatException.class, () -> ConverterOptions.parseSize(value), value);
+        }
+    }
+
+    @Test
+    void testParse() throws Exception {
+        ConverterOptions options = ConverterOptions.parse(
+                new String[]{"in", "--threads=4", "--dump-threads=2", "--memory-budget=64m"}, 1
+        );
+        assertEquals(4, options.threads);
+        assertEquals(2, options.dumpThreads);
+        assertEquals(64L << 20, options.memoryBudget);
+        assertEquals(0, ConverterOptions.parse(new String[]{"--memory-budget=0"}, 0).memoryBudget);
+
+        String[] invalid_options = new String[]{
+                "--threads=0", "--threads=-2", "--dump-threads=0", "--memory-budget=-1", "--memory-budget=",
+                "--batch-size=0", "--queue-capacity=-1", "--threads", "--unknown=1"
+        };
+        for (String option: invalid_options) {
+            assertThrows(ConverterException.class, () -> ConverterOptions.parse(new String[]{option}, 0), option);
+        }
+    }
+}
@@ -12,6 +12,7 @@ import java.io.FileInputStream;
 import java.io.FileReader;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -44,19 +45,121 @@ class ConverterTest {
             super(outputKbName, outputPath);
         }
 
+        public TestConverter(String outputKbName, String outputPath, ConverterOptions options) {
+            super(outputKbName, outputPath, options);
+        }
+
         @Override
         protected Iterator<Triple> tripleIterator() {
             return new TestIterator();
         }
+
+        @Override
+        protected List<TripleSegment> tripleSegments() {
+            /* One segment per triple */
+            List<TripleSegment> segments = new ArrayList<>();
+            for (Triple triple: TestIterator.TRIPLES) {
+                segments.add(() -> List.of(triple).iterator());
+            }
+            return segments;
+        }
     }
 
+    static final String OUTPUT_PATH = "/dev/shm/";
+
     @Test
     void testConvert() throws Exception {
-        final String OUTPUT_PATH = "/dev/shm/";
         final String OUTPUT_NAME = "TestConverter";
         TestConverter converter = new TestConverter(OUTPUT_NAME, OUTPUT_PATH);
         assertDoesNotThrow(converter::convert);
+        checkConvertedKb(OUTPUT_NAME);
+    }
+
+    @Test
+    void testConvertPipelined() throws Exception {
+        final String OUTPUT_NAME = "TestConverterPipelined";
+        ConverterOptions options = new ConverterOptions();
+        options.threads = 3;
+        options.batchSize = 1;
+        options.queueCapacity = 1;
+        TestConverter converter = new TestConverter(OUTPUT_NAME, OUTPUT_PATH, options);
+        assertDoesNotThrow(converter::convert);
+        checkConvertedKb(OUTPUT_NAME);
+    }
+
+    @Test
+    void testPipelinedParserError() {
+        ConverterOptions options = new ConverterOptions();
+        options.threads = 2;
+        TestConverter converter = new TestConverter("TestConverterParserError", OUTPUT_PATH, options) {
+            @Override
+            protected List<TripleSegment> tripleSegments() {
+                List<TripleSegment> segments = super.tripleSegments();
+                segments.set(1, () -> {
+                    throw new StackOverflowError();
+                });
+                return segments;
+            }
+        };
+        ConverterException e = assertTimeoutPreemptively(
+                Duration.ofSeconds(10), () -> assertThrows(ConverterException.class, converter::convert)
+        );
+        assertTrue(e.getCause() instanceof StackOverflowError);
+    }
+
+    @Test
+    void testConvertExternal() throws Exception {
+        final String OUTPUT_NAME = "TestConverterExternal";
+        ConverterOptions options = new ConverterOptions();
+        options.memoryBudget = 64;
+        options.tmpDir = OUTPUT_PATH;
+        TestConverter converter = new TestConverter(OUTPUT_NAME, OUTPUT_PATH, options);
+        assertDoesNotThrow(converter::convert);
+        checkConvertedKb(OUTPUT_NAME);
+    }
+
+    @Test
+    void testDuplicateMetrics() throws Exception {
+        final Triple[] triples = new Triple[] {
+                new Triple("a", "r1", "b"),
+                new Triple("a", "r1", "b"),
+                new Triple("x", "rdf:type", "t1"),
+                new Triple("a", "r2", "b"),
+                new Triple("a", "r1", "b"),
+                new Triple("x", "rdf:type", "t1"),
+                new Triple("b", "r1", "a"),
+        };
+        ConverterOptions pipelined = new ConverterOptions();
+        pipelined.threads = 3;
+        pipelined.batchSize = 1;
+        ConverterOptions external = new ConverterOptions();
+        external.memoryBudget = 64;
+        external.tmpDir = OUTPUT_PATH;
+        for (ConverterOptions options: new ConverterOptions[]{new ConverterOptions(), pipelined, external}) {
+            Converter converter = new TestConverter("TestConverterDuplicates", OUTPUT_PATH, options) {
+                @Override
+                protected Iterator<Triple> tripleIterator() {
+                    return Arrays.asList(triples).iterator();
+                }
+
+                @Override
+                protected List<TripleSegment> tripleSegments() {
+                    /* Duplicates across segments are also removed */
+                    return List.of(
+                            () -> Arrays.asList(triples).subList(0, 3).iterator(),
+                            () -> Arrays.asList(triples).subList(3, triples.length).iterator()
+                    );
+                }
+            };
+            converter.convert();
+            assertEquals(2, converter.metrics.filtered("r1", Converter.FILTER_DUPLICATE));
+            assertEquals(1, converter.metrics.filtered("rdf:type", Converter.FILTER_DUPLICATE));
+            assertEquals(0, converter.metrics.filtered("r2", Converter.FILTER_DUPLICATE));
+            assertEquals(3, converter.metrics.totalFiltered());
+        }
+    }
 
+    void checkConvertedKb(final String OUTPUT_NAME) throws Exception {
         Set<String> actual_file_names = new HashSet<>();
         Path kb_dir_path = Paths.get(OUTPUT_PATH, OUTPUT_NAME);
         File[] files = kb_dir_path.toFile().listFiles();
@@ -0,0 +1,161 @@
+package converter;
+
+import org.junit.jupiter.api.Test;
+import util.collection.StringDictionary;
+import util.io.Bytes;
+import util.kb.NumerationOrders;
+import util.metrics.Metrics;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OldFormat2NewTest {
+    static final String TEST_DIR = "/dev/shm/OldFormat2NewTest";
+
+    static File writeMapFile(String name, String content) throws Exception {
+        Path dir = Path.of(TEST_DIR);
+        Files.createDirectories(dir);
+        File file = dir.resolve(name).toFile();
+        Files.writeString(file.toPath(), content);
+        return file;
+    }
+
+    /**
+     * Write a relation file of the old format, i.e., "<name>_<arity>_<#records>.rel" of little-endian integers.
+     */
+    static void writeOldRelation(Path kbDir, String name, int[][] records) throws Exception {
+        int arity = records[0].length;
+        byte[] bytes = new byte[records.length * arity * Integer.BYTES];
+        int offset = 0;
+        for (int[] record: records) {
+            for (int arg: record) {
+                Bytes.putInt(bytes, offset, Integer.reverseBytes(arg));
+                offset += Integer.BYTES;
+            }
+        }
+        Files.write(kbDir.resolve(String.format("%s_%d_%d.rel", name, arity, records.length)), bytes);
+    }
+
+    /**
+     * Write a random KB of the old format. Old numerations are shuffled and some constants do not occur in any
+     * relation.
+     */
+    static void writeRandomOldKb(String kbName, int totalConstants, long seed) throws Exception {
+        Random random = new Random(seed);
+        Path kb_dir = Path.of(TEST_DIR, kbName);
+        Files.createDirectories(kb_dir);
+        List<Integer> nums = new ArrayList<>();
+        for (int num = 1; num <= totalConstants; num++) {
+            nums.add(num);
+        }
+        Collections.shuffle(nums, random);
+        StringBuilder[] maps = new StringBuilder[]{new StringBuilder(), new StringBuilder()};
+        for (int i = 0; i < totalConstants; i++) {
+            maps[i % 2].append("名前").append(i).append('\t').append(Integer.toHexString(nums.get(i))).append('\n');
+        }
+        Files.writeString(kb_dir.resolve("map1.tsv"), maps[0].toString());
+        Files.writeString(kb_dir.resolve("map2.tsv"), maps[1].toString());
+        for (int rel = 0; rel < 6; rel++) {
+            int arity = 1 + rel % 3;
+            int[][] records = new int[1 + random.nextInt(totalConstants)][arity];
+            for (int[] record: records) {
+                for (int col = 0; col < arity; col++) {
+                    record[col] = 1 + random.nextInt(totalConstants * 9 / 10);
+                }
+            }
+            writeOldRelation(kb_dir, "rel" + rel, records);
+        }
+    }
+
+    static void assertSameKb(String expectedDir, String actualDir) throws Exception {
+        File expected_dir = new File(expectedDir);
+        File actual_dir = new File(actualDir);
+        String[] expected_files = expected_dir.list((dir, name) -> !Metrics.META_FILE_NAME.equals(name));
+        String[] actual_files = actual_dir.list((dir, name) -> !Metrics.META_FILE_NAME.equals(name));
+        assertNotNull(expected_files);
+        assertNotNull(actual_files);
+        Arrays.sort(expected_files);
+        Arrays.sort(actual_files);
+        assertArrayEquals(expected_files, actual_files);
+        for (String file_name: expected_files) {
+            assertArrayEquals(
+                    Files.readAllBytes(expected_dir.toPath().resolve(file_name)),
+                    Files.readAllBytes(actual_dir.toPath().resolve(file_name)),
+                    file_name
+            );
+        }
+    }
+
+    @Test
+    void testLoadMapFile() throws Exception {
+        StringDictionary map = new StringDictionary();
+        OldFormat2New.loadMapFile(writeMapFile("map1.tsv", "a\t1\nb\tf\nc\t10\n"), map);
+        assertEquals(3, map.size());
+        assertEquals(1, map.find("a"));
+        assertEquals(15, map.find("b"));
+        assertEquals(16, map.find("c"));
+    }
+
+    @Test
+    void testDuplicatedMappings() throws Exception {
+        File duplicated_name = writeMapFile("map2.tsv", "a\t1\nb\t2\na\t3\n");
+        assertThrows(
+                ConverterException.class, () -> OldFormat2New.loadMapFile(duplicated_name, new StringDictionary())
+        );
+        File duplicated_num = writeMapFile("map3.tsv", "a\t1\nb\t1\n");
+        assertThrows(ConverterException.class, () -> OldFormat2New.loadMapFile(duplicated_num, new StringDictionary()));
+        File zero_num = writeMapFile("map4.tsv", "a\t0\n");
+        assertThrows(ConverterException.class, () -> OldFormat2New.loadMapFile(zero_num, new StringDictionary()));
+    }
+
+    @Test
+    void testConvert() throws Exception {
+        Path kb_dir = Path.of(TEST_DIR, "OldKb");
+        Files.createDirectories(kb_dir);
+        Files.writeString(kb_dir.resolve("map1.tsv"), "a\t5\nb\t3\nc\t7\nd\t9\ne\t4\n");
+        writeOldRelation(kb_dir, "r1", new int[][]{{5, 3}, {3, 7}, {9, 5}});
+        for (long budget: new long[]{0, 64}) {
+            ConverterOptions options = new ConverterOptions();
+            options.memoryBudget = budget;
+            options.tmpDir = TEST_DIR;
+            String new_path = TEST_DIR + "/new" + budget;
+            OldFormat2New.convert(TEST_DIR, "OldKb", new_path, options);
+            Path new_dir = Path.of(new_path, "OldKb");
+            assertEquals(List.of("a", "b", "c", "d"), Files.readAllLines(new_dir.resolve("map1.tsv")));
+            assertEquals(List.of("r1\t2\t3"), Files.readAllLines(new_dir.resolve("Relations.tsv")));
+            byte[] rel0 = Files.readAllBytes(new_dir.resolve("0.rel"));
+            int[] args = new int[rel0.length / Integer.BYTES];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = Integer.reverseBytes(Bytes.getInt(rel0, i * Integer.BYTES));
+            }
+            assertArrayEquals(new int[]{1, 2, 2, 3, 4, 1}, args);
+        }
+    }
+
+    @Test
+    void testStreamingEqualsInMemory() throws Exception {
+        writeRandomOldKb("RandomOldKb", 5000, 1);
+        for (var order: List.of(NumerationOrders.FIRST_OCCURRENCE, NumerationOrders.DEGREE)) {
+            ConverterOptions in_memory = new ConverterOptions();
+            in_memory.numerationOrder = order;
+            in_memory.dumpThreads = 3;
+            String in_memory_path = TEST_DIR + "/memory-" + order.name();
+            OldFormat2New.convert(TEST_DIR, "RandomOldKb", in_memory_path, in_memory);
+
+            /* Small budgets spill many runs of mapping entries */
+            for (long budget: new long[]{1 << 10, 1 << 30}) {
+                ConverterOptions streaming = new ConverterOptions();
+                streaming.numerationOrder = order;
+                streaming.memoryBudget = budget;
+                streaming.tmpDir = TEST_DIR;
+                String streaming_path = TEST_DIR + "/streaming-" + order.name() + budget;
+                OldFormat2New.convert(TEST_DIR, "RandomOldKb", streaming_path, streaming);
+                assertSameKb(in_memory_path + "/RandomOldKb", streaming_path + "/RandomOldKb");
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package converter.impl;
+
+import org.junit.jupiter.api.Test;
+import util.collection.Utf8HashSet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntityIndexTest {
+    static File[] writeEntityFiles(String dirName, int totalFiles, int entitiesPerFile) throws Exception {
+        Path dir = Path.of("/dev/shm", dirName);
+        Files.createDirectories(dir);
+        File[] files = new File[totalFiles];
+        for (int f = 0; f < totalFiles; f++) {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < entitiesPerFile; i++) {
+                builder.append("entity_").append(f).append('_').append(i).append("\tcomment\n");
+            }
+            files[f] = dir.resolve("entities" + f + ".tsv").toFile();
+            Files.writeString(files[f].toPath(), builder.toString());
+        }
+        return files;
+    }
+
+    static long find(EntityIndex index, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return index.find(bytes, 0, bytes.length);
+    }
+
+    static void assertAllFound(EntityIndex index, int totalFiles, int entitiesPerFile) {
+        assertEquals((long) totalFiles * entitiesPerFile, index.size());
+        for (int f = 0; f < totalFiles; f++) {
+            for (int i = 0; i < entitiesPerFile; i++) {
+                assertNotEquals(-1, find(index, "entity_" + f + '_' + i));
+            }
+        }
+        assertEquals(-1, find(index, "comment"));
+        assertEquals(-1, find(index, "entity_" + totalFiles + "_0"));
+    }
+
+    @Test
+    void testShards() throws Exception {
+        File[] files = writeEntityFiles("EntityIndexTestShards", 4, 10000);
+        EntityIndex sequential = EntityIndex.load(files, 1);
+        EntityIndex parallel = EntityIndex.load(files, 4);
+        assertAllFound(sequential, 4, 10000);
+        assertAllFound(parallel, 4, 10000);
+        int[] shard_sizes = new int[1 << EntityIndex.SHARD_BITS];
+        for (int i = 0; i < 10000; i++) {
+            String name = "entity_0_" + i;
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            long handle = sequential.find(bytes, 0, bytes.length);
+            int shard_idx = (int) (handle >>> Integer.SIZE);
+            assertEquals(EntityIndex.shardOf(Utf8HashSet.hash(bytes, 0, bytes.length)), shard_idx);
+            assertEquals(shard_idx, (int) (parallel.find(bytes, 0, bytes.length) >>> Integer.SIZE));
+            assertEquals(name, sequential.string(handle, bytes, 0, bytes.length));
+            shard_sizes[shard_idx]++;
+        }
+        for (int shard_size: shard_sizes) {
+            assertTrue(0 < shard_size);
+        }
+    }
+
+    @Test
+    void testCacheRoundTrip() throws Exception {
+        File[] files = writeEntityFiles("EntityIndexTestCache", 3, 2000);
+        File cache_file = Path.of("/dev/shm", "EntityIndexTestCache.cache").toFile();
+        Files.deleteIfExists(cache_file.toPath());
+        EntityIndex built = EntityIndex.load(files, cache_file, 2);
+        assertTrue(cache_file.isFile());
+        assertAllFound(built, 3, 2000);
+        EntityIndex mapped = EntityIndex.map(cache_file, EntityIndex.listingKey(files));
+        assertNotNull(mapped);
+        assertAllFound(mapped, 3, 2000);
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(find(built, "entity_1_" + i), find(mapped, "entity_1_" + i));
+        }
+        assertAllFound(EntityIndex.load(files, cache_file, 1), 3, 2000);
+    }
+
+    @Test
+    void testStaleCacheRebuilt() throws Exception {
+        File[] files = writeEntityFiles("EntityIndexTestStale", 2, 100);
+        File cache_file = Path.of("/dev/shm", "EntityIndexTestStale.cache").toFile();
+        Files.deleteIfExists(cache_file.toPath());
+        EntityIndex.load(files, cache_file, 1);
+
+        /* Size changed */
+        Files.writeString(files[0].toPath(), "added\n", StandardOpenOption.APPEND);
+        assertNull(EntityIndex.map(cache_file, EntityIndex.listingKey(files)));
+        EntityIndex index = EntityIndex.load(files, cache_file, 1);
+        assertEquals(201, index.size());
+        assertNotEquals(-1, find(index, "added"));
+        assertNotNull(EntityIndex.map(cache_file, EntityIndex.listingKey(files)));
+
+        /* Same size, only the modification time changed */
+        String content = Files.readString(files[1].toPath()).replace("entity_1_0\t", "entity_1_X\t");
+        long modified = files[1].lastModified();
+        Files.writeString(files[1].toPath(), content);
+        assertTrue(files[1].setLastModified(modified + 2000));
+        assertNull(EntityIndex.map(cache_file, EntityIndex.listingKey(files)));
+        index = EntityIndex.load(files, cache_file, 1);
+        assertNotEquals(-1, find(index, "entity_1_X"));
+        assertEquals(-1, find(index, "entity_1_0"));
+    }
+}
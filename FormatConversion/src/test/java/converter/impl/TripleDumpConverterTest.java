@@ -0,0 +1,330 @@
+package converter.impl;
+
+import converter.ConverterOptions;
+import converter.Triple;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.jupiter.api.Test;
+import util.io.ArchiveSplitter;
+import util.metrics.Metrics;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TripleDumpConverterTest {
+    static final String OUTPUT_PATH = "/dev/shm/";
+    static final String RDF_TYPE = "<http://www.w3.org/1999/02/22-rdf-syntax-ns#type>";
+
+    static File writeFile(String name, byte[] content) throws IOException {
+        File file = Paths.get(OUTPUT_PATH, name).toFile();
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    /**
+     * Parse a dump file.
+     * @return The triples, each as "subject\tpredicate\tobject"
+     */
+    static List<String> parse(File file, TripleDumpSegment.Syntax syntax, Metrics metrics) throws IOException {
+        TripleDumpSegment segment = new TripleDumpSegment(
+                file, ArchiveSplitter.detect(file), 0, file.length(), syntax, metrics
+        );
+        List<String> triples = new ArrayList<>();
+        segment.open().forEachRemaining(triple -> triples.add(triple.subj + '\t' + triple.pred + '\t' + triple.obj));
+        return triples;
+    }
+
+    @Test
+    void testParseNTriples() throws Exception {
+        String content = "# comment\n" +
+                "\n" +
+                "<http://ex.org/a> <http://ex.org/p> \"say \\\"hi\\\" .\" .\n" +
+                "<http://ex.org/a>\t<http://ex.org/p>\t\"chat\"@fr-BE\t.\r\n" +
+                "_:b1 <http://ex.org/q> \"5\"^^<http://www.w3.org/2001/XMLSchema#int> .\n" +
+                "<http://ex.org/a> " + RDF_TYPE + " <http://www.w3.org/2002/07/owl#Thing> .\n" +
+                "  <http://ex.org/b> <http://www.w3.org/2000/01/rdf-schema#subClassOf> _:b1.\n" +
+                "<http://ex.org/a> <http://ex.org/p> <http://ex.org/b>\n" +
+                "<http://ex.org/a> <http://ex.org/p> \"unterminated .\n" +
+                "<http://ex.org/a> <http://ex.org/p .\n" +
+                "garbage\n" +
+                "<http://ex.org/c> <http://ex.org/p> <http://ex.org/d> .";
+        File file = writeFile("TripleDumpTest.nt", content.getBytes(StandardCharsets.UTF_8));
+        Metrics metrics = new Metrics("test");
+        List<String> triples = parse(file, TripleDumpSegment.Syntax.NTRIPLES, metrics);
+        assertEquals(List.of(
+                String.join("\t", "http://ex.org/a", "http://ex.org/p", "\"say \\\"hi\\\" .\""),
+                String.join("\t", "http://ex.org/a", "http://ex.org/p", "\"chat\"@fr-BE"),
+                String.join("\t", "_:b1", "http://ex.org/q", "\"5\"^^<http://www.w3.org/2001/XMLSchema#int>"),
+                String.join("\t", "http://ex.org/a", "rdf:type", "owl:Thing"),
+                String.join("\t", "http://ex.org/b", "rdfs:subClassOf", "_:b1"),
+                String.join("\t", "http://ex.org/c", "http://ex.org/p", "http://ex.org/d")
+        ), triples);
+        assertEquals(4, metrics.filtered(TripleDumpSegment.UNKNOWN_PREDICATE, TripleDumpSegment.FILTER_MALFORMED));
+    }
+
+    @Test
+    void testParseTsv() throws Exception {
+        String content = "# comment\n" +
+                "a\tp\tb\n" +
+                "<http://ex.org/x>\t" + RDF_TYPE + "\t<http://ex.org/C>\t.\n" +
+                "x\t<http://www.w3.org/2000/01/rdf-schema#label>\t\"X Y\"\textra\tfields\r\n" +
+                "\n" +
+                "short\tline\n" +
+                "a\t\tb\n";
+        File file = writeFile("TripleDumpTest.tsv", content.getBytes(StandardCharsets.UTF_8));
+        Metrics metrics = new Metrics("test");
+        List<String> triples = parse(file, TripleDumpSegment.Syntax.TSV, metrics);
+        assertEquals(List.of(
+                String.join("\t", "a", "p", "b"),
+                String.join("\t", "http://ex.org/x", "rdf:type", "http://ex.org/C"),
+                String.join("\t", "x", "rdfs:label", "\"X Y\"")
+        ), triples);
+        assertEquals(2, metrics.filtered(TripleDumpSegment.UNKNOWN_PREDICATE, TripleDumpSegment.FILTER_MALFORMED));
+    }
+
+    /**
+     * N-Triples lines of a random KB. The same seed produces the same lines.
+     */
+    static byte[] randomDump(int totalLines, long seed) {
+        Random random = new Random(seed);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < totalLines; i++) {
+            builder.append("<http://ex.org/e").append(random.nextInt(totalLines / 4)).append("> ");
+            if (0 == random.nextInt(5)) {
+                builder.append(RDF_TYPE).append(" <http://ex.org/C").append(random.nextInt(20)).append("> .\n");
+            } else {
+                builder.append("<http://ex.org/p").append(random.nextInt(8)).append("> <http://ex.org/e")
+                        .append(random.nextInt(totalLines / 4)).append("> .\n");
+            }
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Split content into chunks at line ends, each of about `chunkSize` bytes.
+     */
+    static List<byte[]> chunks(byte[] content, int chunkSize) {
+        List<byte[]> chunks = new ArrayList<>();
+        int start = 0;
+        while (start < content.length) {
+            int end = Math.min(content.length, start + chunkSize);
+            while (end < content.length && '\n' != content[end - 1]) {
+                end++;
+            }
+            chunks.add(Arrays.copyOfRange(content, start, end));
+            start = end;
+        }
+        return chunks;
+    }
+
+    static byte[] gzip(byte[] content, int level) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (GZIPOutputStream os = new GZIPOutputStream(bos) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            os.write(content);
+        }
+        return bos.toByteArray();
+    }
+
+    static byte[] bzip2(byte[] content) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (BZip2CompressorOutputStream os = new BZip2CompressorOutputStream(bos)) {
+            os.write(content);
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * A BGZF block, as written by `bgzip`.
+     */
+    static byte[] bgzfBlock(byte[] content) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(content);
+        deflater.finish();
+        byte[] deflated = new byte[content.length + 1024];
+        int length = deflater.deflate(deflated);
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        ByteBuffer block = ByteBuffer.allocate(18 + length + 8).order(ByteOrder.LITTLE_ENDIAN);
+        block.put(new byte[]{0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff});
+        block.putShort((short) 6).put((byte) 'B').put((byte) 'C').putShort((short) 2);
+        block.putShort((short) (block.capacity() - 1));
+        block.put(deflated, 0, length);
+        block.putInt((int) crc.getValue()).putInt(content.length);
+        return block.array();
+    }
+
+    static byte[] concat(List<byte[]> parts) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (byte[] part: parts) {
+            bos.write(part);
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * Split a file and check that the ranges are decompressed to the original content.
+     * @return The boundaries of the ranges
+     */
+    static long[] checkSplit(File file, ArchiveSplitter.Compression compression, byte[] content) throws IOException {
+        assertEquals(compression, ArchiveSplitter.detect(file));
+        long[] boundaries = ArchiveSplitter.split(file, compression, 8);
+        assertEquals(0, boundaries[0]);
+        assertEquals(file.length(), boundaries[boundaries.length - 1]);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (int i = 1; i < boundaries.length; i++) {
+            assertTrue(boundaries[i - 1] < boundaries[i]);
+            try (InputStream is = ArchiveSplitter.open(file, compression, boundaries[i - 1], boundaries[i])) {
+                is.transferTo(bos);
+            }
+        }
+        assertArrayEquals(content, bos.toByteArray());
+        return boundaries;
+    }
+
+    @Test
+    void testSplitPlain() throws Exception {
+        byte[] content = randomDump(20000, 1);
+        long[] boundaries = checkSplit(
+                writeFile("TripleDumpTest.split.nt", content), ArchiveSplitter.Compression.NONE, content
+        );
+        assertEquals(9, boundaries.length);
+        for (int i = 1; i < boundaries.length - 1; i++) {
+            assertEquals('\n', content[(int) boundaries[i] - 1]);
+        }
+    }
+
+    @Test
+    void testSplitBgzf() throws Exception {
+        byte[] content = randomDump(20000, 2);
+        List<byte[]> blocks = new ArrayList<>();
+        for (int start = 0; start < content.length; start += 0xff00) {
+            blocks.add(bgzfBlock(Arrays.copyOfRange(content, start, Math.min(content.length, start + 0xff00))));
+        }
+        blocks.add(bgzfBlock(new byte[0]));
+        File file = writeFile("TripleDumpTest.split.nt.bgz", concat(blocks));
+        assertTrue(1 < checkSplit(file, ArchiveSplitter.Compression.GZIP, content).length - 1);
+    }
+
+    @Test
+    void testSplitMultiMemberGzip() throws Exception {
+        byte[] content = randomDump(20000, 3);
+        List<byte[]> members = new ArrayList<>();
+        for (byte[] chunk: chunks(content, content.length / 10)) {
+            members.add(gzip(chunk, Deflater.DEFAULT_COMPRESSION));
+        }
+        File file = writeFile("TripleDumpTest.split.nt.gz", concat(members));
+        assertTrue(1 < checkSplit(file, ArchiveSplitter.Compression.GZIP, content).length - 1);
+
+        /* A single member is not split */
+        file = writeFile("TripleDumpTest.single.nt.gz", gzip(content, Deflater.DEFAULT_COMPRESSION));
+        assertEquals(2, checkSplit(file, ArchiveSplitter.Compression.GZIP, content).length);
+    }
+
+    @Test
+    void testSplitGzipIgnoresEmbeddedHeaders() throws Exception {
+        /* Stored members containing whole gzip files: the embedded headers are not member boundaries */
+        byte[] text = randomDump(2000, 4);
+        byte[] embedded = gzip(text, Deflater.DEFAULT_COMPRESSION);
+        List<byte[]> members = new ArrayList<>();
+        List<byte[]> contents = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            byte[] member_content = concat(List.of(text, embedded, text));
+            contents.add(member_content);
+            members.add(gzip(member_content, Deflater.NO_COMPRESSION));
+        }
+        File file = writeFile("TripleDumpTest.embedded.gz", concat(members));
+        long[] boundaries = checkSplit(file, ArchiveSplitter.Compression.GZIP, concat(contents));
+        Set<Long> member_starts = new HashSet<>();
+        long position = 0;
+        for (byte[] member: members) {
+            member_starts.add(position);
+            position += member.length;
+        }
+        assertTrue(2 < boundaries.length);
+        for (int i = 0; i < boundaries.length - 1; i++) {
+            assertTrue(member_starts.contains(boundaries[i]));
+        }
+    }
+
+    @Test
+    void testSplitMultiStreamBzip2() throws Exception {
+        byte[] content = randomDump(20000, 5);
+        List<byte[]> streams = new ArrayList<>();
+        for (byte[] chunk: chunks(content, content.length / 10)) {
+            streams.add(bzip2(chunk));
+        }
+        File file = writeFile("TripleDumpTest.split.nt.bz2", concat(streams));
+        assertTrue(1 < checkSplit(file, ArchiveSplitter.Compression.BZIP2, content).length - 1);
+    }
+
+    @Test
+    void testTruncatedGzipFails() throws Exception {
+        byte[] member = gzip(randomDump(2000, 6), Deflater.DEFAULT_COMPRESSION);
+        File file = writeFile("TripleDumpTest.truncated.nt.gz", Arrays.copyOf(member, member.length / 2));
+        TripleDumpSegment segment = new TripleDumpSegment(
+                file, ArchiveSplitter.Compression.GZIP, 0, file.length(), TripleDumpSegment.Syntax.NTRIPLES, null
+        );
+        Iterator<Triple> iterator = segment.open();
+        assertThrows(UncheckedIOException.class, () -> iterator.forEachRemaining(triple -> {}));
+    }
+
+    static Map<String, byte[]> readKbFiles(String kbName) throws IOException {
+        Map<String, byte[]> files = new TreeMap<>();
+        File[] kb_files = Paths.get(OUTPUT_PATH, kbName).toFile().listFiles();
+        assertNotNull(kb_files);
+        for (File file: kb_files) {
+            if (!Metrics.META_FILE_NAME.equals(file.getName())) {
+                files.put(file.getName(), Files.readAllBytes(file.toPath()));
+            }
+        }
+        return files;
+    }
+
+    @Test
+    void testThreadsProduceSameKb() throws Exception {
+        /* Larger than `MIN_SEGMENT_BYTES`, so the file is split */
+        byte[] content = randomDump(60000, 7);
+        assertTrue(2 * TripleDumpConverter.MIN_SEGMENT_BYTES < content.length);
+        Path input_dir = Paths.get(OUTPUT_PATH, "TripleDumpTestInput");
+        Files.createDirectories(input_dir);
+        List<byte[]> halves = chunks(content, content.length / 2);
+        Files.write(input_dir.resolve("0.nt"), halves.get(0));
+        Files.write(input_dir.resolve("1.nt.gz"), gzip(concat(halves.subList(1, halves.size())), Deflater.BEST_SPEED));
+
+        Map<String, byte[]> expected = null;
+        for (int threads: new int[]{1, 4}) {
+            ConverterOptions options = new ConverterOptions();
+            options.threads = threads;
+            String kb_name = "TripleDumpTestThreads" + threads;
+            new TripleDumpConverter(
+                    input_dir.toString(), TripleDumpSegment.Syntax.NTRIPLES, kb_name, OUTPUT_PATH, options
+            ).convert();
+            Map<String, byte[]> actual = readKbFiles(kb_name);
+            if (null == expected) {
+                expected = actual;
+                assertTrue(expected.containsKey("Relations.tsv"));
+                assertTrue(expected.containsKey("map1.tsv"));
+                continue;
+            }
+            assertEquals(expected.keySet(), actual.keySet());
+            for (Map.Entry<String, byte[]> entry: expected.entrySet()) {
+                assertArrayEquals(entry.getValue(), actual.get(entry.getKey()), entry.getKey());
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package sampler;
+
+import org.junit.jupiter.api.Test;
+import sinc2.kb.SimpleKb;
+import sinc2.kb.SimpleRelation;
+import sinc2.sampling.SamplingInfo;
+
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ForestFireSamplerTest {
+
+    @Test
+    void testThreadsIndependent() {
+        SimpleKb kb = MajorNodeSamplerTest.randomKb("ForestFireTestKb", 20000, 6);
+        BitSet type_values = MajorNodeSamplerTest.typeValues(kb.totalConstants(), 7);
+        for (int walkers: new int[]{1, 5, 16}) {
+            SamplingInfo expected = new ForestFireSampler(
+                    type_values, 42, 1, walkers, ForestFireSampler.DEFAULT_FORWARD_PROBABILITY
+            ).sample(kb, 10000, "Sampled");
+            for (int threads: new int[]{2, 4, 7}) {
+                SamplingInfo actual = new ForestFireSampler(
+                        type_values, 42, threads, walkers, ForestFireSampler.DEFAULT_FORWARD_PROBABILITY
+                ).sample(kb, 10000, "Sampled");
+                MajorNodeSamplerTest.assertSameSample(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    void testBudget() {
+        SimpleKb kb = MajorNodeSamplerTest.randomKb("ForestFireTestKb", 2000, 8);
+        BitSet type_values = MajorNodeSamplerTest.typeValues(kb.totalConstants(), 9);
+        for (int budget: new int[]{0, 1, 17, 1000, 5000}) {
+            for (int walkers: new int[]{1, 16}) {
+                SamplingInfo info = new ForestFireSampler(
+                        type_values, 1, 4, walkers, ForestFireSampler.DEFAULT_FORWARD_PROBABILITY
+                ).sample(kb, budget, "Sampled");
+                assertEquals(budget, info.sampledKb.totalRecords(), "budget " + budget);
+            }
+        }
+
+        /* Walkers only stop when every edge of non-type nodes is burned, even if restarts keep burning nothing */
+        int burnable = 0;
+        for (SimpleRelation relation: kb.getRelations()) {
+            for (int[] row: relation) {
+                if (!type_values.get(row[0]) || !type_values.get(row[1])) {
+                    burnable++;
+                }
+            }
+        }
+        assertTrue(burnable < kb.totalRecords() * 2);
+        for (int walkers: new int[]{1, 16}) {
+            SamplingInfo info = new ForestFireSampler(type_values, 1, 4, walkers, 0.05)
+                    .sample(kb, kb.totalRecords() * 2, "Sampled");
+            assertEquals(burnable, info.sampledKb.totalRecords());
+        }
+    }
+
+    @Test
+    void testInvalidArguments() {
+        BitSet type_values = new BitSet();
+        double probability = ForestFireSampler.DEFAULT_FORWARD_PROBABILITY;
+        assertThrows(IllegalArgumentException.class, () -> new ForestFireSampler(type_values, 0, 0, 1, probability));
+        assertThrows(IllegalArgumentException.class, () -> new ForestFireSampler(type_values, 0, -2, 1, probability));
+        assertThrows(IllegalArgumentException.class, () -> new ForestFireSampler(type_values, 0, 1, 0, probability));
+        assertThrows(IllegalArgumentException.class, () -> new ForestFireSampler(type_values, 0, 1, 1, 1.5));
+    }
+}
@@ -0,0 +1,197 @@
+package sampler;
+
+import org.junit.jupiter.api.Test;
+import sinc2.kb.SimpleKb;
+import sinc2.kb.SimpleRelation;
+import sinc2.sampling.SamplingInfo;
+import util.collection.LongHashSet;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MajorNodeSamplerTest {
+    static final String TEST_DIR = "/dev/shm/MajorNodeSamplerTest";
+
+    /**
+     * A random KB of binary relations where every constant occurs, with an empty relation and skewed degrees, so there
+     * are major nodes and many ties of degrees.
+     */
+    static SimpleKb randomKb(String name, int totalConstants, long seed) {
+        Random random = new Random(seed);
+        int[][][] relations = new int[5][][];
+        String[] rel_names = new String[relations.length];
+        int next_unused = 1;
+        for (int rel_id = 0; rel_id < relations.length; rel_id++) {
+            rel_names[rel_id] = "r" + rel_id;
+            Set<List<Integer>> rows = new LinkedHashSet<>();
+            int total_rows = (3 == rel_id) ? 0 : totalConstants;
+            while (rows.size() < total_rows) {
+                int subj = 1 + (int) (totalConstants * Math.pow(random.nextDouble(), 3));
+                int obj = (next_unused <= totalConstants) ? next_unused++ : 1 + random.nextInt(totalConstants);
+                rows.add(List.of(subj, obj));
+            }
+            relations[rel_id] = new int[rows.size()][];
+            int row_idx = 0;
+            for (List<Integer> row: rows) {
+                relations[rel_id][row_idx++] = new int[]{row.get(0), row.get(1)};
+            }
+        }
+        return new SimpleKb(name, relations, rel_names);
+    }
+
+    static BitSet typeValues(int totalConstants, long seed) {
+        Random random = new Random(seed);
+        BitSet type_values = new BitSet();
+        for (int i = 0; i < 10; i++) {
+            type_values.set(1 + random.nextInt(totalConstants));
+        }
+        /* Node 1 is a type value, which has the largest degree in the random KBs */
+        type_values.set(1);
+        return type_values;
+    }
+
+    static List<String> rowsOf(SamplingInfo info) {
+        List<String> rows = new ArrayList<>();
+        for (SimpleRelation relation: info.sampledKb.getRelations()) {
+            for (int[] row: relation) {
+                rows.add(relation.name + "\t" + row[0] + "\t" + row[1]);
+            }
+        }
+        return rows;
+    }
+
+    static void assertSameSample(SamplingInfo expected, SamplingInfo actual) {
+        assertEquals(rowsOf(expected), rowsOf(actual));
+        assertArrayEquals(expected.constMap, actual.constMap);
+    }
+
+    @Test
+    void testCsrGraphWithPool() {
+        SimpleKb kb = randomKb("CsrGraphTest", 20000, 1);
+        CsrGraph expected = new CsrGraph(kb.getRelations(), kb.totalConstants());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            CsrGraph actual = new CsrGraph(kb.getRelations(), kb.totalConstants(), pool);
+            assertArrayEquals(expected.offsets, actual.offsets);
+            assertArrayEquals(expected.edges, actual.edges);
+            assertArrayEquals(expected.relationStarts, actual.relationStarts);
+        } finally {
+            pool.shutdown();
+        }
+
+        /* Edges of each node are in the order of edge ids, and each edge is listed at both endpoints */
+        int[] degrees = new int[expected.totalNodes()];
+        for (int node = 0; node < expected.totalNodes(); node++) {
+            for (int idx = expected.edgesStart(node); idx < expected.edgesEnd(node); idx++) {
+                int edge = expected.edge(idx);
+                if (idx > expected.edgesStart(node)) {
+                    assertTrue(expected.edge(idx - 1) <= edge);
+                }
+                int[] row = expected.row(expected.relationOf(edge), edge);
+                assertTrue(node == row[0] || node == row[1]);
+            }
+        }
+        for (SimpleRelation relation: kb.getRelations()) {
+            for (int[] row: relation) {
+                degrees[row[0]]++;
+                degrees[row[1]]++;
+            }
+        }
+        for (int node = 0; node < expected.totalNodes(); node++) {
+            assertEquals(degrees[node], expected.degree(node));
+        }
+        assertEquals(4, expected.relationOf(expected.relationStarts[4]));
+    }
+
+    /**
+     * Select major nodes by a full stable sort of all nodes.
+     */
+    static int[] selectBySort(int[] degrees, BitSet typeValues, int budget) {
+        List<Integer> nodes = new ArrayList<>();
+        for (int node = 0; node < degrees.length; node++) {
+            if (!typeValues.get(node) && 0 < degrees[node]) {
+                nodes.add(node);
+            }
+        }
+        nodes.sort((n1, n2) -> Integer.compare(degrees[n2], degrees[n1]));
+        List<Integer> selected = new ArrayList<>();
+        long sampled_edges = 0;
+        for (int node: nodes) {
+            if (sampled_edges >= budget) {
+                break;
+            }
+            selected.add(node);
+            sampled_edges += degrees[node];
+        }
+        return selected.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Test
+    void testSelectMajorNodes() {
+        Random random = new Random(2);
+        int[] degrees = new int[5000];
+        long total_degrees = 0;
+        for (int node = 1; node < degrees.length; node++) {
+            /* Few distinct degrees, so the last selected degree has ties */
+            degrees[node] = (int) (20 * Math.pow(random.nextDouble(), 4));
+            total_degrees += degrees[node];
+        }
+        BitSet type_values = typeValues(degrees.length - 1, 3);
+        MajorNodeSampler sampler = new MajorNodeSampler(type_values);
+        int[] budgets = new int[]{-1, 0, 1, 19, 20, 21, 100, 1000, 3333, (int) total_degrees, (int) total_degrees * 2};
+        for (int budget: budgets) {
+            assertArrayEquals(
+                    selectBySort(degrees, type_values, budget),
+                    sampler.selectMajorNodes(degrees.length, node -> degrees[node], budget),
+                    "budget " + budget
+            );
+        }
+    }
+
+    @Test
+    void testFormatSampledKb() {
+        LongHashSet r0 = new LongHashSet();
+        r0.add(LongHashSet.pair(7, 3));
+        r0.add(LongHashSet.pair(2, 9));
+        r0.add(LongHashSet.pair(7, 2));
+        LongHashSet r1 = new LongHashSet();
+        r1.add(LongHashSet.pair(9, 5));
+        SamplingInfo info = MajorNodeSampler.formatSampledKb(
+                "FormatTest", new LongHashSet[]{r0, new LongHashSet(), r1}, new String[]{"r0", "r1", "r2"}, 10
+        );
+        /* Records are sorted, and constants are numerated by first occurrence in that order */
+        assertEquals(List.of("r0\t1\t2", "r0\t3\t1", "r0\t3\t4", "r2\t2\t5"), rowsOf(info));
+        assertArrayEquals(new int[]{0, 2, 9, 7, 3, 5}, info.constMap);
+        assertEquals(0, info.sampledKb.getRelation(1).totalRows());
+    }
+
+    @Test
+    void testSampleStreamingEqualsSample() throws Exception {
+        SimpleKb kb = randomKb("MajorNodeSamplerTestKb", 3000, 4);
+        String[] names = new String[kb.totalConstants() + 1];
+        for (int num = 1; num < names.length; num++) {
+            names[num] = "c" + num;
+        }
+        kb.dump(TEST_DIR, names);
+        BitSet type_values = typeValues(kb.totalConstants(), 5);
+        for (int budget: new int[]{1, 500, 4000, 100000}) {
+            SamplingInfo expected = new MajorNodeSampler(type_values).sample(kb, budget, "Sampled");
+            assertTrue(0 < expected.sampledKb.totalRecords());
+            for (int threads: new int[]{1, 4}) {
+                MajorNodeSampler sampler = new MajorNodeSampler(type_values, threads);
+                assertSameSample(expected, sampler.sample(kb, budget, "Sampled"));
+                assertSameSample(
+                        expected, sampler.sampleStreaming("MajorNodeSamplerTestKb", TEST_DIR, budget, "Sampled")
+                );
+            }
+        }
+    }
+
+    @Test
+    void testInvalidThreads() {
+        assertThrows(IllegalArgumentException.class, () -> new MajorNodeSampler(new BitSet(), 0));
+        assertThrows(IllegalArgumentException.class, () -> new MajorNodeSampler(new BitSet(), -1));
+    }
+}
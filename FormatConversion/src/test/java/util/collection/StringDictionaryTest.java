@@ -0,0 +1,131 @@
+package util.collection;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StringDictionaryTest {
+    static void put(StringDictionary dictionary, String name, int id) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        dictionary.put(bytes, 0, bytes.length, id);
+    }
+
+    @Test
+    void testAdd() {
+        StringDictionary dictionary = new StringDictionary();
+        int n = 50000;
+        for (int i = 0; i < n; i++) {
+            assertEquals(i + 1, dictionary.add("名前" + i));
+        }
+        for (int i = 0; i < n; i++) {
+            assertEquals(i + 1, dictionary.add("名前" + i));
+            assertEquals(i + 1, dictionary.find("名前" + i));
+            assertEquals("名前" + i, dictionary.name(i + 1));
+        }
+        assertEquals(n, dictionary.size());
+        assertEquals(n, dictionary.maxId());
+        assertEquals(StringDictionary.NO_ID, dictionary.find("名前" + n));
+        assertNull(dictionary.name(n + 1));
+        assertNull(dictionary.name(StringDictionary.NO_ID));
+        assertEquals(n + 1, dictionary.add(""));
+        assertEquals("", dictionary.name(n + 1));
+    }
+
+    @Test
+    void testStringsMatchBytes() {
+        /* ASCII, 2- and 3-byte chars, surrogate pairs, and unpaired surrogates that are encoded as '?' */
+        String[] names = new String[]{
+                "plain", "caf\u00e9", "\u540d\u524d", "\ud83d\ude00x", "a\ud83d", "\ude00b", "a?", "?b", "\u07ff\u0800",
+                "\uffff", ""
+        };
+        StringDictionary dictionary = new StringDictionary();
+        assertEquals(StringDictionary.NO_ID, dictionary.find("caf\u00e9"));
+        for (String name: names) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            int id = dictionary.add(name);
+            assertEquals(id, dictionary.find(bytes, 0, bytes.length), name);
+            assertEquals(id, dictionary.add(bytes, 0, bytes.length), name);
+            assertEquals(id, dictionary.find(name), name);
+            assertEquals(new String(bytes, StandardCharsets.UTF_8), dictionary.name(id));
+        }
+        /* Unpaired surrogates share the bytes of '?' */
+        assertEquals(dictionary.find("a?"), dictionary.find("a\ud83d"));
+        assertEquals(dictionary.find("?b"), dictionary.find("\ude00b"));
+        assertEquals(names.length - 2, dictionary.size());
+    }
+
+    @Test
+    void testLongNames() throws Exception {
+        StringDictionary dictionary = new StringDictionary(1);
+        String long_name = "x".repeat(StringDictionary.FIRST_PAGE_SIZE * 3 + 1);
+        assertEquals(1, dictionary.add("a"));
+        assertEquals(2, dictionary.add(long_name));
+        assertEquals(3, dictionary.add("b"));
+        assertEquals(long_name, dictionary.name(2));
+        assertEquals(2, dictionary.find(long_name));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        dictionary.writeName(2, bos);
+        dictionary.writeName(3, bos);
+        assertEquals(long_name + "b", bos.toString(StandardCharsets.UTF_8));
+        assertThrows(IllegalArgumentException.class, () -> dictionary.writeName(4, bos));
+    }
+
+    @Test
+    void testPut() {
+        StringDictionary dictionary = new StringDictionary();
+        put(dictionary, "c", 3);
+        put(dictionary, "a", 1);
+        put(dictionary, "z", 2000);
+        assertEquals(3, dictionary.size());
+        assertEquals(2000, dictionary.maxId());
+        assertEquals(3, dictionary.find("c"));
+        assertEquals("z", dictionary.name(2000));
+        assertFalse(dictionary.contains(2));
+        assertNull(dictionary.name(2));
+        assertEquals(2001, dictionary.add("new"));
+
+        /* Duplicates are rejected instead of overwriting, so no id is left without a name */
+        assertThrows(IllegalArgumentException.class, () -> put(dictionary, "c", 4));
+        assertThrows(IllegalArgumentException.class, () -> put(dictionary, "d", 3));
+        assertThrows(IllegalArgumentException.class, () -> put(dictionary, "d", StringDictionary.NO_ID));
+        assertEquals(3, dictionary.find("c"));
+        assertEquals("c", dictionary.name(3));
+        assertEquals(StringDictionary.NO_ID, dictionary.find("d"));
+        assertEquals(4, dictionary.size());
+    }
+
+    @Test
+    void testRenumber() {
+        StringDictionary dictionary = new StringDictionary();
+        int n = 3000;
+        for (int i = 1; i <= n; i++) {
+            dictionary.add("name" + i);
+        }
+        /* Reverse the ids and remove every third name */
+        int[] old_2_new = new int[n + 1];
+        int next_id = 1;
+        for (int old_id = n; old_id >= 1; old_id--) {
+            if (0 != old_id % 3) {
+                old_2_new[old_id] = next_id++;
+            }
+        }
+        dictionary.renumber(old_2_new);
+        assertEquals(next_id - 1, dictionary.size());
+        assertEquals(next_id - 1, dictionary.maxId());
+        for (int old_id = 1; old_id <= n; old_id++) {
+            if (0 == old_id % 3) {
+                assertEquals(StringDictionary.NO_ID, dictionary.find("name" + old_id));
+            } else {
+                assertEquals(old_2_new[old_id], dictionary.find("name" + old_id));
+                assertEquals("name" + old_id, dictionary.name(old_2_new[old_id]));
+            }
+        }
+        assertEquals(next_id, dictionary.add("name3"));
+
+        int[] collision = new int[]{0, 1, 1};
+        assertThrows(IllegalArgumentException.class, () -> dictionary.renumber(collision));
+    }
+}
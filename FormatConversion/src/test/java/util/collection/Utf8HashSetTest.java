@@ -0,0 +1,105 @@
+package util.collection;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Utf8HashSetTest {
+    static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static int add(Utf8HashSet set, String s) {
+        byte[] b = bytes(s);
+        return set.add(b, 0, b.length);
+    }
+
+    static int find(Utf8HashSet set, String s) {
+        byte[] b = bytes(s);
+        return set.find(b, 0, b.length);
+    }
+
+    @Test
+    void testOrdinalsAcrossRehash() {
+        Utf8HashSet set = new Utf8HashSet();
+        int n = 100000;
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, add(set, "entity" + i));
+        }
+        assertEquals(n, set.size());
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, add(set, "entity" + i));
+            assertEquals(i, find(set, "entity" + i));
+        }
+        assertEquals(n, set.size());
+        assertEquals(-1, find(set, "entity" + n));
+        assertEquals(-1, find(set, ""));
+        assertEquals(n, add(set, ""));
+        assertEquals(n, find(set, ""));
+    }
+
+    @Test
+    void testCollidingSlotsAndTags() {
+        Utf8HashSet set = new Utf8HashSet();
+        /* Same slot and same tag: only the bytes in the arena tell the members apart */
+        long hash = 0x0000_1234_0000_0005L;
+        byte[] a = bytes("a");
+        byte[] b = bytes("b");
+        assertEquals(0, set.add(hash, a, 0, 1));
+        assertEquals(1, set.add(hash, b, 0, 1));
+        /* Same slot, different tag */
+        long other_tag = 0x0000_4321_0000_0005L;
+        assertEquals(2, set.add(other_tag, a, 0, 1));
+        assertEquals(0, set.find(hash, a, 0, 1));
+        assertEquals(1, set.find(hash, b, 0, 1));
+        assertEquals(2, set.find(other_tag, a, 0, 1));
+        assertEquals(-1, set.find(other_tag, b, 0, 1));
+    }
+
+    @Test
+    void testLongMembersAndStrings() {
+        Utf8HashSet set = new Utf8HashSet();
+        String long_name = "中".repeat(Utf8HashSet.FIRST_PAGE_SIZE);
+        assertEquals(0, add(set, "short"));
+        assertEquals(1, add(set, long_name));
+        assertEquals(2, add(set, "after"));
+        assertEquals(1, find(set, long_name));
+        assertEquals(2, find(set, "after"));
+        byte[] b = bytes(long_name);
+        String s = set.string(1, b, 0, b.length);
+        assertEquals(long_name, s);
+        assertSame(s, set.string(1, b, 0, b.length));
+    }
+
+    @Test
+    void testWriteAndMap() throws Exception {
+        Utf8HashSet set = new Utf8HashSet();
+        int n = 5000;
+        for (int i = 0; i < n; i++) {
+            add(set, "名前" + i);
+        }
+        Path path = Path.of("/dev/shm", "Utf8HashSetTest.bin");
+        try (FileChannel channel = FileChannel.open(
+                path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING
+        )) {
+            channel.position(7);
+            channel.write(ByteBuffer.allocate(7));
+            set.write(channel);
+            assertEquals(7 + 7 + set.serializedBytes(), channel.size());
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Utf8HashSet mapped = Utf8HashSet.map(channel, 14);
+            assertEquals(n, mapped.size());
+            for (int i = 0; i < n; i++) {
+                assertEquals(i, find(mapped, "名前" + i));
+            }
+            assertEquals(-1, find(mapped, "名前" + n));
+        }
+    }
+}
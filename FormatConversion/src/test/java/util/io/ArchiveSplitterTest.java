@@ -0,0 +1,101 @@
+package util.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArchiveSplitterTest {
+    static final File TEST_FILE = new File("/dev/shm/ArchiveSplitterTest.gz");
+
+    /**
+     * An inflater counting the calls of `inflate()`.
+     */
+    static class CountingInflater extends Inflater {
+        int inflateCalls = 0;
+
+        CountingInflater() {
+            super(true);
+        }
+
+        @Override
+        public int inflate(byte[] output) throws DataFormatException {
+            inflateCalls++;
+            return super.inflate(output);
+        }
+    }
+
+    static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gos = new GZIPOutputStream(bos)) {
+            gos.write(content);
+        }
+        return bos.toByteArray();
+    }
+
+    static byte[] randomText(int lines, long seed) {
+        Random random = new Random(seed);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            builder.append("<e").append(random.nextInt(100000)).append(">\t<p").append(random.nextInt(50))
+                    .append(">\t\"").append(random.nextLong()).append("\"\n");
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static boolean containsGzipMagic(byte[] bytes, int from) {
+        for (int i = from; i + 3 <= bytes.length; i++) {
+            if (0x1f == (bytes[i] & 0xff) && 0x8b == (bytes[i + 1] & 0xff) && 8 == bytes[i + 2]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    void testSingleMemberNotInflated() throws IOException {
+        byte[] member = gzip(randomText(200000, 1));
+        assertFalse(containsGzipMagic(member, 1));
+        Files.write(TEST_FILE.toPath(), member);
+        CountingInflater inflater = new CountingInflater();
+        try {
+            long[] boundaries = ArchiveSplitter.split(TEST_FILE, ArchiveSplitter.Compression.GZIP, 8, inflater);
+            assertArrayEquals(new long[]{0, member.length}, boundaries);
+            assertEquals(0, inflater.inflateCalls);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Test
+    void testMembersInflatedOnlyAtSplitPoints() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        int members = 64;
+        for (int i = 0; i < members; i++) {
+            bos.write(gzip(randomText(2000, i)));
+        }
+        byte[] file = bos.toByteArray();
+        Files.write(TEST_FILE.toPath(), file);
+        CountingInflater inflater = new CountingInflater();
+        try {
+            long[] boundaries = ArchiveSplitter.split(TEST_FILE, ArchiveSplitter.Compression.GZIP, 4, inflater);
+            assertEquals(5, boundaries.length);
+            /* Each split point inflates one member of about 100KB, far fewer calls than inflating all members */
+            int calls = inflater.inflateCalls;
+            inflater.inflateCalls = 0;
+            ArchiveSplitter.split(TEST_FILE, ArchiveSplitter.Compression.GZIP, 2, inflater);
+            assertTrue(0 < inflater.inflateCalls && inflater.inflateCalls < calls, inflater.inflateCalls + " " + calls);
+        } finally {
+            inflater.end();
+        }
+    }
+}
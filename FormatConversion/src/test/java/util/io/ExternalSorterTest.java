@@ -0,0 +1,118 @@
+package util.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExternalSorterTest {
+    /** Records of a key and a sequence number, ordered by the key only */
+    static byte[] record(int key, int seq) {
+        byte[] record = new byte[2 * Integer.BYTES];
+        Bytes.putInt(record, 0, key);
+        Bytes.putInt(record, Integer.BYTES, seq);
+        return record;
+    }
+
+    static int compareKeys(byte[] r1, byte[] r2) {
+        return Integer.compare(Bytes.getInt(r1, 0), Bytes.getInt(r2, 0));
+    }
+
+    static List<byte[]> readAll(ExternalSorter sorter) throws Exception {
+        List<byte[]> records = new ArrayList<>();
+        try (ExternalSorter.RecordReader reader = sorter.sorted()) {
+            byte[] record;
+            while (null != (record = reader.next())) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    @Test
+    void testInMemory() throws Exception {
+        File tmp_dir = Files.createTempDirectory("ExternalSorterTest").toFile();
+        try (ExternalSorter sorter = new ExternalSorter(ExternalSorterTest::compareKeys, 1 << 20, tmp_dir)) {
+            sorter.add(record(3, 0));
+            sorter.add(record(1, 1));
+            sorter.add(record(2, 2));
+            sorter.add(record(1, 3));
+            List<byte[]> records = readAll(sorter);
+            assertEquals(0, sorter.totalRuns());
+            assertEquals(4, records.size());
+            int[][] expected = new int[][]{{1, 1}, {1, 3}, {2, 2}, {3, 0}};
+            for (int i = 0; i < expected.length; i++) {
+                assertArrayEquals(record(expected[i][0], expected[i][1]), records.get(i));
+            }
+        }
+        assertTrue(tmp_dir.delete());
+    }
+
+    @Test
+    void testMultiPassMergeIsStable() throws Exception {
+        File tmp_dir = Files.createTempDirectory("ExternalSorterTest").toFile();
+        final int total_records = ExternalSorter.MAX_FAN_IN * ExternalSorter.MAX_FAN_IN * 3 + 7;
+        Random random = new Random(0);
+        int[] keys = new int[total_records];
+        /* Each run holds about 3 records */
+        try (ExternalSorter sorter = new ExternalSorter(
+                ExternalSorterTest::compareKeys, 3 * (8 + ExternalSorter.RECORD_OVERHEAD), tmp_dir
+        )) {
+            for (int seq = 0; seq < total_records; seq++) {
+                keys[seq] = random.nextInt(100);
+                sorter.add(record(keys[seq], seq));
+            }
+            assertTrue(ExternalSorter.MAX_FAN_IN * ExternalSorter.MAX_FAN_IN < sorter.totalRuns());
+            List<byte[]> records = readAll(sorter);
+            assertTrue(ExternalSorter.MAX_FAN_IN >= sorter.totalRuns());
+            assertEquals(total_records, records.size());
+            long[] expected = new long[total_records];
+            for (int seq = 0; seq < total_records; seq++) {
+                expected[seq] = ((long) keys[seq] << Integer.SIZE) | seq;
+            }
+            Arrays.sort(expected);
+            for (int i = 0; i < total_records; i++) {
+                assertArrayEquals(record((int) (expected[i] >> Integer.SIZE), (int) expected[i]), records.get(i));
+            }
+        }
+        File[] remaining_files = tmp_dir.listFiles();
+        assertNotNull(remaining_files);
+        assertEquals(0, remaining_files.length);
+        assertTrue(tmp_dir.delete());
+    }
+
+    @Test
+    void testDuplicatesRemovedAcrossPasses() throws Exception {
+        File tmp_dir = Files.createTempDirectory("ExternalSorterTest").toFile();
+        final int total_records = ExternalSorter.MAX_FAN_IN * ExternalSorter.MAX_FAN_IN * 3;
+        int[] duplicates = new int[1];
+        try (ExternalSorter sorter = new ExternalSorter(
+                ExternalSorterTest::compareKeys, (r1, r2) -> {
+                    if (0 == compareKeys(r1, r2)) {
+                        duplicates[0]++;
+                        return true;
+                    }
+                    return false;
+                }, 2 * (8 + ExternalSorter.RECORD_OVERHEAD), tmp_dir
+        )) {
+            for (int seq = 0; seq < total_records; seq++) {
+                sorter.add(record(seq % 50, seq));
+            }
+            List<byte[]> records = readAll(sorter);
+            assertEquals(50, records.size());
+            for (int key = 0; key < 50; key++) {
+                /* The first occurrence is kept */
+                assertArrayEquals(record(key, key), records.get(key));
+            }
+            assertEquals(total_records - 50, sorter.removedRecords());
+            assertEquals(total_records - 50, duplicates[0]);
+        }
+        assertTrue(tmp_dir.delete());
+    }
+}
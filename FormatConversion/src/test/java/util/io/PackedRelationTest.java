@@ -0,0 +1,165 @@
+package util.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedRelationTest {
+    static final File TEST_FILE = new File("/dev/shm/PackedRelationTest.prel");
+
+    static void write(int[] values, int arity, int blockRows, boolean oneByOne) throws IOException {
+        try (PackedRelationWriter writer = new PackedRelationWriter(TEST_FILE, arity, blockRows)) {
+            if (oneByOne) {
+                for (int value: values) {
+                    writer.writeInt(value);
+                }
+            } else {
+                /* Batches not aligned with blocks */
+                for (int offset = 0; offset < values.length; offset += 1000) {
+                    writer.writeInts(values, offset, Math.min(1000, values.length - offset));
+                }
+            }
+        }
+    }
+
+    static int[] readAll(PackedRelationReader reader) throws IOException {
+        int[] values = new int[(int) reader.totalRows() * reader.arity()];
+        int offset = 0;
+        IntBuffer chunk;
+        while (null != (chunk = reader.nextChunk())) {
+            assertEquals(0, chunk.remaining() % reader.arity());
+            chunk.get(values, offset, chunk.remaining());
+            offset += chunk.position();
+        }
+        assertEquals(values.length, offset);
+        return values;
+    }
+
+    static void checkRoundTrip(int[] values, int arity, int blockRows) throws IOException {
+        for (boolean one_by_one: new boolean[]{true, false}) {
+            write(values, arity, blockRows, one_by_one);
+            try (PackedRelationReader reader = new PackedRelationReader(TEST_FILE)) {
+                assertEquals(arity, reader.arity());
+                assertEquals(values.length / arity, reader.totalRows());
+                assertEquals((reader.totalRows() + blockRows - 1) / blockRows, reader.totalBlocks());
+                assertArrayEquals(values, readAll(reader));
+                for (long row: new long[]{0, blockRows - 1, blockRows, reader.totalRows() - 1}) {
+                    if (0 <= row && row < reader.totalRows()) {
+                        int from = (int) row * arity;
+                        assertArrayEquals(Arrays.copyOfRange(values, from, from + arity), reader.readRow(row));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void testBlockEdges() throws IOException {
+        Random random = new Random(1);
+        int block_rows = 7;
+        for (int rows: new int[]{1, block_rows - 1, block_rows, block_rows + 1, block_rows * 5, block_rows * 5 + 3}) {
+            for (int arity: new int[]{1, 2, 3}) {
+                int[] values = new int[rows * arity];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = 1 + random.nextInt(100);
+                }
+                checkRoundTrip(values, arity, block_rows);
+            }
+        }
+        /* Multiple default blocks in a chunk, and a partial last chunk */
+        int[] values = new int[(PackedRelationReader.CHUNK_ROWS * 2 + 5) * 2];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i / 2 + random.nextInt(3);
+        }
+        checkRoundTrip(values, 2, PackedRelationWriter.DEFAULT_BLOCK_ROWS);
+    }
+
+    @Test
+    void testEmptyRelation() throws IOException {
+        checkRoundTrip(new int[0], 2, PackedRelationWriter.DEFAULT_BLOCK_ROWS);
+        try (PackedRelationReader reader = new PackedRelationReader(TEST_FILE)) {
+            assertEquals(0, reader.totalBlocks());
+            assertNull(reader.nextChunk());
+            assertThrows(IndexOutOfBoundsException.class, () -> reader.readRow(0));
+        }
+    }
+
+    @Test
+    void testWideValues() throws IOException {
+        Random random = new Random(2);
+        int[] values = new int[3000 * 3];
+        for (int i = 0; i < values.length; i++) {
+            switch (i % 3) {
+                case 0:
+                    /* Full range, with deltas of 33 bits */
+                    values[i] = (0 == (i / 3) % 2) ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+                    break;
+                case 1:
+                    values[i] = random.nextInt();
+                    break;
+                default:
+                    /* Constant: no bits per value */
+                    values[i] = -1;
+            }
+        }
+        checkRoundTrip(values, 3, 64);
+        checkRoundTrip(values, 3, 1);
+        checkRoundTrip(new int[]{Integer.MAX_VALUE, Integer.MIN_VALUE, 0, -1}, 1, 3);
+    }
+
+    @Test
+    void testEncodings() {
+        long[] words = new long[4];
+        int[] bits = new int[]{1, 7, 33, 64};
+        long[] values = new long[]{1, 100, (1L << 33) - 1, -1L};
+        for (int i = 0; i < bits.length; i++) {
+            Arrays.fill(words, 0);
+            for (int idx = 0; idx < 3; idx++) {
+                PackedRelationWriter.pack(words, idx, bits[i], values[i]);
+            }
+            for (int idx = 0; idx < 3; idx++) {
+                assertEquals(values[i], PackedRelationWriter.unpack(words, idx, bits[i]));
+            }
+        }
+        for (long delta: new long[]{0, 1, -1, Integer.MAX_VALUE, (long) Integer.MIN_VALUE - Integer.MAX_VALUE}) {
+            assertEquals(delta, PackedRelationWriter.unzigzag(PackedRelationWriter.zigzag(delta)));
+        }
+        assertEquals(33, PackedRelationWriter.bitsOf(PackedRelationWriter.zigzag(
+                (long) Integer.MIN_VALUE - Integer.MAX_VALUE
+        )));
+    }
+
+    @Test
+    void testUnpackAll() {
+        Random random = new Random(7);
+        int count = 100;
+        for (int bits = 0; bits <= Long.SIZE; bits++) {
+            long[] words = new long[PackedRelationWriter.wordsOf(count, bits) + 1];
+            long[] expected = new long[count];
+            for (int idx = 0; idx < count; idx++) {
+                expected[idx] = (Long.SIZE == bits) ? random.nextLong() : random.nextLong() & ((1L << bits) - 1);
+                PackedRelationWriter.pack(words, idx, bits, expected[idx]);
+            }
+            /* Bits after the packed values should not leak into the last one */
+            words[words.length - 1] = -1L;
+            for (int n: new int[]{0, 1, 63, count}) {
+                long[] values = new long[count];
+                PackedRelationReader.unpackAll(words, bits, values, n);
+                assertArrayEquals(Arrays.copyOf(expected, n), Arrays.copyOf(values, n), "bits " + bits);
+            }
+        }
+    }
+
+    @Test
+    void testIncompleteRow() throws IOException {
+        PackedRelationWriter writer = new PackedRelationWriter(TEST_FILE, 2);
+        writer.writeInts(new int[]{1, 2, 3}, 0, 3);
+        assertThrows(IOException.class, writer::close);
+    }
+}
@@ -0,0 +1,93 @@
+package util.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TsvTokenizerTest {
+
+    /**
+     * A stream returning at most `chunk` bytes per read, so lines are split across fills.
+     */
+    static InputStream chunked(String text, int chunk) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, chunk));
+            }
+        };
+    }
+
+    static List<List<String>> tokenize(TsvTokenizer tokenizer) throws IOException {
+        List<List<String>> lines = new ArrayList<>();
+        while (tokenizer.nextLine()) {
+            List<String> fields = new ArrayList<>();
+            for (int i = 0; i < tokenizer.fields(); i++) {
+                fields.add(tokenizer.field(i));
+                assertEquals(fields.get(i).getBytes(StandardCharsets.UTF_8).length, tokenizer.length(i));
+            }
+            lines.add(fields);
+        }
+        assertFalse(tokenizer.nextLine());
+        return lines;
+    }
+
+    @Test
+    void testLineEndings() throws IOException {
+        String text = "a\tb\r\nc\td\n\ne\tf\r\n\r\nlast\tline";
+        List<List<String>> expected = List.of(
+                List.of("a", "b"), List.of("c", "d"), List.of(""), List.of("e", "f"), List.of(""),
+                List.of("last", "line")
+        );
+        for (int chunk: new int[]{1, 3, 1024}) {
+            try (TsvTokenizer tokenizer = new TsvTokenizer(chunked(text, chunk), 4)) {
+                assertEquals(expected, tokenize(tokenizer), "chunk " + chunk);
+            }
+        }
+        try (TsvTokenizer tokenizer = new TsvTokenizer(chunked("", 8))) {
+            assertEquals(List.of(), tokenize(tokenizer));
+        }
+        try (TsvTokenizer tokenizer = new TsvTokenizer(chunked("x\n", 8))) {
+            assertEquals(List.of(List.of("x")), tokenize(tokenizer));
+        }
+    }
+
+    @Test
+    void testLongLine() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.append("é").append(i);
+        }
+        String long_field = builder.toString();
+        String text = "s\t" + long_field + "\to\nnext\n";
+        for (int chunk: new int[]{7, 100000}) {
+            try (TsvTokenizer tokenizer = new TsvTokenizer(chunked(text, chunk), 16)) {
+                assertEquals(
+                        List.of(List.of("s", long_field, "o"), List.of("next")), tokenize(tokenizer), "chunk " + chunk
+                );
+                assertTrue(text.length() < tokenizer.buffer().length);
+            }
+        }
+    }
+
+    @Test
+    void testEmptyAndManyFields() throws IOException {
+        List<String> many = new ArrayList<>();
+        for (int i = 0; i < 37; i++) {
+            many.add((0 == i % 3) ? "" : "f" + i);
+        }
+        String text = "\t\t\n" + String.join("\t", many) + "\n\tx\t\n" + "a\tb\n";
+        try (TsvTokenizer tokenizer = new TsvTokenizer(chunked(text, 5), 8)) {
+            assertEquals(
+                    List.of(List.of("", "", ""), many, List.of("", "x", ""), List.of("a", "b")), tokenize(tokenizer)
+            );
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package util.kb;
+
+import org.junit.jupiter.api.Test;
+import sinc2.kb.KbException;
+import sinc2.util.kb.NumeratedKb;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DictionaryKbTest {
+    static final String OUTPUT_PATH = "/dev/shm";
+
+    static String[][] randomRecords(int totalRecords, long seed) {
+        Random random = new Random(seed);
+        String[][] records = new String[totalRecords][];
+        for (int i = 0; i < totalRecords; i++) {
+            int rel = random.nextInt(5);
+            String[] record = new String[2 + rel % 2];
+            record[0] = "r" + rel;
+            for (int j = 1; j < record.length; j++) {
+                record[j] = "e" + random.nextInt(totalRecords / 10);
+            }
+            records[i] = record;
+        }
+        return records;
+    }
+
+    static void assertSameFiles(String expectedKbName, String actualKbName) throws Exception {
+        File expected_dir = Path.of(OUTPUT_PATH, expectedKbName).toFile();
+        File actual_dir = Path.of(OUTPUT_PATH, actualKbName).toFile();
+        String[] expected_files = expected_dir.list();
+        String[] actual_files = actual_dir.list();
+        assertNotNull(expected_files);
+        assertNotNull(actual_files);
+        Arrays.sort(expected_files);
+        Arrays.sort(actual_files);
+        assertArrayEquals(expected_files, actual_files);
+        for (String file_name: expected_files) {
+            assertArrayEquals(
+                    Files.readAllBytes(expected_dir.toPath().resolve(file_name)),
+                    Files.readAllBytes(actual_dir.toPath().resolve(file_name)),
+                    file_name
+            );
+        }
+    }
+
+    @Test
+    void testAddAndDump() throws Exception {
+        String[][] records = randomRecords(20000, 1);
+        NumeratedKb expected = new NumeratedKb("DictionaryKbTestExpected");
+        DictionaryKb actual = new DictionaryKb("DictionaryKbTestActual");
+        int total_new = 0;
+        for (String[] record: records) {
+            String[] args = Arrays.copyOfRange(record, 1, record.length);
+            expected.addRecord(record[0], args);
+            boolean added = (2 == args.length) ? actual.addRecord(record[0], args[0], args[1]) :
+                    actual.addRecord(record[0], args);
+            if (added) {
+                total_new++;
+            }
+        }
+        int total_records = 0;
+        long total_duplicates = 0;
+        for (DictionaryKb.Relation relation: actual.getRelations()) {
+            total_records += relation.totalRecords();
+            total_duplicates += relation.totalDuplicates();
+        }
+        assertEquals(total_new, total_records);
+        assertEquals(records.length, total_records + total_duplicates);
+        assertTrue(0 < total_duplicates);
+
+        /* Duplicates are counted in the relation they belong to */
+        Map<String, Set<List<String>>> unique_records = new HashMap<>();
+        Map<String, Integer> relation_records = new HashMap<>();
+        for (String[] record: records) {
+            unique_records.computeIfAbsent(record[0], k -> new HashSet<>()).add(Arrays.asList(record));
+            relation_records.merge(record[0], 1, Integer::sum);
+        }
+        assertEquals(unique_records.size(), actual.getRelations().size());
+        for (DictionaryKb.Relation relation: actual.getRelations()) {
+            int unique = unique_records.get(relation.getName()).size();
+            assertEquals(unique, relation.totalRecords(), relation.getName());
+            assertEquals(
+                    relation_records.get(relation.getName()) - unique, relation.totalDuplicates(), relation.getName()
+            );
+        }
+        assertThrows(KbException.class, () -> actual.addRecord("r0", new String[]{"a", "b", "c"}));
+
+        expected.dump(OUTPUT_PATH);
+        actual.dump(OUTPUT_PATH, 3);
+        assertSameFiles("DictionaryKbTestExpected", "DictionaryKbTestActual");
+    }
+
+    @Test
+    void testRearrangeAndDump() throws Exception {
+        String[][] records = randomRecords(5000, 2);
+        NumeratedKb expected = new NumeratedKb("DictionaryKbTestRearrangedExpected");
+        DictionaryKb actual = new DictionaryKb("DictionaryKbTestRearrangedActual");
+        for (String[] record: records) {
+            String[] args = Arrays.copyOfRange(record, 1, record.length);
+            expected.addRecord(record[0], args);
+            actual.addRecord(record[0], args);
+        }
+
+        /* Reverse the numerations. As in `NumeratedKb`, only the mapping is changed */
+        int total_mappings = actual.totalMappings();
+        int[] old_2_new = new int[total_mappings + 1];
+        for (int old_num = 1; old_num <= total_mappings; old_num++) {
+            old_2_new[old_num] = total_mappings + 1 - old_num;
+        }
+        int old_e0 = actual.getDictionary().find("e0");
+        expected.rearrangeMapping(old_2_new);
+        actual.rearrangeMapping(old_2_new);
+        assertEquals(old_2_new[old_e0], actual.getDictionary().find("e0"));
+        expected.dump(OUTPUT_PATH);
+        actual.dump(OUTPUT_PATH);
+        assertSameFiles("DictionaryKbTestRearrangedExpected", "DictionaryKbTestRearrangedActual");
+
+        /* Records are renumbered by the caller, and records added after that are still deduplicated */
+        DictionaryKb.Relation relation = actual.getRelations().get(0);
+        int[][] old_rows = new int[relation.totalRecords()][];
+        for (int row_idx = 0; row_idx < old_rows.length; row_idx++) {
+            old_rows[row_idx] = new int[]{relation.get(row_idx, 0), relation.get(row_idx, 1)};
+        }
+        relation.renumber(old_2_new);
+        for (int row_idx = 0; row_idx < old_rows.length; row_idx++) {
+            assertEquals(old_2_new[old_rows[row_idx][0]], relation.get(row_idx, 0));
+            assertEquals(old_2_new[old_rows[row_idx][1]], relation.get(row_idx, 1));
+        }
+        assertFalse(relation.add(new int[]{relation.get(0, 0), relation.get(0, 1)}));
+        int last_row = old_rows.length - 1;
+        assertFalse(relation.add(new int[]{relation.get(last_row, 0), relation.get(last_row, 1)}));
+        assertEquals(old_rows.length, relation.totalRecords());
+    }
+
+    @Test
+    void testTooManyRecords() throws KbException {
+        DictionaryKb kb = new DictionaryKb("DictionaryKbTestFull");
+        kb.addRecord("r", "s0", "o0");
+        DictionaryKb.Relation relation = kb.getRelation("r");
+        relation.maxCapacity = 64;
+        assertEquals(38, relation.maxRows());
+        for (int i = 1; i < 38; i++) {
+            assertTrue(kb.addRecord("r", "s" + i, "o" + i));
+        }
+        assertEquals(38, relation.totalRecords());
+        assertThrows(DictionaryKb.TooManyRecordsException.class, () -> kb.addRecord("r", "s38", "o38"));
+        assertThrows(DictionaryKb.TooManyRecordsException.class, () -> kb.addRecord("r", new String[]{"s", "o"}));
+        assertEquals(38, relation.totalRecords());
+        assertTrue(kb.addRecord("r2", "s38", "o38"));
+    }
+}
@@ -0,0 +1,73 @@
+package util.kb;
+
+import org.junit.jupiter.api.Test;
+import sinc2.util.kb.NumerationMap;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MapIndexTest {
+    static String createKbDir(String name) throws Exception {
+        Path dir = Path.of("/dev/shm", name);
+        Files.createDirectories(dir);
+        return dir.toString();
+    }
+
+    static void writeNames(String kbDirPath, String... names) throws Exception {
+        try (MapWriter writer = new MapWriter(kbDirPath)) {
+            for (String name: names) {
+                writer.write(name);
+            }
+        }
+    }
+
+    @Test
+    void testNames() throws Exception {
+        String kb_dir_path = createKbDir("MapIndexTestNames");
+        writeNames(kb_dir_path, "alice", "bob", "", "中文");
+        try (MapIndex index = MapIndex.open(kb_dir_path)) {
+            assertEquals(4, index.totalNames());
+            assertArrayEquals(new String[]{"中文", "alice", "", "bob"}, index.names(new int[]{4, 1, 3, 2}));
+        }
+        assertTrue(new File(kb_dir_path, MapIndex.INDEX_FILE_NAME).exists());
+    }
+
+    @Test
+    void testRewrittenMapInvalidatesIndex() throws Exception {
+        String kb_dir_path = createKbDir("MapIndexTestRewritten");
+        writeNames(kb_dir_path, "aa", "bb", "cc");
+        try (MapIndex index = MapIndex.open(kb_dir_path)) {
+            assertEquals("aa", index.name(1));
+        }
+        /* Same sizes, names permuted, e.g., another numeration order */
+        writeNames(kb_dir_path, "cc", "aa", "bb");
+        assertFalse(new File(kb_dir_path, MapIndex.INDEX_FILE_NAME).exists());
+        try (MapIndex index = MapIndex.open(kb_dir_path)) {
+            assertArrayEquals(new String[]{"cc", "aa", "bb"}, index.names(new int[]{1, 2, 3}));
+        }
+    }
+
+    @Test
+    void testStaleIndexRebuilt() throws Exception {
+        String kb_dir_path = createKbDir("MapIndexTestStale");
+        writeNames(kb_dir_path, "a", "bbb", "cc");
+        try (MapIndex index = MapIndex.open(kb_dir_path)) {
+            assertEquals("bbb", index.name(2));
+        }
+        /* Rewrite the map file bypassing `MapWriter`, with the same size but another modified time */
+        File map_file = NumerationMap.getMapFilePath(kb_dir_path, NumerationMap.MAP_FILE_NUMERATION_START).toFile();
+        long time = map_file.lastModified();
+        try (FileOutputStream os = new FileOutputStream(map_file)) {
+            os.write("ccc\nbb\na\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertTrue(map_file.setLastModified(time - 10000));
+        try (MapIndex index = MapIndex.open(kb_dir_path)) {
+            assertArrayEquals(new String[]{"ccc", "bb", "a"}, index.names(new int[]{1, 2, 3}));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package util.kb;
+
+import org.junit.jupiter.api.Test;
+import util.io.IntInput;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NumerationOrdersTest {
+    static final int MAX_NUM = 3000;
+
+    /**
+     * Random relations of arities 1 to 3, with an empty relation and a type relation last. Numerations above
+     * `MAX_NUM * 9 / 10` and 1 do not occur.
+     */
+    static List<DictionaryKb.Relation> randomRelations(long seed) {
+        Random random = new Random(seed);
+        List<DictionaryKb.Relation> relations = new ArrayList<>();
+        for (int rel_idx = 0; rel_idx < 6; rel_idx++) {
+            int arity = 1 + rel_idx % 3;
+            DictionaryKb.Relation relation = new DictionaryKb.Relation("r" + rel_idx, rel_idx, arity);
+            int total_rows = (2 == rel_idx) ? 0 : 1 + random.nextInt(2000);
+            int[] row = new int[arity];
+            for (int i = 0; i < total_rows; i++) {
+                for (int col = 0; col < arity; col++) {
+                    row[col] = 2 + random.nextInt(MAX_NUM * 9 / 10 - 1);
+                }
+                relation.add(row);
+            }
+            relations.add(relation);
+        }
+        DictionaryKb.Relation type_relation = new DictionaryKb.Relation("rdf:type", relations.size(), 2);
+        for (int i = 0; i < 500; i++) {
+            type_relation.add(new int[]{2 + random.nextInt(MAX_NUM * 9 / 10 - 1), MAX_NUM - random.nextInt(5)});
+        }
+        relations.add(type_relation);
+        return relations;
+    }
+
+    static NumerationOrder.RelationSource sourceOf(List<DictionaryKb.Relation> relations) {
+        return new NumerationOrder.RelationSource() {
+            @Override
+            public int totalRelations() {
+                return relations.size();
+            }
+
+            @Override
+            public int arity(int idx) {
+                return relations.get(idx).getArity();
+            }
+
+            @Override
+            public IntInput open(int idx) {
+                return relations.get(idx).open();
+            }
+        };
+    }
+
+    static Set<Integer> occurringConstants(List<DictionaryKb.Relation> relations) {
+        Set<Integer> constants = new HashSet<>();
+        for (DictionaryKb.Relation relation: relations) {
+            for (int row = 0; row < relation.totalRecords(); row++) {
+                for (int col = 0; col < relation.getArity(); col++) {
+                    constants.add(relation.get(row, col));
+                }
+            }
+        }
+        return constants;
+    }
+
+    @Test
+    void testFirstOccurrence() throws Exception {
+        DictionaryKb.Relation r1 = new DictionaryKb.Relation("r1", 0, 2);
+        r1.add(new int[]{5, 3});
+        r1.add(new int[]{3, 7});
+        DictionaryKb.Relation empty = new DictionaryKb.Relation("r2", 1, 3);
+        DictionaryKb.Relation type = new DictionaryKb.Relation("rdf:type", 2, 2);
+        type.add(new int[]{9, 2});
+        type.add(new int[]{5, 2});
+        int[] expected = new int[]{0, 0, 5, 2, 0, 1, 0, 3, 0, 4, 0};
+        List<DictionaryKb.Relation> relations = List.of(r1, empty, type);
+        assertArrayEquals(expected, NumerationOrders.firstOccurrence(sourceOf(relations), 10));
+        assertArrayEquals(expected, NumerationOrders.firstOccurrence(null, relations, 10, 1));
+        assertArrayEquals(expected, NumerationOrders.FIRST_OCCURRENCE.assign(sourceOf(relations), 10));
+    }
+
+    @Test
+    void testParallelFirstOccurrenceEqualsSequential() throws Exception {
+        for (long seed = 0; seed < 3; seed++) {
+            List<DictionaryKb.Relation> relations = randomRelations(seed);
+            int[] expected = NumerationOrders.firstOccurrence(sourceOf(relations), MAX_NUM);
+            for (int threads: new int[]{1, 4}) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                try {
+                    for (int range_rows: new int[]{1, 7, 1000, DictionaryKb.RANGE_ROWS}) {
+                        assertArrayEquals(
+                                expected, NumerationOrders.firstOccurrence(pool, relations, MAX_NUM, range_rows)
+                        );
+                    }
+                } finally {
+                    pool.shutdown();
+                }
+            }
+            assertArrayEquals(expected, NumerationOrders.firstOccurrence(null, relations, MAX_NUM));
+        }
+        int[] none = NumerationOrders.firstOccurrence(null, List.of(new DictionaryKb.Relation("r", 0, 2)), 3);
+        assertArrayEquals(new int[4], none);
+    }
+
+    @Test
+    void testOrdersAreBijections() throws Exception {
+        List<DictionaryKb.Relation> relations = randomRelations(7);
+        Set<Integer> constants = occurringConstants(relations);
+        for (NumerationOrder order: NumerationOrders.ALL) {
+            int[] old_2_new = order.assign(sourceOf(relations), MAX_NUM);
+            assertEquals(MAX_NUM + 1, old_2_new.length, order.name());
+            boolean[] assigned = new boolean[constants.size() + 1];
+            for (int old_num = 0; old_num <= MAX_NUM; old_num++) {
+                int new_num = old_2_new[old_num];
+                if (constants.contains(old_num)) {
+                    assertTrue(0 < new_num && new_num <= constants.size(), order.name());
+                    assertFalse(assigned[new_num], order.name());
+                    assigned[new_num] = true;
+                } else {
+                    assertEquals(0, new_num, order.name());
+                }
+            }
+            assertSame(order, NumerationOrders.parse(order.name()));
+        }
+        assertThrows(IllegalArgumentException.class, () -> NumerationOrders.parse("unknown"));
+    }
+}
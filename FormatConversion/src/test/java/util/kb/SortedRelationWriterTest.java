@@ -0,0 +1,160 @@
+package util.kb;
+
+import org.junit.jupiter.api.Test;
+import util.io.IntInput;
+import util.io.IntOutput;
+import util.io.MappedIntFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SortedRelationWriterTest {
+    static final String TEST_DIR = "/dev/shm/SortedRelationWriterTest";
+
+    static int[] readInts(IntInput input) throws IOException {
+        int[] values = new int[0];
+        IntBuffer chunk;
+        while (null != (chunk = input.nextChunk())) {
+            int offset = values.length;
+            values = Arrays.copyOf(values, offset + chunk.remaining());
+            chunk.get(values, offset, chunk.remaining());
+        }
+        return values;
+    }
+
+    /**
+     * Check that the relation is sorted and unique, equals the expected set of rows, and that each index lists the row
+     * indices sorted by the argument of the column and then the row index.
+     */
+    static void checkRelation(
+            String kbDirPath, int arity, List<int[]> expectedRows, long totalRows
+    ) throws IOException {
+        int[] values;
+        try (IntInput input = KbFiles.openRelation(kbDirPath, 0, arity)) {
+            values = readInts(input);
+        }
+        assertEquals(expectedRows.size() * arity, values.length);
+        assertEquals(expectedRows.size(), totalRows);
+        for (int row_idx = 0; row_idx < expectedRows.size(); row_idx++) {
+            assertArrayEquals(
+                    expectedRows.get(row_idx), Arrays.copyOfRange(values, row_idx * arity, row_idx * arity + arity)
+            );
+        }
+        for (int col = 1; col < arity; col++) {
+            int[] index;
+            try (IntInput input = new MappedIntFile(KbFiles.indexFile(kbDirPath, 0, col), 1)) {
+                index = readInts(input);
+            }
+            assertEquals(expectedRows.size(), index.length);
+            boolean[] listed = new boolean[index.length];
+            for (int i = 0; i < index.length; i++) {
+                assertFalse(listed[index[i]]);
+                listed[index[i]] = true;
+                if (0 < i) {
+                    int prev_arg = values[index[i - 1] * arity + col];
+                    int arg = values[index[i] * arity + col];
+                    assertTrue(prev_arg < arg || prev_arg == arg && index[i - 1] < index[i]);
+                }
+            }
+        }
+        assertFalse(KbFiles.indexFile(kbDirPath, 0, arity).exists());
+    }
+
+    @Test
+    void testSortedRelationAndIndexes() throws Exception {
+        Random random = new Random(1);
+        for (int arity = 1; arity <= 3; arity++) {
+            int[] values = new int[5000 * arity];
+            for (int i = 0; i < values.length; i++) {
+                /* Few distinct values, so there are duplicated rows and ties in the indexes */
+                values[i] = random.nextInt(20) - 3;
+            }
+            TreeSet<int[]> unique_rows = new TreeSet<>(Arrays::compare);
+            for (int i = 0; i < values.length; i += arity) {
+                unique_rows.add(Arrays.copyOfRange(values, i, i + arity));
+            }
+            List<int[]> expected_rows = new ArrayList<>(unique_rows);
+            for (long budget: new long[]{0, 1 << 10}) {
+                for (boolean packed: new boolean[]{false, true}) {
+                    Path kb_dir = Path.of(TEST_DIR, String.format("%d-%d-%b", arity, budget, packed));
+                    Files.createDirectories(kb_dir);
+                    SortedRelationWriter writer = new SortedRelationWriter(
+                            kb_dir.toString(), 0, arity, packed, budget, new File(TEST_DIR)
+                    );
+                    try (IntOutput output = writer) {
+                        output.writeInts(values, 0, values.length / 2);
+                        for (int i = values.length / 2; i < values.length; i++) {
+                            output.writeInt(values[i]);
+                        }
+                    }
+                    checkRelation(kb_dir.toString(), arity, expected_rows, writer.totalRows());
+                }
+            }
+        }
+    }
+
+    @Test
+    void testSortUniqueWideRows() {
+        Random random = new Random(2);
+        int[] extremes = new int[]{Integer.MIN_VALUE, -1, 0, 1, Integer.MAX_VALUE};
+        for (int arity = 3; arity <= 5; arity++) {
+            int[] values = new int[3000 * arity];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = extremes[random.nextInt(extremes.length)];
+            }
+            TreeSet<int[]> unique_rows = new TreeSet<>(Arrays::compare);
+            for (int i = 0; i < values.length; i += arity) {
+                unique_rows.add(Arrays.copyOfRange(values, i, i + arity));
+            }
+            int[] sorted = SortedRelationWriter.sortUnique(values, values.length, arity);
+            assertEquals(unique_rows.size() * arity, sorted.length);
+            int offset = 0;
+            for (int[] row: unique_rows) {
+                assertArrayEquals(row, Arrays.copyOfRange(sorted, offset, offset + arity));
+                offset += arity;
+            }
+        }
+    }
+
+    @Test
+    void testEmptyRelation() throws Exception {
+        for (long budget: new long[]{0, 1 << 10}) {
+            Path kb_dir = Path.of(TEST_DIR, "empty-" + budget);
+            Files.createDirectories(kb_dir);
+            SortedRelationWriter writer = new SortedRelationWriter(
+                    kb_dir.toString(), 0, 2, false, budget, new File(TEST_DIR)
+            );
+            writer.close();
+            checkRelation(kb_dir.toString(), 2, List.of(), writer.totalRows());
+        }
+    }
+
+    @Test
+    void testIncompleteRow() throws Exception {
+        Path kb_dir = Path.of(TEST_DIR, "incomplete");
+        Files.createDirectories(kb_dir);
+        for (long budget: new long[]{0, 1 << 10}) {
+            SortedRelationWriter writer = new SortedRelationWriter(
+                    kb_dir.toString(), 0, 2, false, budget, new File(TEST_DIR)
+            );
+            writer.writeInts(new int[]{1, 2, 3}, 0, 3);
+            assertThrows(IOException.class, writer::close);
+        }
+    }
+
+    @Test
+    void testGrownCapacity() throws Exception {
+        assertEquals(SortedRelationWriter.INITIAL_CAPACITY, SortedRelationWriter.grownCapacity(0));
+        assertEquals(1 << 20, SortedRelationWriter.grownCapacity(1 << 19));
+        /* Doubling would overflow */
+        assertEquals(SortedRelationWriter.MAX_CAPACITY, SortedRelationWriter.grownCapacity(1 << 30));
+        assertEquals(SortedRelationWriter.MAX_CAPACITY, SortedRelationWriter.grownCapacity(Integer.MAX_VALUE / 2 + 1));
+        assertThrows(IOException.class, () -> SortedRelationWriter.grownCapacity(SortedRelationWriter.MAX_CAPACITY));
+    }
+}
@@ -0,0 +1,132 @@
+package util.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class MetricsTest {
+
+    @Test
+    void testToJson() {
+        Metrics metrics = new Metrics("tool \"x\"");
+        try (Metrics.Phase phase = metrics.phase("load")) {
+            phase.addItems(10).addBytesRead(100).addBytesWritten(20);
+        }
+        try (Metrics.Phase phase = metrics.phase("dump")) {
+            phase.addBytesWritten(7);
+        }
+        metrics.setCounter("constants", 42);
+        metrics.setCounter("relations", 3);
+        metrics.addFiltered("p\t2", "literal", 5);
+        metrics.addFiltered("p1", "literal", 1);
+        metrics.addFiltered("p1", "arity", 2);
+        metrics.addFiltered("p1", "none", 0);
+        String json = metrics.toJson();
+
+        assertTrue(json.startsWith("{\n  \"tool\": \"tool \\\"x\\\"\",\n  \"start\": \""));
+        assertTrue(json.contains("{\"name\": \"load\", \"wallMillis\": "));
+        assertTrue(json.contains(", \"items\": 10, \"itemsPerSecond\": "));
+        assertTrue(json.contains(", \"bytesRead\": 100, \"bytesWritten\": 20, \"allocatedBytes\": "));
+        assertTrue(json.contains("{\"name\": \"dump\", \"wallMillis\": "));
+        assertTrue(json.indexOf("\"load\"") < json.indexOf("\"dump\""));
+        assertTrue(json.contains("  \"counters\": {\n    \"constants\": 42,\n    \"relations\": 3\n  },\n"));
+        assertTrue(json.endsWith(
+                "  \"filtered\": [\n" +
+                "    {\"predicate\": \"p\\t2\", \"reason\": \"literal\", \"count\": 5},\n" +
+                "    {\"predicate\": \"p1\", \"reason\": \"arity\", \"count\": 2},\n" +
+                "    {\"predicate\": \"p1\", \"reason\": \"literal\", \"count\": 1}\n" +
+                "  ]\n}\n"
+        ));
+        assertEquals(8, metrics.totalFiltered());
+        assertEquals(0, metrics.filtered("p1", "none"));
+
+        String empty = new Metrics("empty").toJson();
+        assertTrue(empty.contains("  \"phases\": [\n  ],\n  \"counters\": {\n  },\n  \"filtered\": [\n  ]\n}\n"));
+    }
+
+    @Test
+    void testConcurrentFiltered() throws Exception {
+        Metrics metrics = new Metrics("test");
+        int threads = 8;
+        int adds = 20000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread_idx = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < adds; i++) {
+                        metrics.addFiltered("p" + (i % 5), (0 == thread_idx % 2) ? "even" : "odd", 1);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future: futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals((long) threads * adds, metrics.totalFiltered());
+        for (int p = 0; p < 5; p++) {
+            assertEquals(threads / 2 * adds / 5, metrics.filtered("p" + p, "even"));
+            assertEquals(threads / 2 * adds / 5, metrics.filtered("p" + p, "odd"));
+        }
+    }
+
+    @Test
+    void testExitedThreadsAllocation() throws Exception {
+        assumeTrue(null != Metrics.allocationBean());
+        int threads = 4;
+        int arrays = 16;
+        Metrics metrics = new Metrics("test");
+        Metrics.Phase phase = metrics.phase("pool");
+        List<Thread> created = new CopyOnWriteArrayList<>();
+        ThreadFactory thread_factory = Metrics.threadFactory();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = thread_factory.newThread(task);
+            created.add(thread);
+            return thread;
+        });
+        ForkJoinPool.ForkJoinWorkerThreadFactory worker_factory = Metrics.forkJoinThreadFactory();
+        ForkJoinPool pool = new ForkJoinPool(threads, fork_join_pool -> {
+            ForkJoinWorkerThread thread = worker_factory.newThread(fork_join_pool);
+            created.add(thread);
+            return thread;
+        }, null, false);
+        long[] checksum = new long[1];
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < arrays; i++) {
+                    byte[] array = new byte[1 << 20];
+                    checksum[0] += array.length;
+                }
+            });
+        }
+        pool.submit(() -> {
+            for (int i = 0; i < arrays; i++) {
+                byte[] array = new byte[1 << 20];
+                checksum[0] += array.length;
+            }
+        }).get();
+        executor.shutdown();
+        pool.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+        /* The threads report before they exit */
+        for (Thread thread: created) {
+            thread.join();
+        }
+        phase.close();
+        assertTrue((threads + 1L) * arrays * (1 << 20) <= phase.allocated, "allocated " + phase.allocated);
+        assertTrue(0 < checksum[0]);
+    }
+}